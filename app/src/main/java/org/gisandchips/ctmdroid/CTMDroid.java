@@ -2,30 +2,96 @@ package org.gisandchips.ctmdroid;
 
 import android.app.Application;
 
-import org.gisandchips.ctmdroid.model.Project;
-import org.gisandchips.ctmdroid.model.ProjectManager;
+import com.squareup.picasso.Picasso;
+
+import org.gisandchips.ctmdroid.data.CtmDatabase;
+import org.gisandchips.ctmdroid.data.ProjectRepository;
+import org.gisandchips.ctmdroid.data.RealmWriter;
+import org.gisandchips.ctmdroid.exif.ExifThumbnailRequestHandler;
+
+import io.realm.Realm;
 
 /**
  * Created by benizar on 23/02/2015.
  */
 public class CTMDroid extends Application {
 
-    //List all CTM projects
-    public static ProjectManager currentProjectManager = new ProjectManager();
-
-    //Current project
-    public static Project currentProject = new Project();
+    //Current project, persisted in the ProjectManager row
+    private static volatile int currentProjectId = 0;
+    //Set once the user chose a project, the stored one is not read then
+    private static boolean currentProjectChosen = false;
 
 
     private static CTMDroid singleton;
 
+    private Picasso picasso;
+
     public static CTMDroid getInstance() {
         return singleton;
     }
 
+    /**
+     * Picasso shared by the image grids, able to load the EXIF thumbnails
+     * of ExifThumbnailRequestHandler.uriFor
+     */
+    public synchronized Picasso getPicasso() {
+        if (picasso == null) {
+            picasso = new Picasso.Builder(this)
+                    .addRequestHandler(new ExifThumbnailRequestHandler())
+                    .build();
+        }
+        return picasso;
+    }
+
+    /**
+     * @return Project the user works on, 0 until the stored one is read at
+     *         start or if there is none
+     */
+    public static int getCurrentProjectId() {
+        return currentProjectId;
+    }
+
+    /**
+     * Change the current project. The value is available at once, the
+     * database write is done by the writer thread, which then loads the
+     * drawer index of the project.
+     *
+     * @param _projectId
+     *          Project the user works on
+     */
+    public static void setCurrentProjectId(final int _projectId) {
+        synchronized (CTMDroid.class) {
+            currentProjectChosen = true;
+            currentProjectId = _projectId;
+        }
+        CtmDatabase.getWriter().submit(new RealmWriter.Mutation() {
+            @Override
+            public void apply(Realm _realm) {
+                ProjectRepository.getOrCreateManager(_realm).setCurrentProjectId(_projectId);
+            }
+        });
+        CtmDatabase.getClassificationIndex().load();
+    }
+
     @Override
     public void onCreate() {
         super.onCreate();
         singleton = this;
+        CtmDatabase.init(this);
+
+        // Create the manager row on first start and read the current project,
+        // on the writer thread as the database may be migrated meanwhile
+        CtmDatabase.getWriter().submit(new RealmWriter.Mutation() {
+            @Override
+            public void apply(Realm _realm) {
+                int storedProjectId = ProjectRepository.getOrCreateManager(_realm)
+                        .getCurrentProjectId();
+                synchronized (CTMDroid.class) {
+                    if (!currentProjectChosen) {
+                        currentProjectId = storedProjectId;
+                    }
+                }
+            }
+        });
     }
 }
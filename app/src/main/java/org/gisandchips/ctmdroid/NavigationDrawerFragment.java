@@ -22,6 +22,11 @@ import android.widget.ArrayAdapter;
 import android.widget.ListView;
 import android.widget.Toast;
 
+import org.gisandchips.ctmdroid.data.ClassificationIndex;
+import org.gisandchips.ctmdroid.data.CtmDatabase;
+
+import java.util.ArrayList;
+
 /**
  * Fragment used for managing interactions for and presentation of a navigation drawer.
  * See the <a href="https://developer.android.com/design/patterns/navigation-drawer.html#Interaction">
@@ -52,12 +57,45 @@ public class NavigationDrawerFragment extends Fragment {
 
     private DrawerLayout mDrawerLayout;
     private ListView mDrawerListView;
+    private ArrayAdapter<String> mSectionAdapter;
     private View mFragmentContainerView;
 
     private int mCurrentSelectedPosition = 0;
     private boolean mFromSavedInstanceState;
     private boolean mUserLearnedDrawer;
 
+    /**
+     * Titles of the sections, in the order of the ClassificationIndex sections.
+     */
+    private static final int[] SECTION_TITLES = new int[]{
+            R.string.title_all,
+            R.string.title_management,
+            R.string.title_unclassified,
+            R.string.title_classified,
+            R.string.title_invalid,
+            R.string.title_unknown,
+    };
+
+    /**
+     * Updates the sample counts shown next to the section titles.
+     */
+    private final Runnable mRefreshSectionCounts = new Runnable() {
+        @Override
+        public void run() {
+            refreshSectionCounts();
+        }
+    };
+
+    private final ClassificationIndex.Listener mIndexListener = new ClassificationIndex.Listener() {
+        @Override
+        public void onIndexChanged() {
+            Activity activity = getActivity();
+            if (activity != null) {
+                activity.runOnUiThread(mRefreshSectionCounts);
+            }
+        }
+    };
+
     public NavigationDrawerFragment() {
     }
 
@@ -97,22 +135,38 @@ public class NavigationDrawerFragment extends Fragment {
                 selectItem(position);
             }
         });
-        mDrawerListView.setAdapter(new ArrayAdapter<String>(
+        mSectionAdapter = new ArrayAdapter<String>(
                 getActionBar().getThemedContext(),
                 android.R.layout.simple_list_item_activated_1,
                 android.R.id.text1,
-                new String[]{
-                        getString(R.string.title_all),
-                        getString(R.string.title_management),
-                        getString(R.string.title_unclassified),
-                        getString(R.string.title_classified),
-                        getString(R.string.title_invalid),
-                        getString(R.string.title_unknown),
-                }));
+                new ArrayList<String>());
+        mDrawerListView.setAdapter(mSectionAdapter);
+        refreshSectionCounts();
         mDrawerListView.setItemChecked(mCurrentSelectedPosition, true);
         return mDrawerListView;
     }
 
+    /**
+     * Shows the section titles, with their sample counts once the index is loaded.
+     * The counts are kept by ClassificationIndex, so this does not query the database.
+     */
+    private void refreshSectionCounts() {
+        if (mSectionAdapter == null || !isAdded()) {
+            return;
+        }
+        ClassificationIndex index = CtmDatabase.getClassificationIndex();
+        mSectionAdapter.setNotifyOnChange(false);
+        mSectionAdapter.clear();
+        for (int section = 0; section < SECTION_TITLES.length; section++) {
+            String title = getString(SECTION_TITLES[section]);
+            if (index != null && index.isLoaded()) {
+                title = getString(R.string.title_section_count, title, index.count(section));
+            }
+            mSectionAdapter.add(title);
+        }
+        mSectionAdapter.notifyDataSetChanged();
+    }
+
     public boolean isDrawerOpen() {
         return mDrawerLayout != null && mDrawerLayout.isDrawerOpen(mFragmentContainerView);
     }
@@ -212,12 +266,20 @@ public class NavigationDrawerFragment extends Fragment {
         } catch (ClassCastException e) {
             throw new ClassCastException("Activity must implement NavigationDrawerCallbacks.");
         }
+        ClassificationIndex index = CtmDatabase.getClassificationIndex();
+        if (index != null) {
+            index.addListener(mIndexListener);
+        }
     }
 
     @Override
     public void onDetach() {
         super.onDetach();
         mCallbacks = null;
+        ClassificationIndex index = CtmDatabase.getClassificationIndex();
+        if (index != null) {
+            index.removeListener(mIndexListener);
+        }
     }
 
     @Override
@@ -0,0 +1,210 @@
+package org.gisandchips.ctmdroid;
+
+import android.app.Activity;
+import android.os.Bundle;
+import android.support.v4.app.Fragment;
+import android.view.LayoutInflater;
+import android.view.View;
+import android.view.ViewGroup;
+import android.widget.AbsListView;
+import android.widget.BaseAdapter;
+import android.widget.GridView;
+import android.widget.ImageView;
+import android.widget.TextView;
+
+import com.squareup.picasso.Picasso;
+
+import org.gisandchips.ctmdroid.data.ClassificationIndex;
+import org.gisandchips.ctmdroid.data.CtmDatabase;
+import org.gisandchips.ctmdroid.data.SamplePager;
+import org.gisandchips.ctmdroid.exif.ExifThumbnailRequestHandler;
+
+/**
+ * Grid of the pictures of one drawer section. The samples come from a
+ * SamplePager that loads them by windows around the scroll position, and
+ * the grid recycles its cells, so the memory used does not depend on the
+ * number of pictures in the section.
+ */
+public class SectionGridFragment extends Fragment {
+    /**
+     * The fragment argument representing the section number for this
+     * fragment.
+     */
+    private static final String ARG_SECTION_NUMBER = "section_number";
+
+    private SamplePager mPager;
+    private SampleAdapter mAdapter;
+    private Picasso mPicasso;
+
+    private final Runnable mRefresh = new Runnable() {
+        @Override
+        public void run() {
+            if (mAdapter != null) {
+                mAdapter.notifyDataSetChanged();
+            }
+        }
+    };
+
+    /**
+     * Cells waiting for their window are filled when it arrives.
+     */
+    private final SamplePager.Listener mPagerListener = new SamplePager.Listener() {
+        @Override
+        public void onWindowLoaded(int first, int count) {
+            Activity activity = getActivity();
+            if (activity != null) {
+                activity.runOnUiThread(mRefresh);
+            }
+        }
+    };
+
+    /**
+     * Samples were added or classified: the loaded windows are stale.
+     */
+    private final ClassificationIndex.Listener mIndexListener = new ClassificationIndex.Listener() {
+        @Override
+        public void onIndexChanged() {
+            SamplePager pager = mPager;
+            if (pager != null) {
+                pager.invalidate();
+            }
+            Activity activity = getActivity();
+            if (activity != null) {
+                activity.runOnUiThread(mRefresh);
+            }
+        }
+    };
+
+    /**
+     * Returns a new instance of this fragment for the given section
+     * number.
+     */
+    public static SectionGridFragment newInstance(int sectionNumber) {
+        SectionGridFragment fragment = new SectionGridFragment();
+        Bundle args = new Bundle();
+        args.putInt(ARG_SECTION_NUMBER, sectionNumber);
+        fragment.setArguments(args);
+        return fragment;
+    }
+
+    public SectionGridFragment() {
+    }
+
+    @Override
+    public View onCreateView(LayoutInflater inflater, ViewGroup container,
+                             Bundle savedInstanceState) {
+        View rootView = inflater.inflate(R.layout.fragment_main, container, false);
+        GridView grid = (GridView) rootView.findViewById(R.id.sample_grid);
+        grid.setEmptyView(rootView.findViewById(R.id.section_label));
+
+        // Drawer sections are numbered from 1, index sections from 0
+        ClassificationIndex index = CtmDatabase.getClassificationIndex();
+        mPager = new SamplePager(index, getArguments().getInt(ARG_SECTION_NUMBER) - 1);
+        mPager.setListener(mPagerListener);
+        mPicasso = CTMDroid.getInstance().getPicasso();
+        mAdapter = new SampleAdapter(inflater);
+        grid.setAdapter(mAdapter);
+        grid.setOnScrollListener(new AbsListView.OnScrollListener() {
+            @Override
+            public void onScrollStateChanged(AbsListView view, int scrollState) {
+                // Do not decode thumbnails while flinging
+                if (scrollState == SCROLL_STATE_FLING) {
+                    mPicasso.pauseTag(SectionGridFragment.this);
+                } else {
+                    mPicasso.resumeTag(SectionGridFragment.this);
+                }
+            }
+
+            @Override
+            public void onScroll(AbsListView view, int firstVisibleItem, int visibleItemCount,
+                                 int totalItemCount) {
+                if (mPager != null && totalItemCount > 0) {
+                    mPager.setVisibleRange(firstVisibleItem,
+                            firstVisibleItem + Math.max(visibleItemCount, 1) - 1);
+                }
+            }
+        });
+        index.addListener(mIndexListener);
+        return rootView;
+    }
+
+    @Override
+    public void onDestroyView() {
+        super.onDestroyView();
+        CtmDatabase.getClassificationIndex().removeListener(mIndexListener);
+        mPicasso.cancelTag(this);
+        mPager.setListener(null);
+        mPager.close();
+        mPager = null;
+        mAdapter = null;
+    }
+
+    @Override
+    public void onAttach(Activity activity) {
+        super.onAttach(activity);
+        ((MainActivity) activity).onSectionAttached(
+                getArguments().getInt(ARG_SECTION_NUMBER));
+    }
+
+    /**
+     * Views of a recycled cell
+     */
+    private static class ViewHolder {
+        ImageView thumbnail;
+        TextView name;
+    }
+
+    private class SampleAdapter extends BaseAdapter {
+        private final LayoutInflater mInflater;
+
+        SampleAdapter(LayoutInflater inflater) {
+            mInflater = inflater;
+        }
+
+        @Override
+        public int getCount() {
+            return mPager != null ? mPager.getCount() : 0;
+        }
+
+        @Override
+        public SamplePager.Item getItem(int position) {
+            return mPager != null ? mPager.get(position) : null;
+        }
+
+        @Override
+        public long getItemId(int position) {
+            SamplePager.Item item = getItem(position);
+            return item != null ? item.getSampleId() : -1;
+        }
+
+        @Override
+        public View getView(int position, View convertView, ViewGroup parent) {
+            ViewHolder holder;
+            if (convertView == null) {
+                convertView = mInflater.inflate(R.layout.grid_item_sample, parent, false);
+                holder = new ViewHolder();
+                holder.thumbnail = (ImageView) convertView.findViewById(R.id.sample_thumbnail);
+                holder.name = (TextView) convertView.findViewById(R.id.sample_name);
+                convertView.setTag(holder);
+            } else {
+                holder = (ViewHolder) convertView.getTag();
+            }
+
+            SamplePager.Item item = getItem(position);
+            if (item == null) {
+                // Window still loading, the pager listener refreshes the grid
+                mPicasso.cancelRequest(holder.thumbnail);
+                holder.thumbnail.setImageDrawable(null);
+                holder.name.setText(null);
+            } else {
+                holder.name.setText(item.getSampleName());
+                mPicasso.load(ExifThumbnailRequestHandler.uriFor(item.getImagePath()))
+                        .tag(SectionGridFragment.this)
+                        .fit()
+                        .centerCrop()
+                        .into(holder.thumbnail);
+            }
+            return convertView;
+        }
+    }
+}
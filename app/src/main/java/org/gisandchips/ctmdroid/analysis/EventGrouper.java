@@ -0,0 +1,147 @@
+package org.gisandchips.ctmdroid.analysis;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Groups camera trap captures into independent events. Consecutive captures
+ * of one station belong to the same event while the gap between them does
+ * not exceed the threshold (usually 30 minutes); a longer gap starts a new
+ * event.
+ *
+ * The captures of each station have to come in capture time order, stations
+ * can be interleaved. Only the last capture time and the current event of
+ * each station are kept, so any number of captures is grouped in one pass.
+ * The state of a station can be restored, which lets the grouping continue
+ * when new images of the station arrive.
+ */
+public class EventGrouper {
+
+    public static final long DEFAULT_THRESHOLD = 30 * 60 * 1000L;
+
+    /**
+     * Grouping state of one station
+     */
+    private static class StationState {
+        long lastCaptureTime;
+        long eventId;
+    }
+
+    private final long threshold;
+    // Plain Java map, so the grouping also runs in JVM unit tests
+    private final Map<Integer, StationState> stations = new HashMap<Integer, StationState>();
+    private long nextEventId = 1;
+
+    /**
+     * @param _threshold
+     *          Maximal gap between captures of one event in milliseconds
+     */
+    public EventGrouper(long _threshold) {
+        threshold = _threshold;
+    }
+
+    public EventGrouper() {
+        this(DEFAULT_THRESHOLD);
+    }
+
+    /**
+     * Assign event to the next capture of a station
+     *
+     * @param _stationId
+     *          Station of the capture
+     * @param _captureTime
+     *          Capture time in milliseconds, not older than the previous
+     *          capture of the station
+     * @return Event ID
+     * @throws IllegalArgumentException
+     *           if the capture is older than the previous capture of the
+     *           station; the station has to be grouped again from its start
+     */
+    public long assign(int _stationId, long _captureTime) {
+        StationState state = stations.get(_stationId);
+        if (state == null) {
+            state = new StationState();
+            state.eventId = nextEventId++;
+            stations.put(_stationId, state);
+        } else if (_captureTime < state.lastCaptureTime) {
+            throw new IllegalArgumentException("Capture of station " + _stationId
+                    + " out of order");
+        } else if (_captureTime - state.lastCaptureTime > threshold) {
+            state.eventId = nextEventId++;
+        }
+        state.lastCaptureTime = _captureTime;
+        return state.eventId;
+    }
+
+    /**
+     * Continue grouping of a station grouped before
+     *
+     * @param _stationId
+     *          Station
+     * @param _lastCaptureTime
+     *          Capture time of the latest grouped capture of the station
+     * @param _eventId
+     *          Event of the latest grouped capture
+     */
+    public void restoreStation(int _stationId, long _lastCaptureTime, long _eventId) {
+        StationState state = new StationState();
+        state.lastCaptureTime = _lastCaptureTime;
+        state.eventId = _eventId;
+        stations.put(_stationId, state);
+        if (_eventId >= nextEventId) {
+            nextEventId = _eventId + 1;
+        }
+    }
+
+    /**
+     * Forget the state of a station, so its captures can be grouped again from
+     * the start
+     *
+     * @param _stationId
+     *          Station
+     */
+    public void resetStation(int _stationId) {
+        stations.remove(_stationId);
+    }
+
+    /**
+     * @param _stationId
+     *          Station
+     * @return Capture time of the latest capture of the station or
+     *         Long.MIN_VALUE if the station has no captures yet
+     */
+    public long getLastCaptureTime(int _stationId) {
+        StationState state = stations.get(_stationId);
+        return state == null ? Long.MIN_VALUE : state.lastCaptureTime;
+    }
+
+    /**
+     * @param _stationId
+     *          Station
+     * @return Current event of the station or 0 if the station has no
+     *         captures yet
+     */
+    public long getEventId(int _stationId) {
+        StationState state = stations.get(_stationId);
+        return state == null ? 0 : state.eventId;
+    }
+
+    public long getThreshold() {
+        return threshold;
+    }
+
+    public long getNextEventId() {
+        return nextEventId;
+    }
+
+    /**
+     * Event IDs are unique across the stations. When grouping continues after
+     * a restart, set the next ID above all the persisted ones.
+     *
+     * @param _nextEventId
+     *          ID of the next new event
+     */
+    public void setNextEventId(long _nextEventId) {
+        nextEventId = _nextEventId;
+    }
+}
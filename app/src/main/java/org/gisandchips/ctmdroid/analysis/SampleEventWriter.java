@@ -0,0 +1,121 @@
+package org.gisandchips.ctmdroid.analysis;
+
+import org.gisandchips.ctmdroid.data.CtmDatabase;
+import org.gisandchips.ctmdroid.data.RealmWriter;
+import org.gisandchips.ctmdroid.data.SampleRepository;
+import org.gisandchips.ctmdroid.model.Sample;
+
+import io.realm.Realm;
+
+/**
+ * Stores event IDs produced by EventGrouper in the samples. Assignments are
+ * buffered and handed to the RealmWriter in batches, one mutation per batch,
+ * so grouping hundreds of thousands of samples neither opens a transaction
+ * for each of them nor writes outside the writer thread. The writes are
+ * asynchronous, RealmWriter.flush waits for them.
+ *
+ * The buffer is not synchronized, the SampleEventWriter must be used from
+ * one thread.
+ */
+public class SampleEventWriter {
+
+    public static final int DEFAULT_BATCH_SIZE = 500;
+
+    private final RealmWriter writer;
+    private final int batchSize;
+    private int[] sampleIds;
+    private long[] eventIds;
+    private int size = 0;
+    private int written = 0;
+
+    /**
+     * @param _writer
+     *          Writer of the samples database
+     * @param _batchSize
+     *          Number of samples written by one mutation
+     */
+    public SampleEventWriter(RealmWriter _writer, int _batchSize) {
+        writer = _writer;
+        batchSize = Math.max(1, _batchSize);
+        sampleIds = new int[batchSize];
+        eventIds = new long[batchSize];
+    }
+
+    public SampleEventWriter() {
+        this(CtmDatabase.getWriter(), DEFAULT_BATCH_SIZE);
+    }
+
+    /**
+     * Group next capture and remember its event for the sample
+     *
+     * @param _grouper
+     *          Grouper of the captures
+     * @param _sampleId
+     *          Sample of the capture
+     * @param _stationId
+     *          Station of the capture
+     * @param _captureTime
+     *          Capture time, see EventGrouper.assign
+     * @return Event ID
+     */
+    public long group(EventGrouper _grouper, int _sampleId, int _stationId,
+                      long _captureTime) {
+        long eventId = _grouper.assign(_stationId, _captureTime);
+        put(_sampleId, eventId);
+        return eventId;
+    }
+
+    /**
+     * Remember event of a sample, the batch is written when it is full
+     *
+     * @param _sampleId
+     *          Sample
+     * @param _eventId
+     *          Event of the sample
+     */
+    public void put(int _sampleId, long _eventId) {
+        sampleIds[size] = _sampleId;
+        eventIds[size] = _eventId;
+        size++;
+        if (size == batchSize) {
+            flush();
+        }
+    }
+
+    /**
+     * Submit the buffered assignments to the writer
+     */
+    public void flush() {
+        if (size == 0) {
+            return;
+        }
+        // The mutation keeps the arrays, the next batch gets new ones
+        final int[] batchSampleIds = sampleIds;
+        final long[] batchEventIds = eventIds;
+        final int count = size;
+        writer.submit(new RealmWriter.Mutation() {
+            @Override
+            public void apply(Realm _realm) {
+                for (int i = 0; i < count; i++) {
+                    Sample sample = _realm.where(Sample.class)
+                            .equalTo(SampleRepository.FIELD_SAMPLE_ID, batchSampleIds[i])
+                            .findFirst();
+                    if (sample != null) {
+                        sample.setEventId(batchEventIds[i]);
+                    }
+                }
+            }
+        });
+        sampleIds = new int[batchSize];
+        eventIds = new long[batchSize];
+        written += size;
+        size = 0;
+    }
+
+    /**
+     * @return Number of assignments submitted to the writer so far
+     */
+    public int getWritten() {
+        return written;
+    }
+}
@@ -0,0 +1,387 @@
+package org.gisandchips.ctmdroid.data;
+
+import org.gisandchips.ctmdroid.model.Project;
+import org.gisandchips.ctmdroid.model.Sample;
+import org.gisandchips.ctmdroid.model.Station;
+
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import io.realm.Realm;
+
+/**
+ * Membership of the samples of the current project in the sections of the
+ * navigation drawer. Each section is a CompactBitSet of sample IDs, so the
+ * size of a section is known at once and any page of it is found without a
+ * query.
+ *
+ * Management samples belong to All and Management only; the other samples
+ * belong to All and to the section of their classification state.
+ *
+ * The index only changes on the RealmWriter thread, after the change is
+ * committed: it is loaded by a writer mutation and classify, setManagement
+ * and delete go through the writer. Samples are created only by
+ * SampleRepository.createSamples in SampleImportSink mutations, which call
+ * added. Reads can come from any thread.
+ *
+ * The index holds only the samples of the stations of the current project
+ * (the ProjectManager row). It is loaded again when the current project
+ * changes; samples of other projects are ignored meanwhile.
+ */
+public class ClassificationIndex {
+
+    // Sections, in the order of the drawer
+    public static final int SECTION_ALL = 0;
+    public static final int SECTION_MANAGEMENT = 1;
+    public static final int SECTION_UNCLASSIFIED = 2;
+    public static final int SECTION_CLASSIFIED = 3;
+    public static final int SECTION_INVALID = 4;
+    public static final int SECTION_UNKNOWN = 5;
+    public static final int SECTION_COUNT = 6;
+
+    // Classification states stored in Sample.classification
+    public static final int STATE_UNCLASSIFIED = 0;
+    public static final int STATE_CLASSIFIED = 1;
+    public static final int STATE_INVALID = 2;
+    public static final int STATE_UNKNOWN = 3;
+
+    /**
+     * Told when the index changed. Called on the writer thread.
+     */
+    public interface Listener {
+        void onIndexChanged();
+    }
+
+    private final CompactBitSet[] sections = new CompactBitSet[SECTION_COUNT];
+    private final CopyOnWriteArrayList<Listener> listeners =
+            new CopyOnWriteArrayList<Listener>();
+    private final RealmWriter writer;
+    private volatile boolean loaded = false;
+    // Project of the sections, changed only on the writer thread
+    private volatile int projectId = 0;
+
+    /**
+     * @param _writer
+     *          Writer of the database the index follows
+     */
+    public ClassificationIndex(RealmWriter _writer) {
+        writer = _writer;
+        for (int i = 0; i < SECTION_COUNT; i++) {
+            sections[i] = new CompactBitSet();
+        }
+    }
+
+    /**
+     * Queue loading of the index from the samples of the current project.
+     * Called at start and after each change of the current project.
+     */
+    public void load() {
+        writer.submit(new RealmWriter.CommittedMutation() {
+            @Override
+            public void apply(Realm _realm) {
+                // Build aside, readers are not blocked meanwhile
+                CompactBitSet[] built = new CompactBitSet[SECTION_COUNT];
+                for (int i = 0; i < SECTION_COUNT; i++) {
+                    built[i] = new CompactBitSet();
+                }
+                int current = ProjectRepository.readCurrentProjectId(_realm);
+                Project project = ProjectRepository.findProject(_realm, current);
+                if (project != null && project.getStationList() != null) {
+                    for (Station station : project.getStationList()) {
+                        for (Sample sample : _realm.where(Sample.class)
+                                .equalTo(SampleRepository.FIELD_STATION_ID,
+                                        station.getStationId()).findAll()) {
+                            put(built, sample);
+                        }
+                        // Samples created before stationId existed
+                        if (station.getSampleList() != null) {
+                            for (Sample sample : station.getSampleList()) {
+                                if (sample.getStationId() == 0) {
+                                    put(built, sample);
+                                }
+                            }
+                        }
+                    }
+                }
+                synchronized (ClassificationIndex.this) {
+                    System.arraycopy(built, 0, sections, 0, SECTION_COUNT);
+                    projectId = current;
+                }
+            }
+
+            @Override
+            public void onCommitted() {
+                loaded = true;
+                notifyChanged();
+            }
+        });
+    }
+
+    /**
+     * @return true once the index holds all the samples of the project
+     */
+    public boolean isLoaded() {
+        return loaded;
+    }
+
+    /**
+     * @return Project whose samples are indexed, 0 if none
+     */
+    public int getProjectId() {
+        return projectId;
+    }
+
+    /**
+     * Tell whether new samples of a station belong to the indexed project.
+     * Called in writer mutations.
+     *
+     * @param _realm
+     *          Realm of the writer
+     * @param _stationId
+     *          Station of the samples
+     * @return true if the station is a station of the indexed project
+     */
+    public boolean isProjectStation(Realm _realm, int _stationId) {
+        Project project = ProjectRepository.findProject(_realm, projectId);
+        if (project == null || project.getStationList() == null) {
+            return false;
+        }
+        for (Station station : project.getStationList()) {
+            if (station.getStationId() == _stationId) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @param _section
+     *          One of the SECTION_ constants
+     * @return Number of samples in the section, O(1)
+     */
+    public synchronized int count(int _section) {
+        return sections[_section].cardinality();
+    }
+
+    /**
+     * @param _section
+     *          One of the SECTION_ constants
+     * @param _sampleId
+     *          Sample
+     * @return true if the sample is in the section
+     */
+    public synchronized boolean contains(int _section, int _sampleId) {
+        return sections[_section].get(_sampleId);
+    }
+
+    /**
+     * IDs of consecutive samples of a section, ordered by ID
+     *
+     * @param _section
+     *          One of the SECTION_ constants
+     * @param _position
+     *          Position of the first sample in the section
+     * @param _ids
+     *          Receives the IDs
+     * @return Number of IDs copied
+     */
+    public synchronized int page(int _section, int _position, int[] _ids) {
+        return sections[_section].page(_position, _ids);
+    }
+
+    /**
+     * Change the classification state of a sample. The change is stored by
+     * the writer; the index follows once it is committed.
+     *
+     * @param _sampleId
+     *          Sample
+     * @param _state
+     *          One of the STATE_ constants
+     */
+    public void classify(final int _sampleId, final int _state) {
+        writer.submit(new RealmWriter.CommittedMutation() {
+            private Sample sample;
+            private boolean management;
+
+            @Override
+            public void apply(Realm _realm) {
+                sample = findSample(_realm, _sampleId);
+                if (sample != null) {
+                    sample.setClassification(_state);
+                    management = sample.isManagement();
+                }
+            }
+
+            @Override
+            public void onCommitted() {
+                if (sample != null) {
+                    update(_sampleId, management, _state);
+                }
+            }
+        });
+    }
+
+    /**
+     * Mark a sample as management picture or not, see classify
+     *
+     * @param _sampleId
+     *          Sample
+     * @param _management
+     *          true for a management picture
+     */
+    public void setManagement(final int _sampleId, final boolean _management) {
+        writer.submit(new RealmWriter.CommittedMutation() {
+            private Sample sample;
+            private int state;
+
+            @Override
+            public void apply(Realm _realm) {
+                sample = findSample(_realm, _sampleId);
+                if (sample != null) {
+                    sample.setManagement(_management);
+                    state = sample.getClassification();
+                }
+            }
+
+            @Override
+            public void onCommitted() {
+                if (sample != null) {
+                    update(_sampleId, _management, state);
+                }
+            }
+        });
+    }
+
+    /**
+     * Delete samples. The samples are removed by the writer; the index
+     * follows once the deletion is committed.
+     *
+     * @param _sampleIds
+     *          Samples to delete
+     */
+    public void delete(final int[] _sampleIds) {
+        writer.submit(new RealmWriter.CommittedMutation() {
+            @Override
+            public void apply(Realm _realm) {
+                for (int sampleId : _sampleIds) {
+                    Sample sample = findSample(_realm, sampleId);
+                    if (sample != null) {
+                        sample.removeFromRealm();
+                    }
+                }
+            }
+
+            @Override
+            public void onCommitted() {
+                removed(_sampleIds, _sampleIds.length);
+            }
+        });
+    }
+
+    /**
+     * Add samples created by a committed mutation as unclassified. Called on
+     * the writer thread.
+     *
+     * @param _projectId
+     *          Project of the samples, see isProjectStation; samples of
+     *          another project than the indexed one are ignored
+     * @param _sampleIds
+     *          IDs of the new samples
+     * @param _count
+     *          Number of IDs in _sampleIds
+     */
+    public void added(int _projectId, int[] _sampleIds, int _count) {
+        synchronized (this) {
+            if (_projectId != projectId) {
+                return;
+            }
+            for (int i = 0; i < _count; i++) {
+                put(sections, _sampleIds[i], false, STATE_UNCLASSIFIED);
+            }
+        }
+        notifyChanged();
+    }
+
+    /**
+     * Drop samples deleted by a committed mutation. Called on the writer
+     * thread.
+     *
+     * @param _sampleIds
+     *          IDs of the deleted samples
+     * @param _count
+     *          Number of IDs in _sampleIds
+     */
+    public void removed(int[] _sampleIds, int _count) {
+        synchronized (this) {
+            for (int i = 0; i < _count; i++) {
+                for (int section = 0; section < SECTION_COUNT; section++) {
+                    sections[section].clear(_sampleIds[i]);
+                }
+            }
+        }
+        notifyChanged();
+    }
+
+    public void addListener(Listener _listener) {
+        listeners.add(_listener);
+    }
+
+    public void removeListener(Listener _listener) {
+        listeners.remove(_listener);
+    }
+
+    /**
+     * Section of a classification state
+     */
+    public static int sectionOf(int _state) {
+        switch (_state) {
+            case STATE_CLASSIFIED:
+                return SECTION_CLASSIFIED;
+            case STATE_INVALID:
+                return SECTION_INVALID;
+            case STATE_UNKNOWN:
+                return SECTION_UNKNOWN;
+            default:
+                return SECTION_UNCLASSIFIED;
+        }
+    }
+
+    private void update(int _sampleId, boolean _management, int _state) {
+        synchronized (this) {
+            if (!sections[SECTION_ALL].get(_sampleId)) {
+                // Sample of another project
+                return;
+            }
+            for (int i = SECTION_MANAGEMENT; i < SECTION_COUNT; i++) {
+                sections[i].clear(_sampleId);
+            }
+            put(sections, _sampleId, _management, _state);
+        }
+        notifyChanged();
+    }
+
+    private static void put(CompactBitSet[] _sections, Sample _sample) {
+        put(_sections, _sample.getSampleId(), _sample.isManagement(),
+                _sample.getClassification());
+    }
+
+    private static void put(CompactBitSet[] _sections, int _sampleId, boolean _management,
+                            int _state) {
+        _sections[SECTION_ALL].set(_sampleId);
+        if (_management) {
+            _sections[SECTION_MANAGEMENT].set(_sampleId);
+        } else {
+            _sections[sectionOf(_state)].set(_sampleId);
+        }
+    }
+
+    private void notifyChanged() {
+        for (Listener listener : listeners) {
+            listener.onIndexChanged();
+        }
+    }
+
+    private static Sample findSample(Realm _realm, int _sampleId) {
+        return _realm.where(Sample.class)
+                .equalTo(SampleRepository.FIELD_SAMPLE_ID, _sampleId).findFirst();
+    }
+}
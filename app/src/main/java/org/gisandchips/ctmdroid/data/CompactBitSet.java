@@ -0,0 +1,323 @@
+package org.gisandchips.ctmdroid.data;
+
+/**
+ * Compressed set of non-negative ints. Values are split in chunks of 65536
+ * by their high 16 bits; a chunk holding few values stores them as a sorted
+ * char array, a dense chunk as a 8 KB bitmap. A chunk switches between the
+ * two forms as it fills or empties.
+ *
+ * The number of values is kept up to date, and each chunk knows its own, so
+ * select (the n-th value) skips whole chunks and pages of a large set are
+ * found without iterating from the start.
+ *
+ * Not thread safe.
+ */
+class CompactBitSet {
+
+    // Array chunks larger than this become bitmaps
+    private static final int MAX_ARRAY = 4096;
+    // Bitmap chunks smaller than this become arrays
+    private static final int MIN_BITMAP = 2048;
+    private static final int WORDS = 1024;
+
+    /**
+     * Values sharing the high 16 bits
+     */
+    private static class Chunk {
+        // Sorted low 16 bits, null when the chunk is a bitmap
+        char[] array = new char[4];
+        long[] bitmap;
+        int cardinality = 0;
+
+        boolean contains(char _low) {
+            if (bitmap != null) {
+                return (bitmap[_low >>> 6] & (1L << _low)) != 0;
+            }
+            return search(array, cardinality, _low) >= 0;
+        }
+
+        boolean add(char _low) {
+            if (bitmap != null) {
+                long bit = 1L << _low;
+                if ((bitmap[_low >>> 6] & bit) != 0) {
+                    return false;
+                }
+                bitmap[_low >>> 6] |= bit;
+                cardinality++;
+                return true;
+            }
+            int index = search(array, cardinality, _low);
+            if (index >= 0) {
+                return false;
+            }
+            index = -index - 1;
+            if (cardinality == MAX_ARRAY) {
+                toBitmap();
+                return add(_low);
+            }
+            if (cardinality == array.length) {
+                char[] bigger = new char[Math.min(MAX_ARRAY, array.length * 2)];
+                System.arraycopy(array, 0, bigger, 0, cardinality);
+                array = bigger;
+            }
+            System.arraycopy(array, index, array, index + 1, cardinality - index);
+            array[index] = _low;
+            cardinality++;
+            return true;
+        }
+
+        boolean remove(char _low) {
+            if (bitmap != null) {
+                long bit = 1L << _low;
+                if ((bitmap[_low >>> 6] & bit) == 0) {
+                    return false;
+                }
+                bitmap[_low >>> 6] &= ~bit;
+                cardinality--;
+                if (cardinality < MIN_BITMAP) {
+                    toArray();
+                }
+                return true;
+            }
+            int index = search(array, cardinality, _low);
+            if (index < 0) {
+                return false;
+            }
+            System.arraycopy(array, index + 1, array, index, cardinality - index - 1);
+            cardinality--;
+            return true;
+        }
+
+        /**
+         * Smallest value not below _from (0 to 65535), -1 if none
+         */
+        int next(int _from) {
+            if (bitmap != null) {
+                int word = _from >>> 6;
+                if (word >= WORDS) {
+                    return -1;
+                }
+                long bits = bitmap[word] & (-1L << _from);
+                while (true) {
+                    if (bits != 0) {
+                        return word * 64 + Long.numberOfTrailingZeros(bits);
+                    }
+                    if (++word == WORDS) {
+                        return -1;
+                    }
+                    bits = bitmap[word];
+                }
+            }
+            int index = search(array, cardinality, (char) _from);
+            if (index < 0) {
+                index = -index - 1;
+            }
+            return index < cardinality ? array[index] : -1;
+        }
+
+        /**
+         * Value at given position within the chunk
+         */
+        int select(int _rank) {
+            if (bitmap == null) {
+                return array[_rank];
+            }
+            int rank = _rank;
+            for (int word = 0; word < WORDS; word++) {
+                int count = Long.bitCount(bitmap[word]);
+                if (rank < count) {
+                    long bits = bitmap[word];
+                    for (int i = 0; i < rank; i++) {
+                        bits &= bits - 1;
+                    }
+                    return word * 64 + Long.numberOfTrailingZeros(bits);
+                }
+                rank -= count;
+            }
+            throw new IllegalStateException("Chunk cardinality out of sync");
+        }
+
+        private void toBitmap() {
+            bitmap = new long[WORDS];
+            for (int i = 0; i < cardinality; i++) {
+                bitmap[array[i] >>> 6] |= 1L << array[i];
+            }
+            array = null;
+        }
+
+        private void toArray() {
+            char[] values = new char[Math.max(4, cardinality)];
+            int n = 0;
+            for (int word = 0; word < WORDS; word++) {
+                long bits = bitmap[word];
+                while (bits != 0) {
+                    values[n++] = (char) (word * 64 + Long.numberOfTrailingZeros(bits));
+                    bits &= bits - 1;
+                }
+            }
+            array = values;
+            bitmap = null;
+        }
+    }
+
+    // Sorted high 16 bits of the chunks
+    private char[] keys = new char[4];
+    private Chunk[] chunks = new Chunk[4];
+    private int chunkCount = 0;
+    private int cardinality = 0;
+
+    /**
+     * @return Number of values, O(1)
+     */
+    public int cardinality() {
+        return cardinality;
+    }
+
+    public boolean get(int _value) {
+        int index = search(keys, chunkCount, high(_value));
+        return index >= 0 && chunks[index].contains(low(_value));
+    }
+
+    /**
+     * @return true if the value was not in the set
+     */
+    public boolean set(int _value) {
+        if (_value < 0) {
+            throw new IllegalArgumentException("Negative value " + _value);
+        }
+        char high = high(_value);
+        int index = search(keys, chunkCount, high);
+        if (index < 0) {
+            index = -index - 1;
+            if (chunkCount == keys.length) {
+                char[] newKeys = new char[keys.length * 2];
+                Chunk[] newChunks = new Chunk[keys.length * 2];
+                System.arraycopy(keys, 0, newKeys, 0, chunkCount);
+                System.arraycopy(chunks, 0, newChunks, 0, chunkCount);
+                keys = newKeys;
+                chunks = newChunks;
+            }
+            System.arraycopy(keys, index, keys, index + 1, chunkCount - index);
+            System.arraycopy(chunks, index, chunks, index + 1, chunkCount - index);
+            keys[index] = high;
+            chunks[index] = new Chunk();
+            chunkCount++;
+        }
+        if (chunks[index].add(low(_value))) {
+            cardinality++;
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * @return true if the value was in the set
+     */
+    public boolean clear(int _value) {
+        int index = search(keys, chunkCount, high(_value));
+        if (index < 0 || !chunks[index].remove(low(_value))) {
+            return false;
+        }
+        cardinality--;
+        if (chunks[index].cardinality == 0) {
+            System.arraycopy(keys, index + 1, keys, index, chunkCount - index - 1);
+            System.arraycopy(chunks, index + 1, chunks, index, chunkCount - index - 1);
+            chunkCount--;
+            chunks[chunkCount] = null;
+        }
+        return true;
+    }
+
+    /**
+     * Smallest value not below _from
+     *
+     * @param _from
+     *          Start of the search
+     * @return The value or -1 if there is none
+     */
+    public int nextSetBit(int _from) {
+        int from = Math.max(0, _from);
+        int index = search(keys, chunkCount, high(from));
+        if (index < 0) {
+            index = -index - 1;
+            from = 0;
+        } else {
+            from = low(from);
+        }
+        for (; index < chunkCount; index++) {
+            int value = chunks[index].next(from);
+            if (value >= 0) {
+                return (keys[index] << 16) | value;
+            }
+            from = 0;
+        }
+        return -1;
+    }
+
+    /**
+     * Value at given position of the ascending order
+     *
+     * @param _rank
+     *          Position, 0 based
+     * @return The value or -1 if _rank is not below cardinality()
+     */
+    public int select(int _rank) {
+        if (_rank < 0 || _rank >= cardinality) {
+            return -1;
+        }
+        int rank = _rank;
+        for (int index = 0; index < chunkCount; index++) {
+            Chunk chunk = chunks[index];
+            if (rank < chunk.cardinality) {
+                return (keys[index] << 16) | chunk.select(rank);
+            }
+            rank -= chunk.cardinality;
+        }
+        return -1;
+    }
+
+    /**
+     * Copy consecutive values, e.g. one page of a list
+     *
+     * @param _rank
+     *          Position of the first value
+     * @param _out
+     *          Destination
+     * @return Number of values copied, less than _out.length at the end of
+     *         the set
+     */
+    public int page(int _rank, int[] _out) {
+        int n = 0;
+        int value = select(_rank);
+        while (value >= 0 && n < _out.length) {
+            _out[n++] = value;
+            value = nextSetBit(value + 1);
+        }
+        return n;
+    }
+
+    private static char high(int _value) {
+        return (char) (_value >>> 16);
+    }
+
+    private static char low(int _value) {
+        return (char) _value;
+    }
+
+    private static int search(char[] _array, int _length, char _key) {
+        int low = 0;
+        int high = _length - 1;
+        while (low <= high) {
+            int middle = (low + high) >>> 1;
+            char value = _array[middle];
+            if (value < _key) {
+                low = middle + 1;
+            } else if (value > _key) {
+                high = middle - 1;
+            } else {
+                return middle;
+            }
+        }
+        return -(low + 1);
+    }
+}
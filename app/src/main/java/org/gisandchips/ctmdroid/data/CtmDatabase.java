@@ -0,0 +1,94 @@
+package org.gisandchips.ctmdroid.data;
+
+import android.content.Context;
+
+import io.realm.Realm;
+import io.realm.RealmConfiguration;
+
+/**
+ * Configuration of the application database. Reads can use Realm instances
+ * of any thread; all the writes go through the single RealmWriter.
+ */
+public class CtmDatabase {
+
+    public static final String NAME = "ctmdroid.realm";
+    // Increase together with a new step of CtmMigration
+    public static final long SCHEMA_VERSION = 4;
+
+    private static RealmConfiguration configuration;
+    private static RealmWriter writer;
+    private static IdAllocator idAllocator;
+    private static ClassificationIndex classificationIndex;
+
+    private CtmDatabase() {
+    }
+
+    /**
+     * Configure the database and start the writer. Called once from
+     * Application.onCreate. The writer opens the database first, so the
+     * migration and the loading of the key allocator and of the drawer index
+     * run on its thread, not on the UI thread.
+     *
+     * @param _context
+     *          Application context
+     */
+    public static synchronized void init(Context _context) {
+        if (configuration != null) {
+            return;
+        }
+        configuration = new RealmConfiguration.Builder(_context)
+                .name(NAME)
+                .schemaVersion(SCHEMA_VERSION)
+                .migration(new CtmMigration())
+                .build();
+        Realm.setDefaultConfiguration(configuration);
+        writer = new RealmWriter(configuration);
+        final IdAllocator ids = new IdAllocator();
+        idAllocator = ids;
+        // First mutation, keys are only reserved by the mutations after it
+        writer.submit(new RealmWriter.Mutation() {
+            @Override
+            public void apply(Realm _realm) {
+                ids.load(_realm);
+            }
+        });
+        classificationIndex = new ClassificationIndex(writer);
+        classificationIndex.load();
+        writer.start();
+    }
+
+    public static synchronized RealmConfiguration getConfiguration() {
+        return configuration;
+    }
+
+    /**
+     * @return Writer of the database, null before init()
+     */
+    public static synchronized RealmWriter getWriter() {
+        return writer;
+    }
+
+    /**
+     * @return Primary key allocator, null before init()
+     */
+    public static synchronized IdAllocator getIdAllocator() {
+        return idAllocator;
+    }
+
+    /**
+     * @return Index of the drawer sections, null before init()
+     */
+    public static synchronized ClassificationIndex getClassificationIndex() {
+        return classificationIndex;
+    }
+
+    /**
+     * Realm for reading on the calling thread, it has to be closed by the
+     * caller
+     *
+     * @return Realm instance
+     */
+    public static Realm open() {
+        return Realm.getInstance(getConfiguration());
+    }
+}
@@ -0,0 +1,97 @@
+package org.gisandchips.ctmdroid.data;
+
+import org.gisandchips.ctmdroid.model.IdSequence;
+import org.gisandchips.ctmdroid.model.ProjectManager;
+import org.gisandchips.ctmdroid.model.Sample;
+import org.gisandchips.ctmdroid.model.Station;
+
+import io.realm.Realm;
+import io.realm.RealmMigration;
+import io.realm.internal.ColumnType;
+import io.realm.internal.Table;
+import io.realm.internal.UncheckedRow;
+
+/**
+ * Schema migration of the database. Each step upgrades the schema by one
+ * version.
+ *
+ * Version 0 - initial model (Project, ProjectManager, Sample, Species,
+ * Station)
+ * Version 1 - ProjectManager gets the projectManagerId primary key and
+ * currentProjectId; Sample gets eventId, imagePath, stationId, captureTime,
+ * fileSize and contentHash with indexes on stationId, captureTime and
+ * contentHash
+ * Version 2 - IdSequence table of IdAllocator
+ * Version 3 - Station gets deploymentStart and deploymentEnd
+ * Version 4 - Sample gets classification with index, samples with species
+ * are classified
+ */
+public class CtmMigration implements RealmMigration {
+
+    @Override
+    public long execute(Realm _realm, long _version) {
+        if (_version == 0) {
+            Table manager = _realm.getTable(ProjectManager.class);
+            addColumn(manager, ColumnType.INTEGER, "projectManagerId", false);
+            if (!manager.hasPrimaryKey()) {
+                manager.setPrimaryKey("projectManagerId");
+            }
+            addColumn(manager, ColumnType.INTEGER, "currentProjectId", false);
+
+            Table sample = _realm.getTable(Sample.class);
+            addColumn(sample, ColumnType.INTEGER, "eventId", false);
+            addColumn(sample, ColumnType.STRING, "imagePath", false);
+            addColumn(sample, ColumnType.INTEGER, "stationId", true);
+            addColumn(sample, ColumnType.INTEGER, "captureTime", true);
+            addColumn(sample, ColumnType.INTEGER, "fileSize", false);
+            addColumn(sample, ColumnType.STRING, "contentHash", true);
+            _version++;
+        }
+        if (_version == 1) {
+            Table sequence = _realm.getTable(IdSequence.class);
+            addColumn(sequence, ColumnType.STRING, "sequenceName", false);
+            if (!sequence.hasPrimaryKey()) {
+                sequence.setPrimaryKey("sequenceName");
+            }
+            addColumn(sequence, ColumnType.INTEGER, "highWaterMark", false);
+            _version++;
+        }
+        if (_version == 2) {
+            Table station = _realm.getTable(Station.class);
+            addColumn(station, ColumnType.INTEGER, "deploymentStart", false);
+            addColumn(station, ColumnType.INTEGER, "deploymentEnd", false);
+            _version++;
+        }
+        if (_version == 3) {
+            Table sample = _realm.getTable(Sample.class);
+            addColumn(sample, ColumnType.INTEGER, "classification", true);
+            // Samples which already have species are classified
+            long classification = sample.getColumnIndex("classification");
+            long species = sample.getColumnIndex("speciesRealmList");
+            if (species >= 0) {
+                for (long i = 0; i < sample.size(); i++) {
+                    UncheckedRow row = sample.getUncheckedRow(i);
+                    if (!row.getLinkList(species).isEmpty()) {
+                        row.setLong(classification, ClassificationIndex.STATE_CLASSIFIED);
+                    }
+                }
+            }
+            _version++;
+        }
+        return _version;
+    }
+
+    /**
+     * Add column if the table does not have it yet
+     */
+    private static void addColumn(Table _table, ColumnType _type, String _name,
+                                  boolean _indexed) {
+        long column = _table.getColumnIndex(_name);
+        if (column < 0) {
+            column = _table.addColumn(_type, _name);
+        }
+        if (_indexed && !_table.hasSearchIndex(column)) {
+            _table.addSearchIndex(column);
+        }
+    }
+}
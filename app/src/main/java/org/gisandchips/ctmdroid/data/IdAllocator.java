@@ -0,0 +1,148 @@
+package org.gisandchips.ctmdroid.data;
+
+import org.gisandchips.ctmdroid.model.IdSequence;
+import org.gisandchips.ctmdroid.model.Project;
+import org.gisandchips.ctmdroid.model.Sample;
+import org.gisandchips.ctmdroid.model.Station;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import io.realm.Realm;
+import io.realm.RealmObject;
+
+/**
+ * Hands out primary keys of Project, Station and Sample without querying the
+ * tables. Keys come from an in-memory counter; the allocator reserves them in
+ * blocks and stores the end of the reserved range (the high-water mark) in an
+ * IdSequence row, in the transaction of the caller. Taking a key is a single
+ * atomic increment, only crossing the end of a block writes the mark.
+ *
+ * The mark is written in the caller's transaction, so it is lost if that
+ * transaction is rolled back. load() therefore starts each sequence after
+ * both the stored mark and the largest key in the table.
+ */
+public class IdAllocator {
+
+    // Keys reserved at once when a block is used up
+    public static final int BLOCK_SIZE = 1000;
+
+    /**
+     * Counter of one model class
+     */
+    private static class Sequence {
+        final String name;
+        final String keyField;
+        // Next key to hand out
+        final AtomicInteger next = new AtomicInteger(1);
+        // Keys below limit are reserved
+        volatile int limit = 1;
+
+        Sequence(String _name, String _keyField) {
+            name = _name;
+            keyField = _keyField;
+        }
+    }
+
+    private final Map<Class<? extends RealmObject>, Sequence> sequences =
+            new HashMap<Class<? extends RealmObject>, Sequence>();
+
+    public IdAllocator() {
+        register(Project.class, "projectId");
+        register(Station.class, "stationId");
+        register(Sample.class, SampleRepository.FIELD_SAMPLE_ID);
+    }
+
+    private void register(Class<? extends RealmObject> _class, String _keyField) {
+        sequences.put(_class, new Sequence(_class.getSimpleName(), _keyField));
+    }
+
+    /**
+     * Start the sequences after the keys already in use. Called once, before
+     * any key is handed out.
+     *
+     * @param _realm
+     *          Realm of the calling thread
+     */
+    public void load(Realm _realm) {
+        for (Map.Entry<Class<? extends RealmObject>, Sequence> entry : sequences.entrySet()) {
+            Sequence sequence = entry.getValue();
+            int used = 0;
+            IdSequence stored = findSequence(_realm, sequence.name);
+            if (stored != null) {
+                used = stored.getHighWaterMark();
+            }
+            Number max = _realm.where(entry.getKey()).max(sequence.keyField);
+            if (max != null && max.intValue() > used) {
+                used = max.intValue();
+            }
+            sequence.next.set(used + 1);
+            sequence.limit = used + 1;
+        }
+    }
+
+    /**
+     * Take the next key. Must be called inside a transaction of _realm,
+     * which stores the new mark when a block is reserved.
+     *
+     * @param _realm
+     *          Realm in transaction
+     * @param _class
+     *          Project, Station or Sample
+     * @return Unused primary key
+     */
+    public int next(Realm _realm, Class<? extends RealmObject> _class) {
+        return reserve(_realm, _class, 1);
+    }
+
+    /**
+     * Take a range of consecutive keys, e.g. for a batch of samples. Must be
+     * called inside a transaction of _realm.
+     *
+     * @param _realm
+     *          Realm in transaction
+     * @param _class
+     *          Project, Station or Sample
+     * @param _count
+     *          Number of keys
+     * @return First key of the range
+     */
+    public int reserve(Realm _realm, Class<? extends RealmObject> _class, int _count) {
+        Sequence sequence = sequences.get(_class);
+        if (sequence == null) {
+            throw new IllegalArgumentException("No key sequence for " + _class.getName());
+        }
+        int first = sequence.next.getAndAdd(_count);
+        if (first + _count > sequence.limit) {
+            extend(_realm, sequence, first + _count);
+        }
+        return first;
+    }
+
+    /**
+     * Reserve blocks until the keys below _end are covered
+     */
+    private void extend(Realm _realm, Sequence _sequence, int _end) {
+        synchronized (_sequence) {
+            if (_end <= _sequence.limit) {
+                return;
+            }
+            int limit = _sequence.limit;
+            while (limit < _end) {
+                limit += BLOCK_SIZE;
+            }
+            IdSequence stored = findSequence(_realm, _sequence.name);
+            if (stored == null) {
+                stored = _realm.createObject(IdSequence.class);
+                stored.setSequenceName(_sequence.name);
+            }
+            stored.setHighWaterMark(limit - 1);
+            _sequence.limit = limit;
+        }
+    }
+
+    private static IdSequence findSequence(Realm _realm, String _name) {
+        return _realm.where(IdSequence.class).equalTo("sequenceName", _name).findFirst();
+    }
+}
@@ -0,0 +1,59 @@
+package org.gisandchips.ctmdroid.data;
+
+import org.gisandchips.ctmdroid.model.Project;
+import org.gisandchips.ctmdroid.model.ProjectManager;
+
+import io.realm.Realm;
+
+/**
+ * Access to the projects and to the single ProjectManager row
+ */
+public class ProjectRepository {
+
+    // Primary key of the ProjectManager row
+    static final int MANAGER_ID = 0;
+
+    private ProjectRepository() {
+    }
+
+    /**
+     * Get the manager row, creating it if needed. Must be called inside a
+     * transaction.
+     *
+     * @param _realm
+     *          Realm in transaction
+     * @return The manager
+     */
+    public static ProjectManager getOrCreateManager(Realm _realm) {
+        ProjectManager manager = findManager(_realm);
+        if (manager == null) {
+            manager = _realm.createObject(ProjectManager.class);
+            manager.setProjectManagerId(MANAGER_ID);
+        }
+        return manager;
+    }
+
+    /**
+     * @param _realm
+     *          Realm of the calling thread
+     * @return The manager or null if it has not been created yet
+     */
+    public static ProjectManager findManager(Realm _realm) {
+        return _realm.where(ProjectManager.class)
+                .equalTo("projectManagerId", MANAGER_ID).findFirst();
+    }
+
+    /**
+     * @param _realm
+     *          Realm of the calling thread
+     * @return Project the user works on, 0 if none
+     */
+    public static int readCurrentProjectId(Realm _realm) {
+        ProjectManager manager = findManager(_realm);
+        return manager == null ? 0 : manager.getCurrentProjectId();
+    }
+
+    public static Project findProject(Realm _realm, int _projectId) {
+        return _realm.where(Project.class).equalTo("projectId", _projectId).findFirst();
+    }
+}
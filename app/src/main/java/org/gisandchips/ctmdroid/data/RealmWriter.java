@@ -0,0 +1,188 @@
+package org.gisandchips.ctmdroid.data;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import io.realm.Realm;
+import io.realm.RealmConfiguration;
+
+/**
+ * Single background thread performing all the database writes. Callers
+ * queue mutations and return immediately, so the UI thread never waits for a
+ * transaction. The writer takes all the mutations queued meanwhile and
+ * applies them in one transaction, so a bulk ingest of thousands of samples
+ * costs a few transactions instead of one per row.
+ *
+ * If a mutation fails, the batch is rolled back and its mutations are
+ * applied again one transaction each, so only the failing one is lost.
+ */
+public class RealmWriter {
+
+    /**
+     * Change of the database. It is called on the writer thread inside a
+     * transaction, so it must not begin or commit transactions itself.
+     */
+    public interface Mutation {
+        void apply(Realm _realm);
+    }
+
+    /**
+     * Mutation told when its transaction is committed, e.g. to update
+     * in-memory state only with committed data. onCommitted is called on the
+     * writer thread.
+     */
+    public interface CommittedMutation extends Mutation {
+        void onCommitted();
+    }
+
+    // Maximal number of mutations applied in one transaction
+    public static final int MAX_BATCH = 1000;
+
+    // Marks the end of the queue
+    private static final Mutation STOP = new Mutation() {
+        @Override
+        public void apply(Realm _realm) {
+        }
+    };
+
+    /**
+     * Released when the mutations queued before it are committed
+     */
+    private static class Barrier implements Mutation {
+        final CountDownLatch latch = new CountDownLatch(1);
+
+        @Override
+        public void apply(Realm _realm) {
+        }
+    }
+
+    private final RealmConfiguration configuration;
+    private final LinkedBlockingQueue<Mutation> queue = new LinkedBlockingQueue<Mutation>();
+    private final Thread thread;
+    private volatile long committedBatches = 0;
+
+    public RealmWriter(RealmConfiguration _configuration) {
+        configuration = _configuration;
+        thread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                loop();
+            }
+        }, "RealmWriter");
+        // Writes must not delay the UI
+        thread.setPriority(Thread.NORM_PRIORITY - 1);
+    }
+
+    public void start() {
+        thread.start();
+    }
+
+    /**
+     * Queue a mutation. Never blocks.
+     *
+     * @param _mutation
+     *          Change to apply
+     */
+    public void submit(Mutation _mutation) {
+        queue.add(_mutation);
+    }
+
+    /**
+     * Wait until all the mutations queued so far are committed. Not to be
+     * called from the UI thread.
+     *
+     * @param _timeout
+     *          Maximal time to wait
+     * @param _unit
+     *          Unit of the timeout
+     * @return true if the mutations are committed
+     * @throws InterruptedException
+     */
+    public boolean flush(long _timeout, TimeUnit _unit) throws InterruptedException {
+        Barrier barrier = new Barrier();
+        submit(barrier);
+        return barrier.latch.await(_timeout, _unit);
+    }
+
+    /**
+     * Apply the queued mutations and stop the thread
+     */
+    public void shutdown() {
+        queue.add(STOP);
+    }
+
+    /**
+     * @return Number of transactions committed so far
+     */
+    public long getCommittedBatches() {
+        return committedBatches;
+    }
+
+    private void loop() {
+        Realm realm = Realm.getInstance(configuration);
+        List<Mutation> batch = new ArrayList<Mutation>();
+        boolean running = true;
+        try {
+            while (running) {
+                batch.add(queue.take());
+                queue.drainTo(batch, MAX_BATCH - 1);
+                int stop = batch.indexOf(STOP);
+                if (stop >= 0) {
+                    // Mutations queued after STOP are dropped
+                    batch.subList(stop, batch.size()).clear();
+                    running = false;
+                }
+                if (!batch.isEmpty() && !applyBatch(realm, batch)) {
+                    for (Mutation mutation : batch) {
+                        applyBatch(realm, Collections.singletonList(mutation));
+                    }
+                }
+                for (Mutation mutation : batch) {
+                    if (mutation instanceof Barrier) {
+                        ((Barrier) mutation).latch.countDown();
+                    }
+                }
+                batch.clear();
+            }
+        } catch (InterruptedException ex) {
+            Logger.getLogger(RealmWriter.class.getName()).log(Level.SEVERE, null, ex);
+        } finally {
+            realm.close();
+        }
+    }
+
+    private static void notifyCommitted(CommittedMutation _mutation) {
+        try {
+            _mutation.onCommitted();
+        } catch (RuntimeException ex) {
+            Logger.getLogger(RealmWriter.class.getName()).log(Level.SEVERE, null, ex);
+        }
+    }
+
+    private boolean applyBatch(Realm _realm, List<Mutation> _batch) {
+        _realm.beginTransaction();
+        try {
+            for (Mutation mutation : _batch) {
+                mutation.apply(_realm);
+            }
+            _realm.commitTransaction();
+            committedBatches++;
+            for (Mutation mutation : _batch) {
+                if (mutation instanceof CommittedMutation) {
+                    notifyCommitted((CommittedMutation) mutation);
+                }
+            }
+            return true;
+        } catch (RuntimeException ex) {
+            _realm.cancelTransaction();
+            Logger.getLogger(RealmWriter.class.getName()).log(Level.SEVERE, null, ex);
+            return false;
+        }
+    }
+}
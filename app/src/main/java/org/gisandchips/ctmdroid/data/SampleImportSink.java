@@ -0,0 +1,79 @@
+package org.gisandchips.ctmdroid.data;
+
+import org.gisandchips.ctmdroid.ingest.ImageMetadata;
+import org.gisandchips.ctmdroid.ingest.StationAssigner;
+
+import java.io.File;
+import java.util.List;
+
+import io.realm.Realm;
+
+/**
+ * Stores the images assigned by a StationAssigner as samples. Each group of
+ * images becomes one RealmWriter mutation, so the scan never waits for the
+ * database and the writer commits many groups per transaction.
+ */
+public class SampleImportSink implements StationAssigner.Sink {
+
+    private final RealmWriter writer;
+    private final IdAllocator ids;
+    private final ClassificationIndex index;
+
+    /**
+     * @param _writer
+     *          Writer storing the samples
+     * @param _ids
+     *          Allocator of the sample keys
+     * @param _index
+     *          Index receiving the new samples of its project once
+     *          committed, can be null
+     */
+    public SampleImportSink(RealmWriter _writer, IdAllocator _ids, ClassificationIndex _index) {
+        writer = _writer;
+        ids = _ids;
+        index = _index;
+    }
+
+    public SampleImportSink() {
+        this(CtmDatabase.getWriter(), CtmDatabase.getIdAllocator(),
+                CtmDatabase.getClassificationIndex());
+    }
+
+    @Override
+    public void onAssigned(final int _stationId, final File _folder,
+                           final List<ImageMetadata> _images) {
+        writer.submit(new RealmWriter.CommittedMutation() {
+            private final int[] created = new int[_images.size()];
+            private int count = 0;
+            private boolean indexed = false;
+            private int projectId;
+
+            @Override
+            public void apply(Realm _realm) {
+                count = new SampleRepository(_realm, ids).createSamples(_stationId, _folder,
+                        _images, created);
+                // The index only holds the samples of the current project
+                if (index != null && index.isProjectStation(_realm, _stationId)) {
+                    indexed = true;
+                    projectId = index.getProjectId();
+                }
+            }
+
+            @Override
+            public void onCommitted() {
+                if (indexed) {
+                    index.added(projectId, created, count);
+                }
+            }
+        });
+    }
+
+    @Override
+    public void onReview(StationAssigner.Review _review) {
+        // Images to review are not stored, only counted by the assigner
+    }
+
+    @Override
+    public void onFinished(int _assigned, int _review, boolean _cancelled) {
+    }
+}
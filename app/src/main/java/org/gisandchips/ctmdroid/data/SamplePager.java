@@ -0,0 +1,269 @@
+package org.gisandchips.ctmdroid.data;
+
+import android.util.SparseArray;
+
+import org.gisandchips.ctmdroid.model.Sample;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+
+import io.realm.Realm;
+import io.realm.RealmConfiguration;
+
+/**
+ * Paging source of the samples of one drawer section for a grid. The
+ * section is split in windows of consecutive positions; a window is loaded
+ * on a background thread from the ClassificationIndex page and a primary
+ * key lookup per sample, and copied into plain Items that any thread can
+ * use.
+ *
+ * The grid reports its visible range. The windows covering it and the ones
+ * just before and after it are loaded ahead, windows farther than RETAINED
+ * windows from the visible range are released, so the memory does not grow
+ * with the length of the section.
+ */
+public class SamplePager {
+
+    // Default number of samples in a window
+    public static final int DEFAULT_WINDOW = 60;
+    // Windows kept on each side of the visible range
+    public static final int RETAINED = 2;
+
+    /**
+     * Copy of the sample fields shown in the grid
+     */
+    public static class Item {
+        private final int sampleId;
+        private final String sampleName;
+        private final String imagePath;
+        private final long captureTime;
+
+        Item(Sample _sample) {
+            sampleId = _sample.getSampleId();
+            sampleName = _sample.getSampleName();
+            imagePath = _sample.getImagePath();
+            captureTime = _sample.getCaptureTime();
+        }
+
+        public int getSampleId() {
+            return sampleId;
+        }
+
+        public String getSampleName() {
+            return sampleName;
+        }
+
+        public String getImagePath() {
+            return imagePath;
+        }
+
+        public long getCaptureTime() {
+            return captureTime;
+        }
+    }
+
+    /**
+     * Told when a window is loaded. Called on the loader thread.
+     */
+    public interface Listener {
+        /**
+         * @param _first
+         *          Position of the first sample of the window
+         * @param _count
+         *          Number of samples in the window
+         */
+        void onWindowLoaded(int _first, int _count);
+    }
+
+    /**
+     * Loaded window
+     */
+    private static class Window {
+        final Item[] items;
+        final int generation;
+
+        Window(Item[] _items, int _generation) {
+            items = _items;
+            generation = _generation;
+        }
+    }
+
+    private final ClassificationIndex index;
+    private final int section;
+    private final int windowSize;
+    private final RealmConfiguration configuration;
+    private final ExecutorService loader;
+    // Guarded by this
+    private final SparseArray<Window> windows = new SparseArray<Window>();
+    private final SparseArray<Integer> loading = new SparseArray<Integer>();
+    private int generation = 0;
+    private int firstWindow = 0;
+    private int lastWindow = 0;
+    private Listener listener;
+
+    /**
+     * @param _index
+     *          Index of the sections
+     * @param _section
+     *          One of the ClassificationIndex.SECTION_ constants
+     * @param _windowSize
+     *          Samples per window, about two screens of the grid
+     * @param _configuration
+     *          Database of the samples
+     */
+    public SamplePager(ClassificationIndex _index, int _section, int _windowSize,
+                       RealmConfiguration _configuration) {
+        index = _index;
+        section = _section;
+        windowSize = Math.max(1, _windowSize);
+        configuration = _configuration;
+        loader = Executors.newSingleThreadExecutor(new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable _runnable) {
+                Thread thread = new Thread(_runnable, "SamplePager");
+                thread.setPriority(Thread.NORM_PRIORITY - 1);
+                return thread;
+            }
+        });
+    }
+
+    public SamplePager(ClassificationIndex _index, int _section) {
+        this(_index, _section, DEFAULT_WINDOW, CtmDatabase.getConfiguration());
+    }
+
+    public synchronized void setListener(Listener _listener) {
+        listener = _listener;
+    }
+
+    /**
+     * @return Number of samples in the section
+     */
+    public int getCount() {
+        return index.count(section);
+    }
+
+    /**
+     * Sample at a position. If its window is not loaded yet, the load is
+     * started and null is returned; the listener is told when it arrives.
+     *
+     * @param _position
+     *          Position in the section
+     * @return The sample or null
+     */
+    public synchronized Item get(int _position) {
+        int window = _position / windowSize;
+        Window loaded = windows.get(window);
+        if (loaded == null || loaded.generation != generation) {
+            request(window);
+        }
+        if (loaded == null) {
+            return null;
+        }
+        int offset = _position - window * windowSize;
+        return offset < loaded.items.length ? loaded.items[offset] : null;
+    }
+
+    /**
+     * Report the positions shown by the grid. Loads the windows around them
+     * and releases the far ones.
+     *
+     * @param _first
+     *          First visible position
+     * @param _last
+     *          Last visible position
+     */
+    public synchronized void setVisibleRange(int _first, int _last) {
+        firstWindow = Math.max(0, _first) / windowSize;
+        lastWindow = Math.max(_first, _last) / windowSize;
+        for (int i = windows.size() - 1; i >= 0; i--) {
+            if (!isRetained(windows.keyAt(i))) {
+                windows.removeAt(i);
+            }
+        }
+        int windowCount = (getCount() + windowSize - 1) / windowSize;
+        for (int window = Math.max(0, firstWindow - 1);
+             window <= lastWindow + 1 && window < windowCount; window++) {
+            Window loaded = windows.get(window);
+            if (loaded == null || loaded.generation != generation) {
+                request(window);
+            }
+        }
+    }
+
+    /**
+     * The section changed: reload the windows. The old windows are shown
+     * until the new ones arrive.
+     */
+    public synchronized void invalidate() {
+        generation++;
+        setVisibleRange(firstWindow * windowSize, lastWindow * windowSize);
+    }
+
+    /**
+     * Stop loading. The pager is not used afterwards.
+     */
+    public void close() {
+        loader.shutdownNow();
+    }
+
+    private boolean isRetained(int _window) {
+        return _window >= firstWindow - RETAINED && _window <= lastWindow + RETAINED;
+    }
+
+    private void request(final int _window) {
+        Integer pending = loading.get(_window);
+        if ((pending != null && pending == generation) || loader.isShutdown()) {
+            return;
+        }
+        loading.put(_window, generation);
+        final int requested = generation;
+        loader.execute(new Runnable() {
+            @Override
+            public void run() {
+                load(_window, requested);
+            }
+        });
+    }
+
+    private void load(int _window, int _generation) {
+        synchronized (this) {
+            if (!isRetained(_window) || _generation != generation) {
+                // Scrolled away or invalidated meanwhile
+                loading.remove(_window);
+                return;
+            }
+        }
+        int[] ids = new int[windowSize];
+        int count = index.page(section, _window * windowSize, ids);
+        Item[] items = new Item[count];
+        if (count > 0) {
+            Realm realm = Realm.getInstance(configuration);
+            try {
+                // One primary key lookup per sample: the IDs of a sparse section
+                // can span most of the table, a range query would scan all of it
+                for (int i = 0; i < count; i++) {
+                    Sample sample = realm.where(Sample.class)
+                            .equalTo(SampleRepository.FIELD_SAMPLE_ID, ids[i]).findFirst();
+                    if (sample != null) {
+                        items[i] = new Item(sample);
+                    }
+                }
+            } finally {
+                realm.close();
+            }
+        }
+        Listener notify;
+        synchronized (this) {
+            loading.remove(_window);
+            if (!isRetained(_window)) {
+                return;
+            }
+            windows.put(_window, new Window(items, _generation));
+            notify = listener;
+        }
+        if (notify != null) {
+            notify.onWindowLoaded(_window * windowSize, count);
+        }
+    }
+}
@@ -0,0 +1,198 @@
+package org.gisandchips.ctmdroid.data;
+
+import org.gisandchips.ctmdroid.analysis.EventGrouper;
+import org.gisandchips.ctmdroid.ingest.ImageMetadata;
+import org.gisandchips.ctmdroid.model.Sample;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import io.realm.Realm;
+import io.realm.RealmResults;
+
+/**
+ * Queries and ingest of the samples. Time-range and per-station queries run
+ * on the indexed captureTime and stationId fields, so a timeline of a large
+ * deployment never opens the image files.
+ *
+ * The repository uses the Realm of the calling thread; it writes only when
+ * that is the Realm of a RealmWriter mutation.
+ */
+public class SampleRepository {
+
+    // Field names used in queries
+    public static final String FIELD_SAMPLE_ID = "sampleId";
+    public static final String FIELD_STATION_ID = "stationId";
+    public static final String FIELD_CAPTURE_TIME = "captureTime";
+    public static final String FIELD_IMAGE_PATH = "imagePath";
+    public static final String FIELD_CONTENT_HASH = "contentHash";
+    public static final String FIELD_EVENT_ID = "eventId";
+
+    private final Realm realm;
+    private final IdAllocator ids;
+
+    /**
+     * @param _realm
+     *          Realm owned by the calling thread
+     */
+    public SampleRepository(Realm _realm) {
+        this(_realm, CtmDatabase.getIdAllocator());
+    }
+
+    /**
+     * @param _realm
+     *          Realm owned by the calling thread
+     * @param _ids
+     *          Allocator of the sample keys
+     */
+    public SampleRepository(Realm _realm, IdAllocator _ids) {
+        realm = _realm;
+        ids = _ids;
+    }
+
+    /**
+     * Samples captured in given time range
+     *
+     * @param _from
+     *          Start of the range (inclusive), milliseconds
+     * @param _to
+     *          End of the range (inclusive), milliseconds
+     * @return Samples sorted by capture time
+     */
+    public RealmResults<Sample> findByTimeRange(long _from, long _to) {
+        return realm.where(Sample.class)
+                .between(FIELD_CAPTURE_TIME, _from, _to)
+                .findAllSorted(FIELD_CAPTURE_TIME);
+    }
+
+    /**
+     * Samples of one station captured in given time range
+     *
+     * @param _stationId
+     *          Station
+     * @param _from
+     *          Start of the range (inclusive), milliseconds
+     * @param _to
+     *          End of the range (inclusive), milliseconds
+     * @return Samples sorted by capture time
+     */
+    public RealmResults<Sample> findByStation(int _stationId, long _from, long _to) {
+        return realm.where(Sample.class)
+                .equalTo(FIELD_STATION_ID, _stationId)
+                .between(FIELD_CAPTURE_TIME, _from, _to)
+                .findAllSorted(FIELD_CAPTURE_TIME);
+    }
+
+    /**
+     * All samples of one station
+     *
+     * @param _stationId
+     *          Station
+     * @return Samples sorted by capture time
+     */
+    public RealmResults<Sample> findByStation(int _stationId) {
+        return realm.where(Sample.class)
+                .equalTo(FIELD_STATION_ID, _stationId)
+                .findAllSorted(FIELD_CAPTURE_TIME);
+    }
+
+    public Sample findByImagePath(String _path) {
+        return realm.where(Sample.class).equalTo(FIELD_IMAGE_PATH, _path).findFirst();
+    }
+
+    public Sample findByContentHash(String _hash) {
+        return realm.where(Sample.class).equalTo(FIELD_CONTENT_HASH, _hash).findFirst();
+    }
+
+    /**
+     * Create samples of the images of one station folder. Images already
+     * imported (same content hash) are skipped. Must be called in a
+     * RealmWriter mutation, see SampleImportSink, which also tells the
+     * ClassificationIndex about the created samples.
+     *
+     * @param _stationId
+     *          Station the images belong to
+     * @param _folder
+     *          Folder of the images
+     * @param _images
+     *          Metadata of the images, e.g. a batch of ImageScanner
+     * @return Number of created samples
+     */
+    public int createSamples(int _stationId, File _folder, List<ImageMetadata> _images) {
+        return createSamples(_stationId, _folder, _images, null);
+    }
+
+    /**
+     * Create samples, see createSamples(int, File, List)
+     *
+     * @param _stationId
+     *          Station the images belong to
+     * @param _folder
+     *          Folder of the images
+     * @param _images
+     *          Metadata of the images
+     * @param _createdIds
+     *          Receives the IDs of the created samples, at least as long as
+     *          _images; can be null
+     * @return Number of created samples
+     */
+    public int createSamples(int _stationId, File _folder, List<ImageMetadata> _images,
+                             int[] _createdIds) {
+        // Skip the images already imported before reserving their keys
+        List<ImageMetadata> fresh = new ArrayList<ImageMetadata>(_images.size());
+        Set<String> hashes = new HashSet<String>();
+        for (ImageMetadata image : _images) {
+            String hash = image.getContentHash();
+            if (hash.length() > 0 && (!hashes.add(hash) || findByContentHash(hash) != null)) {
+                continue;
+            }
+            fresh.add(image);
+        }
+        if (fresh.isEmpty()) {
+            return 0;
+        }
+        int nextId = ids.reserve(realm, Sample.class, fresh.size());
+        int created = 0;
+        for (ImageMetadata image : fresh) {
+            Sample sample = realm.createObject(Sample.class);
+            sample.setSampleId(nextId++);
+            sample.setSampleName(image.getFileName());
+            sample.setImagePath(new File(_folder, image.getFileName()).getPath());
+            sample.setStationId(_stationId);
+            sample.setCaptureTime(image.getCaptureTime());
+            sample.setFileSize(image.getFileSize());
+            sample.setContentHash(image.getContentHash());
+            if (_createdIds != null) {
+                _createdIds[created] = sample.getSampleId();
+            }
+            created++;
+        }
+        return created;
+    }
+
+    /**
+     * Let the grouper continue the events of a station grouped before
+     *
+     * @param _grouper
+     *          Grouper to restore
+     * @param _stationId
+     *          Station
+     */
+    public void restoreEvents(EventGrouper _grouper, int _stationId) {
+        RealmResults<Sample> grouped = realm.where(Sample.class)
+                .equalTo(FIELD_STATION_ID, _stationId)
+                .greaterThanOrEqualTo(FIELD_EVENT_ID, 1)
+                .findAllSorted(FIELD_CAPTURE_TIME, false);
+        if (grouped.size() > 0) {
+            Sample last = grouped.get(0);
+            _grouper.restoreStation(_stationId, last.getCaptureTime(), last.getEventId());
+        }
+        Number maxEvent = realm.where(Sample.class).max(FIELD_EVENT_ID);
+        if (maxEvent != null && maxEvent.longValue() >= _grouper.getNextEventId()) {
+            _grouper.setNextEventId(maxEvent.longValue() + 1);
+        }
+    }
+}
@@ -0,0 +1,309 @@
+package org.gisandchips.ctmdroid.exif;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import org.gisandchips.ctmdroid.exif.ExifDriver.ExifValue;
+import org.gisandchips.ctmdroid.model.Station;
+
+/**
+ * Applies one set of tag edits (GPS location, artist, copyright ...) to many
+ * images, e.g. to every image of a Station. Files are processed on a fixed
+ * pool of I/O workers. The edited values are encoded only once and the same
+ * value objects are put into the driver of every file; values are never
+ * modified after they are built, so sharing them between workers is safe.
+ * Each file is saved in place when the new Exif data fit its APP1 segment.
+ */
+public class ExifBatchStamper {
+
+    // Directories which can be edited
+    public static final int IFD_0 = 0;
+    public static final int IFD_EXIF = 1;
+    public static final int IFD_GPS = 2;
+
+    /**
+     * Receives progress of the batch. Methods are called from the worker
+     * threads, so UI code has to post the results to the main thread itself.
+     */
+    public interface Listener {
+        /**
+         * File has been stamped
+         *
+         * @param _file
+         *          Path of the file
+         * @param _done
+         *          Number of files processed so far (stamped or failed)
+         * @param _total
+         *          Number of files in the batch
+         */
+        void onStamped(String _file, int _done, int _total);
+
+        /**
+         * File could not be stamped
+         *
+         * @param _file
+         *          Path of the file
+         * @param _reason
+         *          Description of the problem
+         * @param _done
+         *          Number of files processed so far (stamped or failed)
+         * @param _total
+         *          Number of files in the batch
+         */
+        void onFailed(String _file, String _reason, int _done, int _total);
+
+        /**
+         * All the files have been processed or the batch has been cancelled
+         *
+         * @param _stamped
+         *          Number of stamped files
+         * @param _failed
+         *          Number of failed files
+         */
+        void onFinished(int _stamped, int _failed);
+    }
+
+    /**
+     * Set of tag edits. It is built once, on the calling thread, and then
+     * applied to each file of the batch.
+     */
+    public static class Edits {
+        private int[] ifds = new int[8];
+        private int[] tags = new int[8];
+        private ExifValue[] values = new ExifValue[8];
+        private int size = 0;
+
+        /**
+         * Edits putting the location of the station into the GPS directory
+         *
+         * @param _station
+         *          Station the images belong to
+         * @return New edits
+         */
+        public static Edits forStation(Station _station) {
+            Edits result = new Edits();
+            result.setGpsLocation(_station.getLatitude(), _station.getLongitude(),
+                    _station.getAltitude());
+            return result;
+        }
+
+        /**
+         * Set value of given tag
+         *
+         * @param _ifd
+         *          One of the IFD_ constants
+         * @param _tag
+         *          Tag code got from ExifDriver public static tags
+         * @param _value
+         *          Value to set. It must not be modified afterwards
+         * @return this
+         */
+        public Edits put(int _ifd, int _tag, ExifValue _value) {
+            if (size == tags.length) {
+                ifds = Arrays.copyOf(ifds, size * 2);
+                tags = Arrays.copyOf(tags, size * 2);
+                values = Arrays.copyOf(values, size * 2);
+            }
+            ifds[size] = _ifd;
+            tags[size] = _tag;
+            values[size] = _value;
+            size++;
+            return this;
+        }
+
+        public Edits setArtist(String _artist) {
+            ExifDriver.ValueAsciiStrings value = new ExifDriver.ValueAsciiStrings();
+            value.setValue(_artist.getBytes());
+            return put(IFD_0, ExifDriver.TAG_ARTIST, value);
+        }
+
+        public Edits setCopyright(String _author, String _editor) {
+            ExifDriver.ValueAsciiStrings value = new ExifDriver.ValueAsciiStrings();
+            value.setValue(ExifManager.copyrightBytes(_author, _editor));
+            return put(IFD_0, ExifDriver.TAG_COPYRIGHT, value);
+        }
+
+        /**
+         * Same tags as ExifManager.setGPSLocation
+         */
+        public Edits setGpsLocation(double _lat, double _lon, double _alt) {
+            Map<Integer, ExifValue> gps = new TreeMap<Integer, ExifValue>();
+            ExifManager.putGpsLocation(gps, _lat, _lon, _alt);
+            for (Map.Entry<Integer, ExifValue> entry : gps.entrySet()) {
+                put(IFD_GPS, entry.getKey(), entry.getValue());
+            }
+            return this;
+        }
+
+        /**
+         * Put all the edits into the driver
+         *
+         * @param _driver
+         *          Driver of one file
+         */
+        void applyTo(ExifDriver _driver) {
+            for (int i = 0; i < size; i++) {
+                Map<Integer, ExifValue> ifd;
+                switch (ifds[i]) {
+                    case IFD_EXIF:
+                        ifd = _driver.getIfdExif();
+                        break;
+                    case IFD_GPS:
+                        ifd = _driver.getIfdGps();
+                        break;
+                    default:
+                        ifd = _driver.getIfd0();
+                        break;
+                }
+                ifd.put(tags[i], values[i]);
+            }
+        }
+    }
+
+    private final Edits edits;
+    private final int workers;
+    private int reservedPadding = 0;
+    private ExecutorService executor;
+    private final AtomicBoolean cancelled = new AtomicBoolean(false);
+
+    /**
+     * @param _edits
+     *          Edits to apply to each file
+     * @param _workers
+     *          Number of I/O workers, at least 1
+     */
+    public ExifBatchStamper(Edits _edits, int _workers) {
+        edits = _edits;
+        workers = Math.max(1, _workers);
+    }
+
+    /**
+     * Number of workers matching the device, one per core
+     *
+     * @return Number of available processors
+     */
+    public static int defaultWorkers() {
+        return Runtime.getRuntime().availableProcessors();
+    }
+
+    /**
+     * Zero bytes reserved in APP1 of files which have to be rewritten, see
+     * ExifDriver.setReservedPadding
+     *
+     * @param _bytes
+     *          Amount of reserved bytes
+     */
+    public void setReservedPadding(int _bytes) {
+        reservedPadding = _bytes;
+    }
+
+    /**
+     * Start stamping the files. The method returns immediately, the progress is
+     * reported to the listener.
+     *
+     * @param _files
+     *          Paths of the images
+     * @param _listener
+     *          Progress listener, can be null
+     */
+    public synchronized void start(List<String> _files, final Listener _listener) {
+        if (executor != null) {
+            throw new IllegalStateException("Batch already started");
+        }
+        executor = Executors.newFixedThreadPool(workers);
+        final int total = _files.size();
+        final AtomicInteger done = new AtomicInteger(0);
+        final AtomicInteger failed = new AtomicInteger(0);
+        if (total == 0 && _listener != null) {
+            _listener.onFinished(0, 0);
+        }
+        for (final String file : _files) {
+            executor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    String reason;
+                    if (cancelled.get()) {
+                        reason = "Cancelled";
+                    } else {
+                        try {
+                            reason = stamp(file);
+                        } catch (RuntimeException ex) {
+                            // Count the file anyway, or the batch never finishes
+                            Logger.getLogger(ExifBatchStamper.class.getName())
+                                    .log(Level.SEVERE, file, ex);
+                            reason = ex.toString();
+                        }
+                    }
+                    if (reason != null) {
+                        failed.incrementAndGet();
+                    }
+                    int count = done.incrementAndGet();
+                    if (_listener != null) {
+                        if (reason == null) {
+                            _listener.onStamped(file, count, total);
+                        } else {
+                            _listener.onFailed(file, reason, count, total);
+                        }
+                        if (count == total) {
+                            _listener.onFinished(total - failed.get(), failed.get());
+                        }
+                    }
+                }
+            });
+        }
+        executor.shutdown();
+    }
+
+    /**
+     * Stamp one file
+     *
+     * @return null on success, description of the problem otherwise
+     */
+    private String stamp(String _file) {
+        ExifDriver driver = ExifDriver.getInstance(_file, true);
+        if (driver == null) {
+            return "Not an Exif JPEG image";
+        }
+        driver.setReservedPadding(reservedPadding);
+        edits.applyTo(driver);
+        if (!driver.save(_file)) {
+            return "Exif data could not be written";
+        }
+        return null;
+    }
+
+    /**
+     * Skip the files which have not been processed yet. They are reported as
+     * failed.
+     */
+    public void cancel() {
+        cancelled.set(true);
+    }
+
+    /**
+     * Block until all the files are processed
+     *
+     * @param _timeout
+     *          Maximal time to wait
+     * @param _unit
+     *          Unit of the timeout
+     * @return true if the batch has finished
+     * @throws InterruptedException
+     */
+    public boolean await(long _timeout, TimeUnit _unit) throws InterruptedException {
+        ExecutorService current;
+        synchronized (this) {
+            current = executor;
+        }
+        return current == null || current.awaitTermination(_timeout, _unit);
+    }
+}
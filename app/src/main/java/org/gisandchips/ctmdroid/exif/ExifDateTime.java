@@ -0,0 +1,222 @@
+package org.gisandchips.ctmdroid.exif;
+
+import java.util.Map;
+
+import org.gisandchips.ctmdroid.exif.ExifDriver.ExifValue;
+
+/**
+ * Parser of Exif dates to numeric timestamps. Exif dates have the fixed
+ * format "YYYY:MM:DD HH:MM:SS" and no time zone, so the result is the local
+ * time of the camera expressed as milliseconds since epoch as if it was UTC.
+ * Such timestamps sort and subtract correctly; format them with a UTC
+ * formatter to show the original wall-clock time.
+ *
+ * The parser works on the raw bytes of the value and allocates nothing.
+ */
+public final class ExifDateTime {
+
+    // Value returned when the date is missing or not valid
+    public static final long NO_TIME = Long.MIN_VALUE;
+    // Length of "YYYY:MM:DD HH:MM:SS"
+    public static final int LENGTH = 19;
+
+    private static final long MILLIS_PER_DAY = 24L * 60 * 60 * 1000;
+
+    private ExifDateTime() {
+    }
+
+    /**
+     * Capture time of the image: DateTimeOriginal with SubSecTimeOriginal,
+     * or DateTime with SubSecTime if the original date is missing
+     *
+     * @param _driver
+     *          Driver of the image
+     * @return Milliseconds since epoch or NO_TIME if the image has no date
+     */
+    public static long getCaptureTime(ExifDriver _driver) {
+        Map<Integer, ExifValue> ifdExif = _driver.getIfdExif();
+        long result = parse(ifdExif.get(ExifDriver.TAG_DATETIME_ORIGINAL),
+                ifdExif.get(ExifDriver.TAG_SUB_SEC_TIME_ORIGINAL));
+        if (result == NO_TIME) {
+            result = parse(_driver.getIfd0().get(ExifDriver.TAG_DATETIME),
+                    ifdExif.get(ExifDriver.TAG_SUB_SEC_TIME));
+        }
+        return result;
+    }
+
+    /**
+     * Parse date value and optional subsecond value
+     *
+     * @param _dateTime
+     *          ASCII value "YYYY:MM:DD HH:MM:SS"
+     * @param _subSec
+     *          ASCII value with fraction of second, can be null
+     * @return Milliseconds since epoch or NO_TIME if the date is not valid
+     */
+    public static long parse(ExifValue _dateTime, ExifValue _subSec) {
+        if (!(_dateTime instanceof ExifDriver.ValueByteArray)) {
+            return NO_TIME;
+        }
+        byte[] bytes = ((ExifDriver.ValueByteArray) _dateTime).getValues();
+        long result = parse(bytes, 0, bytes.length);
+        if (result != NO_TIME && _subSec instanceof ExifDriver.ValueByteArray) {
+            byte[] subSec = ((ExifDriver.ValueByteArray) _subSec).getValues();
+            result += parseSubSec(subSec, 0, subSec.length);
+        }
+        return result;
+    }
+
+    /**
+     * Parse "YYYY:MM:DD HH:MM:SS"
+     *
+     * @param _bytes
+     *          Source bytes
+     * @param _offset
+     *          Offset of the date
+     * @param _length
+     *          Amount of available bytes
+     * @return Milliseconds since epoch or NO_TIME if the date is not valid
+     *         (blank dates "    :  :     :  :  " and zero dates included)
+     */
+    public static long parse(byte[] _bytes, int _offset, int _length) {
+        if (_length < LENGTH || _offset + LENGTH > _bytes.length) {
+            return NO_TIME;
+        }
+        int year = digits(_bytes, _offset, 4);
+        int month = digits(_bytes, _offset + 5, 2);
+        int day = digits(_bytes, _offset + 8, 2);
+        int hour = digits(_bytes, _offset + 11, 2);
+        int minute = digits(_bytes, _offset + 14, 2);
+        int second = digits(_bytes, _offset + 17, 2);
+        if (year < 0 || month < 1 || month > 12 || day < 1 || day > 31
+                || hour < 0 || hour > 23 || minute < 0 || minute > 59
+                || second < 0 || second > 60) {
+            return NO_TIME;
+        }
+        long days = daysFromCivil(year, month, day);
+        return days * MILLIS_PER_DAY
+                + ((hour * 60L + minute) * 60L + second) * 1000L;
+    }
+
+    /**
+     * Parse SubSecTime value, which holds the decimal digits of the fraction
+     * of second ("5" is 500 ms, "123456" is 123 ms). Trailing spaces are
+     * allowed.
+     *
+     * @param _bytes
+     *          Source bytes
+     * @param _offset
+     *          Offset of the value
+     * @param _length
+     *          Length of the value
+     * @return Milliseconds or 0 if the value is not valid
+     */
+    public static int parseSubSec(byte[] _bytes, int _offset, int _length) {
+        int result = 0;
+        int scale = 100;
+        int end = Math.min(_bytes.length, _offset + _length);
+        for (int i = _offset; i < end; i++) {
+            int digit = _bytes[i] - '0';
+            if (digit < 0 || digit > 9) {
+                // Terminating zero or padding
+                break;
+            }
+            result += digit * scale;
+            scale /= 10;
+        }
+        return result;
+    }
+
+    /**
+     * Append timestamp as ISO 8601 "YYYY-MM-DDTHH:MM:SS" without time zone,
+     * the inverse of parse. Nothing is allocated.
+     *
+     * @param _time
+     *          Milliseconds since epoch as returned by parse
+     * @param _out
+     *          Destination
+     */
+    public static void appendIso(long _time, StringBuilder _out) {
+        long days = _time / MILLIS_PER_DAY;
+        if (_time < 0 && days * MILLIS_PER_DAY != _time) {
+            days--;
+        }
+        int millisOfDay = (int) (_time - days * MILLIS_PER_DAY);
+        // Civil date from days, inverse of daysFromCivil
+        long z = days + 719468;
+        long era = (z >= 0 ? z : z - 146096) / 146097;
+        int dayOfEra = (int) (z - era * 146097);
+        int yearOfEra = (dayOfEra - dayOfEra / 1460 + dayOfEra / 36524 - dayOfEra / 146096) / 365;
+        int dayOfYear = dayOfEra - (365 * yearOfEra + yearOfEra / 4 - yearOfEra / 100);
+        int mp = (5 * dayOfYear + 2) / 153;
+        int day = dayOfYear - (153 * mp + 2) / 5 + 1;
+        int month = mp < 10 ? mp + 3 : mp - 9;
+        long year = yearOfEra + era * 400 + (month <= 2 ? 1 : 0);
+        int seconds = millisOfDay / 1000;
+        appendDigits(_out, year, 4);
+        _out.append('-');
+        appendDigits(_out, month, 2);
+        _out.append('-');
+        appendDigits(_out, day, 2);
+        _out.append('T');
+        appendDigits(_out, seconds / 3600, 2);
+        _out.append(':');
+        appendDigits(_out, seconds / 60 % 60, 2);
+        _out.append(':');
+        appendDigits(_out, seconds % 60, 2);
+    }
+
+    /**
+     * Append UTC offset as ISO 8601 "+HH:MM" or "-HH:MM". Nothing is
+     * allocated.
+     *
+     * @param _minutes
+     *          Offset from UTC in minutes, e.g. 60 for UTC+01:00
+     * @param _out
+     *          Destination
+     */
+    public static void appendUtcOffset(int _minutes, StringBuilder _out) {
+        _out.append(_minutes < 0 ? '-' : '+');
+        int minutes = Math.abs(_minutes);
+        appendDigits(_out, minutes / 60, 2);
+        _out.append(':');
+        appendDigits(_out, minutes % 60, 2);
+    }
+
+    private static void appendDigits(StringBuilder _out, long _value, int _width) {
+        long limit = 10;
+        for (int i = 1; i < _width; i++) {
+            if (_value < limit) {
+                _out.append('0');
+            }
+            limit *= 10;
+        }
+        _out.append(_value);
+    }
+
+    // Parse fixed amount of decimal digits, -1 if there is any other character
+    private static int digits(byte[] _bytes, int _offset, int _count) {
+        int result = 0;
+        for (int i = _offset; i < _offset + _count; i++) {
+            int digit = _bytes[i] - '0';
+            if (digit < 0 || digit > 9) {
+                return -1;
+            }
+            result = result * 10 + digit;
+        }
+        return result;
+    }
+
+    /**
+     * Number of days since 1970-01-01 of given date of the proleptic Gregorian
+     * calendar
+     */
+    private static long daysFromCivil(int _year, int _month, int _day) {
+        int year = _month <= 2 ? _year - 1 : _year;
+        int era = (year >= 0 ? year : year - 399) / 400;
+        int yearOfEra = year - era * 400;
+        int dayOfYear = (153 * (_month + (_month > 2 ? -3 : 9)) + 2) / 5 + _day - 1;
+        int dayOfEra = yearOfEra * 365 + yearOfEra / 4 - yearOfEra / 100 + dayOfYear;
+        return era * 146097L + dayOfEra - 719468;
+    }
+}
@@ -1,12 +1,21 @@
 package org.gisandchips.ctmdroid.exif;
 
+import java.util.AbstractMap;
+import java.util.AbstractSet;
 import java.util.Arrays;
-import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
 //import android.util.Log;
 import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
 import java.nio.channels.FileChannel;
 
 /**
@@ -48,6 +57,10 @@ import java.nio.channels.FileChannel;
  * values or offset to them).
  * 4B "Next" IFD - is used only in IFD0 for reference to IFD1 in other IFD's 0.
  *
+ * A driver is not thread safe: it is edited and saved by one thread. Lazy
+ * values are decoded under the lock of their directory, so reading a driver
+ * nobody edits from several threads is safe.
+ *
  * @author kocian
  */
 public class ExifDriver {
@@ -55,16 +68,16 @@ public class ExifDriver {
 
     private final String LOGTAG = getClass().getName();
     // Datatypes
-    private final int FORMAT_UNSIGNED_BYTE = 0x01;
-    private final int FORMAT_ASCII_STRINGS = 0x02;
-    private final int FORMAT_UNSIGNED_SHORT = 0x03;
-    private final int FORMAT_UNSIGNED_LONG = 0x04;
-    private final int FORMAT_UNSIGNED_RATIONAL = 0x05;
-    private final int FORMAT_SIGNED_BYTE = 0x06;
-    private final int FORMAT_UNDEFINED = 0x07;
-    private final int FORMAT_SIGNED_SHORT = 0x08;
-    private final int FORMAT_SIGNED_LONG = 0x09;
-    private final int FORMAT_SIGNED_RATIONAL = 0x0a;
+    private static final int FORMAT_UNSIGNED_BYTE = 0x01;
+    private static final int FORMAT_ASCII_STRINGS = 0x02;
+    private static final int FORMAT_UNSIGNED_SHORT = 0x03;
+    private static final int FORMAT_UNSIGNED_LONG = 0x04;
+    private static final int FORMAT_UNSIGNED_RATIONAL = 0x05;
+    private static final int FORMAT_SIGNED_BYTE = 0x06;
+    private static final int FORMAT_UNDEFINED = 0x07;
+    private static final int FORMAT_SIGNED_SHORT = 0x08;
+    private static final int FORMAT_SIGNED_LONG = 0x09;
+    private static final int FORMAT_SIGNED_RATIONAL = 0x0a;
     private final int TAG_EXIF_POINTER = 0x8769;
     private final int TAG_GPS_POINTER = 0x8825;
     private final int TAG_INTEROPERABILITY_POINTER = 0xa005;
@@ -193,13 +206,19 @@ public class ExifDriver {
     public static final int TAG_INTEROPERABILITY_1 = 0x1;
     public static final int TAG_INTEROPERABILITY_2 = 0x2;
     // Others
-    private final HashMap<Integer, Integer> COMP_WIDTHS = new HashMap<Integer, Integer>();
+    // Component widths indexed by datatype, 0 for unknown datatypes
+    private static final int[] COMP_WIDTHS = new int[] { 0, 1, 1, 2, 4, 8, 1,
+            1, 2, 4, 8 };
     // Length of Exif data size declaration - 2B
     private final int LENGTH_EXIF_SIZE_DECL = 2;
     private final int LENGTH_APP1_EXIF_HEADER = 10;// APP1Marker+EXIF size + EXIF
     // header
+    // Maximal size of data following the Exif header in APP1 segment
+    private static final int MAX_EXIF_DATA = 0xFFFF - 8;
     private String sourceFile;
-    private byte[] origEXIFdata;
+    // Exif data (starting with TIFF header) mapped from the source file. Byte
+    // order of the buffer is set according to the TIFF header
+    private ByteBuffer origEXIFdata;
     //JPEG's Start of image
     private final byte[] SOI = new byte[] { (byte) 0xFF, (byte) 0xD8 };
     private final byte[] APP1Marker = new byte[] { (byte) 0xFF, (byte) 0xE1 };
@@ -208,20 +227,52 @@ public class ExifDriver {
     private final byte[] TIFFHeader = new byte[] { 'I', 'I', (byte) 0x2A, '\0',
             (byte) 0x08, '\0', '\0', '\0' };
     // Specification requires this tag to have this value
-    private final Byte[] GPSVersionID = new Byte[] { 2, 2, 0, 0 };
+    private final byte[] GPSVersionID = new byte[] { 2, 2, 0, 0 };
     private int origAPP1MarkerOffset = 2;
+    // Segments of the source file found while looking for APP1
+    private JpegSegments segments;
     private int origThumbnailOffset = -1;
     private int origThumbnailLength = 0;
     private final int ALIGN_II = 0x4949; // Intel endian
     private final int ALIGN_MM = 0x4D4D; // Motorola endian
     private int originalAlign; // endian
-    // IFD directories are represented as simple tag-value hashes
-    private HashMap<Integer, ExifValue> ifd0 = new HashMap<Integer, ExifValue>();
-    private HashMap<Integer, ExifValue> ifdExif = new HashMap<Integer, ExifValue>();
-    private HashMap<Integer, ExifValue> ifdGps = new HashMap<Integer, ExifValue>();
-    private HashMap<Integer, ExifValue> ifd1 = new HashMap<Integer, ExifValue>();
-    private HashMap<Integer, ExifValue> ifdIOper = new HashMap<Integer, ExifValue>();
+    // Zero bytes reserved in APP1 when the whole file is rewritten
+    private int reservedPadding = 0;
+    // IFD directories are represented as compact sorted tag-value tables
+    private Ifd ifd0 = new Ifd();
+    private Ifd ifdExif = new Ifd();
+    private Ifd ifdGps = new Ifd();
+    private Ifd ifd1 = new Ifd();
+    private Ifd ifdIOper = new Ifd();
+    // In lazy mode values are decoded the first time they are asked for
+    private boolean lazy = false;
+    // Sorted tags wanted from IFD0, IFDExif and IFDGps in selective mode,
+    // null when the whole structure is read
+    private int[][] wantedTags = null;
     private boolean readyToWork = false;
+    // Made by copy(): another copy may have rewritten the source file since
+    private boolean shared = false;
+    private static final List<SaveListener> saveListeners = new CopyOnWriteArrayList<SaveListener>();
+
+    /**
+     * Told when a driver has written an image file, e.g. to drop cached data
+     * of the file
+     */
+    public interface SaveListener {
+        /**
+         * @param _file
+         *          Path of the written file
+         */
+        void onSaved(String _file);
+    }
+
+    public static void addSaveListener(SaveListener _listener) {
+        saveListeners.add(_listener);
+    }
+
+    public static void removeSaveListener(SaveListener _listener) {
+        saveListeners.remove(_listener);
+    }
 
     /**
      * Get instance of driver for given image file. If everything works well (file
@@ -233,7 +284,79 @@ public class ExifDriver {
      * @return ExifDriver or null in case, that anyhing went wrong
      */
     public static ExifDriver getInstance(String _file) {
-        ExifDriver result = new ExifDriver(_file);
+        return getInstance(_file, false);
+    }
+
+    /**
+     * Get instance of driver for given image file. In lazy mode the driver only
+     * records the entry table of each IFD directory (tag, datatype, count and
+     * offset) and decodes the value the first time it is read, so the parsing
+     * cost scales with the tags the caller actually uses.
+     *
+     * @param _file
+     *          image file
+     * @param _lazy
+     *          true to decode the values on demand
+     * @return ExifDriver or null in case, that anyhing went wrong
+     */
+    public static ExifDriver getInstance(String _file, boolean _lazy) {
+        ExifDriver result = new ExifDriver(_file, _lazy, null);
+        if (result.readyToWork()) {
+            return result;
+        } else {
+            return null;
+        }
+    }
+
+    /**
+     * Get read-only driver holding only the wanted tags. Only the directories
+     * containing a wanted tag are visited, scanning of a directory stops as
+     * soon as all its wanted tags are found and IFD1 (thumbnail) is never
+     * touched. It is meant for passes reading a few tags of many files, e.g.
+     * date and location of each image. The driver can't be saved.
+     *
+     * @param _file
+     *          image file
+     * @param _ifd0Tags
+     *          Tags wanted from IFD0 (Make, Model ...), can be null
+     * @param _exifTags
+     *          Tags wanted from IFDExif (DateTimeOriginal ...), can be null
+     * @param _gpsTags
+     *          Tags wanted from IFDGps (GPSLatitude ...), can be null
+     * @return ExifDriver or null in case, that anyhing went wrong
+     */
+    public static ExifDriver getInstance(String _file, int[] _ifd0Tags,
+                                         int[] _exifTags, int[] _gpsTags) {
+        return getInstance(_file, _ifd0Tags, _exifTags, _gpsTags, false);
+    }
+
+    /**
+     * Get read-only driver holding only the wanted tags, see
+     * getInstance(String, int[], int[], int[])
+     *
+     * @param _file
+     *          image file
+     * @param _ifd0Tags
+     *          Tags wanted from IFD0, can be null
+     * @param _exifTags
+     *          Tags wanted from IFDExif, can be null
+     * @param _gpsTags
+     *          Tags wanted from IFDGps, can be null
+     * @param _thumbnail
+     *          true to read also the thumbnail location from IFD1
+     * @return ExifDriver or null in case, that anyhing went wrong
+     */
+    public static ExifDriver getInstance(String _file, int[] _ifd0Tags,
+                                         int[] _exifTags, int[] _gpsTags,
+                                         boolean _thumbnail) {
+        int[] ifd1Tags = new int[0];
+        if (_thumbnail) {
+            ifd1Tags = new int[] { TAG_JPEG_INTERCHANGE_FORMAT,
+                    TAG_JPEG_INTERCHANGE_FORMAT_LENGTH };
+        }
+        int[][] wanted = new int[][] { sortedTags(_ifd0Tags),
+                sortedTags(_exifTags), sortedTags(_gpsTags), ifd1Tags };
+        ExifDriver result = new ExifDriver(_file, false, wanted);
         if (result.readyToWork()) {
             return result;
         } else {
@@ -241,10 +364,193 @@ public class ExifDriver {
         }
     }
 
+    /**
+     * Get the embedded thumbnail of given image file without decoding the main
+     * image. Only the IFD0 entry count and the IFD1 directory are read.
+     *
+     * @param _file
+     *          image file
+     * @return Read-only buffer with the JPEG thumbnail or null if there is no
+     *         thumbnail
+     */
+    public static ByteBuffer getThumbnail(String _file) {
+        ExifDriver driver = getInstance(_file, null, null, null, true);
+        if (driver != null) {
+            return driver.getThumbnail();
+        } else {
+            return null;
+        }
+    }
+
+    private static int[] sortedTags(int[] _tags) {
+        if (_tags == null) {
+            return new int[0];
+        }
+        int[] result = _tags.clone();
+        Arrays.sort(result);
+        return result;
+    }
+
+    /**
+     * @return true if the driver holds only selected tags and can't be saved
+     */
+    public boolean isReadOnly() {
+        return wantedTags != null;
+    }
+
     public String getSourceFile() {
         return sourceFile;
     }
 
+    /**
+     * Segments of the source JPEG file (APP0, APP1, COM, SOF ...)
+     *
+     * @return Segment offsets found when the driver was created
+     */
+    public JpegSegments getSegments() {
+        return segments;
+    }
+
+    /**
+     * Rough amount of memory held by the driver, used by ExifDriverCache
+     *
+     * @return Size in bytes
+     */
+    int getApproximateSize() {
+        // Source data plus the per-entry arrays and value objects
+        int entries = ifd0.size() + ifdExif.size() + ifdGps.size() + ifd1.size()
+                + ifdIOper.size();
+        return (origEXIFdata == null ? 0 : origEXIFdata.capacity()) + 64 * entries;
+    }
+
+    /**
+     * Replace the Exif data mapped from the source file by a copy on the
+     * heap, so later writes to the file, e.g. saveInPlace() of another
+     * driver, do not change what this driver decodes. Used by
+     * ExifDriverCache before a driver is cached.
+     */
+    void detachFromFile() {
+        byte[] data = new byte[origEXIFdata.capacity()];
+        ByteBuffer source = origEXIFdata.duplicate();
+        source.clear();
+        source.get(data);
+        origEXIFdata = ByteBuffer.wrap(data).order(origEXIFdata.order());
+    }
+
+    /**
+     * Independent copy of a lazy driver, used by ExifDriverCache so that no
+     * two callers get the same driver. The directories are copied from their
+     * entry tables and every value is decoded again by the copy, so editing
+     * the copy does not change the source. The Exif data is shared, so the
+     * source must be an unmodified lazy driver detached from its file (see
+     * detachFromFile()).
+     *
+     * @return New driver of the same file
+     */
+    ExifDriver copy() {
+        if (!lazy || wantedTags != null) {
+            throw new IllegalStateException("Only lazy drivers can be copied");
+        }
+        return new ExifDriver(this);
+    }
+
+    /**
+     * Embedded JPEG thumbnail referenced by IFD1. The buffer is a read-only
+     * slice of the Exif data, no bytes are copied. Drivers created with
+     * selected tags only hold the thumbnail when got by getThumbnail(String).
+     *
+     * @return Buffer positioned at the SOI of the thumbnail or null if there is
+     *         no thumbnail
+     */
+    public ByteBuffer getThumbnail() {
+        if (origThumbnailOffset <= 0 || origThumbnailLength <= 0
+                || origThumbnailOffset + origThumbnailLength > origEXIFdata.capacity()) {
+            return null;
+        }
+        ByteBuffer thumbnail = origEXIFdata.duplicate();
+        thumbnail.clear();
+        thumbnail.position(origThumbnailOffset);
+        thumbnail.limit(origThumbnailOffset + origThumbnailLength);
+        return thumbnail.slice().asReadOnlyBuffer();
+    }
+
+    /**
+     * Offset of the embedded thumbnail from the start of the image file, e.g.
+     * to read it later without parsing the Exif data again
+     *
+     * @return Offset of the thumbnail SOI or -1 if there is no thumbnail
+     */
+    public long getThumbnailFileOffset() {
+        if (getThumbnail() == null) {
+            return -1;
+        }
+        return origAPP1MarkerOffset + LENGTH_APP1_EXIF_HEADER + origThumbnailOffset;
+    }
+
+    /**
+     * @return Length of the embedded thumbnail or 0 if there is no thumbnail
+     */
+    public int getThumbnailLength() {
+        return getThumbnail() == null ? 0 : origThumbnailLength;
+    }
+
+    /**
+     * Embedded JPEG thumbnail as a stream, e.g. for BitmapFactory.decodeStream
+     *
+     * @return Stream of the thumbnail bytes or null if there is no thumbnail
+     */
+    public InputStream getThumbnailStream() {
+        ByteBuffer thumbnail = getThumbnail();
+        if (thumbnail == null) {
+            return null;
+        }
+        return new ByteBufferInputStream(thumbnail);
+    }
+
+    /**
+     * Stream reading the remaining bytes of a buffer
+     */
+    public static class ByteBufferInputStream extends InputStream {
+        private final ByteBuffer buffer;
+
+        public ByteBufferInputStream(ByteBuffer _buffer) {
+            buffer = _buffer;
+        }
+
+        @Override
+        public int read() {
+            if (!buffer.hasRemaining()) {
+                return -1;
+            }
+            return buffer.get() & 0xFF;
+        }
+
+        @Override
+        public int read(byte[] _bytes, int _offset, int _length) {
+            if (_length == 0) {
+                return 0;
+            }
+            if (!buffer.hasRemaining()) {
+                return -1;
+            }
+            int count = Math.min(_length, buffer.remaining());
+            buffer.get(_bytes, _offset, count);
+            return count;
+        }
+
+        @Override
+        public long skip(long _count) {
+            int count = (int) Math.max(0, Math.min(_count, buffer.remaining()));
+            buffer.position(buffer.position() + count);
+            return count;
+        }
+
+        @Override
+        public int available() {
+            return buffer.remaining();
+        }
+    }
+
     /**
      * Constructor. Do the basics like find Exif data and prepare them to array.
      * Then call parser to read information from the array. Variable readyToWork
@@ -254,61 +560,47 @@ public class ExifDriver {
      *
      * @param _file
      *          Path of file to work with
+     * @param _lazy
+     *          Decode the values on demand
+     * @param _wanted
+     *          Sorted tags to read from IFD0, IFDExif, IFDGps and IFD1 or null
+     *          to read everything
      */
-    private ExifDriver(String _file) {
+    private ExifDriver(String _file, boolean _lazy, int[][] _wanted) {
         sourceFile = _file;
+        lazy = _lazy;
+        wantedTags = _wanted;
         readyToWork = true; // Hope for the best;
-        initHashes();
-        byte[] findBuffer = new byte[100];
         FileInputStream fis = null;
         FileChannel channel = null;
         origAPP1MarkerOffset = -1;
-        int exifDataSize = -1;
-        int read;
         try {
             fis = new FileInputStream(sourceFile);
             channel = fis.getChannel();
-            read = fis.read(findBuffer);
-            // Make sure, that image is JPG
-            if (findBuffer[0] == SOI[0] && findBuffer[1] == SOI[1]) {
-                // Make sure, that image is the Exif one. Find APP1 marker and
-                // also remember it's offset from start of file
-                int findOffset = 0;
-                while (origAPP1MarkerOffset < SOI.length
-                        && read > LENGTH_APP1_EXIF_HEADER) {
-                    for (int i = 0; i - 1 < read - LENGTH_APP1_EXIF_HEADER; i++) {
-                        if (findBuffer[i] == APP1Marker[0]
-                                && findBuffer[i + 1] == APP1Marker[1]
-                                && findBuffer[i + 4] == EXIFHeader[0]
-                                && findBuffer[i + 5] == EXIFHeader[1]
-                                && findBuffer[i + 6] == EXIFHeader[2]
-                                && findBuffer[i + 7] == EXIFHeader[3]
-                                && findBuffer[i + 8] == EXIFHeader[4]
-                                && findBuffer[i + 9] == EXIFHeader[5]) {
-                            origAPP1MarkerOffset = i + findOffset; // APP1marker and EXIF
-                            // header found
-                            exifDataSize = (findBuffer[i + 2] & 0xFF) << 8;
-                            exifDataSize += findBuffer[i + 3] & 0xFF;
-                            break;
-                        }
+            // Walk the JPEG segments, null means that image is not JPG
+            segments = JpegSegments.walk(channel);
+            if (segments != null) {
+                // Make sure, that image is the Exif one. Remember offset of the
+                // APP1 marker from start of file
+                if (segments.contains(JpegSegments.SEGMENT_APP1_EXIF)) {
+                    origAPP1MarkerOffset = (int) segments
+                            .getOffset(JpegSegments.SEGMENT_APP1_EXIF);
+                    int exifDataSize = segments
+                            .getLength(JpegSegments.SEGMENT_APP1_EXIF);
+                    // Log.v(LOGTAG, "APP1 data size: "
+                    // + Integer.toHexString(exifDataSize));
+                    // data will start with TIFF header. The segment is mapped,
+                    // not copied, and stays valid after the channel is closed
+                    origEXIFdata = channel.map(FileChannel.MapMode.READ_ONLY,
+                            origAPP1MarkerOffset + LENGTH_APP1_EXIF_HEADER,
+                            exifDataSize - (LENGTH_EXIF_SIZE_DECL + EXIFHeader.length));
+                    if (wantedTags == null) {
+                        readExifData(origEXIFdata);
+                    } else {
+                        readSelectedData(origEXIFdata);
                     }
-                    // shift the finding window
-                    findOffset += read - LENGTH_APP1_EXIF_HEADER;
-                    channel.position(findOffset);
-                    read = fis.read(findBuffer);
-                }
-                if (origAPP1MarkerOffset >= SOI.length) {
-                    origEXIFdata = new byte[exifDataSize
-                            - (LENGTH_EXIF_SIZE_DECL + EXIFHeader.length)];
-                    System.out.println("APP1 data size: "
-                            + Integer.toHexString(exifDataSize));
-                    // data will start with TIFF header
-                    channel.position(origAPP1MarkerOffset + LENGTH_APP1_EXIF_HEADER);
-                    fis.read(origEXIFdata);
-                    readExifData(origEXIFdata);
                 } else {
-                    // Log.v(LOGTAG, "APP1 marker not found, offset is "
-                    // + origAPP1MarkerOffset);
+                    // Log.v(LOGTAG, "APP1 marker not found");
                     readyToWork = false;
                 }
             } else {
@@ -338,6 +630,32 @@ public class ExifDriver {
         }
     }
 
+    /**
+     * Copy of a lazy driver, see copy()
+     *
+     * @param _source
+     *          Unmodified lazy driver
+     */
+    private ExifDriver(ExifDriver _source) {
+        sourceFile = _source.sourceFile;
+        lazy = true;
+        shared = true;
+        readyToWork = _source.readyToWork;
+        // duplicate() does not keep the byte order
+        origEXIFdata = _source.origEXIFdata.duplicate().order(_source.origEXIFdata.order());
+        origAPP1MarkerOffset = _source.origAPP1MarkerOffset;
+        segments = _source.segments;
+        origThumbnailOffset = _source.origThumbnailOffset;
+        origThumbnailLength = _source.origThumbnailLength;
+        originalAlign = _source.originalAlign;
+        reservedPadding = _source.reservedPadding;
+        ifd0.copyEntries(_source.ifd0);
+        ifdExif.copyEntries(_source.ifdExif);
+        ifdGps.copyEntries(_source.ifdGps);
+        ifd1.copyEntries(_source.ifd1);
+        ifdIOper.copyEntries(_source.ifdIOper);
+    }
+
     /**
      * Tells the caller if the driver has been initialized corectly and we can
      * work with it. It is used by getInstance method. In case, that readyToWork
@@ -350,20 +668,17 @@ public class ExifDriver {
     }
 
     /**
-     * Init hash of datatypes and their lengths
+     * Width of one component of given datatype
+     *
+     * @param _datatype
+     *          Datatype
+     * @return Width in bytes or 0 if the datatype is not known
      */
-    private void initHashes() {
-        // Convenience hash for finding component bit width
-        COMP_WIDTHS.put(FORMAT_UNSIGNED_BYTE, 1);
-        COMP_WIDTHS.put(FORMAT_ASCII_STRINGS, 1);
-        COMP_WIDTHS.put(FORMAT_UNSIGNED_SHORT, 2);
-        COMP_WIDTHS.put(FORMAT_UNSIGNED_LONG, 4);
-        COMP_WIDTHS.put(FORMAT_UNSIGNED_RATIONAL, 8);
-        COMP_WIDTHS.put(FORMAT_SIGNED_BYTE, 1);
-        COMP_WIDTHS.put(FORMAT_UNDEFINED, 1);
-        COMP_WIDTHS.put(FORMAT_SIGNED_SHORT, 2);
-        COMP_WIDTHS.put(FORMAT_SIGNED_LONG, 4);
-        COMP_WIDTHS.put(FORMAT_SIGNED_RATIONAL, 8);
+    private static int componentWidth(int _datatype) {
+        if (_datatype > 0 && _datatype < COMP_WIDTHS.length) {
+            return COMP_WIDTHS[_datatype];
+        }
+        return 0;
     }
 
     /**
@@ -372,47 +687,157 @@ public class ExifDriver {
      *
      * @param _data
      */
-    private void readExifData(byte[] _data) {
-        originalAlign = (_data[0] << 8) + (_data[1] & 0xFF);
+    private void readExifData(ByteBuffer _data) {
+        originalAlign = ((_data.get(0) & 0xFF) << 8) + (_data.get(1) & 0xFF);
+        // Byte order is set once, all the reads then use it
+        if (originalAlign == ALIGN_MM) {
+            _data.order(ByteOrder.BIG_ENDIAN);
+        } else {
+            _data.order(ByteOrder.LITTLE_ENDIAN);
+        }
         int ifdStart = readUInt(_data, 4, 4); // See the TIFF header
         ifdStart = readIfd(ifd0, _data, ifdStart);
         // Was there any IFD1 reference?
         if (ifdStart > 0) {
             readIfd(ifd1, _data, ifdStart);
-            // Remember thumbnail start_screen
-            if (ifd1.containsKey(TAG_JPEG_INTERCHANGE_FORMAT)) {
-                origThumbnailOffset = (Integer) ifd1.get(TAG_JPEG_INTERCHANGE_FORMAT)
-                        .getValues()[0];
-                origThumbnailLength = (Integer) ifd1.get(
-                        TAG_JPEG_INTERCHANGE_FORMAT_LENGTH).getValues()[0];
-        /*
-         * Log.v(
-         * LOGTAG,
-         * "Thumbnail offs/length: "
-         * + Integer.toHexString(origThumbnailOffset) + "/"
-         * + Integer.toHexString(origThumbnailLength));
-         */
-            } else {
-                // Log.e(LOGTAG, "No thumbnail address");
-            }
+            rememberThumbnail();
         }
         // Is there a IFDExif reference?
         if (ifd0.get(TAG_EXIF_POINTER) != null) {
-            ifdStart = ((ValueLongs) ifd0.get(TAG_EXIF_POINTER)).getValues()[0];
+            ifdStart = ((ValueNumbers) ifd0.get(TAG_EXIF_POINTER)).getInt(0);
             readIfd(ifdExif, _data, ifdStart);
             if (ifdExif.get(TAG_INTEROPERABILITY_POINTER) != null) {
-                ifdStart = ((ValueLongs) ifdExif.get(TAG_INTEROPERABILITY_POINTER))
-                        .getValues()[0];
+                ifdStart = ((ValueNumbers) ifdExif.get(TAG_INTEROPERABILITY_POINTER))
+                        .getInt(0);
                 readIfd(ifdIOper, _data, ifdStart);
             }
         }
         // Is there a IFDGPS reference?
         if (ifd0.get(TAG_GPS_POINTER) != null) {
-            ifdStart = ((ValueLongs) ifd0.get(TAG_GPS_POINTER)).getValues()[0];
+            ifdStart = ((ValueNumbers) ifd0.get(TAG_GPS_POINTER)).getInt(0);
             readIfd(ifdGps, _data, ifdStart);
         }
     }
 
+    /**
+     * Remember thumbnail start and length
+     */
+    private void rememberThumbnail() {
+        if (ifd1.contains(TAG_JPEG_INTERCHANGE_FORMAT)
+                && ifd1.contains(TAG_JPEG_INTERCHANGE_FORMAT_LENGTH)) {
+            origThumbnailOffset = ((ValueNumbers) ifd1
+                    .get(TAG_JPEG_INTERCHANGE_FORMAT)).getInt(0);
+            origThumbnailLength = ((ValueNumbers) ifd1
+                    .get(TAG_JPEG_INTERCHANGE_FORMAT_LENGTH)).getInt(0);
+        /*
+         * Log.v(
+         * LOGTAG,
+         * "Thumbnail offs/length: "
+         * + Integer.toHexString(origThumbnailOffset) + "/"
+         * + Integer.toHexString(origThumbnailLength));
+         */
+        } else {
+            // Log.e(LOGTAG, "No thumbnail address");
+        }
+    }
+
+    /**
+     * Selective variant of readExifData. IFD0 is scanned for the wanted tags
+     * and for the pointers of those subdirectories which contain wanted tags;
+     * IFD1 is read only for the thumbnail, IFDInteroperability is skipped.
+     *
+     * @param _data
+     */
+    private void readSelectedData(ByteBuffer _data) {
+        originalAlign = ((_data.get(0) & 0xFF) << 8) + (_data.get(1) & 0xFF);
+        if (originalAlign == ALIGN_MM) {
+            _data.order(ByteOrder.BIG_ENDIAN);
+        } else {
+            _data.order(ByteOrder.LITTLE_ENDIAN);
+        }
+        int[] exifTags = wantedTags[1];
+        int[] gpsTags = wantedTags[2];
+        int[] ifd1Tags = wantedTags[3];
+        // Pointers are looked for together with the IFD0 tags
+        int[] ifd0Tags = wantedTags[0];
+        if (exifTags.length > 0) {
+            ifd0Tags = withTag(ifd0Tags, TAG_EXIF_POINTER);
+        }
+        if (gpsTags.length > 0) {
+            ifd0Tags = withTag(ifd0Tags, TAG_GPS_POINTER);
+        }
+        if (ifd0Tags.length == 0 && ifd1Tags.length == 0) {
+            return;
+        }
+        int ifdStart = readUInt(_data, 4, 4); // See the TIFF header
+        ifdStart = readSelectedIfd(ifd0, _data, ifdStart, ifd0Tags);
+        if (ifd1Tags.length > 0 && ifdStart > 0) {
+            readSelectedIfd(ifd1, _data, ifdStart, ifd1Tags);
+            rememberThumbnail();
+        }
+        if (exifTags.length > 0 && ifd0.get(TAG_EXIF_POINTER) != null) {
+            ifdStart = ((ValueNumbers) ifd0.get(TAG_EXIF_POINTER)).getInt(0);
+            readSelectedIfd(ifdExif, _data, ifdStart, exifTags);
+        }
+        if (gpsTags.length > 0 && ifd0.get(TAG_GPS_POINTER) != null) {
+            ifdStart = ((ValueNumbers) ifd0.get(TAG_GPS_POINTER)).getInt(0);
+            readSelectedIfd(ifdGps, _data, ifdStart, gpsTags);
+        }
+    }
+
+    private static int[] withTag(int[] _sorted, int _tag) {
+        if (Arrays.binarySearch(_sorted, _tag) >= 0) {
+            return _sorted;
+        }
+        int[] result = Arrays.copyOf(_sorted, _sorted.length + 1);
+        result[_sorted.length] = _tag;
+        Arrays.sort(result);
+        return result;
+    }
+
+    /**
+     * Read wanted tags from one IFD directory. Only the entry headers are
+     * scanned, values are decoded only for the wanted tags and the scan stops
+     * when all of them are found.
+     *
+     * @param _ifd
+     *          Structure to store data in
+     * @param _data
+     *          Source data byte array
+     * @param _start
+     *          Offset, where the ifd directory starts
+     * @param _wanted
+     *          Sorted wanted tags
+     * @return Offset of the next ifd, see readIfd
+     */
+    private int readSelectedIfd(Ifd _ifd, ByteBuffer _data, int _start,
+                                 int[] _wanted) {
+        int entriesNumber = readUInt(_data, _start, 2);
+        int found = 0;
+        for (int i = 0; i < entriesNumber && found < _wanted.length; i++) {
+            int entryStart = _start + 2 + i * 12;
+            int tag = readUInt(_data, entryStart, 2);
+            if (Arrays.binarySearch(_wanted, tag) < 0) {
+                continue;
+            }
+            found++;
+            int datatype = readUInt(_data, entryStart + 2, 2);
+            int components = readUInt(_data, entryStart + 4, 4);
+            int offset = entryStart + 8;
+            if ((long) components * componentWidth(datatype) > 4) {
+                offset = readUInt(_data, offset, 4);
+            }
+            if (!isInData(_data, datatype, offset, components)) {
+                continue;
+            }
+            ExifValue value = readValue(_data, datatype, offset, components);
+            if (value != null) {
+                _ifd.put(tag, value);
+            }
+        }
+        return readUInt(_data, _start + entriesNumber * 12 + 2, 4);
+    }
+
     /**
      * Read information from one IFD directory
      *
@@ -427,7 +852,7 @@ public class ExifDriver {
      *         expected
      *         only in IFD0.
      */
-    private int readIfd(HashMap<Integer, ExifValue> _ifd, byte[] _data, int _start) {
+    private int readIfd(Ifd _ifd, ByteBuffer _data, int _start) {
         int entriesNumber = readUInt(_data, _start, 2);
         // Log.v(LOGTAG, entriesNumber + " entries found in directory begining at "
         // + Integer.toHexString(_start + 12));
@@ -440,73 +865,25 @@ public class ExifDriver {
             int datatype = readUInt(_data, entryStart + 2, 2);
             int components = readUInt(_data, entryStart + 4, 4);
             // If the totalLength is >4 it does not fit in directory
-            int totalLength = components * (Integer) COMP_WIDTHS.get(datatype);
+            long totalLength = (long) components * componentWidth(datatype);
             // Offset right in directory
             int offset = entryStart + 8;
             if (totalLength > 4) {
                 // Offset in data area
                 offset = readUInt(_data, offset, 4);
             }
-            // if (tag == 0xa005 || tag == TAG_EXIF_POINTER || tag ==
-            // TAG_GPS_POINTER) {
-            // System.out.println("Tag: " + Integer.toHexString(tag));
-            // System.out.println("Datatype: " + Integer.toHexString(datatype));
-            // System.out.println("Components: " +
-            // Integer.toHexString(components));
-            // System.out.println("Offset: " + Integer.toHexString(offset));
-            // }
-            switch (datatype) {
-                case FORMAT_UNSIGNED_BYTE:
-                    ValueUBytes uByteValue = new ValueUBytes();
-                    uByteValue.setValue(uByteValue.readUnsigned(_data, offset, components));
-                    _ifd.put(tag, uByteValue);
-                    break;
-                case FORMAT_ASCII_STRINGS:
-                    ValueAsciiStrings baValue = new ValueAsciiStrings();
-                    baValue.setValue(baValue.readBytes(_data, offset, components));
-                    _ifd.put(tag, baValue);
-                    break;
-                case FORMAT_UNDEFINED:
-                    ValueUndefined unValue = new ValueUndefined();
-                    unValue.setValue(unValue.readBytes(_data, offset, components));
-                    _ifd.put(tag, unValue);
-                    break;
-                case FORMAT_UNSIGNED_SHORT:
-                    ValueUShorts uShortValue = new ValueUShorts();
-                    uShortValue.setValue(uShortValue
-                            .readUnsigned(_data, offset, components));
-                    _ifd.put(tag, uShortValue);
-                    break;
-                case FORMAT_UNSIGNED_LONG:
-                    ValueLongs uLongValue = new ValueLongs();
-                    uLongValue.setValue(uLongValue.readUnsigned(_data, offset, components));
-                    _ifd.put(tag, uLongValue);
-                    break;
-                case FORMAT_UNSIGNED_RATIONAL:
-                    ValueURationals uRatValue = new ValueURationals();
-                    uRatValue.setValue(uRatValue.readUnsigned(_data, offset, components));
-                    _ifd.put(tag, uRatValue);
-                    break;
-                case FORMAT_SIGNED_BYTE:
-                    ValueSBytes sByteValue = new ValueSBytes();
-                    sByteValue.setValue(sByteValue.readSigned(_data, offset, components));
-                    _ifd.put(tag, sByteValue);
-                    break;
-                case FORMAT_SIGNED_SHORT:
-                    ValueSShorts sShortValue = new ValueSShorts();
-                    sShortValue.setValue(sShortValue.readSigned(_data, offset, components));
-                    _ifd.put(tag, sShortValue);
-                    break;
-                case FORMAT_SIGNED_LONG:
-                    ValueSLongs sLongValue = new ValueSLongs();
-                    sLongValue.setValue(sLongValue.readSigned(_data, offset, components));
-                    _ifd.put(tag, sLongValue);
-                    break;
-                case FORMAT_SIGNED_RATIONAL:
-                    ValueSRationals sRatValue = new ValueSRationals();
-                    sRatValue.setValue(sRatValue.readSigned(_data, offset, components));
-                    _ifd.put(tag, sRatValue);
-                    break;
+            if (!isInData(_data, datatype, offset, components)) {
+                // Corrupt count or offset, e.g. a count of 2^31 would make the
+                // decoding allocate a huge array
+                continue;
+            }
+            if (lazy) {
+                _ifd.putPending(tag, datatype, components, offset);
+            } else {
+                ExifValue value = readValue(_data, datatype, offset, components);
+                if (value != null) {
+                    _ifd.put(tag, value);
+                }
             }
         }
         // Return the long value represented by 4B after the last entry
@@ -514,61 +891,121 @@ public class ExifDriver {
     }
 
     /**
-     * Read signed int from source byte array. Handles endianes.
+     * Check that the components of an entry lie within the Exif data
+     *
+     * @return false if the entry points out of the data
+     */
+    private static boolean isInData(ByteBuffer _data, int _datatype, int _offset,
+                                    int _components) {
+        long end = (long) _offset + (long) _components * componentWidth(_datatype);
+        return _components >= 0 && _offset >= 0 && end <= _data.capacity();
+    }
+
+    /**
+     * Decode one value from the source data
+     *
+     * @param _data
+     *          Source data byte array
+     * @param _datatype
+     *          Datatype of the value
+     * @param _offset
+     *          Offset, where the components start
+     * @param _components
+     *          Number of components
+     * @return Decoded value or null if the datatype is not known
+     */
+    private ExifValue readValue(ByteBuffer _data, int _datatype, int _offset,
+                                int _components) {
+        switch (_datatype) {
+            case FORMAT_UNSIGNED_BYTE:
+                ValueUBytes uByteValue = new ValueUBytes();
+                uByteValue.setValue(uByteValue.readBytes(_data, _offset, _components));
+                return uByteValue;
+            case FORMAT_ASCII_STRINGS:
+                ValueAsciiStrings baValue = new ValueAsciiStrings();
+                baValue.setValue(baValue.readBytes(_data, _offset, _components));
+                return baValue;
+            case FORMAT_UNDEFINED:
+                ValueUndefined unValue = new ValueUndefined();
+                unValue.setValue(unValue.readBytes(_data, _offset, _components));
+                return unValue;
+            case FORMAT_UNSIGNED_SHORT:
+                ValueUShorts uShortValue = new ValueUShorts();
+                uShortValue.setValue(uShortValue
+                        .readUnsigned(_data, _offset, _components));
+                return uShortValue;
+            case FORMAT_UNSIGNED_LONG:
+                ValueLongs uLongValue = new ValueLongs();
+                uLongValue.setValue(uLongValue.readUnsigned(_data, _offset, _components));
+                return uLongValue;
+            case FORMAT_UNSIGNED_RATIONAL:
+                ValueURationals uRatValue = new ValueURationals();
+                uRatValue.setValue(uRatValue.readUnsigned(_data, _offset, _components));
+                return uRatValue;
+            case FORMAT_SIGNED_BYTE:
+                ValueSBytes sByteValue = new ValueSBytes();
+                sByteValue.setValue(sByteValue.readBytes(_data, _offset, _components));
+                return sByteValue;
+            case FORMAT_SIGNED_SHORT:
+                ValueSShorts sShortValue = new ValueSShorts();
+                sShortValue.setValue(sShortValue.readSigned(_data, _offset, _components));
+                return sShortValue;
+            case FORMAT_SIGNED_LONG:
+                ValueSLongs sLongValue = new ValueSLongs();
+                sLongValue.setValue(sLongValue.readSigned(_data, _offset, _components));
+                return sLongValue;
+            case FORMAT_SIGNED_RATIONAL:
+                ValueSRationals sRatValue = new ValueSRationals();
+                sRatValue.setValue(sRatValue.readSigned(_data, _offset, _components));
+                return sRatValue;
+        }
+        return null;
+    }
+
+    /**
+     * Read signed int from source buffer. Endianes is handled by the byte order
+     * of the buffer.
      *
      * @param _data
-     *          Data array to read from
+     *          Data buffer to read from
      * @param _offset
      *          offset, where the value starts
      * @param _bytesNumber
      *          Number of bytes (1,2,4 for byte, short, long)
      * @return Integer value
      */
-    private Integer readSInt(byte[] _data, int _offset, int _bytesNumber) {
-        int signMask = 1 << (_bytesNumber * 8 - 1);
-        int valueMask = 0xFFFFFFFF >>> (4 - _bytesNumber) * 8 + 1;
-        int value = readUInt(_data, _offset, _bytesNumber) & valueMask;
-        if ((value & signMask) > 0) {
-            value = -value;
+    private static int readSInt(ByteBuffer _data, int _offset, int _bytesNumber) {
+        switch (_bytesNumber) {
+            case 1:
+                return _data.get(_offset);
+            case 2:
+                return _data.getShort(_offset);
+            default:
+                return _data.getInt(_offset);
         }
-        return value;
     }
 
     /**
-     * Read unsigned int from source byte array. Handles endianes.
+     * Read unsigned int from source buffer. Endianes is handled by the byte
+     * order of the buffer.
      *
      * @param _data
-     *          Data array to read from
+     *          Data buffer to read from
      * @param _offset
      *          offset, where the value starts
      * @param _bytesNumber
      *          Number of bytes (1,2,4 for byte, short, long)
      * @return Integer value
      */
-    private Integer readUInt(byte[] _data, int _offset, int _bytesNumber) {
-        int result = 0;
-        int shift = 0;
-        switch (originalAlign) {
-            case ALIGN_MM:
-                shift = _bytesNumber * 8;
-                break;
-            case ALIGN_II:
-                shift = 0;
-                break;
-        }
-        for (int i = _offset; i < _bytesNumber + _offset; i++) {
-            switch (originalAlign) {
-                case ALIGN_MM:
-                    shift -= 8;
-                    result += (_data[i] & 0xFF) << shift;
-                    break;
-                case ALIGN_II:
-                    result += (_data[i] & 0xFF) << shift;
-                    shift += 8;
-                    break;
-            }
+    private static int readUInt(ByteBuffer _data, int _offset, int _bytesNumber) {
+        switch (_bytesNumber) {
+            case 1:
+                return _data.get(_offset) & 0xFF;
+            case 2:
+                return _data.getShort(_offset) & 0xFFFF;
+            default:
+                return _data.getInt(_offset);
         }
-        return result;
     }
 
   /*
@@ -588,15 +1025,12 @@ public class ExifDriver {
      *          Given IFD
      * @return Required space in bytes
      */
-    private int requiredSpace(HashMap<Integer, ExifValue> _ifd) {
+    private int requiredSpace(Ifd _ifd) {
         int result = 0;
-        Object[] oKeys = _ifd.keySet().toArray();
-        for (int i = 0; i < oKeys.length; i++) {
+        _ifd.decodeAll();
+        for (int i = 0; i < _ifd.size(); i++) {
             result += 12;
-            ExifValue val = _ifd.get((Integer) oKeys[i]);
-            if (val != null) {
-                result += val.getExtraSize();
-            }
+            result += _ifd.valueAt(i).getExtraSize();
         }
         if (result > 0) {
             result += 6;// 2B number of items, 4B the "next" address
@@ -617,7 +1051,7 @@ public class ExifDriver {
      * @param _width
      *          number of bytes, the number covers
      */
-    private void writeNumber(byte[] _data, int _offset, int _value, int _width) {
+    private static void writeNumber(byte[] _data, int _offset, int _value, int _width) {
         int mask = 0xFF;
         for (int i = 0; i < _width; i++) {
             _data[_offset + i] = (byte) ((_value & (mask << i * 8)) >>> (i * 8));
@@ -639,18 +1073,16 @@ public class ExifDriver {
      *          Value, which will be written to the "next" area of the
      *          directory. In fact only in case of IFD0 it will be a nonzero.
      */
-    private void writeIfd(byte[] _data, HashMap<Integer, ExifValue> _ifd,
-                          int _offset, int _nextOffset) {
-        Object[] oKeys = _ifd.keySet().toArray();
-        if (oKeys.length > 0) {
-            int valuesOffset = _offset + 2 + oKeys.length * 12 + 4;
-            writeNumber(_data, _offset, oKeys.length, 2);
+    private void writeIfd(byte[] _data, Ifd _ifd, int _offset, int _nextOffset) {
+        int entries = _ifd.size();
+        if (entries > 0) {
+            int valuesOffset = _offset + 2 + entries * 12 + 4;
+            writeNumber(_data, _offset, entries, 2);
             int itemOffset = _offset + 2;
-            Arrays.sort(oKeys);
-            for (int i = 0; i < oKeys.length; i++) {
-                Integer key = (Integer) oKeys[i];
-                writeNumber(_data, itemOffset, key, 2);
-                valuesOffset = _ifd.get(key).write(_data, itemOffset, valuesOffset);
+            // Tags are already sorted
+            for (int i = 0; i < entries; i++) {
+                writeNumber(_data, itemOffset, _ifd.tagAt(i), 2);
+                valuesOffset = _ifd.valueAt(i).write(_data, itemOffset, valuesOffset);
                 itemOffset += 12;
             }
             writeNumber(_data, itemOffset, _nextOffset, 4);
@@ -658,13 +1090,36 @@ public class ExifDriver {
     }
 
     /**
-     * Saves new image file with current Exif information. It is quite expensive
-     * operation, so it is recomended to call it only at the end of work.
+     * Set amount of zero bytes reserved at the end of APP1 segment when the
+     * whole file has to be rewritten. Reserved space lets later changes be
+     * saved in place (see saveInPlace()). Default is 0, a few KB is a good
+     * choice for images which will be edited repeatedly.
      *
-     * @param _name
-     *          name of the new file
+     * @param _bytes
+     *          Amount of reserved bytes
+     */
+    public void setReservedPadding(int _bytes) {
+        reservedPadding = Math.max(0, _bytes);
+    }
+
+    public int getReservedPadding() {
+        return reservedPadding;
+    }
+
+    /**
+     * Encode current Exif information into the TIFF structure, which follows
+     * the Exif header in APP1 segment.
+     *
+     * @param _padding
+     *          Amount of zero bytes to append. It is reduced if the segment
+     *          would not fit the maximal APP1 size.
+     * @return Encoded data or null if they don't fit APP1 segment
      */
-    public void save(String _name) {
+    private byte[] encodeExif(int _padding) {
+        if (isReadOnly()) {
+            // Log.e(LOGTAG, "Driver holds only selected tags");
+            return null;
+        }
         int startOfIfd0 = TIFFHeader.length;
         int startOfIfdExif = startOfIfd0 + requiredSpace(ifd0);
         int startOfIfdIOper = startOfIfdExif + requiredSpace(ifdExif);
@@ -672,6 +1127,10 @@ public class ExifDriver {
         int startOfIfd1 = startOfIfdGps + requiredSpace(ifdGps);
         int startOfThumbnail = startOfIfd1 + requiredSpace(ifd1);
         int reqSize = startOfThumbnail + origThumbnailLength;
+        if (reqSize > MAX_EXIF_DATA) {
+            // Log.e(LOGTAG, "Exif data does not fit APP1 segment");
+            return null;
+        }
         // Write directory referencies
         if (!ifdExif.isEmpty()) {
             ifd0.put(TAG_EXIF_POINTER, new ValueLongs(startOfIfdExif));
@@ -688,12 +1147,7 @@ public class ExifDriver {
             ValueLongs val = new ValueLongs(startOfThumbnail);
             ifd1.put(TAG_JPEG_INTERCHANGE_FORMAT, val);
         }
-        // Write all headers
-        byte[] resultExif = new byte[reqSize];
-        byte[] exifHeader = new byte[] { (byte) 0xFF, (byte) 0xE1, 0, 0,
-                (byte) 0x45, (byte) 0x78, (byte) 0x69, (byte) 0x66, 0, 0 };
-        exifHeader[2] = (byte) (((reqSize + 8) & 0xFF00) >> 8);
-        exifHeader[3] = (byte) ((reqSize + 8) & 0xFF);
+        byte[] resultExif = new byte[Math.min(reqSize + _padding, MAX_EXIF_DATA)];
         // Note, we will always use Intel align
         byte[] tiffHeader = new byte[] { 0x49, 0x49, 0x2A, 0x00, 0x08, 0x00, 0x00,
                 0x00 };
@@ -703,49 +1157,555 @@ public class ExifDriver {
         writeIfd(resultExif, ifdIOper, startOfIfdIOper, 0);
         writeIfd(resultExif, ifdGps, startOfIfdGps, 0);
         writeIfd(resultExif, ifd1, startOfIfd1, 0);
-        System.arraycopy(origEXIFdata, origThumbnailOffset, resultExif,
-                startOfThumbnail, origThumbnailLength);
-        FileOutputStream fos = null;
-        FileInputStream fis = null;
-        try {
-            fos = new FileOutputStream(_name);
-            fis = new FileInputStream(sourceFile);
-            fos.write((byte) 0xFF);
-            fos.write((byte) 0xD8);
-            fos.write(exifHeader);
-            fos.write(resultExif);
-            int skipped = 0;
-            int imageOffset = origAPP1MarkerOffset + APP1Marker.length
-                    + LENGTH_EXIF_SIZE_DECL + EXIFHeader.length + origEXIFdata.length;
-            // Log.v(LOGTAG, "Image offset is " + Integer.toHexString(imageOffset));
-            while (skipped < imageOffset) {
-                int skip = (int) fis.skip(imageOffset - skipped);
-                if (skip < 0) {
-                    throw (new IOException());
-                } else {
-                    skipped += skip;
-                }
-            }
-            byte[] buffer = new byte[10240];
-            int len;
-            while ((len = fis.read(buffer)) > 0) {
-                fos.write(buffer, 0, len);
-            }
-            fis.close();
-            fos.close();
-        } catch (FileNotFoundException ex) {
-            Logger.getLogger(ExifDriver.class.getName()).log(Level.SEVERE, null, ex);
-        } catch (IOException ex) {
-            Logger.getLogger(ExifDriver.class.getName()).log(Level.SEVERE, null, ex);
-        } finally {
-            try {
-                fis.close();
-                fos.close();
-            } catch (IOException ex) {
-                Logger.getLogger(ExifDriver.class.getName())
-                        .log(Level.SEVERE, null, ex);
-            }
-
+        if (origThumbnailLength > 0) {
+            ByteBuffer thumbnail = origEXIFdata.duplicate();
+            thumbnail.position(origThumbnailOffset);
+            thumbnail.get(resultExif, startOfThumbnail, origThumbnailLength);
+        }
+        return resultExif;
+    }
+
+    /**
+     * Saves new image file with current Exif information. It is quite expensive
+     * operation, so it is recomended to call it only at the end of work. If the
+     * name is the source file, the Exif data are rewritten in place when they
+     * fit the original APP1 segment (see saveInPlace()), otherwise the file is
+     * replaced.
+     *
+     * @param _name
+     *          name of the new file
+     * @return true if the file has been written
+     */
+    public boolean save(String _name) {
+        File target = new File(_name).getAbsoluteFile();
+        if (!target.equals(new File(sourceFile).getAbsoluteFile())) {
+            byte[] resultExif = encodeExif(reservedPadding);
+            if (resultExif != null && writeFile(target, resultExif)) {
+                fireSaved(target.getPath());
+                return true;
+            }
+            return false;
+        } else if (!isSourceLayoutUnchanged()) {
+            return false;
+        } else if (saveInPlace()) {
+            return true;
+        } else {
+            byte[] resultExif = encodeExif(reservedPadding);
+            if (resultExif != null) {
+                File temp = new File(target.getPath() + ".tmp");
+                if (writeFile(temp, resultExif) && temp.renameTo(target)) {
+                    rebase(resultExif, SOI.length);
+                    fireSaved(sourceFile);
+                    return true;
+                }
+                temp.delete();
+            }
+            return false;
+        }
+    }
+
+    /**
+     * Rewrite the Exif data right in the source file. It is possible only if
+     * the encoded data fit the original APP1 segment. The rest of the segment
+     * is filled with zeros, so the segment and the image data stay untouched
+     * and only a few KB are written.
+     *
+     * @return true if the data were saved, false if they don't fit the
+     *         original segment, the segment has moved or writing failed
+     */
+    public boolean saveInPlace() {
+        int capacity = origEXIFdata.capacity();
+        byte[] resultExif = encodeExif(0);
+        if (resultExif == null || resultExif.length > capacity
+                || !isSourceLayoutUnchanged()) {
+            return false;
+        }
+        resultExif = Arrays.copyOf(resultExif, capacity);
+        RandomAccessFile file = null;
+        FileChannel channel = null;
+        try {
+            file = new RandomAccessFile(sourceFile, "rw");
+            channel = file.getChannel();
+            ByteBuffer buffer = ByteBuffer.wrap(resultExif);
+            long position = origAPP1MarkerOffset + LENGTH_APP1_EXIF_HEADER;
+            while (buffer.hasRemaining()) {
+                position += channel.write(buffer, position);
+            }
+            rebase(resultExif, origAPP1MarkerOffset);
+            fireSaved(sourceFile);
+            return true;
+        } catch (IOException ex) {
+            Logger.getLogger(ExifDriver.class.getName()).log(Level.SEVERE, null, ex);
+            return false;
+        } finally {
+            try {
+                if (channel != null) {
+                    channel.close();
+                }
+                if (file != null) {
+                    file.close();
+                }
+            } catch (IOException ex) {
+                Logger.getLogger(ExifDriver.class.getName())
+                        .log(Level.SEVERE, null, ex);
+            }
+        }
+    }
+
+    private static void fireSaved(String _file) {
+        for (SaveListener listener : saveListeners) {
+            listener.onSaved(_file);
+        }
+    }
+
+    /**
+     * Check that the APP1 segment of the source file is still where the driver
+     * read it from. A copy made by ExifDriverCache may be saved after another
+     * copy of the same file rewrote it; its offsets are stale then, so it must
+     * not write. Drivers which are not copies are the only writer of their
+     * data and are not checked.
+     *
+     * @return true if the driver can write the source file
+     */
+    private boolean isSourceLayoutUnchanged() {
+        if (!shared) {
+            return true;
+        }
+        FileInputStream fis = null;
+        try {
+            fis = new FileInputStream(sourceFile);
+            JpegSegments current = JpegSegments.walk(fis.getChannel());
+            return current != null
+                    && current.contains(JpegSegments.SEGMENT_APP1_EXIF)
+                    && current.getOffset(JpegSegments.SEGMENT_APP1_EXIF) == origAPP1MarkerOffset
+                    && current.getLength(JpegSegments.SEGMENT_APP1_EXIF) == origEXIFdata.capacity()
+                    + LENGTH_EXIF_SIZE_DECL + EXIFHeader.length;
+        } catch (IOException ex) {
+            Logger.getLogger(ExifDriver.class.getName()).log(Level.SEVERE, null, ex);
+            return false;
+        } finally {
+            try {
+                if (fis != null) {
+                    fis.close();
+                }
+            } catch (IOException ex) {
+                Logger.getLogger(ExifDriver.class.getName())
+                        .log(Level.SEVERE, null, ex);
+            }
+        }
+    }
+
+    /**
+     * Make the driver work with the Exif data just written to the source file,
+     * so that following saves copy the thumbnail and image data from the right
+     * place.
+     *
+     * @param _exifData
+     *          Written data (starting with TIFF header)
+     * @param _app1Offset
+     *          Offset of APP1 marker in the source file
+     */
+    private void rebase(byte[] _exifData, int _app1Offset) {
+        origEXIFdata = ByteBuffer.wrap(_exifData).order(ByteOrder.LITTLE_ENDIAN);
+        originalAlign = ALIGN_II;
+        origAPP1MarkerOffset = _app1Offset;
+        if (origThumbnailOffset > 0) {
+            origThumbnailOffset = ((ValueNumbers) ifd1
+                    .get(TAG_JPEG_INTERCHANGE_FORMAT)).getInt(0);
+        }
+    }
+
+    /**
+     * Write new image file - SOI, APP1 segment with given Exif data and the
+     * image data of the source file
+     *
+     * @param _target
+     *          File to write
+     * @param _resultExif
+     *          Encoded Exif data
+     * @return true if the file has been written
+     */
+    private boolean writeFile(File _target, byte[] _resultExif) {
+        byte[] exifHeader = new byte[] { (byte) 0xFF, (byte) 0xE1, 0, 0,
+                (byte) 0x45, (byte) 0x78, (byte) 0x69, (byte) 0x66, 0, 0 };
+        exifHeader[2] = (byte) (((_resultExif.length + 8) & 0xFF00) >> 8);
+        exifHeader[3] = (byte) ((_resultExif.length + 8) & 0xFF);
+        FileOutputStream fos = null;
+        FileInputStream fis = null;
+        FileChannel output = null;
+        FileChannel input = null;
+        try {
+            fos = new FileOutputStream(_target);
+            fis = new FileInputStream(sourceFile);
+            output = fos.getChannel();
+            input = fis.getChannel();
+            // SOI, APP1 header and Exif data in one gathering write
+            ByteBuffer[] header = new ByteBuffer[] { ByteBuffer.wrap(SOI),
+                    ByteBuffer.wrap(exifHeader), ByteBuffer.wrap(_resultExif) };
+            long headerLength = SOI.length + exifHeader.length + _resultExif.length;
+            long written = 0;
+            while (written < headerLength) {
+                written += output.write(header);
+            }
+            long imageOffset = origAPP1MarkerOffset + APP1Marker.length
+                    + LENGTH_EXIF_SIZE_DECL + EXIFHeader.length + origEXIFdata.capacity();
+            // Log.v(LOGTAG, "Image offset is " + Long.toHexString(imageOffset));
+            // The rest of the source file is moved by the kernel, without
+            // copying it through the heap
+            long size = input.size();
+            long position = imageOffset;
+            while (position < size) {
+                long transferred = input.transferTo(position, size - position, output);
+                if (transferred <= 0) {
+                    throw new IOException("Image data could not be copied");
+                }
+                position += transferred;
+            }
+            return true;
+        } catch (FileNotFoundException ex) {
+            Logger.getLogger(ExifDriver.class.getName()).log(Level.SEVERE, null, ex);
+        } catch (IOException ex) {
+            Logger.getLogger(ExifDriver.class.getName()).log(Level.SEVERE, null, ex);
+        } finally {
+            try {
+                if (input != null) {
+                    input.close();
+                }
+                if (output != null) {
+                    output.close();
+                }
+                if (fis != null) {
+                    fis.close();
+                }
+                if (fos != null) {
+                    fos.close();
+                }
+            } catch (IOException ex) {
+                Logger.getLogger(ExifDriver.class.getName())
+                        .log(Level.SEVERE, null, ex);
+            }
+
+        }
+        return false;
+    }
+
+    /**
+     * Compact IFD directory. Tags are kept sorted in a primitive array with a
+     * parallel array of values, so lookups are a binary search without boxing
+     * and the directory is written in tag order without sorting. In lazy mode
+     * an entry only remembers its datatype, count and offset until the value is
+     * asked for for the first time; the decoding is synchronized on the
+     * directory.
+     */
+    public class Ifd {
+
+        private int[] tags = new int[8];
+        private ExifValue[] values = new ExifValue[8];
+        // Entry table of not yet decoded values (lazy mode)
+        private int[] types = new int[8];
+        private int[] counts = new int[8];
+        private int[] offsets = new int[8];
+        private int size = 0;
+        private Map<Integer, ExifValue> map;
+
+        /**
+         * Number of entries in the directory
+         *
+         * @return Number of entries
+         */
+        public int size() {
+            return size;
+        }
+
+        public boolean isEmpty() {
+            return size == 0;
+        }
+
+        /**
+         * Tag of the i-th entry. Entries are ordered by tag.
+         *
+         * @param _index
+         *          Index of the entry
+         * @return Tag
+         */
+        public int tagAt(int _index) {
+            return tags[_index];
+        }
+
+        /**
+         * Value of the i-th entry. Entries are ordered by tag.
+         *
+         * @param _index
+         *          Index of the entry
+         * @return Value, decoded if necessary, or null if it can't be decoded
+         */
+        public synchronized ExifValue valueAt(int _index) {
+            ExifValue value = values[_index];
+            if (value == null) {
+                try {
+                    value = readValue(origEXIFdata, types[_index], offsets[_index],
+                            counts[_index]);
+                } catch (RuntimeException ex) {
+                    // Corrupt entry, e.g. a count not matching the datatype
+                    Logger.getLogger(ExifDriver.class.getName()).log(Level.WARNING, null, ex);
+                    value = null;
+                }
+                values[_index] = value;
+            }
+            return value;
+        }
+
+        /**
+         * Find the value of given tag
+         *
+         * @param _tag
+         *          Tag to look for
+         * @return Value or null if the directory does not hold the tag
+         */
+        public ExifValue get(int _tag) {
+            int index = indexOf(_tag);
+            if (index < 0) {
+                return null;
+            }
+            return valueAt(index);
+        }
+
+        public boolean contains(int _tag) {
+            return indexOf(_tag) >= 0;
+        }
+
+        /**
+         * Set value of given tag. Existing value is replaced.
+         *
+         * @param _tag
+         *          Tag to set
+         * @param _value
+         *          New value, null removes the tag
+         * @return Previous value or null
+         */
+        public ExifValue put(int _tag, ExifValue _value) {
+            if (_value == null) {
+                return remove(_tag);
+            }
+            int index = indexOf(_tag);
+            if (index >= 0) {
+                ExifValue old = values[index];
+                values[index] = _value;
+                return old;
+            }
+            insert(-(index + 1), _tag, _value);
+            return null;
+        }
+
+        /**
+         * Remove given tag from the directory
+         *
+         * @param _tag
+         *          Tag to remove
+         * @return Removed value or null
+         */
+        public ExifValue remove(int _tag) {
+            int index = indexOf(_tag);
+            if (index < 0) {
+                return null;
+            }
+            ExifValue old = valueAt(index);
+            removeAt(index);
+            return old;
+        }
+
+        public void clear() {
+            Arrays.fill(values, 0, size, null);
+            size = 0;
+        }
+
+        /**
+         * Remember an entry, which will be decoded the first time it is asked
+         * for
+         */
+        void putPending(int _tag, int _datatype, int _components, int _offset) {
+            int index = indexOf(_tag);
+            if (index < 0) {
+                index = -(index + 1);
+                insert(index, _tag, null);
+            }
+            values[index] = null;
+            types[index] = _datatype;
+            counts[index] = _components;
+            offsets[index] = _offset;
+        }
+
+        /**
+         * Take the entry table of a lazy directory of another driver. All the
+         * entries are pending afterwards, so values are decoded from the source
+         * data of this driver and never shared.
+         */
+        void copyEntries(Ifd _source) {
+            synchronized (_source) {
+                size = _source.size;
+                tags = Arrays.copyOf(_source.tags, Math.max(size, 1));
+                types = Arrays.copyOf(_source.types, tags.length);
+                counts = Arrays.copyOf(_source.counts, tags.length);
+                offsets = Arrays.copyOf(_source.offsets, tags.length);
+                values = new ExifValue[tags.length];
+            }
+        }
+
+        /**
+         * Decode all the pending entries. Entries which can't be decoded are
+         * dropped.
+         */
+        void decodeAll() {
+            for (int i = size - 1; i >= 0; i--) {
+                if (valueAt(i) == null) {
+                    removeAt(i);
+                }
+            }
+        }
+
+        /**
+         * Map view of this directory. Kept for callers working with tag-value
+         * hashes.
+         *
+         * @return Map backed by this directory
+         */
+        public Map<Integer, ExifValue> asMap() {
+            if (map == null) {
+                map = new IfdMap(this);
+            }
+            return map;
+        }
+
+        private int indexOf(int _tag) {
+            // Entries usually come sorted, so check the end first
+            if (size > 0 && tags[size - 1] < _tag) {
+                return -(size + 1);
+            }
+            return Arrays.binarySearch(tags, 0, size, _tag);
+        }
+
+        private void insert(int _index, int _tag, ExifValue _value) {
+            if (size == tags.length) {
+                int capacity = size * 2;
+                tags = Arrays.copyOf(tags, capacity);
+                values = Arrays.copyOf(values, capacity);
+                types = Arrays.copyOf(types, capacity);
+                counts = Arrays.copyOf(counts, capacity);
+                offsets = Arrays.copyOf(offsets, capacity);
+            }
+            int moved = size - _index;
+            if (moved > 0) {
+                System.arraycopy(tags, _index, tags, _index + 1, moved);
+                System.arraycopy(values, _index, values, _index + 1, moved);
+                System.arraycopy(types, _index, types, _index + 1, moved);
+                System.arraycopy(counts, _index, counts, _index + 1, moved);
+                System.arraycopy(offsets, _index, offsets, _index + 1, moved);
+            }
+            tags[_index] = _tag;
+            values[_index] = _value;
+            size++;
+        }
+
+        private void removeAt(int _index) {
+            int moved = size - _index - 1;
+            if (moved > 0) {
+                System.arraycopy(tags, _index + 1, tags, _index, moved);
+                System.arraycopy(values, _index + 1, values, _index, moved);
+                System.arraycopy(types, _index + 1, types, _index, moved);
+                System.arraycopy(counts, _index + 1, counts, _index, moved);
+                System.arraycopy(offsets, _index + 1, offsets, _index, moved);
+            }
+            size--;
+            values[size] = null;
+        }
+    }
+
+    /**
+     * Adapter presenting an Ifd as a tag-value map
+     */
+    private static class IfdMap extends AbstractMap<Integer, ExifValue> {
+
+        private final Ifd ifd;
+
+        IfdMap(Ifd _ifd) {
+            ifd = _ifd;
+        }
+
+        @Override
+        public ExifValue get(Object _key) {
+            if (_key instanceof Integer) {
+                return ifd.get((Integer) _key);
+            }
+            return null;
+        }
+
+        @Override
+        public boolean containsKey(Object _key) {
+            return _key instanceof Integer && ifd.contains((Integer) _key);
+        }
+
+        @Override
+        public ExifValue put(Integer _key, ExifValue _value) {
+            return ifd.put(_key, _value);
+        }
+
+        @Override
+        public ExifValue remove(Object _key) {
+            if (_key instanceof Integer) {
+                return ifd.remove((Integer) _key);
+            }
+            return null;
+        }
+
+        @Override
+        public int size() {
+            return ifd.size();
+        }
+
+        @Override
+        public void clear() {
+            ifd.clear();
+        }
+
+        @Override
+        public Set<Map.Entry<Integer, ExifValue>> entrySet() {
+            ifd.decodeAll();
+            return new AbstractSet<Map.Entry<Integer, ExifValue>>() {
+                @Override
+                public Iterator<Map.Entry<Integer, ExifValue>> iterator() {
+                    return new Iterator<Map.Entry<Integer, ExifValue>>() {
+                        private int next = 0;
+
+                        public boolean hasNext() {
+                            return next < ifd.size();
+                        }
+
+                        public Map.Entry<Integer, ExifValue> next() {
+                            if (next >= ifd.size()) {
+                                throw new NoSuchElementException();
+                            }
+                            Map.Entry<Integer, ExifValue> entry =
+                                    new SimpleImmutableEntry<Integer, ExifValue>(
+                                            ifd.tagAt(next), ifd.valueAt(next));
+                            next++;
+                            return entry;
+                        }
+
+                        public void remove() {
+                            if (next == 0) {
+                                throw new IllegalStateException();
+                            }
+                            next--;
+                            ifd.remove(ifd.tagAt(next));
+                        }
+                    };
+                }
+
+                @Override
+                public int size() {
+                    return ifd.size();
+                }
+            };
         }
     }
 
@@ -754,11 +1714,13 @@ public class ExifDriver {
    */
     /**
      * Parent class of all datatypes. It defines basic operations. Some of them
-     * are overloaded in derived classes.
+     * are overloaded in derived classes. Components are held in a primitive
+     * array, so reading a value does not box its components.
      *
      * @param <E>
+     *          Primitive array type holding the components
      */
-    public abstract class ExifValue<E> {
+    public static abstract class ExifValue<E> {
 
         /**
          * Amount of extra space that this value needs. All values store their
@@ -771,7 +1733,7 @@ public class ExifDriver {
          * Array of components. Scalar types use mostly one component, but many tags
          * are described with more than one component.
          */
-        protected E[] components;
+        protected E components;
 
         /**
          * Returns array of components. Scalar types use mostly one component, but
@@ -779,7 +1741,7 @@ public class ExifDriver {
          *
          * @return Array of components
          */
-        public E[] getValues() {
+        public E getValues() {
             return components;
         }
 
@@ -789,11 +1751,19 @@ public class ExifDriver {
          *
          * @param _values
          */
-        public void setValue(E[] _values) {
+        public void setValue(E _values) {
             components = _values;
             setExtraSize();
         }
 
+        /**
+         * Returns number of components, which is the count written to the IFD
+         * entry.
+         *
+         * @return Number of components
+         */
+        public abstract int getCount();
+
         /**
          * Returns size of one single component. For example if Value holds
          * components of type UNSIGNED_BYTE, it returns 1.
@@ -801,7 +1771,7 @@ public class ExifDriver {
          * @return Size of one single component
          */
         public final int getComponentSize() {
-            return (Integer) COMP_WIDTHS.get(getDataType());
+            return componentWidth(getDataType());
         }
 
         /**
@@ -811,7 +1781,7 @@ public class ExifDriver {
          * @return Total size of components
          */
         public final int getTotalSize() {
-            return components.length * getComponentSize();
+            return getCount() * getComponentSize();
         }
 
         protected final void setExtraSize() {
@@ -860,7 +1830,7 @@ public class ExifDriver {
          */
         public final int write(byte[] _data, int _itemOffset, int _valuesOffset) {
             writeNumber(_data, _itemOffset + 2, getDataType(), 2);
-            writeNumber(_data, _itemOffset + 4, getValues().length, 4);
+            writeNumber(_data, _itemOffset + 4, getCount(), 4);
             int valueOffset = _itemOffset + 8;
             if (extraSpace > 0) {
                 writeNumber(_data, valueOffset, _valuesOffset, 4);
@@ -884,41 +1854,42 @@ public class ExifDriver {
      * Common abstract superclass for ValueAscii and ValueUndefined, which are
      * treated as simple byte arrays
      */
-    public abstract class ValueByteArray extends ExifValue<Byte> {
+    public static abstract class ValueByteArray extends ExifValue<byte[]> {
 
         /**
          * Read it's value (array of bytes) from given source
          *
          * @param _data
-         *          Source array to read from
+         *          Source buffer to read from
          * @param _offset
          *          Offset where to start reading
          * @param _count
          *          Amount of bytes to read
          * @return
          */
-        public Byte[] readBytes(byte[] _data, int _offset, int _count) {
-            byte[] forValue = new byte[_count];
-            System.arraycopy(_data, _offset, forValue, 0, _count);
-            Byte[] result = new Byte[forValue.length];
-            for (int i = 0; i < forValue.length; i++) {
-                result[i] = forValue[i];
-            }
+        public byte[] readBytes(ByteBuffer _data, int _offset, int _count) {
+            byte[] result = new byte[_count];
+            ByteBuffer source = _data.duplicate();
+            source.position(_offset);
+            source.get(result);
             return result;
         }
 
+        @Override
+        public int getCount() {
+            return components.length;
+        }
+
         @Override
         protected void writeValues(byte[] _data, int _offset) {
-            for (int i = 0; i < components.length; i++) {
-                _data[_offset + i] = (Byte) components[i];
-            }
+            System.arraycopy(components, 0, _data, _offset, components.length);
         }
     }
 
     /**
      * Ascii strings datatype
      */
-    public class ValueAsciiStrings extends ValueByteArray {
+    public static class ValueAsciiStrings extends ValueByteArray {
 
         public int getDataType() {
             return FORMAT_ASCII_STRINGS;
@@ -928,7 +1899,7 @@ public class ExifDriver {
     /**
      * Undefined datatype
      */
-    public class ValueUndefined extends ValueByteArray {
+    public static class ValueUndefined extends ValueByteArray {
 
         public int getDataType() {
             return FORMAT_UNDEFINED;
@@ -936,12 +1907,81 @@ public class ExifDriver {
     }
 
     /**
-     * Basic class for scalar number data types. Implements Methods for Reading
-     * and writing signed and unsigned values, same as constructor from value.
+     * Basic class for scalar number data types. Components are exposed as ints
+     * whatever the width they are stored with.
+     *
+     * @param <E>
+     *          Primitive array type holding the components
+     */
+    public static abstract class ValueNumbers<E> extends ExifValue<E> {
+
+        /**
+         * Returns one component
+         *
+         * @param _index
+         *          Index of the component
+         * @return Value of the component
+         */
+        public abstract int getInt(int _index);
+
+        /**
+         * Returns all the components widened to ints
+         *
+         * @return New array of components
+         */
+        public int[] getInts() {
+            int[] result = new int[getCount()];
+            for (int i = 0; i < result.length; i++) {
+                result[i] = getInt(i);
+            }
+            return result;
+        }
+    }
+
+    /**
+     * Common abstract superclass for byte sized numbers, stored as they are
+     * read and widened in the accessor
      */
-    public abstract class ValueNumbers extends ExifValue<Integer> {
+    public static abstract class ValueByteNumbers extends ValueNumbers<byte[]> {
 
-        public ValueNumbers() {
+        /**
+         * Read components from source data
+         *
+         * @param _data
+         *          Source buffer
+         * @param _offset
+         *          Where to start the reading
+         * @param _count
+         *          How much components to read
+         * @return Array of read components
+         */
+        public byte[] readBytes(ByteBuffer _data, int _offset, int _count) {
+            byte[] result = new byte[_count];
+            ByteBuffer source = _data.duplicate();
+            source.position(_offset);
+            source.get(result);
+            return result;
+        }
+
+        @Override
+        public int getCount() {
+            return components.length;
+        }
+
+        @Override
+        protected void writeValues(byte[] _data, int _offset) {
+            System.arraycopy(components, 0, _data, _offset, components.length);
+        }
+    }
+
+    /**
+     * Common abstract superclass for shorts and longs. Implements Methods for
+     * Reading and writing signed and unsigned values, same as constructor from
+     * value.
+     */
+    public static abstract class ValueIntNumbers extends ValueNumbers<int[]> {
+
+        public ValueIntNumbers() {
             super();
         }
 
@@ -952,29 +1992,38 @@ public class ExifDriver {
          * @param _value
          *          Value to set as the only one component.
          */
-        public ValueNumbers(int _value) {
-            components = new Integer[1];
-            components[0] = _value;
+        public ValueIntNumbers(int _value) {
+            components = new int[] { _value };
             extraSpace = 0;
         }
 
+        @Override
+        public int getInt(int _index) {
+            return components[_index];
+        }
+
+        @Override
+        public int getCount() {
+            return components.length;
+        }
+
         /**
          * Read unsigned values from source data. It uses own information about
          * component size to determine, how much bytes read for one component.
          *
          * @param _data
-         *          Source byte array
+         *          Source buffer
          * @param _offset
          *          Where to start the reading
          * @param _count
          *          How much components to read
          * @return Array of read components
          */
-        public Integer[] readUnsigned(byte[] _data, int _offset, int _count) {
-            Integer[] uValues = new Integer[_count];
+        public int[] readUnsigned(ByteBuffer _data, int _offset, int _count) {
+            int[] uValues = new int[_count];
+            int size = getComponentSize();
             for (int v = 0; v < _count; v++) {
-                uValues[v] = readUInt(_data, _offset + getComponentSize() * v,
-                        getComponentSize());
+                uValues[v] = readUInt(_data, _offset + size * v, size);
             }
             return uValues;
         }
@@ -984,36 +2033,40 @@ public class ExifDriver {
          * component size to determine, how much bytes read for one component.
          *
          * @param _data
-         *          Source byte array
+         *          Source buffer
          * @param _offset
          *          Where to start the reading
          * @param _count
          *          How much components to read
          * @return Array of read components
          */
-        public Integer[] readSigned(byte[] _data, int _offset, int _count) {
-            Integer[] uValues = new Integer[_count];
+        public int[] readSigned(ByteBuffer _data, int _offset, int _count) {
+            int[] sValues = new int[_count];
+            int size = getComponentSize();
             for (int v = 0; v < _count; v++) {
-                uValues[v] = readSInt(_data, _offset + getComponentSize() * v,
-                        getComponentSize());
+                sValues[v] = readSInt(_data, _offset + size * v, size);
             }
-            return uValues;
+            return sValues;
         }
 
         @Override
         protected void writeValues(byte[] _data, int _offset) {
+            int size = getComponentSize();
             for (int i = 0; i < components.length; i++) {
-                writeNumber(_data, _offset + getComponentSize() * i, components[i],
-                        getComponentSize());
+                writeNumber(_data, _offset + size * i, components[i], size);
             }
         }
     }
 
     /**
-     * Unsigned byte value. Only overloads the function which returns it's data
-     * type
+     * Unsigned byte value. Widens its components without the sign
      */
-    public class ValueUBytes extends ValueNumbers {
+    public static class ValueUBytes extends ValueByteNumbers {
+
+        @Override
+        public int getInt(int _index) {
+            return components[_index] & 0xFF;
+        }
 
         public int getDataType() {
             return FORMAT_UNSIGNED_BYTE;
@@ -1023,7 +2076,12 @@ public class ExifDriver {
     /**
      * Signed byte value. Only overloads the function which returns it's data type
      */
-    public class ValueSBytes extends ValueNumbers {
+    public static class ValueSBytes extends ValueByteNumbers {
+
+        @Override
+        public int getInt(int _index) {
+            return components[_index];
+        }
 
         public int getDataType() {
             return FORMAT_SIGNED_BYTE;
@@ -1034,7 +2092,7 @@ public class ExifDriver {
      * Unsigned shorts (or pants ;-) . Only overloads the function which returns
      * it's data type
      */
-    public class ValueUShorts extends ValueNumbers {
+    public static class ValueUShorts extends ValueIntNumbers {
 
         public int getDataType() {
             return FORMAT_UNSIGNED_SHORT;
@@ -1045,7 +2103,7 @@ public class ExifDriver {
      * Signed shorts (or pants ;-). Only overloads the function which returns it's
      * data type
      */
-    public class ValueSShorts extends ValueNumbers {
+    public static class ValueSShorts extends ValueIntNumbers {
 
         public int getDataType() {
             return FORMAT_SIGNED_SHORT;
@@ -1055,7 +2113,7 @@ public class ExifDriver {
     /**
      * Unsigned longs. Only overloads the function which returns it's data type
      */
-    public class ValueLongs extends ValueNumbers {
+    public static class ValueLongs extends ValueIntNumbers {
 
         public ValueLongs() {
             super();
@@ -1073,7 +2131,7 @@ public class ExifDriver {
     /**
      * Signed longs. Only overloads the function which returns it's data type
      */
-    public class ValueSLongs extends ValueNumbers {
+    public static class ValueSLongs extends ValueIntNumbers {
 
         public ValueSLongs() {
             super();
@@ -1089,18 +2147,55 @@ public class ExifDriver {
     }
 
     /**
-     * Base class for rationals. Implements writting method, which is basically
-     * the same for signed and unsigned variant.
+     * Base class for rationals. Components are stored flat, numerator of the
+     * i-th rational at index 2*i and its denominator at 2*i+1. Implements
+     * writting method, which is basically the same for signed and unsigned
+     * variant.
      */
-    public abstract class ValueRationals extends ExifValue<int[]> {
+    public static abstract class ValueRationals extends ExifValue<long[]> {
+
+        @Override
+        public int getCount() {
+            return components.length / 2;
+        }
+
+        /**
+         * Numerator of the given rational
+         *
+         * @param _index
+         *          Index of the rational
+         * @return Numerator
+         */
+        public long getNumerator(int _index) {
+            return components[2 * _index];
+        }
+
+        /**
+         * Denominator of the given rational
+         *
+         * @param _index
+         *          Index of the rational
+         * @return Denominator
+         */
+        public long getDenominator(int _index) {
+            return components[2 * _index + 1];
+        }
+
+        /**
+         * The given rational as a floating point number
+         *
+         * @param _index
+         *          Index of the rational
+         * @return Numerator divided by denominator
+         */
+        public double getDouble(int _index) {
+            return (double) getNumerator(_index) / getDenominator(_index);
+        }
 
         @Override
         protected void writeValues(byte[] _data, int _offset) {
             for (int i = 0; i < components.length; i++) {
-                writeNumber(_data, _offset + i * getComponentSize(), components[i][0],
-                        getComponentSize() / 2);
-                writeNumber(_data, _offset + i * getComponentSize()
-                        + getComponentSize() / 2, components[i][1], getComponentSize() / 2);
+                writeNumber(_data, _offset + i * 4, (int) components[i], 4);
             }
         }
     }
@@ -1108,24 +2203,23 @@ public class ExifDriver {
     /**
      * Unsigned rationals. Implements the read method and the 'getDataType' method
      */
-    public class ValueURationals extends ValueRationals {
+    public static class ValueURationals extends ValueRationals {
 
         /**
-         * Read pairs of unsigned values from source byte array.
+         * Read pairs of unsigned values from source buffer.
          *
          * @param _data
-         *          Byte array to read from
+         *          Buffer to read from
          * @param _offset
          *          Offset where to start
          * @param _count
          *          Count of rationals values
-         * @return Array of two-values arrays represeting rationals
+         * @return Flat array of numerators and denominators
          */
-        private int[][] readUnsigned(byte[] _data, int _offset, int _count) {
-            int[][] result = new int[_count][2];
-            for (int v = 0; v < _count; v++) {
-                result[v][0] = readUInt(_data, _offset + 8 * v, 4);
-                result[v][1] = readUInt(_data, _offset + 8 * v + 4, 4);
+        private long[] readUnsigned(ByteBuffer _data, int _offset, int _count) {
+            long[] result = new long[_count * 2];
+            for (int v = 0; v < result.length; v++) {
+                result[v] = readUInt(_data, _offset + 4 * v, 4) & 0xFFFFFFFFL;
             }
             return result;
         }
@@ -1136,26 +2230,25 @@ public class ExifDriver {
     }
 
     /**
-     * Unsigned rationals. Implements the read method and the 'getDataType' method
+     * Signed rationals. Implements the read method and the 'getDataType' method
      */
-    public class ValueSRationals extends ValueRationals {
+    public static class ValueSRationals extends ValueRationals {
 
         /**
-         * Read pairs of signed values from source byte array.
+         * Read pairs of signed values from source buffer.
          *
          * @param _data
-         *          Byte array to read from
+         *          Buffer to read from
          * @param _offset
          *          Offset where to start
          * @param _count
          *          Count of rationals values
-         * @return Array of two-values arrays represeting rationals
+         * @return Flat array of numerators and denominators
          */
-        private int[][] readSigned(byte[] _data, int _offset, int _count) {
-            int[][] result = new int[_count][2];
-            for (int v = 0; v < _count; v++) {
-                result[v][0] = readSInt(_data, _offset + 8 * v, 4);
-                result[v][1] = readSInt(_data, _offset + 8 * v + 4, 4);
+        private long[] readSigned(ByteBuffer _data, int _offset, int _count) {
+            long[] result = new long[_count * 2];
+            for (int v = 0; v < result.length; v++) {
+                result[v] = readSInt(_data, _offset + 4 * v, 4);
             }
             return result;
         }
@@ -1165,23 +2258,43 @@ public class ExifDriver {
         }
     }
 
-    public HashMap<Integer, ExifValue> getIfd0() {
+    /*
+     * Compact tables behind the Map views, for package code iterating all the
+     * entries
+     */
+    Ifd getIfd0Table() {
         return ifd0;
     }
 
-    public HashMap<Integer, ExifValue> getIfdExif() {
+    Ifd getIfdExifTable() {
         return ifdExif;
     }
 
-    public HashMap<Integer, ExifValue> getIfdGps() {
+    Ifd getIfdGpsTable() {
         return ifdGps;
     }
 
-    public HashMap<Integer, ExifValue> getIfd1() {
+    Ifd getIfd1Table() {
         return ifd1;
     }
 
-    public HashMap<Integer, ExifValue> getIfdIOper() {
-        return ifdIOper;
+    public Map<Integer, ExifValue> getIfd0() {
+        return ifd0.asMap();
+    }
+
+    public Map<Integer, ExifValue> getIfdExif() {
+        return ifdExif.asMap();
+    }
+
+    public Map<Integer, ExifValue> getIfdGps() {
+        return ifdGps.asMap();
+    }
+
+    public Map<Integer, ExifValue> getIfd1() {
+        return ifd1.asMap();
+    }
+
+    public Map<Integer, ExifValue> getIfdIOper() {
+        return ifdIOper.asMap();
     }
 }
@@ -0,0 +1,145 @@
+package org.gisandchips.ctmdroid.exif;
+
+import android.util.LruCache;
+
+import java.io.File;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Bounded in-memory cache of parsed lazy ExifDriver instances, so screens
+ * showing the same image do not parse it again. Entries are keyed by the
+ * absolute path and remember the file length and modification time; an entry
+ * whose file has changed is dropped and parsed again. The default cache also
+ * drops the entry of each file written by ExifDriver.save().
+ *
+ * The cached drivers are never handed out: every get() returns a copy. The
+ * cached driver holds a heap copy of the Exif data instead of the mapped
+ * file, so a save of one copy does not change what the other copies and the
+ * cache decode. A copy decodes its own values, so a caller may edit it
+ * without affecting other callers. A copy which was handed out before
+ * another copy of the same file moved the Exif segment refuses to save.
+ */
+public class ExifDriverCache {
+
+    // Default budget for parsed metadata
+    private static final int DEFAULT_MAX_BYTES = 4 * 1024 * 1024;
+    private static ExifDriverCache defaultCache;
+
+    private final LruCache<String, Entry> cache;
+    private final AtomicLong hits = new AtomicLong(0);
+    private final AtomicLong misses = new AtomicLong(0);
+
+    /**
+     * Cached driver and the state of the file it was parsed from
+     */
+    private static class Entry {
+        final ExifDriver driver;
+        final long length;
+        final long lastModified;
+        final int size;
+
+        Entry(ExifDriver _driver, long _length, long _lastModified) {
+            driver = _driver;
+            length = _length;
+            lastModified = _lastModified;
+            size = _driver.getApproximateSize();
+        }
+    }
+
+    /**
+     * @param _maxBytes
+     *          Memory budget of the cached drivers
+     */
+    public ExifDriverCache(int _maxBytes) {
+        cache = new LruCache<String, Entry>(_maxBytes) {
+            @Override
+            protected int sizeOf(String _key, Entry _value) {
+                return _value.size;
+            }
+        };
+    }
+
+    /**
+     * Cache shared by the application, which is invalidated by
+     * ExifDriver.save()
+     *
+     * @return Default cache
+     */
+    public static synchronized ExifDriverCache getDefault() {
+        if (defaultCache == null) {
+            final ExifDriverCache cache = new ExifDriverCache(DEFAULT_MAX_BYTES);
+            ExifDriver.addSaveListener(new ExifDriver.SaveListener() {
+                @Override
+                public void onSaved(String _file) {
+                    cache.invalidate(_file);
+                }
+            });
+            defaultCache = cache;
+        }
+        return defaultCache;
+    }
+
+    /**
+     * Get driver of given image, parsing the file only if it is not cached or
+     * has changed since it was cached
+     *
+     * @param _file
+     *          image file
+     * @return Lazy ExifDriver owned by the caller or null if the file can't
+     *         be parsed
+     */
+    public ExifDriver get(String _file) {
+        File file = new File(_file);
+        String key = file.getAbsolutePath();
+        long length = file.length();
+        long lastModified = file.lastModified();
+        Entry entry = cache.get(key);
+        if (entry != null && entry.length == length
+                && entry.lastModified == lastModified) {
+            hits.incrementAndGet();
+            return entry.driver.copy();
+        }
+        misses.incrementAndGet();
+        ExifDriver driver = ExifDriver.getInstance(_file, true);
+        if (driver == null) {
+            cache.remove(key);
+            return null;
+        }
+        driver.detachFromFile();
+        cache.put(key, new Entry(driver, length, lastModified));
+        return driver.copy();
+    }
+
+    /**
+     * Drop the entry of given file
+     *
+     * @param _file
+     *          image file
+     */
+    public void invalidate(String _file) {
+        cache.remove(new File(_file).getAbsolutePath());
+    }
+
+    public void clear() {
+        cache.evictAll();
+    }
+
+    public long getHitCount() {
+        return hits.get();
+    }
+
+    public long getMissCount() {
+        return misses.get();
+    }
+
+    /**
+     * @return Approximate memory held by the cached drivers in bytes
+     */
+    public int getSize() {
+        return cache.size();
+    }
+
+    public int getMaxSize() {
+        return cache.maxSize();
+    }
+}
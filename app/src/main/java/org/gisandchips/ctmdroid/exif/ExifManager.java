@@ -3,9 +3,12 @@ package org.gisandchips.ctmdroid.exif;
 import android.content.Context;
 
 import java.text.SimpleDateFormat;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Date;
-import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TimeZone;
 
 import org.gisandchips.ctmdroid.R;
 import org.gisandchips.ctmdroid.exif.ExifDriver.ExifValue;
@@ -18,26 +21,94 @@ import org.gisandchips.ctmdroid.exif.ExifDriver.ValueUndefined;
 public class ExifManager {
     ExifDriver driver;
     Context context;
+    // Labels and resource strings of the current locale
+    private ExifTagFormatters formatters;
+    // Format of displayed dates, created on first use
+    private SimpleDateFormat dateTimeFormat;
 
     public ExifManager(ExifDriver _driver, Context _context) {
         driver = _driver;
         context = _context;
+        formatters = ExifTagFormatters.getInstance(_context);
     }
 
-    private byte[] convertByteArray(Byte[] _byte) {
-        byte[] result = new byte[_byte.length];
-        for (int i = 0; i < result.length; i++) {
-            result[i] = _byte[i];
-        }
+    private String text(int _resId) {
+        return formatters.getText(_resId);
+    }
+
+    /**
+     * Describe all the tags present in the image in one pass over the
+     * directories, in order IFD0, IFDExif, IFDGps and IFD1
+     *
+     * @return HR (human readable), localized String pairs - tag_name,tag value
+     *         - of the tags, which can be presented
+     */
+    public List<String[]> describeAll() {
+        List<String[]> result = new ArrayList<String[]>();
+        describeIfd(result, driver.getIfd0Table(), ExifTagFormatters.IFD_IMAGE,
+                driver.getIfd0());
+        describeIfd(result, driver.getIfdExifTable(), ExifTagFormatters.IFD_EXIF,
+                driver.getIfdExif());
+        describeIfd(result, driver.getIfdGpsTable(), ExifTagFormatters.IFD_GPS,
+                driver.getIfdGps());
+        describeIfd(result, driver.getIfd1Table(), ExifTagFormatters.IFD_IMAGE,
+                driver.getIfd1());
         return result;
     }
 
-    private Byte[] convertByteArray(byte[] _byte) {
-        Byte[] result = new Byte[_byte.length];
-        for (int i = 0; i < result.length; i++) {
-            result[i] = _byte[i];
+    private void describeIfd(List<String[]> _result, ExifDriver.Ifd _table,
+                             int _formatTable, Map<Integer, ExifValue> _ifd) {
+        for (int i = 0; i < _table.size(); i++) {
+            int tag = _table.tagAt(i);
+            String[] pair;
+            switch (_formatTable) {
+                case ExifTagFormatters.IFD_EXIF:
+                    pair = getExifRelated(tag);
+                    break;
+                case ExifTagFormatters.IFD_GPS:
+                    pair = getGpsRelated(tag);
+                    break;
+                default:
+                    pair = getImageRelated(_ifd, tag);
+                    break;
+            }
+            if (pair != null) {
+                _result.add(pair);
+            }
         }
-        return result;
+    }
+
+    /**
+     * Describe tag with one of the generic formats of ExifTagFormatters
+     *
+     * @return String pair or null if the tag is not in the table or has no
+     *         value
+     */
+    private String[] describe(int _formatTable, Map<Integer, ExifValue> _ifd, int _tag) {
+        String hrValue;
+        switch (ExifTagFormatters.getFormat(_formatTable, _tag)) {
+            case ExifTagFormatters.FORMAT_STRING:
+                hrValue = getString(_ifd, _tag);
+                break;
+            case ExifTagFormatters.FORMAT_NUMBERS:
+                hrValue = getNumbersString(_ifd, _tag);
+                break;
+            case ExifTagFormatters.FORMAT_RATIONALS:
+                hrValue = getRationalsString(_ifd, _tag);
+                break;
+            case ExifTagFormatters.FORMAT_DATETIME:
+                hrValue = getDateTime(_ifd, _tag);
+                break;
+            case ExifTagFormatters.FORMAT_DIRECTION_REF:
+                hrValue = getDirectionRef(_tag);
+                break;
+            default:
+                return null;
+        }
+        if (hrValue.equals("")) {
+            return null;
+        }
+        return new String[] { formatters.getLabel(_formatTable, _tag), hrValue };
     }
 
     /**
@@ -77,44 +148,35 @@ public class ExifManager {
      * @return two-member String array. 0-th item holds tag name, 1-st holds
      *         value
      */
-    private String[] getImageRelated(HashMap<Integer, ExifValue> _ifd, int _tag) {
+    private String[] getImageRelated(Map<Integer, ExifValue> _ifd, int _tag) {
+        if (ExifTagFormatters.getFormat(ExifTagFormatters.IFD_IMAGE, _tag)
+                != ExifTagFormatters.FORMAT_NONE) {
+            return describe(ExifTagFormatters.IFD_IMAGE, _ifd, _tag);
+        }
         String[] result = null;
         String hrTag = "";
         String hrValue = "";
         switch (_tag) {
             // IFD0-related tags, some of them are presented in IFD1 too
-            case ExifDriver.TAG_IMAGE_WIDTH:
-                hrTag = (String) context.getText(R.string.exif_tag_width);
-                hrValue = getNumbersString(_ifd, _tag);
-                break;
-            case ExifDriver.TAG_IMAGE_HEIGHT:
-                hrTag = (String) context.getText(R.string.exif_tag_height);
-                hrValue = getNumbersString(_ifd, _tag);
-                break;
-            case ExifDriver.TAG_BITS_PER_SAMPLE:
-                hrTag = (String) context.getText(R.string.exif_tag_bits_per_sample);
-                hrValue = getNumbersString(_ifd, _tag);
-                break;
             case ExifDriver.TAG_COMPRESSION:
-                hrTag = (String) context.getText(R.string.exif_tag_compression);
+                hrTag = text(R.string.exif_tag_compression);
                 Integer compression = getNumber(_ifd, _tag);
                 if (compression != null) {
                     if (compression == 1) {
-                        hrValue = (String) context.getText(R.string.exif_value_uncompressed);
+                        hrValue = text(R.string.exif_value_uncompressed);
                     } else if (compression == 6) {
                         hrValue = "JPEG ("
-                                + (String) context.getText(R.string.exif_value_thumbnails_only)
+                                + text(R.string.exif_value_thumbnails_only)
                                 + ")";
                     } else {
-                        hrValue = (String) context.getText(R.string.exif_value_unknown);
+                        hrValue = text(R.string.exif_value_unknown);
                     }
                 } else {
                     hrValue = "JPEG";
                 }
                 break;
             case ExifDriver.TAG_PHOTOMETRIC_INTERPRETATION:
-                hrTag = (String) context
-                        .getText(R.string.exif_tag_photometric_interpretation);
+                hrTag = text(R.string.exif_tag_photometric_interpretation);
                 Integer phInter = getNumber(_ifd, _tag);
                 if (phInter != null) {
                     if (phInter == 1) {
@@ -122,59 +184,54 @@ public class ExifManager {
                     } else if (phInter == 6) {
                         hrValue = "YCbCr";
                     } else {
-                        hrValue = (String) context.getText(R.string.exif_value_unknown);
+                        hrValue = text(R.string.exif_value_unknown);
                     }
                 }
                 break;
             case ExifDriver.TAG_ORIENTATION:
-                hrTag = (String) context.getText(R.string.exif_tag_orientation);
+                hrTag = text(R.string.exif_tag_orientation);
                 Integer orientation = getNumber(_ifd, _tag);
                 if (orientation != null) {
                     switch (orientation) {
                         case 1:
-                            hrValue = (String) context.getText(R.string.exif_value_normal);
+                            hrValue = text(R.string.exif_value_normal);
                             break;
                         case 2:
-                            hrValue = (String) context
-                                    .getText(R.string.exif_value_flip_horizontal);
+                            hrValue = text(R.string.exif_value_flip_horizontal);
                             break;
                         case 3:
-                            hrValue = (String) context.getText(R.string.exif_value_rotate180);
+                            hrValue = text(R.string.exif_value_rotate180);
                             break;
                         case 4:
-                            hrValue = (String) context.getText(R.string.exif_value_flip_vertical);
+                            hrValue = text(R.string.exif_value_flip_vertical);
                             break;
                         case 5:
-                            hrValue = (String) context.getText(R.string.exif_value_transpose);
+                            hrValue = text(R.string.exif_value_transpose);
                             break;
                         case 6:
-                            hrValue = (String) context.getText(R.string.exif_value_rotate90);
+                            hrValue = text(R.string.exif_value_rotate90);
                             break;
                         case 7:
-                            hrValue = (String) context.getText(R.string.exif_value_transverse);
+                            hrValue = text(R.string.exif_value_transverse);
                             break;
                         case 8:
-                            hrValue = (String) context.getText(R.string.exif_value_rotate270);
+                            hrValue = text(R.string.exif_value_rotate270);
                             break;
                     }
                 }
                 break;
-            case ExifDriver.TAG_SAMPLES_PER_PIXEL:
-                hrTag = (String) context.getText(R.string.exif_tag_samples_per_pixel);
-                hrValue = getNumbersString(_ifd, _tag);
-                break;
             case ExifDriver.TAG_PLANAR_CONFIGURATION:
-                hrTag = (String) context.getText(R.string.exif_tag_planar_configuration);
+                hrTag = text(R.string.exif_tag_planar_configuration);
                 Integer planarConf = getNumber(_ifd, _tag);
                 if (planarConf != null && planarConf == 2) {
-                    hrValue = (String) context.getText(R.string.exif_value_planar);
+                    hrValue = text(R.string.exif_value_planar);
                 } else {
-                    hrValue = (String) context.getText(R.string.exif_value_chunky);
+                    hrValue = text(R.string.exif_value_chunky);
                 }
                 break;
             case ExifDriver.TAG_YCBCR_SUBSAMPLING:
-                hrTag = (String) context.getText(R.string.exif_tag_ycbcr_subsampling);
-                Integer[] ycbcrSubs = getNumbers(_ifd, _tag);
+                hrTag = text(R.string.exif_tag_ycbcr_subsampling);
+                int[] ycbcrSubs = getNumbers(_ifd, _tag);
                 if (ycbcrSubs != null && ycbcrSubs.length == 2) {
                     if (ycbcrSubs[0] == 2 && ycbcrSubs[1] == 1) {
                         hrValue = "YCbCr4:2:2";
@@ -184,27 +241,27 @@ public class ExifManager {
                 }
                 break;
             case ExifDriver.TAG_YCBCRPOSITIONING:
-                hrTag = (String) context.getText(R.string.exif_tag_ycbcr_positioning);
+                hrTag = text(R.string.exif_tag_ycbcr_positioning);
                 Integer ycbcrPos = getNumber(_ifd, _tag);
                 if (ycbcrPos != null && ycbcrPos == 2) {
-                    hrValue = (String) context.getText(R.string.exif_value_co_sited);
+                    hrValue = text(R.string.exif_value_co_sited);
                 } else {
-                    hrValue = (String) context.getText(R.string.exif_value_centered);
+                    hrValue = text(R.string.exif_value_centered);
                 }
                 break;
             case ExifDriver.TAG_XRESOLUTION:
-                hrTag = (String) context.getText(R.string.exif_tag_xresolution);
-                int[] xRes = getRational(_ifd, _tag);
+                hrTag = text(R.string.exif_tag_xresolution);
+                long[] xRes = getRational(_ifd, _tag);
                 if (xRes != null && xRes.length == 2) {
                     hrValue = xRes[0] + ":" + xRes[1];
                 } else {
                     hrValue = "1:75 ("
-                            + (String) context.getText(R.string.exif_value_assumed) + ")";
+                            + text(R.string.exif_value_assumed) + ")";
                 }
                 break;
             case ExifDriver.TAG_YRESOLUTION:
-                hrTag = (String) context.getText(R.string.exif_tag_yresolution);
-                int[] yRes = getRational(_ifd, _tag);
+                hrTag = text(R.string.exif_tag_yresolution);
+                long[] yRes = getRational(_ifd, _tag);
                 if (yRes != null && yRes.length == 2) {
                     hrValue = yRes[0] + ":" + yRes[1];
                 } else {
@@ -213,95 +270,28 @@ public class ExifManager {
                         hrValue = yRes[0] + ":" + yRes[1];
                     } else {
                         hrValue = "1:75 ("
-                                + (String) context.getText(R.string.exif_value_assumed) + ")";
+                                + text(R.string.exif_value_assumed) + ")";
                     }
                 }
                 break;
             case ExifDriver.TAG_RESOLUTION_UNIT:
-                hrTag = (String) context.getText(R.string.exif_tag_resolution_unit);
+                hrTag = text(R.string.exif_tag_resolution_unit);
                 Integer resUnit = getNumber(_ifd, _tag);
                 if (resUnit != null && resUnit == 3) {
-                    hrValue = (String) context.getText(R.string.exif_value_inches);
+                    hrValue = text(R.string.exif_value_inches);
                 } else {
-                    hrValue = (String) context.getText(R.string.exif_value_centimeters);
+                    hrValue = text(R.string.exif_value_centimeters);
                 }
                 break;
-            case ExifDriver.TAG_STRIP_OFFSETS:
-                hrTag = (String) context.getText(R.string.exif_tag_strip_offsets);
-                hrValue = getNumbersString(_ifd, _tag);
-                break;
-            case ExifDriver.TAG_ROWS_PER_STRIP:
-                hrTag = (String) context.getText(R.string.exif_tag_rows_per_strip);
-                hrValue = getNumbersString(_ifd, _tag);
-                break;
-            case ExifDriver.TAG_STRIP_BYTECOUNTS:
-                hrTag = (String) context.getText(R.string.exif_tag_strip_byte_counts);
-                hrValue = getNumbersString(_ifd, _tag);
-                break;
-            case ExifDriver.TAG_JPEG_INTERCHANGE_FORMAT:
-                hrTag = (String) context
-                        .getText(R.string.exif_tag_jpeg_interchange_format);
-                hrValue = getNumbersString(_ifd, _tag);
-                break;
-            case ExifDriver.TAG_JPEG_INTERCHANGE_FORMAT_LENGTH:
-                hrTag = (String) context
-                        .getText(R.string.exif_tag_jpeg_interchange_format_length);
-                hrValue = getNumbersString(_ifd, _tag);
-                break;
-            case ExifDriver.TAG_TRANSFER_FUNCTION:
-                hrTag = (String) context.getText(R.string.exif_tag_transfer_function);
-                hrValue = getNumbersString(_ifd, _tag);
-                break;
-            case ExifDriver.TAG_WHITE_POINT:
-                hrTag = (String) context.getText(R.string.exif_tag_white_point);
-                hrValue = getRationalsString(_ifd, _tag);
-                break;
-            case ExifDriver.TAG_PRIMARY_CHROMATICITIES:
-                hrTag = (String) context
-                        .getText(R.string.exif_tag_primary_chromaticities);
-                hrValue = getRationalsString(_ifd, _tag);
-                break;
-            case ExifDriver.TAG_YCBCR_COEFICIENTS:
-                hrTag = (String) context.getText(R.string.exif_tag_ycbcr_coeficients);
-                hrValue = getRationalsString(_ifd, _tag);
-                break;
-            case ExifDriver.TAG_REFERENCE_BLACK_WHITE:
-                hrTag = (String) context.getText(R.string.exif_tag_reference_black_white);
-                hrValue = getRationalsString(_ifd, _tag);
-                break;
-            case ExifDriver.TAG_DATETIME:
-                hrTag = (String) context.getText(R.string.exif_tag_datetime);
-                hrValue = getDateTime(_ifd, _tag);
-                break;
-            case ExifDriver.TAG_IMAGE_DESCRIPTION:
-                hrTag = (String) context.getText(R.string.exif_tag_image_description);
-                hrValue = getString(_ifd, _tag);
-                break;
-            case ExifDriver.TAG_MAKE:
-                hrTag = (String) context.getText(R.string.exif_tag_make);
-                hrValue = getString(_ifd, _tag);
-                break;
-            case ExifDriver.TAG_MODEL:
-                hrTag = (String) context.getText(R.string.exif_tag_model);
-                hrValue = getString(_ifd, _tag);
-                break;
-            case ExifDriver.TAG_SOFTWARE:
-                hrTag = (String) context.getText(R.string.exif_tag_software);
-                hrValue = getString(_ifd, _tag);
-                break;
-            case ExifDriver.TAG_ARTIST:
-                hrTag = (String) context.getText(R.string.exif_tag_artist);
-                hrValue = getString(_ifd, _tag);
-                break;
             case ExifDriver.TAG_COPYRIGHT:
-                hrTag = (String) context.getText(R.string.exif_tag_copyright);
+                hrTag = text(R.string.exif_tag_copyright);
                 String[] copyright = getCopyright();
                 if (copyright != null
                         && (copyright[0] != null && !copyright[0].trim().equals(""))
                         || (copyright[1] != null && !copyright[1].trim().equals(""))) {
-                    hrTag = (String) context.getText(R.string.exif_value_author) + ": ";
+                    hrTag = text(R.string.exif_value_author) + ": ";
                     hrTag += "; ";
-                    hrTag += (String) context.getText(R.string.exif_value_editor) + ": ";
+                    hrTag += text(R.string.exif_value_editor) + ": ";
                     hrTag += ". ";
                 }
                 hrValue = getString(_ifd, _tag);
@@ -325,30 +315,25 @@ public class ExifManager {
      *         value
      */
     public String[] getExifRelated(int _tag) {
+        if (ExifTagFormatters.getFormat(ExifTagFormatters.IFD_EXIF, _tag)
+                != ExifTagFormatters.FORMAT_NONE) {
+            return describe(ExifTagFormatters.IFD_EXIF, driver.getIfdExif(), _tag);
+        }
         String[] result = null;
         String hrTag = "";
         String hrValue = "";
         switch (_tag) {
-            case ExifDriver.TAG_EXIF_VERSION:
-                hrTag = (String) context.getText(R.string.exif_tag_exif_version);
-                hrValue = getString(driver.getIfdExif(), _tag);
-                break;
-            case ExifDriver.TAG_FLASHPIX_VERSION:
-                hrTag = (String) context.getText(R.string.exif_tag_flashpix_version);
-                hrValue = getString(driver.getIfdExif(), _tag);
-                break;
             case ExifDriver.TAG_COLOR_SPACE:
-                hrTag = (String) context.getText(R.string.exif_tag_color_space);
+                hrTag = text(R.string.exif_tag_color_space);
                 Integer colorSpace = getNumber(driver.getIfdExif(), _tag);
                 if (colorSpace != null && colorSpace == 1) {
                     hrValue = "sRGB";
                 } else {
-                    hrValue = (String) context.getText(R.string.exif_value_uncalibrated);
+                    hrValue = text(R.string.exif_value_uncalibrated);
                 }
                 break;
             case ExifDriver.TAG_COMPONENT_CONFIGURATION:
-                hrTag = (String) context
-                        .getText(R.string.exif_tag_component_configuration);
+                hrTag = text(R.string.exif_tag_component_configuration);
                 hrValue = getString(driver.getIfdExif(), _tag).replace('0', ' ');
                 hrValue = hrValue.replace('1', 'Y');
                 hrValue = hrValue.replace("2", "Cb");
@@ -357,139 +342,60 @@ public class ExifManager {
                 hrValue = hrValue.replace('5', 'G');
                 hrValue = hrValue.replace('6', 'B');
                 break;
-            case ExifDriver.TAG_COMPRESSED_BITS_PER_PIXEL:
-                hrTag = (String) context.getText(R.string.exif_tag_bits_per_pixel);
-                hrValue = getRationalsString(driver.getIfdExif(), _tag);
-                break;
-            case ExifDriver.TAG_PIXEL_X_DIMENSION:
-                hrTag = (String) context.getText(R.string.exif_tag_pixel_xdimension);
-                hrValue = getNumbersString(driver.getIfdExif(), _tag);
-                break;
-            case ExifDriver.TAG_PIXEL_Y_DIMENSION:
-                hrTag = (String) context.getText(R.string.exif_tag_pixel_ydimension);
-                hrValue = getNumbersString(driver.getIfdExif(), _tag);
-                break;
-            case ExifDriver.TAG_MARKER_NOTE:
-                hrTag = (String) context.getText(R.string.exif_tag_marker_note);
-                hrValue = getString(driver.getIfdExif(), _tag);
-                break;
-            case ExifDriver.TAG_USER_COMMENT:
-                hrTag = (String) context.getText(R.string.exif_tag_user_comment);
-                hrValue = getString(driver.getIfdExif(), _tag);
-                break;
-            case ExifDriver.TAG_RELATED_SOUND_FILE:
-                hrTag = (String) context.getText(R.string.exif_tag_related_audio_file);
-                hrValue = getString(driver.getIfdExif(), _tag);
-                break;
-            case ExifDriver.TAG_DATETIME_ORIGINAL:
-                hrTag = (String) context.getText(R.string.exif_tag_datetime_original);
-                hrValue = getDateTime(driver.getIfdExif(), _tag);
-                break;
-            case ExifDriver.TAG_DATETIME_DIGITIZED:
-                hrTag = (String) context.getText(R.string.exif_tag_datetime_digitized);
-                hrValue = getDateTime(driver.getIfdExif(), _tag);
-                break;
-            case ExifDriver.TAG_SUB_SEC_TIME:
-                // TODO
-                break;
-            case ExifDriver.TAG_SUB_SEC_TIME_ORIGINAL:
-                // TODO
-                break;
-            case ExifDriver.TAG_SUB_SEC_TIME_DIGITIZED:
-                // TODO
-                break;
-            case ExifDriver.TAG_IMAGE_UNIQUE_ID:
-                hrTag = (String) context.getText(R.string.exif_tag_unique_id);
-                hrValue = getString(driver.getIfdExif(), _tag);
-                break;
-            case ExifDriver.TAG_EXPOSURE_TIME:
-                hrTag = (String) context.getText(R.string.exif_tag_exposure_time);
-                hrValue = getRationalsString(driver.getIfdExif(), _tag);
-                break;
-            case ExifDriver.TAG_FNUMBER:
-                hrTag = (String) context.getText(R.string.exif_tag_fnumber);
-                hrValue = getRationalsString(driver.getIfdExif(), _tag);
-                break;
             case ExifDriver.TAG_EXPOSURE_PROGRAM:
-                hrTag = (String) context.getText(R.string.exif_tag_exposure_program);
+                hrTag = text(R.string.exif_tag_exposure_program);
                 Integer exposureProgram = getNumber(driver.getIfdExif(), _tag);
                 if (exposureProgram != null) {
                     switch (exposureProgram) {
                         case 1:
-                            hrValue = (String) context.getText(R.string.exif_value_manual);
+                            hrValue = text(R.string.exif_value_manual);
                             break;
                         case 2:
-                            hrValue = (String) context.getText(R.string.exif_value_normal);
+                            hrValue = text(R.string.exif_value_normal);
                             break;
                         case 3:
-                            hrValue = (String) context
-                                    .getText(R.string.exif_value_aperture_priority);
+                            hrValue = text(R.string.exif_value_aperture_priority);
                             break;
                         case 4:
-                            hrValue = (String) context
-                                    .getText(R.string.exif_value_shutter_priority);
+                            hrValue = text(R.string.exif_value_shutter_priority);
                             break;
                         case 5:
-                            hrValue = (String) context.getText(R.string.exif_value_creative);
+                            hrValue = text(R.string.exif_value_creative);
                             break;
                         case 6:
-                            hrValue = (String) context.getText(R.string.exif_value_action);
+                            hrValue = text(R.string.exif_value_action);
                             break;
                         case 7:
-                            hrValue = (String) context.getText(R.string.exif_value_portrait);
+                            hrValue = text(R.string.exif_value_portrait);
                             break;
                         case 8:
-                            hrValue = (String) context.getText(R.string.exif_value_landscape);
+                            hrValue = text(R.string.exif_value_landscape);
                             break;
                     }
                 }
                 break;
-            case ExifDriver.TAG_SPECTRAL_SENSITIVITY:
-                hrTag = (String) context.getText(R.string.exif_tag_spectral_sensitivity);
-                hrValue = getString(driver.getIfdExif(), _tag);
-                break;
-            case ExifDriver.TAG_ISO_SPEED_RATINGS:
-                hrTag = (String) context.getText(R.string.exif_tag_iso_speed_ratings);
-                hrValue = getNumbersString(driver.getIfdExif(), _tag);
-                break;
             case ExifDriver.TAG_OECF:
                 // TODO
                 break;
-            case ExifDriver.TAG_SHUTTER_SPEED_VALUE:
-                hrTag = (String) context.getText(R.string.exif_tag_shooter_speed_value);
-                hrValue = getRationalsString(driver.getIfdExif(), _tag);
-                break;
-            case ExifDriver.TAG_APERTURE_VALUE:
-                hrTag = (String) context.getText(R.string.exif_tag_aperture_value);
-                hrValue = getRationalsString(driver.getIfdExif(), _tag);
-                break;
             case ExifDriver.TAG_BRIGHTNESS_VALUE:
-                hrTag = (String) context.getText(R.string.exif_tag_brightness_value);
-                int[] brightness = getRational(driver.getIfdExif(), _tag);
+                hrTag = text(R.string.exif_tag_brightness_value);
+                long[] brightness = getRational(driver.getIfdExif(), _tag);
                 if (brightness != null && brightness.length > 0
-                        && brightness[0] == 0xFFFFFFFF) {
-                    hrValue = (String) context.getText(R.string.exif_value_unknown);
+                        && (brightness[0] & 0xFFFFFFFFL) == 0xFFFFFFFFL) {
+                    hrValue = text(R.string.exif_value_unknown);
                 } else {
                     hrValue = getRationalsString(driver.getIfdExif(), _tag);
                 }
                 break;
-            case ExifDriver.TAG_EXPOSURE_BIAS_VALUE:
-                hrTag = (String) context.getText(R.string.exif_tag_exposure_bias_value);
-                hrValue = getRationalsString(driver.getIfdExif(), _tag);
-                break;
-            case ExifDriver.TAG_MAX_APERTURE_VALUE:
-                hrTag = (String) context.getText(R.string.exif_tag_max_aperture_value);
-                hrValue = getRationalsString(driver.getIfdExif(), _tag);
-                break;
             case ExifDriver.TAG_SUBJECT_DISTANCE:
-                hrTag = (String) context.getText(R.string.exif_tag_subject_distance);
-                int[] subjDistance = getRational(driver.getIfdExif(), _tag);
+                hrTag = text(R.string.exif_tag_subject_distance);
+                long[] subjDistance = getRational(driver.getIfdExif(), _tag);
                 if (subjDistance != null && subjDistance.length > 0) {
-                    if (subjDistance[0] == 0xFFFFFFFF) {
-                        hrValue = (String) context.getText(R.string.exif_value_infinity);
+                    if ((subjDistance[0] & 0xFFFFFFFFL) == 0xFFFFFFFFL) {
+                        hrValue = text(R.string.exif_value_infinity);
                         break;
                     } else if (subjDistance[0] == 0) {
-                        hrValue = (String) context.getText(R.string.exif_value_unknown);
+                        hrValue = text(R.string.exif_value_unknown);
                         break;
                     }
                 } else {
@@ -497,89 +403,80 @@ public class ExifManager {
                 }
                 break;
             case ExifDriver.TAG_METERING_MODE:
-                hrTag = (String) context.getText(R.string.exif_tag_metering_mode);
+                hrTag = text(R.string.exif_tag_metering_mode);
                 Integer meteringMode = getNumber(driver.getIfdExif(), _tag);
                 if (meteringMode != null) {
                     switch (meteringMode) {
                         case 1:
-                            hrValue = (String) context.getText(R.string.exif_value_average);
+                            hrValue = text(R.string.exif_value_average);
                             break;
                         case 2:
-                            hrValue = (String) context
-                                    .getText(R.string.exif_value_center_weighted_average);
+                            hrValue = text(R.string.exif_value_center_weighted_average);
                             break;
                         case 3:
-                            hrValue = (String) context.getText(R.string.exif_value_spot);
+                            hrValue = text(R.string.exif_value_spot);
                             break;
                         case 4:
-                            hrValue = (String) context.getText(R.string.exif_value_multispot);
+                            hrValue = text(R.string.exif_value_multispot);
                             break;
                         case 5:
-                            hrValue = (String) context.getText(R.string.exif_value_pattern);
+                            hrValue = text(R.string.exif_value_pattern);
                             break;
                         case 6:
-                            hrValue = (String) context.getText(R.string.exif_value_partial);
+                            hrValue = text(R.string.exif_value_partial);
                             break;
                         case 255:
-                            hrValue = (String) context.getText(R.string.exif_value_other);
+                            hrValue = text(R.string.exif_value_other);
                             break;
                     }
                 }
                 break;
             case ExifDriver.TAG_LIGHT_SOURCE:
-                hrTag = (String) context.getText(R.string.exif_tag_light_source);
+                hrTag = text(R.string.exif_tag_light_source);
                 Integer lightSource = getNumber(driver.getIfdExif(), _tag);
                 if (lightSource != null) {
                     switch (lightSource) {
                         case 1:
-                            hrValue = (String) context.getText(R.string.exif_value_daylight);
+                            hrValue = text(R.string.exif_value_daylight);
                             break;
                         case 2:
-                            hrValue = (String) context.getText(R.string.exif_value_fluorescent);
+                            hrValue = text(R.string.exif_value_fluorescent);
                             break;
                         case 3:
-                            hrValue = (String) context.getText(R.string.exif_value_tungsten);
+                            hrValue = text(R.string.exif_value_tungsten);
                             break;
                         case 4:
-                            hrValue = (String) context.getText(R.string.exif_value_flash);
+                            hrValue = text(R.string.exif_value_flash);
                             break;
                         case 9:
-                            hrValue = (String) context.getText(R.string.exif_value_fine_weather);
+                            hrValue = text(R.string.exif_value_fine_weather);
                             break;
                         case 10:
-                            hrValue = (String) context
-                                    .getText(R.string.exif_value_cloudy_weather);
+                            hrValue = text(R.string.exif_value_cloudy_weather);
                             break;
                         case 11:
-                            hrValue = (String) context.getText(R.string.exif_value_shade);
+                            hrValue = text(R.string.exif_value_shade);
                             break;
                         case 12:
-                            hrValue = (String) context
-                                    .getText(R.string.exif_value_daylight_fluorescent);
+                            hrValue = text(R.string.exif_value_daylight_fluorescent);
                             break;
                         case 13:
-                            hrValue = (String) context
-                                    .getText(R.string.exif_value_day_white_fluorescent);
+                            hrValue = text(R.string.exif_value_day_white_fluorescent);
                             break;
                         case 14:
-                            hrValue = (String) context
-                                    .getText(R.string.exif_value_cool_white_fluorescent);
+                            hrValue = text(R.string.exif_value_cool_white_fluorescent);
                             break;
                         case 15:
-                            hrValue = (String) context
-                                    .getText(R.string.exif_value_white_fluorescent);
+                            hrValue = text(R.string.exif_value_white_fluorescent);
                             break;
                         case 17:
-                            hrValue = (String) context
-                                    .getText(R.string.exif_value_standard_light_A);
+                            hrValue = text(R.string.exif_value_standard_light_A);
                             break;
                         case 18:
-                            hrValue = (String) context
-                                    .getText(R.string.exif_value_standard_light_B);
+                            hrValue = text(R.string.exif_value_standard_light_B);
                             break;
                         case 19:
-                            hrValue = (String) context
-                                    .getText(R.string.exif_value_standard_light_C);
+                            hrValue = text(R.string.exif_value_standard_light_C);
                             break;
                         case 20:
                             hrValue = "D55";
@@ -594,14 +491,13 @@ public class ExifManager {
                             hrValue = "D50";
                             break;
                         case 24:
-                            hrValue = (String) context
-                                    .getText(R.string.exif_value_iso_studio_tungsten);
+                            hrValue = text(R.string.exif_value_iso_studio_tungsten);
                             break;
                     }
                 }
                 break;
             case ExifDriver.TAG_FLASH:
-                hrTag = (String) context.getText(R.string.exif_tag_flash);
+                hrTag = text(R.string.exif_tag_flash);
                 Integer flash = getNumber(driver.getIfdExif(), _tag);
                 if (flash != null) {
                     int flashFired = flash & 0x01;
@@ -610,121 +506,74 @@ public class ExifManager {
                     int flashFunction = (flash & 0x20)>>5;
                     int flashRedEye = (flash & 0x40)>>6;
                     if (flashFunction >1) {
-                        hrValue += (String) context
-                                .getText(R.string.exif_value_flash_not_present) + ";";
+                        hrValue += text(R.string.exif_value_flash_not_present) + ";";
                     } else {
-                        hrValue += (String) context
-                                .getText(R.string.exif_value_flash_present) + ";";
+                        hrValue += text(R.string.exif_value_flash_present) + ";";
                     }
                     if (flashFired > 0) {
-                        hrValue += (String) context.getText(R.string.exif_value_flash_fired)
+                        hrValue += text(R.string.exif_value_flash_fired)
                                 + ";";
                     } else {
-                        hrValue += (String) context
-                                .getText(R.string.exif_value_flash_did_not_fire) + ";";
+                        hrValue += text(R.string.exif_value_flash_did_not_fire) + ";";
                     }
                     switch (flashReturn) {
                         case 0:
-                            hrValue += (String) context
-                                    .getText(R.string.exif_value_strobe_no_function) + ";";
+                            hrValue += text(R.string.exif_value_strobe_no_function) + ";";
                             break;
                         case 2:
-                            hrValue += (String) context
-                                    .getText(R.string.exif_value_strobe_not_detected) + ";";
+                            hrValue += text(R.string.exif_value_strobe_not_detected) + ";";
                             break;
                         case 3:
-                            hrValue += (String) context
-                                    .getText(R.string.exif_value_strobe_detected) + ";";
+                            hrValue += text(R.string.exif_value_strobe_detected) + ";";
                             break;
                     }
                     switch (flashMode) {
                         case 1:
-                            hrValue += (String) context
-                                    .getText(R.string.exif_value_compulsory_finning) + ";";
+                            hrValue += text(R.string.exif_value_compulsory_finning) + ";";
                             break;
                         case 2:
-                            hrValue += (String) context
-                                    .getText(R.string.exif_value_compulsory_suppression) + ";";
+                            hrValue += text(R.string.exif_value_compulsory_suppression) + ";";
                             break;
                         case 3:
-                            hrValue += (String) context.getText(R.string.exif_value_auto) + ";";
+                            hrValue += text(R.string.exif_value_auto) + ";";
                             break;
                     }
                     if (flashRedEye > 0) {
-                        hrValue += (String) context
-                                .getText(R.string.exif_value_red_eye_supported) + ".";
+                        hrValue += text(R.string.exif_value_red_eye_supported) + ".";
                     } else {
-                        hrValue += (String) context
-                                .getText(R.string.exif_value_red_eye_not_supported) + ".";
+                        hrValue += text(R.string.exif_value_red_eye_not_supported) + ".";
                     }
                 }
                 break;
-            case ExifDriver.TAG_FOCAL_LENGTH:
-                hrTag = (String) context.getText(R.string.exif_tag_focal_length);
-                hrValue = getRationalsString(driver.getIfdExif(), _tag);
-                break;
-            case ExifDriver.TAG_SUBJECT_AREA:
-                hrTag = (String) context.getText(R.string.exif_tag_subject_area);
-                hrValue = getNumbersString(driver.getIfdExif(), _tag);
-                break;
-            case ExifDriver.TAG_FLASH_ENERGY:
-                hrTag = (String) context.getText(R.string.exif_tag_flash_energy);
-                hrValue = getRationalsString(driver.getIfdExif(), _tag);
-                break;
             case ExifDriver.TAG_SPATIAL_FREQUENCY_RESPONSE:
                 // TODO
                 break;
-            case ExifDriver.TAG_FOCAL_PLANE_X_RESOLUTION:
-                hrTag = (String) context
-                        .getText(R.string.exif_tag_focal_plane_x_resolution);
-                hrValue = getRationalsString(driver.getIfdExif(), _tag);
-                break;
-            case ExifDriver.TAG_FOCAL_PLANE_Y_RESOLUTION:
-                hrTag = (String) context
-                        .getText(R.string.exif_tag_focal_plane_y_resolution);
-                hrValue = getRationalsString(driver.getIfdExif(), _tag);
-                break;
             case ExifDriver.TAG_FOCAL_PLANE_RESOLUTION_UNIT:
-                hrTag = (String) context
-                        .getText(R.string.exif_tag_focal_plane_resolution_unit);
-                hrValue = (String) context.getText(R.string.exif_value_inches);
-                break;
-            case ExifDriver.TAG_SUBJECT_LOCATION:
-                hrTag = (String) context.getText(R.string.exif_tag_subject_location);
-                hrValue = getNumbersString(driver.getIfdExif(), _tag);
-                break;
-            case ExifDriver.TAG_EXPOSURE_INDEX:
-                hrTag = (String) context.getText(R.string.exif_tag_exposure_index);
-                hrValue = getRationalsString(driver.getIfdExif(), _tag);
+                hrTag = text(R.string.exif_tag_focal_plane_resolution_unit);
+                hrValue = text(R.string.exif_value_inches);
                 break;
             case ExifDriver.TAG_SENSING_METHOD:
-                hrTag = (String) context.getText(R.string.exif_tag_sensing_method);
+                hrTag = text(R.string.exif_tag_sensing_method);
                 Integer sensingMethod = getNumber(driver.getIfdExif(), _tag);
                 if (sensingMethod != null) {
                     switch (sensingMethod) {
                         case 2:
-                            hrValue = (String) context
-                                    .getText(R.string.exif_value_one_chip_area_sensor);
+                            hrValue = text(R.string.exif_value_one_chip_area_sensor);
                             break;
                         case 3:
-                            hrValue = (String) context
-                                    .getText(R.string.exif_value_two_chip_area_sensor);
+                            hrValue = text(R.string.exif_value_two_chip_area_sensor);
                             break;
                         case 4:
-                            hrValue = (String) context
-                                    .getText(R.string.exif_value_three_chip_area_sensor);
+                            hrValue = text(R.string.exif_value_three_chip_area_sensor);
                             break;
                         case 5:
-                            hrValue = (String) context
-                                    .getText(R.string.exif_value_sequential_area_sensor);
+                            hrValue = text(R.string.exif_value_sequential_area_sensor);
                             break;
                         case 7:
-                            hrValue = (String) context
-                                    .getText(R.string.exif_value_trilinear_sensor);
+                            hrValue = text(R.string.exif_value_trilinear_sensor);
                             break;
                         case 8:
-                            hrValue = (String) context
-                                    .getText(R.string.exif_value_sequential_linear_sensor);
+                            hrValue = text(R.string.exif_value_sequential_linear_sensor);
                             break;
                     }
                 }
@@ -738,135 +587,122 @@ public class ExifManager {
             case ExifDriver.TAG_CFA_PATTERN:
                 // TODO
                 break;
-            case ExifDriver.TAG_CUSTOM_RENDERED:
-                hrTag = (String) context.getText(R.string.exif_tag_custom_rendered);
-                hrValue = getNumbersString(driver.getIfdExif(), _tag);
-                break;
             case ExifDriver.TAG_EXPOSURE_MODE:
-                hrTag = (String) context.getText(R.string.exif_tag_exposure_mode);
+                hrTag = text(R.string.exif_tag_exposure_mode);
                 Integer expMode = getNumber(driver.getIfdExif(), _tag);
                 if (expMode != null) {
                     switch (expMode) {
                         case 0:
-                            hrValue = (String) context.getText(R.string.exif_value_auto_exposure);
+                            hrValue = text(R.string.exif_value_auto_exposure);
                             break;
                         case 1:
-                            hrValue = (String) context
-                                    .getText(R.string.exif_value_manual_exposure);
+                            hrValue = text(R.string.exif_value_manual_exposure);
                             break;
                         case 2:
-                            hrValue = (String) context.getText(R.string.exif_value_auto_bracket);
+                            hrValue = text(R.string.exif_value_auto_bracket);
                             break;
                     }
                 }
                 break;
             case ExifDriver.TAG_WHITE_BALANCE:
-                hrTag = (String) context.getText(R.string.exif_tag_white_balance);
+                hrTag = text(R.string.exif_tag_white_balance);
                 Integer whiteBalance = getNumber(driver.getIfdExif(), _tag);
                 if (whiteBalance != null && whiteBalance == 1) {
-                    hrValue = (String) context.getText(R.string.exif_value_manual);
+                    hrValue = text(R.string.exif_value_manual);
                 } else {
-                    hrValue = (String) context.getText(R.string.exif_value_auto);
+                    hrValue = text(R.string.exif_value_auto);
                 }
                 break;
-            case ExifDriver.TAG_DIGITAL_ZOOM_RATIO:
-                hrTag = (String) context.getText(R.string.exif_tag_zoom_ratio);
-                hrValue = getRationalsString(driver.getIfdExif(), _tag);
-                break;
-            case ExifDriver.TAG_FOCAL_LENGTH_35MM_FILM:
-                hrTag = (String) context.getText(R.string.exif_tag_focal_length_35mm);
-                hrValue = getNumbersString(driver.getIfdExif(), _tag);
-                break;
             case ExifDriver.TAG_SCENE_CAPTURE_TYPE:
-                hrTag = (String) context.getText(R.string.exif_tag_screen_capture_type);
+                hrTag = text(R.string.exif_tag_screen_capture_type);
                 Integer captureType = getNumber(driver.getIfdExif(), _tag);
                 if (captureType != null) {
                     switch (captureType) {
                         case 0:
-                            hrValue = (String) context.getText(R.string.exif_value_standard);
+                            hrValue = text(R.string.exif_value_standard);
                             break;
                         case 1:
-                            hrValue = (String) context.getText(R.string.exif_value_landscape);
+                            hrValue = text(R.string.exif_value_landscape);
                             break;
                         case 2:
-                            hrValue = (String) context.getText(R.string.exif_value_portrait);
+                            hrValue = text(R.string.exif_value_portrait);
                             break;
                         case 3:
-                            hrValue = (String) context.getText(R.string.exif_value_night_scene);
+                            hrValue = text(R.string.exif_value_night_scene);
                             break;
                     }
                 }
                 break;
             case ExifDriver.TAG_GAIN_CONTROL:
-                hrTag = (String) context.getText(R.string.exif_tag_gain_control);
+                hrTag = text(R.string.exif_tag_gain_control);
                 Integer gainCotrol = getNumber(driver.getIfdExif(), _tag);
                 if (gainCotrol != null) {
                     switch (gainCotrol) {
                         case 0:
-                            hrValue = (String) context.getText(R.string.exif_value_none);
+                            hrValue = text(R.string.exif_value_none);
                             break;
                         case 1:
-                            hrValue = (String) context.getText(R.string.exif_value_low_up);
+                            hrValue = text(R.string.exif_value_low_up);
                             break;
                         case 2:
-                            hrValue = (String) context.getText(R.string.exif_value_high_up);
+                            hrValue = text(R.string.exif_value_high_up);
                             break;
                         case 3:
-                            hrValue = (String) context.getText(R.string.exif_value_low_down);
+                            hrValue = text(R.string.exif_value_low_down);
                             break;
                         case 4:
-                            hrValue = (String) context.getText(R.string.exif_value_high_down);
+                            hrValue = text(R.string.exif_value_high_down);
                             break;
                     }
                 }
                 break;
             case ExifDriver.TAG_CONTRAST:
-                hrTag = (String) context.getText(R.string.exif_tag_contrast);
+                hrTag = text(R.string.exif_tag_contrast);
                 Integer contrast = getNumber(driver.getIfdExif(), _tag);
                 if (contrast != null) {
                     switch (contrast) {
                         case 0:
-                            hrValue = (String) context.getText(R.string.exif_value_normal);
+                            hrValue = text(R.string.exif_value_normal);
                             break;
                         case 1:
-                            hrValue = (String) context.getText(R.string.exif_value_soft);
+                            hrValue = text(R.string.exif_value_soft);
                             break;
                         case 2:
-                            hrValue = (String) context.getText(R.string.exif_value_hard);
+                            hrValue = text(R.string.exif_value_hard);
                             break;
                     }
                 }
                 break;
             case ExifDriver.TAG_SATURATION:
-                hrTag = (String) context.getText(R.string.exif_tag_saturation);
+                hrTag = text(R.string.exif_tag_saturation);
                 Integer saturation = getNumber(driver.getIfdExif(), _tag);
                 if (saturation != null) {
                     switch (saturation) {
                         case 0:
-                            hrValue = (String) context.getText(R.string.exif_value_normal);
+                            hrValue = text(R.string.exif_value_normal);
                             break;
                         case 1:
-                            hrValue = (String) context.getText(R.string.exif_value_low);
+                            hrValue = text(R.string.exif_value_low);
                             break;
                         case 2:
-                            hrValue = (String) context.getText(R.string.exif_value_high);
+                            hrValue = text(R.string.exif_value_high);
                             break;
                     }
                 }
                 break;
             case ExifDriver.TAG_SHARPNESS:
-                hrTag = (String) context.getText(R.string.exif_tag_sharpness);
+                hrTag = text(R.string.exif_tag_sharpness);
                 Integer sharpness = getNumber(driver.getIfdExif(), _tag);
                 if (sharpness != null) {
                     switch (sharpness) {
                         case 0:
-                            hrValue = (String) context.getText(R.string.exif_value_normal);
+                            hrValue = text(R.string.exif_value_normal);
                             break;
                         case 1:
-                            hrValue = (String) context.getText(R.string.exif_value_soft);
+                            hrValue = text(R.string.exif_value_soft);
                             break;
                         case 2:
-                            hrValue = (String) context.getText(R.string.exif_value_hard);
+                            hrValue = text(R.string.exif_value_hard);
                             break;
                     }
                 }
@@ -875,18 +711,18 @@ public class ExifManager {
                 // TODO
                 break;
             case ExifDriver.TAG_SUBJECT_DISTANCE_RANGE:
-                hrTag = (String) context.getText(R.string.exif_tag_distance_range);
+                hrTag = text(R.string.exif_tag_distance_range);
                 Integer dRange = getNumber(driver.getIfdExif(), _tag);
                 if (dRange != null) {
                     switch (dRange) {
                         case 1:
-                            hrValue = (String) context.getText(R.string.exif_value_macro);
+                            hrValue = text(R.string.exif_value_macro);
                             break;
                         case 2:
-                            hrValue = (String) context.getText(R.string.exif_value_close_view);
+                            hrValue = text(R.string.exif_value_close_view);
                             break;
                         case 3:
-                            hrValue = (String) context.getText(R.string.exif_value_distant_view);
+                            hrValue = text(R.string.exif_value_distant_view);
                             break;
                     }
                 }
@@ -914,164 +750,55 @@ public class ExifManager {
      *         value
      */
     public String[] getGpsRelated(int _tag) {
+        if (ExifTagFormatters.getFormat(ExifTagFormatters.IFD_GPS, _tag)
+                != ExifTagFormatters.FORMAT_NONE) {
+            return describe(ExifTagFormatters.IFD_GPS, driver.getIfdGps(), _tag);
+        }
         String[] result = null;
         String hrTag = "";
         String hrValue = "";
         switch (_tag) {
-            case ExifDriver.TAG_GPS_VERSION_ID:
-                hrTag = (String) context.getText(R.string.exif_tag_gps_version_id);
-                hrValue = getNumbersString(driver.getIfdGps(), _tag);
-                break;
-            case ExifDriver.TAG_GPS_LATITUDE_REF:
-                hrTag = (String) context.getText(R.string.exif_tag_gps_latitude_ref);
-                hrValue = getString(driver.getIfdGps(), _tag);
-                break;
-            case ExifDriver.TAG_GPS_LATITUDE:
-                hrTag = (String) context.getText(R.string.exif_tag_gps_latitude);
-                hrValue = getRationalsString(driver.getIfdGps(), _tag);
-                break;
-            case ExifDriver.TAG_GPS_LONGITUDE_REF:
-                hrTag = (String) context.getText(R.string.exif_tag_gps_longitude_ref);
-                hrValue = getString(driver.getIfdGps(), _tag);
-                break;
-            case ExifDriver.TAG_GPS_LONGITUDE:
-                hrTag = (String) context.getText(R.string.exif_tag_gps_longitude);
-                hrValue = getRationalsString(driver.getIfdGps(), _tag);
-                break;
             case ExifDriver.TAG_GPS_ALTITUDE_REF:
-                hrTag = (String) context.getText(R.string.exif_tag_gps_altitude_ref);
+                hrTag = text(R.string.exif_tag_gps_altitude_ref);
                 Integer altitudeRef = getNumber(driver.getIfdGps(), _tag);
                 if (altitudeRef != null && altitudeRef == 1) {
-                    hrValue = (String) context.getText(R.string.exif_value_below_sea_level);
+                    hrValue = text(R.string.exif_value_below_sea_level);
                 } else {
-                    hrValue = (String) context.getText(R.string.exif_value_above_sea_level);
+                    hrValue = text(R.string.exif_value_above_sea_level);
                 }
                 break;
-            case ExifDriver.TAG_GPS_ALTITUDE:
-                hrTag = (String) context.getText(R.string.exif_tag_gps_altitude);
-                hrValue = getRationalsString(driver.getIfdGps(), _tag);
-                break;
-            case ExifDriver.TAG_GPS_TIME_STAMP:
-                hrTag = (String) context.getText(R.string.exif_tag_gps_timestamp);
-                hrValue = getRationalsString(driver.getIfdGps(), _tag);
-                break;
-            case ExifDriver.TAG_GPS_SATELITES:
-                hrTag = (String) context.getText(R.string.exif_tag_gps_satelites);
-                hrValue = getRationalsString(driver.getIfdGps(), _tag);
-                break;
-            case ExifDriver.TAG_GPS_STATUS:
-                hrTag = (String) context.getText(R.string.exif_tag_gps_status);
-                hrValue = getString(driver.getIfdGps(), _tag);
-                break;
-            case ExifDriver.TAG_GPS_MEASURE_MODE:
-                hrTag = (String) context.getText(R.string.exif_tag_gps_measure_mode);
-                hrValue = getRationalsString(driver.getIfdGps(), _tag);
-                break;
-            case ExifDriver.TAG_GPS_DOP:
-                hrTag = (String) context.getText(R.string.exif_tag_gps_gpsdop);
-                hrValue = getRationalsString(driver.getIfdGps(), _tag);
-                break;
             case ExifDriver.TAG_GPS_SPEED_REF:
-                hrTag = (String) context.getText(R.string.exif_tag_gps_speed_ref);
+                hrTag = text(R.string.exif_tag_gps_speed_ref);
                 hrValue = getString(driver.getIfdGps(), _tag);
                 if (hrValue.equals("K")) {
-                    hrValue = (String) context
-                            .getText(R.string.exif_value_kilometers_per_hour);
+                    hrValue = text(R.string.exif_value_kilometers_per_hour);
                 } else if (hrValue.equals("M")) {
-                    hrValue = (String) context.getText(R.string.exif_value_miles_per_hour);
+                    hrValue = text(R.string.exif_value_miles_per_hour);
                 } else if (hrValue.equals("K")) {
-                    hrValue = (String) context.getText(R.string.exif_value_knots);
+                    hrValue = text(R.string.exif_value_knots);
                 }
                 break;
-            case ExifDriver.TAG_GPS_SPEED:
-                hrTag = (String) context.getText(R.string.exif_tag_gps_speed);
-                hrValue = getRationalsString(driver.getIfdGps(), _tag);
-                break;
-            case ExifDriver.TAG_GPS_TRACK_REF:
-                hrTag = (String) context.getText(R.string.exif_tag_gps_track_ref);
-                hrValue = getDirectionRef(_tag);
-                break;
-            case ExifDriver.TAG_GPS_TRACK:
-                hrTag = (String) context.getText(R.string.exif_tag_gps_track);
-                hrValue = getRationalsString(driver.getIfdGps(), _tag);
-                break;
-            case ExifDriver.TAG_GPS_SLMG_DIRECTION_REF:
-                hrTag = (String) context
-                        .getText(R.string.exif_tag_gps_slmg_direction_ref);
-                hrValue = getDirectionRef(_tag);
-                break;
-            case ExifDriver.TAG_GPS_SLMG_DIRECTION:
-                hrTag = (String) context.getText(R.string.exif_tag_gps_slmg_direction);
-                hrValue = getRationalsString(driver.getIfdGps(), _tag);
-                break;
-            case ExifDriver.TAG_GPS_MAP_DATUM:
-                hrTag = (String) context.getText(R.string.exif_tag_gps_map_datum);
-                hrValue = getString(driver.getIfdGps(), _tag);
-                break;
-            case ExifDriver.TAG_GPS_DEST_LATITUDE_REF:
-                hrTag = (String) context.getText(R.string.exif_tag_gps_dest_latitude_ref);
-                hrValue = getString(driver.getIfdGps(), _tag);
-                break;
-            case ExifDriver.TAG_GPS_DEST_LATITUDE:
-                hrTag = (String) context.getText(R.string.exif_tag_gps_dest_latitude);
-                hrValue = getRationalsString(driver.getIfdGps(), _tag);
-                break;
-            case ExifDriver.TAG_GPS_DEST_LONGITUDE_REF:
-                hrTag = (String) context
-                        .getText(R.string.exif_tag_gps_dest_longitude_ref);
-                hrValue = getString(driver.getIfdGps(), _tag);
-                break;
-            case ExifDriver.TAG_GPS_DEST_LONGITUDE:
-                hrTag = (String) context.getText(R.string.exif_tag_gps_dest_longitude);
-                hrValue = getRationalsString(driver.getIfdGps(), _tag);
-                break;
-            case ExifDriver.TAG_GPS_DEST_BEARING_REF:
-                hrTag = (String) context.getText(R.string.exif_tag_gps_dest_bearing_ref);
-                hrValue = getDirectionRef(_tag);
-                break;
-            case ExifDriver.TAG_GPS_DEST_BEARING:
-                hrTag = (String) context.getText(R.string.exif_tag_gps_dest_bearing);
-                hrValue = getRationalsString(driver.getIfdGps(), _tag);
-                break;
             case ExifDriver.TAG_GPS_DEST_DISTANCE_REF:
-                hrTag = (String) context.getText(R.string.exif_tag_gps_dest_distance_ref);
+                hrTag = text(R.string.exif_tag_gps_dest_distance_ref);
                 hrValue = getString(driver.getIfdGps(), _tag);
                 if (hrValue.equals("K")) {
-                    hrValue = (String) context.getText(R.string.exif_value_kilometers);
+                    hrValue = text(R.string.exif_value_kilometers);
                 } else if (hrValue.equals("M")) {
-                    hrValue = (String) context.getText(R.string.exif_value_miles);
+                    hrValue = text(R.string.exif_value_miles);
                 } else if (hrValue.equals("K")) {
-                    hrValue = (String) context.getText(R.string.exif_value_knots);
+                    hrValue = text(R.string.exif_value_knots);
                 }
                 break;
-            case ExifDriver.TAG_GPS_DEST_DISTANCE:
-                hrTag = (String) context.getText(R.string.exif_tag_gps_dest_distance);
-                hrValue = getRationalsString(driver.getIfdGps(), _tag);
-                break;
-            case ExifDriver.TAG_GPS_PROCESSING_METHOD:
-                hrTag = (String) context.getText(R.string.exif_tag_gps_processing_method);
-                hrValue = getString(driver.getIfdGps(), _tag);
-                break;
-            case ExifDriver.TAG_GPS_AREA_INFORMATION:
-                hrTag = (String) context.getText(R.string.exif_tag_gps_area_information);
-                hrValue = getString(driver.getIfdGps(), _tag);
-                break;
-            case ExifDriver.TAG_GPS_DATE_STAMP:
-                hrTag = (String) context.getText(R.string.exif_tag_gps_date_stamp);
-                hrValue = getString(driver.getIfdGps(), _tag);
-                break;
             case ExifDriver.TAG_GPS_DIFFERENTIAL:
-                hrTag = (String) context.getText(R.string.exif_tag_gps_differential);
+                hrTag = text(R.string.exif_tag_gps_differential);
                 Integer differential = getNumber(driver.getIfdGps(), _tag);
                 if (differential != null) {
                     switch (differential) {
                         case 0:
-                            hrValue = (String) context
-                                    .getText(R.string.exif_value_no_differential_correction);
+                            hrValue = text(R.string.exif_value_no_differential_correction);
                             break;
                         case 1:
-                            hrValue = (String) context
-                                    .getText(R.string.exif_value_differential_correction_used);
+                            hrValue = text(R.string.exif_value_differential_correction_used);
                             break;
                     }
                 }
@@ -1087,46 +814,53 @@ public class ExifManager {
     private String getDirectionRef(int _tag) {
         String result = getString(driver.getIfdGps(), _tag);
         if (result.equals("T")) {
-            result = (String) context.getText(R.string.exif_value_true_direction);
+            result = text(R.string.exif_value_true_direction);
         } else if (result.equals("M")) {
-            result = (String) context.getText(R.string.exif_value_magnetic_direction);
+            result = text(R.string.exif_value_magnetic_direction);
         }
         return result;
     }
 
-    private String getDateTime(HashMap<Integer, ExifValue> _ifd, int _tag) {
-        String result = "";
-        String dateString = getString(_ifd, _tag);
-        SimpleDateFormat format = new SimpleDateFormat(
-                (String) context.getText(R.string.exif_value_datetime_format_exif));
-        try {
-            Date date = format.parse(dateString);
-            SimpleDateFormat hrFormat = new SimpleDateFormat(
-                    (String) context.getText(R.string.exif_value_datetime_format));
-            result = hrFormat.format(date);
-        } catch (java.text.ParseException e) {
-            // TODO
+    private String getDateTime(Map<Integer, ExifValue> _ifd, int _tag) {
+        long time = ExifDateTime.parse(_ifd.get(_tag), null);
+        if (time == ExifDateTime.NO_TIME) {
+            return "";
         }
-        return result;
+        if (dateTimeFormat == null) {
+            dateTimeFormat = new SimpleDateFormat(
+                    text(R.string.exif_value_datetime_format));
+            // Exif dates are local time of the camera, see ExifDateTime
+            dateTimeFormat.setTimeZone(TimeZone.getTimeZone("UTC"));
+        }
+        return dateTimeFormat.format(new Date(time));
     }
 
-    private String getString(HashMap<Integer, ExifValue> _ifd, int _tag) {
+    /**
+     * Capture time of the image including the fraction of second, see
+     * ExifDateTime.getCaptureTime
+     *
+     * @return Milliseconds since epoch or ExifDateTime.NO_TIME
+     */
+    public long getCaptureTime() {
+        return ExifDateTime.getCaptureTime(driver);
+    }
+
+    private String getString(Map<Integer, ExifValue> _ifd, int _tag) {
         String result = new String();
         Object value = _ifd.get(_tag);
         if (value != null && value instanceof ValueByteArray) {
             ValueByteArray number = (ValueByteArray) value;
-            Byte[] components = number.getValues();
-            result = new String(convertByteArray(components));
+            result = new String(number.getValues());
         }
         return result;
     }
 
-    private String getNumbersString(HashMap<Integer, ExifValue> _ifd, int _tag) {
+    private String getNumbersString(Map<Integer, ExifValue> _ifd, int _tag) {
         StringBuffer result = new StringBuffer();
         Object value = _ifd.get(_tag);
         if (value != null && value instanceof ValueNumbers) {
             ValueNumbers number = (ValueNumbers) value;
-            Integer[] components = number.getValues();
+            int[] components = number.getInts();
             result.append(components[0]);
             for (int i = 1; i < components.length; i++) {
                 result.append(",");
@@ -1136,38 +870,38 @@ public class ExifManager {
         return result.toString();
     }
 
-    private Integer getNumber(HashMap<Integer, ExifValue> _ifd, int _tag) {
+    private Integer getNumber(Map<Integer, ExifValue> _ifd, int _tag) {
         Integer result = null;
         Object value = _ifd.get(_tag);
         if (value != null && value instanceof ValueNumbers) {
             ValueNumbers number = (ValueNumbers) value;
-            result = number.getValues()[0];
+            result = number.getInt(0);
         }
         return result;
     }
 
-    private Integer[] getNumbers(HashMap<Integer, ExifValue> _ifd, int _tag) {
-        Integer[] result = null;
+    private int[] getNumbers(Map<Integer, ExifValue> _ifd, int _tag) {
+        int[] result = null;
         Object value = _ifd.get(_tag);
         if (value != null && value instanceof ValueNumbers) {
             ValueNumbers number = (ValueNumbers) value;
-            result = number.getValues();
+            result = number.getInts();
         }
         return result;
     }
 
-    private int[] getRational(HashMap<Integer, ExifValue> _ifd, int _tag) {
-        int[] result = null;
+    private long[] getRational(Map<Integer, ExifValue> _ifd, int _tag) {
+        long[] result = null;
         Object value = _ifd.get(_tag);
         if (value != null && value instanceof ValueRationals) {
             ValueRationals number = (ValueRationals) value;
-            result = number.getValues()[0];
+            result = new long[] { number.getNumerator(0), number.getDenominator(0) };
         }
         return result;
     }
 
-    private int[][] getRationals(HashMap<Integer, ExifValue> _ifd, int _tag) {
-        int[][] result = null;
+    private long[] getRationals(Map<Integer, ExifValue> _ifd, int _tag) {
+        long[] result = null;
         Object value = _ifd.get(_tag);
         if (value != null && value instanceof ValueRationals) {
             ValueRationals number = (ValueRationals) value;
@@ -1176,20 +910,19 @@ public class ExifManager {
         return result;
     }
 
-    private String getRationalsString(HashMap<Integer, ExifValue> _ifd, int _tag) {
+    private String getRationalsString(Map<Integer, ExifValue> _ifd, int _tag) {
         StringBuffer result = new StringBuffer();
         Object value = _ifd.get(_tag);
         if (value != null && value instanceof ValueRationals) {
             ValueRationals number = (ValueRationals) value;
-            int[][] components = number.getValues();
-            result.append(components[0][0]);
+            result.append(number.getNumerator(0));
             result.append(':');
-            result.append(components[0][1]);
-            for (int i = 1; i < components.length; i++) {
+            result.append(number.getDenominator(0));
+            for (int i = 1; i < number.getCount(); i++) {
                 result.append(",");
-                result.append(components[i][0]);
+                result.append(number.getNumerator(i));
                 result.append(':');
-                result.append(components[i][1]);
+                result.append(number.getDenominator(i));
             }
         }
         return result.toString();
@@ -1215,7 +948,7 @@ public class ExifManager {
         Object exifValue = driver.getIfd0().get(ExifDriver.TAG_COPYRIGHT);
         if (exifValue != null && exifValue instanceof ValueAsciiStrings) {
             ValueAsciiStrings copyright = (ValueAsciiStrings) exifValue;
-            Byte[] values = copyright.getValues();
+            byte[] values = copyright.getValues();
             int copyrightIndex = 0;
             result[0] = new byte[values.length];
             Arrays.fill(result[0], (byte) 0);
@@ -1264,7 +997,7 @@ public class ExifManager {
         Object exifValue = driver.getIfdExif().get(ExifDriver.TAG_MARKER_NOTE);
         if (exifValue != null && exifValue instanceof ValueUndefined) {
             ValueUndefined mNote = (ValueUndefined) exifValue;
-            return convertByteArray(mNote.getValues());
+            return mNote.getValues();
         } else {
             return null;
         }
@@ -1279,7 +1012,7 @@ public class ExifManager {
         Object exifValue = driver.getIfd0().get(ExifDriver.TAG_ARTIST);
         if (exifValue != null && exifValue instanceof ValueAsciiStrings) {
             ValueAsciiStrings mNote = (ValueAsciiStrings) exifValue;
-            return new String(convertByteArray(mNote.getValues()));
+            return new String(mNote.getValues());
         } else {
             return null;
         }
@@ -1295,7 +1028,7 @@ public class ExifManager {
         Object exifValue = driver.getIfd0().get(ExifDriver.TAG_SOFTWARE);
         if (exifValue != null && exifValue instanceof ValueAsciiStrings) {
             ValueAsciiStrings mNote = (ValueAsciiStrings) exifValue;
-            return new String(convertByteArray(mNote.getValues()));
+            return new String(mNote.getValues());
         } else {
             return null;
         }
@@ -1310,7 +1043,7 @@ public class ExifManager {
         Object exifValue = driver.getIfd0().get(ExifDriver.TAG_IMAGE_DESCRIPTION);
         if (exifValue != null && exifValue instanceof ValueAsciiStrings) {
             ValueAsciiStrings mNote = (ValueAsciiStrings) exifValue;
-            return new String(convertByteArray(mNote.getValues()));
+            return new String(mNote.getValues());
         } else {
             return null;
         }
@@ -1326,7 +1059,7 @@ public class ExifManager {
         Object exifValue = driver.getIfdExif().get(ExifDriver.TAG_USER_COMMENT);
         if (exifValue != null && exifValue instanceof ValueUndefined) {
             ValueUndefined mNote = (ValueUndefined) exifValue;
-            return new String(convertByteArray(mNote.getValues()));
+            return new String(mNote.getValues());
         } else {
             return null;
         }
@@ -1339,8 +1072,8 @@ public class ExifManager {
      *          byte array - binary or text information
      */
     public void setMarkerNote(byte[] _value) {
-        ValueUndefined baValue = driver.new ValueUndefined();
-        baValue.setValue(convertByteArray(_value));
+        ValueUndefined baValue = new ExifDriver.ValueUndefined();
+        baValue.setValue(_value);
         driver.getIfdExif().put(ExifDriver.TAG_MARKER_NOTE, baValue);
     }
 
@@ -1353,8 +1086,8 @@ public class ExifManager {
      *          Name of the artist
      */
     public void setArtist(String _artist) {
-        ValueAsciiStrings baValue = driver.new ValueAsciiStrings();
-        baValue.setValue(convertByteArray(_artist.getBytes()));
+        ValueAsciiStrings baValue = new ExifDriver.ValueAsciiStrings();
+        baValue.setValue(_artist.getBytes());
         driver.getIfd0().put(ExifDriver.TAG_ARTIST, baValue);
     }
 
@@ -1368,8 +1101,8 @@ public class ExifManager {
      *          Name of the software
      */
     public void setSoftware(String _software) {
-        ValueAsciiStrings baValue = driver.new ValueAsciiStrings();
-        baValue.setValue(convertByteArray(_software.getBytes()));
+        ValueAsciiStrings baValue = new ExifDriver.ValueAsciiStrings();
+        baValue.setValue(_software.getBytes());
         driver.getIfd0().put(ExifDriver.TAG_SOFTWARE, baValue);
     }
 
@@ -1385,6 +1118,23 @@ public class ExifManager {
      *          Editor copyright can be null
      */
     public void setCopyright(String _author, String _editor) {
+        ValueAsciiStrings baValue = new ExifDriver.ValueAsciiStrings();
+        baValue.setValue(copyrightBytes(_author, _editor));
+        driver.getIfd0().put(ExifDriver.TAG_COPYRIGHT, baValue);
+    }
+
+    /**
+     * Encode the photographer and editor copyright into the value of copyright
+     * tag - both NULL terminated, photographer copyright is a space if only
+     * the editor is given.
+     *
+     * @param _author
+     *          Photographer copyright can be null
+     * @param _editor
+     *          Editor copyright can be null
+     * @return Value of copyright tag
+     */
+    static byte[] copyrightBytes(String _author, String _editor) {
         boolean editorPresented = false;
         String author = _author;
         if (author == null) {
@@ -1401,7 +1151,7 @@ public class ExifManager {
         editor = editor.trim();
         editorPresented = !(editor.equals(""));
         byte[] authorBytes = author.getBytes();
-        byte[] editorBytes = _editor.getBytes();
+        byte[] editorBytes = editor.getBytes();
         int size = authorBytes.length + 1;
         if (editorPresented) {
             size += editorBytes.length + 1;
@@ -1414,9 +1164,7 @@ public class ExifManager {
                     editorBytes.length);
             value[value.length - 1] = 0;
         }
-        ValueAsciiStrings baValue = driver.new ValueAsciiStrings();
-        baValue.setValue(convertByteArray(value));
-        driver.getIfd0().put(ExifDriver.TAG_COPYRIGHT, baValue);
+        return value;
     }
 
     /**
@@ -1446,8 +1194,8 @@ public class ExifManager {
      *          Description of the image
      */
     public void setImageDescription(String _desc) {
-        ValueAsciiStrings baValue = driver.new ValueAsciiStrings();
-        baValue.setValue(convertByteArray(_desc.getBytes()));
+        ValueAsciiStrings baValue = new ExifDriver.ValueAsciiStrings();
+        baValue.setValue(_desc.getBytes());
         driver.getIfd0().put(ExifDriver.TAG_IMAGE_DESCRIPTION, baValue);
     }
 
@@ -1459,83 +1207,93 @@ public class ExifManager {
      * @param _comment
      */
     public void setUserComment(String _comment) {
-        ExifDriver.ValueUndefined baValue = driver.new ValueUndefined();
-        baValue.setValue(convertByteArray(_comment.getBytes()));
+        ExifDriver.ValueUndefined baValue = new ExifDriver.ValueUndefined();
+        baValue.setValue(_comment.getBytes());
         driver.getIfdExif().put(ExifDriver.TAG_USER_COMMENT, baValue);
     }
 
-    private int[][] toDdMmSs(double _value) {
+    static long[] toDdMmSs(double _value) {
         double value = Math.abs(_value);
-        int[][] ddmmss = new int[3][2];
-        ddmmss[0][0] = (int) Math.floor(value);
-        ddmmss[0][1] = 1;
+        long[] ddmmss = new long[6];
+        ddmmss[0] = (long) Math.floor(value);
+        ddmmss[1] = 1;
         value -= Math.floor(value);
         value *= 60;
-        ddmmss[1][0] = (int) Math.floor(value);
-        ddmmss[1][1] = 1;
+        ddmmss[2] = (long) Math.floor(value);
+        ddmmss[3] = 1;
         value -= Math.floor(value);
         value *= 60000;
-        ddmmss[2][0] = (int) Math.floor(value);
-        ddmmss[2][1] = 1000;
+        ddmmss[4] = (long) Math.floor(value);
+        ddmmss[5] = 1000;
         return ddmmss;
     }
 
-    private void setGpsVersion() {
-        ExifDriver.ValueUBytes version = driver.new ValueUBytes();
-        version.setValue(new Integer[] { 2, 2, 0, 0 });
-        driver.getIfdExif().put(ExifDriver.TAG_GPS_VERSION_ID, version);
+    public void setGPSLocation(double _lat, double _lon, double _alt) {
+        putGpsLocation(driver.getIfdGps(), _lat, _lon, _alt);
     }
 
-    public void setGPSLocation(double _lat, double _lon, double _alt) {
-        setGpsVersion();
+    /**
+     * Put the GPS version, latitude, longitude and altitude tags with their
+     * references into a GPS directory. Also used by ExifBatchStamper.Edits.
+     *
+     * @param _gps
+     *          GPS directory
+     * @param _lat
+     *          Latitude in decimal degrees
+     * @param _lon
+     *          Longitude in decimal degrees
+     * @param _alt
+     *          Altitude in meters
+     */
+    static void putGpsLocation(Map<Integer, ExifValue> _gps, double _lat, double _lon,
+                               double _alt) {
+        ExifDriver.ValueUBytes version = new ExifDriver.ValueUBytes();
+        version.setValue(new byte[] { 2, 2, 0, 0 });
+        _gps.put(ExifDriver.TAG_GPS_VERSION_ID, version);
         // Latitude
-        ExifDriver.ValueAsciiStrings latRef = driver.new ValueAsciiStrings();
-        ExifDriver.ValueURationals lat = driver.new ValueURationals();
+        ExifDriver.ValueAsciiStrings latRef = new ExifDriver.ValueAsciiStrings();
+        ExifDriver.ValueURationals lat = new ExifDriver.ValueURationals();
         lat.setValue(toDdMmSs(_lat));
         if (_lat > 0) {
-            latRef.setValue(new Byte[] { 'N' });
+            latRef.setValue(new byte[] { 'N' });
         } else {
-            latRef.setValue(new Byte[] { 'S' });
+            latRef.setValue(new byte[] { 'S' });
         }
-        driver.getIfdGps().put(ExifDriver.TAG_GPS_LATITUDE, lat);
-        driver.getIfdGps().put(ExifDriver.TAG_GPS_LATITUDE_REF, latRef);
+        _gps.put(ExifDriver.TAG_GPS_LATITUDE, lat);
+        _gps.put(ExifDriver.TAG_GPS_LATITUDE_REF, latRef);
         // Longitude
-        ExifDriver.ValueAsciiStrings lonRef = driver.new ValueAsciiStrings();
-        ExifDriver.ValueURationals lon = driver.new ValueURationals();
+        ExifDriver.ValueAsciiStrings lonRef = new ExifDriver.ValueAsciiStrings();
+        ExifDriver.ValueURationals lon = new ExifDriver.ValueURationals();
         lon.setValue(toDdMmSs(_lon));
         if (_lon > 0) {
-            lonRef.setValue(new Byte[] { 'E' });
+            lonRef.setValue(new byte[] { 'E' });
         } else {
-            lonRef.setValue(new Byte[] { 'W' });
+            lonRef.setValue(new byte[] { 'W' });
         }
-        driver.getIfdGps().put(ExifDriver.TAG_GPS_LONGITUDE, lon);
-        driver.getIfdGps().put(ExifDriver.TAG_GPS_LONGITUDE_REF, lonRef);
+        _gps.put(ExifDriver.TAG_GPS_LONGITUDE, lon);
+        _gps.put(ExifDriver.TAG_GPS_LONGITUDE_REF, lonRef);
         // Altitude
-        ExifDriver.ValueUBytes altRef = driver.new ValueUBytes();
-        ExifDriver.ValueURationals alt = driver.new ValueURationals();
-        int[][] altValue = new int[1][];
-        altValue[0] = new int[] { (int) Math.abs(_alt), 1 };
-        alt.setValue(altValue);
+        ExifDriver.ValueUBytes altRef = new ExifDriver.ValueUBytes();
+        ExifDriver.ValueURationals alt = new ExifDriver.ValueURationals();
+        alt.setValue(new long[] { (long) Math.abs(_alt), 1 });
         if (_alt >= 0) {
-            altRef.setValue(new Integer[] { 0 });
+            altRef.setValue(new byte[] { 0 });
         } else {
-            altRef.setValue(new Integer[] { 1 });
+            altRef.setValue(new byte[] { 1 });
         }
-        driver.getIfdGps().put(ExifDriver.TAG_GPS_ALTITUDE, alt);
-        driver.getIfdGps().put(ExifDriver.TAG_GPS_ALTITUDE_REF, altRef);
+        _gps.put(ExifDriver.TAG_GPS_ALTITUDE, alt);
+        _gps.put(ExifDriver.TAG_GPS_ALTITUDE_REF, altRef);
     }
 
     public void setImgDirection(double _dir) {
 
         // Direction
-        ExifDriver.ValueAsciiStrings dirRef = driver.new ValueAsciiStrings();
-        ExifDriver.ValueURationals dir = driver.new ValueURationals();
-        int[][] dirValue = new int[1][];
-        dirValue[0] = new int[] { (int) Math.abs(_dir), 1 };
-        dir.setValue(dirValue);
+        ExifDriver.ValueAsciiStrings dirRef = new ExifDriver.ValueAsciiStrings();
+        ExifDriver.ValueURationals dir = new ExifDriver.ValueURationals();
+        dir.setValue(new long[] { (long) Math.abs(_dir), 1 });
 
         //Always magnetic north
-        dirRef.setValue(new Byte[] { 'M' });
+        dirRef.setValue(new byte[] { 'M' });
 
         driver.getIfdGps().put(ExifDriver.TAG_GPS_SLMG_DIRECTION, dir);
         driver.getIfdGps().put(ExifDriver.TAG_GPS_SLMG_DIRECTION_REF, dirRef);
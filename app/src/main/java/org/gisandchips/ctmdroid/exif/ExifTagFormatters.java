@@ -0,0 +1,241 @@
+package org.gisandchips.ctmdroid.exif;
+
+import android.content.Context;
+import android.util.SparseArray;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+
+import org.gisandchips.ctmdroid.R;
+
+/**
+ * Precompiled description of the tags ExifManager presents. The table maps
+ * each tag with a generic value format to its label and to the way its value
+ * is rendered; tags needing special rendering (enumerations, flash ...) are
+ * left to ExifManager. The table itself does not depend on the locale. The
+ * resource strings are resolved once per locale and cached, so describing the
+ * tags does not go to the resources again.
+ */
+class ExifTagFormatters {
+
+    // Tables
+    static final int IFD_IMAGE = 0; // IFD0 and IFD1
+    static final int IFD_EXIF = 1;
+    static final int IFD_GPS = 2;
+    private static final int TABLES = 3;
+    // Value formats
+    static final int FORMAT_NONE = 0; // Not in the table
+    static final int FORMAT_STRING = 1;
+    static final int FORMAT_NUMBERS = 2;
+    static final int FORMAT_RATIONALS = 3;
+    static final int FORMAT_DATETIME = 4;
+    static final int FORMAT_DIRECTION_REF = 5;
+
+    // Sorted tags of each table, with parallel label resources and formats
+    private static final int[][] tags = new int[TABLES][];
+    private static final int[][] labels = new int[TABLES][];
+    private static final int[][] formats = new int[TABLES][];
+    private static final int[] sizes = new int[TABLES];
+
+    static {
+        // IFD0 and IFD1
+        register(IFD_IMAGE, ExifDriver.TAG_IMAGE_WIDTH, R.string.exif_tag_width, FORMAT_NUMBERS);
+        register(IFD_IMAGE, ExifDriver.TAG_IMAGE_HEIGHT, R.string.exif_tag_height, FORMAT_NUMBERS);
+        register(IFD_IMAGE, ExifDriver.TAG_BITS_PER_SAMPLE, R.string.exif_tag_bits_per_sample, FORMAT_NUMBERS);
+        register(IFD_IMAGE, ExifDriver.TAG_SAMPLES_PER_PIXEL, R.string.exif_tag_samples_per_pixel, FORMAT_NUMBERS);
+        register(IFD_IMAGE, ExifDriver.TAG_STRIP_OFFSETS, R.string.exif_tag_strip_offsets, FORMAT_NUMBERS);
+        register(IFD_IMAGE, ExifDriver.TAG_ROWS_PER_STRIP, R.string.exif_tag_rows_per_strip, FORMAT_NUMBERS);
+        register(IFD_IMAGE, ExifDriver.TAG_STRIP_BYTECOUNTS, R.string.exif_tag_strip_byte_counts, FORMAT_NUMBERS);
+        register(IFD_IMAGE, ExifDriver.TAG_JPEG_INTERCHANGE_FORMAT, R.string.exif_tag_jpeg_interchange_format, FORMAT_NUMBERS);
+        register(IFD_IMAGE, ExifDriver.TAG_JPEG_INTERCHANGE_FORMAT_LENGTH, R.string.exif_tag_jpeg_interchange_format_length, FORMAT_NUMBERS);
+        register(IFD_IMAGE, ExifDriver.TAG_TRANSFER_FUNCTION, R.string.exif_tag_transfer_function, FORMAT_NUMBERS);
+        register(IFD_IMAGE, ExifDriver.TAG_WHITE_POINT, R.string.exif_tag_white_point, FORMAT_RATIONALS);
+        register(IFD_IMAGE, ExifDriver.TAG_PRIMARY_CHROMATICITIES, R.string.exif_tag_primary_chromaticities, FORMAT_RATIONALS);
+        register(IFD_IMAGE, ExifDriver.TAG_YCBCR_COEFICIENTS, R.string.exif_tag_ycbcr_coeficients, FORMAT_RATIONALS);
+        register(IFD_IMAGE, ExifDriver.TAG_REFERENCE_BLACK_WHITE, R.string.exif_tag_reference_black_white, FORMAT_RATIONALS);
+        register(IFD_IMAGE, ExifDriver.TAG_DATETIME, R.string.exif_tag_datetime, FORMAT_DATETIME);
+        register(IFD_IMAGE, ExifDriver.TAG_IMAGE_DESCRIPTION, R.string.exif_tag_image_description, FORMAT_STRING);
+        register(IFD_IMAGE, ExifDriver.TAG_MAKE, R.string.exif_tag_make, FORMAT_STRING);
+        register(IFD_IMAGE, ExifDriver.TAG_MODEL, R.string.exif_tag_model, FORMAT_STRING);
+        register(IFD_IMAGE, ExifDriver.TAG_SOFTWARE, R.string.exif_tag_software, FORMAT_STRING);
+        register(IFD_IMAGE, ExifDriver.TAG_ARTIST, R.string.exif_tag_artist, FORMAT_STRING);
+        // IFDExif
+        register(IFD_EXIF, ExifDriver.TAG_EXIF_VERSION, R.string.exif_tag_exif_version, FORMAT_STRING);
+        register(IFD_EXIF, ExifDriver.TAG_FLASHPIX_VERSION, R.string.exif_tag_flashpix_version, FORMAT_STRING);
+        register(IFD_EXIF, ExifDriver.TAG_COMPRESSED_BITS_PER_PIXEL, R.string.exif_tag_bits_per_pixel, FORMAT_RATIONALS);
+        register(IFD_EXIF, ExifDriver.TAG_PIXEL_X_DIMENSION, R.string.exif_tag_pixel_xdimension, FORMAT_NUMBERS);
+        register(IFD_EXIF, ExifDriver.TAG_PIXEL_Y_DIMENSION, R.string.exif_tag_pixel_ydimension, FORMAT_NUMBERS);
+        register(IFD_EXIF, ExifDriver.TAG_MARKER_NOTE, R.string.exif_tag_marker_note, FORMAT_STRING);
+        register(IFD_EXIF, ExifDriver.TAG_USER_COMMENT, R.string.exif_tag_user_comment, FORMAT_STRING);
+        register(IFD_EXIF, ExifDriver.TAG_RELATED_SOUND_FILE, R.string.exif_tag_related_audio_file, FORMAT_STRING);
+        register(IFD_EXIF, ExifDriver.TAG_DATETIME_ORIGINAL, R.string.exif_tag_datetime_original, FORMAT_DATETIME);
+        register(IFD_EXIF, ExifDriver.TAG_DATETIME_DIGITIZED, R.string.exif_tag_datetime_digitized, FORMAT_DATETIME);
+        register(IFD_EXIF, ExifDriver.TAG_SUB_SEC_TIME, R.string.exif_tag_sub_sec_time, FORMAT_STRING);
+        register(IFD_EXIF, ExifDriver.TAG_SUB_SEC_TIME_ORIGINAL, R.string.exif_tag_sub_sec_time_original, FORMAT_STRING);
+        register(IFD_EXIF, ExifDriver.TAG_SUB_SEC_TIME_DIGITIZED, R.string.exif_tag_sub_sec_time_digitized, FORMAT_STRING);
+        register(IFD_EXIF, ExifDriver.TAG_IMAGE_UNIQUE_ID, R.string.exif_tag_unique_id, FORMAT_STRING);
+        register(IFD_EXIF, ExifDriver.TAG_EXPOSURE_TIME, R.string.exif_tag_exposure_time, FORMAT_RATIONALS);
+        register(IFD_EXIF, ExifDriver.TAG_FNUMBER, R.string.exif_tag_fnumber, FORMAT_RATIONALS);
+        register(IFD_EXIF, ExifDriver.TAG_SPECTRAL_SENSITIVITY, R.string.exif_tag_spectral_sensitivity, FORMAT_STRING);
+        register(IFD_EXIF, ExifDriver.TAG_ISO_SPEED_RATINGS, R.string.exif_tag_iso_speed_ratings, FORMAT_NUMBERS);
+        register(IFD_EXIF, ExifDriver.TAG_SHUTTER_SPEED_VALUE, R.string.exif_tag_shooter_speed_value, FORMAT_RATIONALS);
+        register(IFD_EXIF, ExifDriver.TAG_APERTURE_VALUE, R.string.exif_tag_aperture_value, FORMAT_RATIONALS);
+        register(IFD_EXIF, ExifDriver.TAG_EXPOSURE_BIAS_VALUE, R.string.exif_tag_exposure_bias_value, FORMAT_RATIONALS);
+        register(IFD_EXIF, ExifDriver.TAG_MAX_APERTURE_VALUE, R.string.exif_tag_max_aperture_value, FORMAT_RATIONALS);
+        register(IFD_EXIF, ExifDriver.TAG_FOCAL_LENGTH, R.string.exif_tag_focal_length, FORMAT_RATIONALS);
+        register(IFD_EXIF, ExifDriver.TAG_SUBJECT_AREA, R.string.exif_tag_subject_area, FORMAT_NUMBERS);
+        register(IFD_EXIF, ExifDriver.TAG_FLASH_ENERGY, R.string.exif_tag_flash_energy, FORMAT_RATIONALS);
+        register(IFD_EXIF, ExifDriver.TAG_FOCAL_PLANE_X_RESOLUTION, R.string.exif_tag_focal_plane_x_resolution, FORMAT_RATIONALS);
+        register(IFD_EXIF, ExifDriver.TAG_FOCAL_PLANE_Y_RESOLUTION, R.string.exif_tag_focal_plane_y_resolution, FORMAT_RATIONALS);
+        register(IFD_EXIF, ExifDriver.TAG_SUBJECT_LOCATION, R.string.exif_tag_subject_location, FORMAT_NUMBERS);
+        register(IFD_EXIF, ExifDriver.TAG_EXPOSURE_INDEX, R.string.exif_tag_exposure_index, FORMAT_RATIONALS);
+        register(IFD_EXIF, ExifDriver.TAG_CUSTOM_RENDERED, R.string.exif_tag_custom_rendered, FORMAT_NUMBERS);
+        register(IFD_EXIF, ExifDriver.TAG_DIGITAL_ZOOM_RATIO, R.string.exif_tag_zoom_ratio, FORMAT_RATIONALS);
+        register(IFD_EXIF, ExifDriver.TAG_FOCAL_LENGTH_35MM_FILM, R.string.exif_tag_focal_length_35mm, FORMAT_NUMBERS);
+        // IFDGps
+        register(IFD_GPS, ExifDriver.TAG_GPS_VERSION_ID, R.string.exif_tag_gps_version_id, FORMAT_NUMBERS);
+        register(IFD_GPS, ExifDriver.TAG_GPS_LATITUDE_REF, R.string.exif_tag_gps_latitude_ref, FORMAT_STRING);
+        register(IFD_GPS, ExifDriver.TAG_GPS_LATITUDE, R.string.exif_tag_gps_latitude, FORMAT_RATIONALS);
+        register(IFD_GPS, ExifDriver.TAG_GPS_LONGITUDE_REF, R.string.exif_tag_gps_longitude_ref, FORMAT_STRING);
+        register(IFD_GPS, ExifDriver.TAG_GPS_LONGITUDE, R.string.exif_tag_gps_longitude, FORMAT_RATIONALS);
+        register(IFD_GPS, ExifDriver.TAG_GPS_ALTITUDE, R.string.exif_tag_gps_altitude, FORMAT_RATIONALS);
+        register(IFD_GPS, ExifDriver.TAG_GPS_TIME_STAMP, R.string.exif_tag_gps_timestamp, FORMAT_RATIONALS);
+        register(IFD_GPS, ExifDriver.TAG_GPS_SATELITES, R.string.exif_tag_gps_satelites, FORMAT_RATIONALS);
+        register(IFD_GPS, ExifDriver.TAG_GPS_STATUS, R.string.exif_tag_gps_status, FORMAT_STRING);
+        register(IFD_GPS, ExifDriver.TAG_GPS_MEASURE_MODE, R.string.exif_tag_gps_measure_mode, FORMAT_RATIONALS);
+        register(IFD_GPS, ExifDriver.TAG_GPS_DOP, R.string.exif_tag_gps_gpsdop, FORMAT_RATIONALS);
+        register(IFD_GPS, ExifDriver.TAG_GPS_SPEED, R.string.exif_tag_gps_speed, FORMAT_RATIONALS);
+        register(IFD_GPS, ExifDriver.TAG_GPS_TRACK_REF, R.string.exif_tag_gps_track_ref, FORMAT_DIRECTION_REF);
+        register(IFD_GPS, ExifDriver.TAG_GPS_TRACK, R.string.exif_tag_gps_track, FORMAT_RATIONALS);
+        register(IFD_GPS, ExifDriver.TAG_GPS_SLMG_DIRECTION_REF, R.string.exif_tag_gps_slmg_direction_ref, FORMAT_DIRECTION_REF);
+        register(IFD_GPS, ExifDriver.TAG_GPS_SLMG_DIRECTION, R.string.exif_tag_gps_slmg_direction, FORMAT_RATIONALS);
+        register(IFD_GPS, ExifDriver.TAG_GPS_MAP_DATUM, R.string.exif_tag_gps_map_datum, FORMAT_STRING);
+        register(IFD_GPS, ExifDriver.TAG_GPS_DEST_LATITUDE_REF, R.string.exif_tag_gps_dest_latitude_ref, FORMAT_STRING);
+        register(IFD_GPS, ExifDriver.TAG_GPS_DEST_LATITUDE, R.string.exif_tag_gps_dest_latitude, FORMAT_RATIONALS);
+        register(IFD_GPS, ExifDriver.TAG_GPS_DEST_LONGITUDE_REF, R.string.exif_tag_gps_dest_longitude_ref, FORMAT_STRING);
+        register(IFD_GPS, ExifDriver.TAG_GPS_DEST_LONGITUDE, R.string.exif_tag_gps_dest_longitude, FORMAT_RATIONALS);
+        register(IFD_GPS, ExifDriver.TAG_GPS_DEST_BEARING_REF, R.string.exif_tag_gps_dest_bearing_ref, FORMAT_DIRECTION_REF);
+        register(IFD_GPS, ExifDriver.TAG_GPS_DEST_BEARING, R.string.exif_tag_gps_dest_bearing, FORMAT_RATIONALS);
+        register(IFD_GPS, ExifDriver.TAG_GPS_DEST_DISTANCE, R.string.exif_tag_gps_dest_distance, FORMAT_RATIONALS);
+        register(IFD_GPS, ExifDriver.TAG_GPS_PROCESSING_METHOD, R.string.exif_tag_gps_processing_method, FORMAT_STRING);
+        register(IFD_GPS, ExifDriver.TAG_GPS_AREA_INFORMATION, R.string.exif_tag_gps_area_information, FORMAT_STRING);
+        register(IFD_GPS, ExifDriver.TAG_GPS_DATE_STAMP, R.string.exif_tag_gps_date_stamp, FORMAT_STRING);
+        for (int i = 0; i < TABLES; i++) {
+            sortTable(i);
+        }
+    }
+
+    private static final Map<Locale, ExifTagFormatters> instances = new HashMap<Locale, ExifTagFormatters>();
+
+    private final Context context;
+    // Resolved resource strings
+    private final SparseArray<String> texts = new SparseArray<String>(256);
+
+    private ExifTagFormatters(Context _context) {
+        context = _context;
+    }
+
+    /**
+     * Formatters of the current locale
+     *
+     * @param _context
+     *          Context to get the resource strings from
+     * @return Shared instance
+     */
+    static synchronized ExifTagFormatters getInstance(Context _context) {
+        Locale locale = Locale.getDefault();
+        ExifTagFormatters result = instances.get(locale);
+        if (result == null) {
+            result = new ExifTagFormatters(_context.getApplicationContext());
+            instances.put(locale, result);
+        }
+        return result;
+    }
+
+    private static void register(int _table, int _tag, int _label, int _format) {
+        if (tags[_table] == null) {
+            tags[_table] = new int[32];
+            labels[_table] = new int[32];
+            formats[_table] = new int[32];
+        }
+        int size = sizes[_table];
+        if (size == tags[_table].length) {
+            tags[_table] = Arrays.copyOf(tags[_table], size * 2);
+            labels[_table] = Arrays.copyOf(labels[_table], size * 2);
+            formats[_table] = Arrays.copyOf(formats[_table], size * 2);
+        }
+        tags[_table][size] = _tag;
+        labels[_table][size] = _label;
+        formats[_table][size] = _format;
+        sizes[_table] = size + 1;
+    }
+
+    // Sort the table by tag, so it can be searched
+    private static void sortTable(int _table) {
+        int size = sizes[_table];
+        long[] keys = new long[size];
+        for (int i = 0; i < size; i++) {
+            keys[i] = ((long) tags[_table][i] << 32) | i;
+        }
+        Arrays.sort(keys);
+        int[] sortedTags = new int[size];
+        int[] sortedLabels = new int[size];
+        int[] sortedFormats = new int[size];
+        for (int i = 0; i < size; i++) {
+            int index = (int) keys[i];
+            sortedTags[i] = tags[_table][index];
+            sortedLabels[i] = labels[_table][index];
+            sortedFormats[i] = formats[_table][index];
+        }
+        tags[_table] = sortedTags;
+        labels[_table] = sortedLabels;
+        formats[_table] = sortedFormats;
+    }
+
+    /**
+     * Value format of given tag
+     *
+     * @param _table
+     *          One of the IFD_ constants
+     * @param _tag
+     *          Tag code got from ExifDriver public static tags
+     * @return One of the FORMAT_ constants, FORMAT_NONE if the tag is not in
+     *         the table
+     */
+    static int getFormat(int _table, int _tag) {
+        int index = Arrays.binarySearch(tags[_table], _tag);
+        return index < 0 ? FORMAT_NONE : formats[_table][index];
+    }
+
+    /**
+     * Label of given tag
+     *
+     * @param _table
+     *          One of the IFD_ constants
+     * @param _tag
+     *          Tag code got from ExifDriver public static tags
+     * @return Localized label or null if the tag is not in the table
+     */
+    String getLabel(int _table, int _tag) {
+        int index = Arrays.binarySearch(tags[_table], _tag);
+        return index < 0 ? null : getText(labels[_table][index]);
+    }
+
+    /**
+     * Resource string, resolved on the first use
+     *
+     * @param _resId
+     *          String resource
+     * @return The string
+     */
+    synchronized String getText(int _resId) {
+        String result = texts.get(_resId);
+        if (result == null) {
+            result = context.getText(_resId).toString();
+            texts.put(_resId, result);
+        }
+        return result;
+    }
+}
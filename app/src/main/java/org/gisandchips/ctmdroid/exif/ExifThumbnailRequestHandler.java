@@ -0,0 +1,55 @@
+package org.gisandchips.ctmdroid.exif;
+
+import android.net.Uri;
+
+import com.squareup.picasso.Picasso;
+import com.squareup.picasso.Request;
+import com.squareup.picasso.RequestHandler;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * Picasso request handler serving the thumbnail embedded in the Exif data of
+ * a JPEG image. Grid cells then decode a thumbnail of a few KB instead of the
+ * whole photo. Images without an embedded thumbnail fall back to the image
+ * file itself.
+ *
+ * Register the handler once:
+ * new Picasso.Builder(context).addRequestHandler(new ExifThumbnailRequestHandler()).build()
+ * and load the cells with Picasso.load(ExifThumbnailRequestHandler.uriFor(path)).
+ */
+public class ExifThumbnailRequestHandler extends RequestHandler {
+
+    public static final String SCHEME = "exifthumb";
+
+    /**
+     * Uri handled by this handler
+     *
+     * @param _file
+     *          Path of the image file
+     * @return Uri of the thumbnail
+     */
+    public static Uri uriFor(String _file) {
+        return new Uri.Builder().scheme(SCHEME).path(_file).build();
+    }
+
+    @Override
+    public boolean canHandleRequest(Request _data) {
+        return _data.uri != null && SCHEME.equals(_data.uri.getScheme());
+    }
+
+    @Override
+    public Result load(Request _request, int _networkPolicy) throws IOException {
+        String path = _request.uri.getPath();
+        ByteBuffer thumbnail = ExifDriver.getThumbnail(path);
+        if (thumbnail != null) {
+            return new Result(new ExifDriver.ByteBufferInputStream(thumbnail),
+                    Picasso.LoadedFrom.DISK);
+        }
+        // Log.v(LOGTAG, "No embedded thumbnail in " + path);
+        return new Result(new FileInputStream(new File(path)), Picasso.LoadedFrom.DISK);
+    }
+}
@@ -0,0 +1,243 @@
+package org.gisandchips.ctmdroid.exif;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+
+/**
+ * Offsets of the interesting segments of a JPEG file. The file is walked
+ * marker by marker: each segment header is read and the walker jumps by the
+ * declared segment length, so finding the metadata costs a handful of small
+ * reads regardless of the file layout. Walking stops at SOS (start of the
+ * compressed image data).
+ *
+ * JPEG segment structure:
+ * 2B marker FF xx
+ * 2B segment length (includes itself, big endian)
+ * payload
+ */
+public class JpegSegments {
+
+    // Segment kinds
+    public static final int SEGMENT_APP0 = 0;
+    public static final int SEGMENT_APP1_EXIF = 1;
+    public static final int SEGMENT_APP1_XMP = 2;
+    public static final int SEGMENT_APP13 = 3;
+    public static final int SEGMENT_COM = 4;
+    public static final int SEGMENT_SOF = 5;
+    private static final int SEGMENT_KINDS = 6;
+    // Markers
+    private static final int MARKER_SOI = 0xD8;
+    private static final int MARKER_EOI = 0xD9;
+    private static final int MARKER_SOS = 0xDA;
+    private static final int MARKER_APP0 = 0xE0;
+    private static final int MARKER_APP1 = 0xE1;
+    private static final int MARKER_APP13 = 0xED;
+    private static final int MARKER_COM = 0xFE;
+    private static final int MARKER_TEM = 0x01;
+    // Identifiers of APP1 payloads
+    private static final byte[] EXIF_ID = new byte[] { 'E', 'x', 'i', 'f', 0, 0 };
+    private static final byte[] XMP_ID = "http://ns.adobe.com/xap/1.0/\0".getBytes();
+    // Marker, length and the longest identifier we need to recognize
+    private static final int HEADER_LENGTH = 4 + 29;
+
+    private final long[] offsets = new long[SEGMENT_KINDS];
+    private final int[] lengths = new int[SEGMENT_KINDS];
+    private int sofMarker = -1;
+    private int imageWidth = 0;
+    private int imageHeight = 0;
+    private long sosOffset = -1;
+
+    private JpegSegments() {
+        Arrays.fill(offsets, -1);
+    }
+
+    /**
+     * Walk the segments of given JPEG file from its beginning
+     *
+     * @param _channel
+     *          Channel of the file. Only positional reads are used, so the
+     *          position of the channel is not changed.
+     * @return Segments found or null if the file is not a JPEG image
+     * @throws IOException
+     */
+    public static JpegSegments walk(FileChannel _channel) throws IOException {
+        ByteBuffer header = ByteBuffer.allocate(HEADER_LENGTH);
+        if (readAt(_channel, header, 0) < 2 || (header.get(0) & 0xFF) != 0xFF
+                || (header.get(1) & 0xFF) != MARKER_SOI) {
+            return null;
+        }
+        JpegSegments result = new JpegSegments();
+        long position = 2;
+        long size = _channel.size();
+        while (position + 4 <= size) {
+            int read = readAt(_channel, header, position);
+            if (read < 2 || (header.get(0) & 0xFF) != 0xFF) {
+                // Garbage instead of a marker, give up
+                break;
+            }
+            int marker = header.get(1) & 0xFF;
+            if (marker == 0xFF) {
+                // Fill byte
+                position++;
+                continue;
+            }
+            if (marker == MARKER_SOS) {
+                result.sosOffset = position;
+                break;
+            }
+            if (marker == MARKER_EOI) {
+                break;
+            }
+            if (marker == MARKER_TEM || (marker >= 0xD0 && marker <= 0xD7)) {
+                // Standalone markers without length
+                position += 2;
+                continue;
+            }
+            if (read < 4) {
+                break;
+            }
+            int length = header.getShort(2) & 0xFFFF;
+            result.classify(marker, position, length, header, read);
+            position += 2 + length;
+        }
+        return result;
+    }
+
+    private static int readAt(FileChannel _channel, ByteBuffer _buffer,
+                              long _position) throws IOException {
+        _buffer.clear();
+        int total = 0;
+        while (_buffer.hasRemaining()) {
+            int read = _channel.read(_buffer, _position + total);
+            if (read < 0) {
+                break;
+            }
+            total += read;
+        }
+        return total;
+    }
+
+    private void classify(int _marker, long _position, int _length,
+                          ByteBuffer _header, int _read) {
+        switch (_marker) {
+            case MARKER_APP0:
+                remember(SEGMENT_APP0, _position, _length);
+                break;
+            case MARKER_APP1:
+                if (startsWith(_header, _read, EXIF_ID)) {
+                    remember(SEGMENT_APP1_EXIF, _position, _length);
+                } else if (startsWith(_header, _read, XMP_ID)) {
+                    remember(SEGMENT_APP1_XMP, _position, _length);
+                }
+                break;
+            case MARKER_APP13:
+                remember(SEGMENT_APP13, _position, _length);
+                break;
+            case MARKER_COM:
+                remember(SEGMENT_COM, _position, _length);
+                break;
+            default:
+                // SOF0-SOF15 except DHT (C4), JPG (C8) and DAC (CC)
+                if (_marker >= 0xC0 && _marker <= 0xCF && _marker != 0xC4
+                        && _marker != 0xC8 && _marker != 0xCC) {
+                    if (remember(SEGMENT_SOF, _position, _length)) {
+                        sofMarker = _marker;
+                        // 1B sample precision, 2B height, 2B width
+                        if (_read >= 9) {
+                            imageHeight = _header.getShort(5) & 0xFFFF;
+                            imageWidth = _header.getShort(7) & 0xFFFF;
+                        }
+                    }
+                }
+                break;
+        }
+    }
+
+    // Only the first segment of each kind is remembered
+    private boolean remember(int _kind, long _position, int _length) {
+        if (offsets[_kind] < 0) {
+            offsets[_kind] = _position;
+            lengths[_kind] = _length;
+            return true;
+        }
+        return false;
+    }
+
+    private static boolean startsWith(ByteBuffer _header, int _read, byte[] _id) {
+        if (_read < 4 + _id.length) {
+            return false;
+        }
+        for (int i = 0; i < _id.length; i++) {
+            if (_header.get(4 + i) != _id[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Offset of the marker of the first segment of given kind
+     *
+     * @param _kind
+     *          One of the SEGMENT_ constants
+     * @return Offset from the start of file or -1 if there is no such segment
+     */
+    public long getOffset(int _kind) {
+        return offsets[_kind];
+    }
+
+    /**
+     * Declared length of the first segment of given kind. The length includes
+     * the 2B of the length itself, but not the marker.
+     *
+     * @param _kind
+     *          One of the SEGMENT_ constants
+     * @return Segment length or 0 if there is no such segment
+     */
+    public int getLength(int _kind) {
+        return lengths[_kind];
+    }
+
+    public boolean contains(int _kind) {
+        return offsets[_kind] >= 0;
+    }
+
+    /**
+     * The SOFn marker of the frame, which tells the coding process (baseline,
+     * progressive ...)
+     *
+     * @return Marker (0xC0 - 0xCF) or -1 if no frame header was found
+     */
+    public int getSofMarker() {
+        return sofMarker;
+    }
+
+    /**
+     * Width of the main image taken from the frame header
+     *
+     * @return Width in pixels or 0 if no frame header was found
+     */
+    public int getImageWidth() {
+        return imageWidth;
+    }
+
+    /**
+     * Height of the main image taken from the frame header
+     *
+     * @return Height in pixels or 0 if no frame header was found
+     */
+    public int getImageHeight() {
+        return imageHeight;
+    }
+
+    /**
+     * Offset of the SOS marker, where the compressed image data start
+     *
+     * @return Offset from the start of file or -1 if it was not found
+     */
+    public long getSosOffset() {
+        return sosOffset;
+    }
+}
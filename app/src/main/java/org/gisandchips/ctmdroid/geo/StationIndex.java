@@ -0,0 +1,443 @@
+package org.gisandchips.ctmdroid.geo;
+
+import org.gisandchips.ctmdroid.model.Project;
+import org.gisandchips.ctmdroid.model.Station;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * In-memory spatial index over the stations of a project. Stations are put
+ * in a regular latitude/longitude grid, so a query only looks at the cells
+ * around the queried point instead of every station, and a station is moved
+ * or removed without rebuilding anything.
+ *
+ * The index keeps copies of the coordinates, not the Realm objects, so it
+ * can be queried from any thread. Queries run in parallel, updates are
+ * exclusive.
+ */
+public class StationIndex {
+
+    // Mean Earth radius, meters
+    public static final double EARTH_RADIUS = 6371008.8;
+    // Default cell size, degrees (about 1 km of latitude)
+    public static final double DEFAULT_CELL_SIZE = 0.01;
+
+    private static final double METERS_PER_DEGREE = EARTH_RADIUS * Math.PI / 180;
+
+    /**
+     * A station found by a query
+     */
+    public static class Hit {
+        private final int stationId;
+        private final double latitude;
+        private final double longitude;
+        private final double distance;
+
+        Hit(int _stationId, double _latitude, double _longitude, double _distance) {
+            stationId = _stationId;
+            latitude = _latitude;
+            longitude = _longitude;
+            distance = _distance;
+        }
+
+        public int getStationId() {
+            return stationId;
+        }
+
+        public double getLatitude() {
+            return latitude;
+        }
+
+        public double getLongitude() {
+            return longitude;
+        }
+
+        /**
+         * @return Distance from the queried point in meters, 0 for bounding
+         *         box queries
+         */
+        public double getDistance() {
+            return distance;
+        }
+    }
+
+    private static final Comparator<Hit> BY_DISTANCE = new Comparator<Hit>() {
+        @Override
+        public int compare(Hit _a, Hit _b) {
+            return Double.compare(_a.distance, _b.distance);
+        }
+    };
+
+    /**
+     * Indexed station
+     */
+    private static class Entry {
+        final int stationId;
+        final double latitude;
+        final double longitude;
+        final long cell;
+
+        Entry(int _stationId, double _latitude, double _longitude, long _cell) {
+            stationId = _stationId;
+            latitude = _latitude;
+            longitude = _longitude;
+            cell = _cell;
+        }
+    }
+
+    private final double cellSize;
+    private final int columns;
+    private final Map<Long, List<Entry>> cells = new HashMap<Long, List<Entry>>();
+    private final Map<Integer, Entry> stations = new HashMap<Integer, Entry>();
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+
+    public StationIndex() {
+        this(DEFAULT_CELL_SIZE);
+    }
+
+    /**
+     * @param _cellSize
+     *          Size of the grid cells in degrees. About the usual spacing
+     *          of the stations is a good value.
+     */
+    public StationIndex(double _cellSize) {
+        if (!(_cellSize > 0 && _cellSize <= 90)) {
+            throw new IllegalArgumentException("Invalid cell size " + _cellSize);
+        }
+        cellSize = _cellSize;
+        columns = (int) Math.ceil(360 / _cellSize);
+    }
+
+    /**
+     * Index all the stations of a project. Must be called on the thread
+     * owning the project's Realm.
+     *
+     * @param _project
+     *          Project to index
+     * @return The index
+     */
+    public static StationIndex forProject(Project _project) {
+        StationIndex index = new StationIndex();
+        if (_project.getStationList() != null) {
+            for (Station station : _project.getStationList()) {
+                index.put(station);
+            }
+        }
+        return index;
+    }
+
+    public void put(Station _station) {
+        put(_station.getStationId(), _station.getLatitude(), _station.getLongitude());
+    }
+
+    /**
+     * Add a station or move it to a new position
+     *
+     * @param _stationId
+     *          Station
+     * @param _latitude
+     *          Latitude, decimal degrees
+     * @param _longitude
+     *          Longitude, decimal degrees
+     */
+    public void put(int _stationId, double _latitude, double _longitude) {
+        double longitude = normalizeLongitude(_longitude);
+        Entry entry = new Entry(_stationId, _latitude, longitude,
+                cellOf(row(_latitude), column(longitude)));
+        lock.writeLock().lock();
+        try {
+            removeEntry(stations.put(_stationId, entry));
+            List<Entry> cell = cells.get(entry.cell);
+            if (cell == null) {
+                cell = new ArrayList<Entry>(2);
+                cells.put(entry.cell, cell);
+            }
+            cell.add(entry);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * @param _stationId
+     *          Station to remove
+     * @return true if the station was indexed
+     */
+    public boolean remove(int _stationId) {
+        lock.writeLock().lock();
+        try {
+            Entry entry = stations.remove(_stationId);
+            removeEntry(entry);
+            return entry != null;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public int size() {
+        lock.readLock().lock();
+        try {
+            return stations.size();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Nearest station to a point
+     *
+     * @param _latitude
+     *          Latitude, decimal degrees
+     * @param _longitude
+     *          Longitude, decimal degrees
+     * @param _maxDistance
+     *          Maximal distance in meters, Double.POSITIVE_INFINITY for
+     *          no limit
+     * @return Nearest station or null if there is none within _maxDistance
+     */
+    public Hit nearest(double _latitude, double _longitude, double _maxDistance) {
+        List<Hit> hits = search(_latitude, _longitude, _maxDistance, 1);
+        return hits.isEmpty() ? null : hits.get(0);
+    }
+
+    /**
+     * Stations within a distance of a point
+     *
+     * @param _latitude
+     *          Latitude, decimal degrees
+     * @param _longitude
+     *          Longitude, decimal degrees
+     * @param _radius
+     *          Distance in meters
+     * @return Stations sorted by distance
+     */
+    public List<Hit> withinRadius(double _latitude, double _longitude, double _radius) {
+        return search(_latitude, _longitude, _radius, Integer.MAX_VALUE);
+    }
+
+    /**
+     * Stations in a bounding box, e.g. the viewport of a map. If _west is
+     * greater than _east the box crosses the antimeridian.
+     *
+     * @param _south
+     *          Southern latitude
+     * @param _west
+     *          Western longitude
+     * @param _north
+     *          Northern latitude
+     * @param _east
+     *          Eastern longitude
+     * @return Stations in the box, unsorted
+     */
+    public List<Hit> inBoundingBox(double _south, double _west, double _north, double _east) {
+        List<Hit> hits = new ArrayList<Hit>();
+        double west = normalizeLongitude(_west);
+        double east = _east == 180 ? 180 : normalizeLongitude(_east);
+        lock.readLock().lock();
+        try {
+            if (west <= east) {
+                collectBox(_south, west, _north, east, hits);
+            } else {
+                collectBox(_south, west, _north, 180, hits);
+                collectBox(_south, -180, _north, east, hits);
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+        return hits;
+    }
+
+    /**
+     * Great-circle distance between two points
+     *
+     * @return Distance in meters
+     */
+    public static double distance(double _latitude1, double _longitude1,
+                                  double _latitude2, double _longitude2) {
+        double phi1 = Math.toRadians(_latitude1);
+        double phi2 = Math.toRadians(_latitude2);
+        double sinPhi = Math.sin((phi2 - phi1) / 2);
+        double sinLambda = Math.sin(Math.toRadians(_longitude2 - _longitude1) / 2);
+        double a = sinPhi * sinPhi + Math.cos(phi1) * Math.cos(phi2) * sinLambda * sinLambda;
+        return 2 * EARTH_RADIUS * Math.asin(Math.min(1, Math.sqrt(a)));
+    }
+
+    /**
+     * Look at rings of cells around the point until the ring is farther
+     * than the _limit-th station found or _maxDistance. When the rings would
+     * cover more cells than there are stations, or wrap around the globe,
+     * scan the stations instead.
+     */
+    private List<Hit> search(double _latitude, double _longitude, double _maxDistance, int _limit) {
+        double longitude = normalizeLongitude(_longitude);
+        int row = row(_latitude);
+        int column = column(longitude);
+        List<Hit> hits = new ArrayList<Hit>();
+        lock.readLock().lock();
+        try {
+            if (stations.isEmpty()) {
+                return hits;
+            }
+            for (int ring = 0; ; ring++) {
+                // Cells looked at so far against the stations
+                long visited = (2L * ring + 1) * (2L * ring + 1);
+                if (2 * ring + 1 >= columns || visited > 4L * stations.size() + 8) {
+                    hits.clear();
+                    for (Entry entry : stations.values()) {
+                        addHit(entry, _latitude, longitude, _maxDistance, hits);
+                    }
+                    break;
+                }
+                collectRing(row, column, ring, _latitude, longitude, _maxDistance, hits);
+                double reach = ringReach(_latitude, longitude, row, column, ring);
+                if (reach > _maxDistance) {
+                    break;
+                }
+                if (hits.size() >= _limit) {
+                    Collections.sort(hits, BY_DISTANCE);
+                    if (hits.get(_limit - 1).distance <= reach) {
+                        break;
+                    }
+                }
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+        Collections.sort(hits, BY_DISTANCE);
+        if (hits.size() > _limit) {
+            hits.subList(_limit, hits.size()).clear();
+        }
+        return hits;
+    }
+
+    private void collectRing(int _row, int _column, int _ring, double _latitude,
+                             double _longitude, double _maxDistance, List<Hit> _hits) {
+        int width = 2 * _ring + 1;
+        for (int r = _row - _ring; r <= _row + _ring; r++) {
+            boolean edgeRow = r == _row - _ring || r == _row + _ring;
+            for (int i = 0; i < width; i++) {
+                int c = _column - _ring + i;
+                if (!edgeRow && i != 0 && i != width - 1) {
+                    continue;
+                }
+                List<Entry> cell = cells.get(cellOf(r, wrapColumn(c)));
+                if (cell != null) {
+                    for (Entry entry : cell) {
+                        addHit(entry, _latitude, _longitude, _maxDistance, _hits);
+                    }
+                }
+            }
+        }
+    }
+
+    private static void addHit(Entry _entry, double _latitude, double _longitude,
+                               double _maxDistance, List<Hit> _hits) {
+        double d = distance(_latitude, _longitude, _entry.latitude, _entry.longitude);
+        if (d <= _maxDistance) {
+            _hits.add(new Hit(_entry.stationId, _entry.latitude, _entry.longitude, d));
+        }
+    }
+
+    /**
+     * Lower bound of the distance from the point to any station outside the
+     * rings searched so far
+     */
+    private double ringReach(double _latitude, double _longitude, int _row, int _column, int _ring) {
+        double south = (_row - _ring) * cellSize;
+        double north = (_row + _ring + 1) * cellSize;
+        double west = (_column - _ring) * cellSize - 180;
+        double east = (_column + _ring + 1) * cellSize - 180;
+        double latGap = Math.min(_latitude - south, north - _latitude) * METERS_PER_DEGREE;
+        if (north >= 90 && south <= -90) {
+            latGap = Double.POSITIVE_INFINITY;
+        } else if (north >= 90) {
+            latGap = (_latitude - south) * METERS_PER_DEGREE;
+        } else if (south <= -90) {
+            latGap = (north - _latitude) * METERS_PER_DEGREE;
+        }
+        // Meridians converge, use the latitude of the box nearest to a pole
+        double maxLat = Math.min(90, Math.max(Math.abs(south), Math.abs(north)));
+        double lonGap = Math.min(_longitude - west, east - _longitude)
+                * METERS_PER_DEGREE * Math.cos(Math.toRadians(maxLat));
+        return Math.min(latGap, lonGap);
+    }
+
+    private void collectBox(double _south, double _west, double _north, double _east,
+                            List<Hit> _hits) {
+        int fromRow = row(_south);
+        int toRow = row(_north);
+        // Not wrapped, _east may be 180
+        int fromColumn = Math.min(columns - 1, (int) Math.floor((_west + 180) / cellSize));
+        int toColumn = Math.min(columns - 1, (int) Math.floor((_east + 180) / cellSize));
+        long boxCells = (long) (toRow - fromRow + 1) * (toColumn - fromColumn + 1);
+        if (boxCells > stations.size()) {
+            for (Entry entry : stations.values()) {
+                addBoxHit(entry, _south, _west, _north, _east, _hits);
+            }
+            return;
+        }
+        for (int r = fromRow; r <= toRow; r++) {
+            for (int c = fromColumn; c <= toColumn; c++) {
+                List<Entry> cell = cells.get(cellOf(r, c));
+                if (cell != null) {
+                    for (Entry entry : cell) {
+                        addBoxHit(entry, _south, _west, _north, _east, _hits);
+                    }
+                }
+            }
+        }
+    }
+
+    private static void addBoxHit(Entry _entry, double _south, double _west, double _north,
+                                  double _east, List<Hit> _hits) {
+        if (_entry.latitude >= _south && _entry.latitude <= _north
+                && _entry.longitude >= _west && _entry.longitude <= _east) {
+            _hits.add(new Hit(_entry.stationId, _entry.latitude, _entry.longitude, 0));
+        }
+    }
+
+    private void removeEntry(Entry _entry) {
+        if (_entry == null) {
+            return;
+        }
+        List<Entry> cell = cells.get(_entry.cell);
+        if (cell != null) {
+            cell.remove(_entry);
+            if (cell.isEmpty()) {
+                cells.remove(_entry.cell);
+            }
+        }
+    }
+
+    private int row(double _latitude) {
+        return (int) Math.floor(_latitude / cellSize);
+    }
+
+    private int column(double _longitude) {
+        return wrapColumn((int) Math.floor((_longitude + 180) / cellSize));
+    }
+
+    private int wrapColumn(int _column) {
+        int c = _column % columns;
+        return c < 0 ? c + columns : c;
+    }
+
+    private static long cellOf(int _row, int _column) {
+        return ((long) _row << 32) | (_column & 0xffffffffL);
+    }
+
+    private static double normalizeLongitude(double _longitude) {
+        if (_longitude >= -180 && _longitude < 180) {
+            return _longitude;
+        }
+        double l = (_longitude + 180) % 360;
+        return (l < 0 ? l + 360 : l) - 180;
+    }
+}
@@ -0,0 +1,108 @@
+package org.gisandchips.ctmdroid.ingest;
+
+import org.gisandchips.ctmdroid.exif.JpegSegments;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Fingerprint of an image file used to recognize the same image copied to
+ * another place or imported twice. Hashing whole photos of several MB would
+ * dominate the ingest, so the SHA-1 covers the length of the compressed
+ * image data and its first and last 64 KB. The data start at the SOS marker
+ * found by JpegSegments: the metadata before it are left out, so stamping
+ * the Exif data of an image (in place or by a full rewrite) does not change
+ * its fingerprint. Files which are not JPEG images are hashed from their
+ * start.
+ */
+public class ContentHash {
+
+    private static final int CHUNK = 64 * 1024;
+    private static final char[] HEX = "0123456789abcdef".toCharArray();
+
+    private ContentHash() {
+    }
+
+    /**
+     * Compute fingerprint of given file
+     *
+     * @param _file
+     *          Image file
+     * @return Hex SHA-1 string or empty string if the file can't be read
+     */
+    public static String compute(File _file) {
+        RandomAccessFile file = null;
+        FileChannel channel = null;
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-1");
+            file = new RandomAccessFile(_file, "r");
+            channel = file.getChannel();
+            JpegSegments segments = JpegSegments.walk(channel);
+            long start = 0;
+            if (segments != null && segments.getSosOffset() >= 0) {
+                start = segments.getSosOffset();
+            }
+            long size = channel.size() - start;
+            ByteBuffer buffer = ByteBuffer.allocate(CHUNK);
+            buffer.putLong(size);
+            buffer.flip();
+            digest.update(buffer);
+            update(digest, channel, buffer, start, Math.min(size, CHUNK));
+            if (size > CHUNK) {
+                long tail = Math.max(CHUNK, size - CHUNK);
+                update(digest, channel, buffer, start + tail, size - tail);
+            }
+            return toHex(digest.digest());
+        } catch (IOException ex) {
+            Logger.getLogger(ContentHash.class.getName()).log(Level.SEVERE, null, ex);
+            return "";
+        } catch (NoSuchAlgorithmException ex) {
+            Logger.getLogger(ContentHash.class.getName()).log(Level.SEVERE, null, ex);
+            return "";
+        } finally {
+            try {
+                if (channel != null) {
+                    channel.close();
+                }
+                if (file != null) {
+                    file.close();
+                }
+            } catch (IOException ex) {
+                Logger.getLogger(ContentHash.class.getName())
+                        .log(Level.SEVERE, null, ex);
+            }
+        }
+    }
+
+    // Hash _length bytes (up to one chunk) starting at given position
+    private static void update(MessageDigest _digest, FileChannel _channel,
+                               ByteBuffer _buffer, long _position, long _length)
+            throws IOException {
+        _buffer.clear();
+        _buffer.limit((int) _length);
+        while (_buffer.hasRemaining()) {
+            int read = _channel.read(_buffer, _position + _buffer.position());
+            if (read < 0) {
+                break;
+            }
+        }
+        _buffer.flip();
+        _digest.update(_buffer);
+    }
+
+    private static String toHex(byte[] _bytes) {
+        char[] result = new char[_bytes.length * 2];
+        for (int i = 0; i < _bytes.length; i++) {
+            result[2 * i] = HEX[(_bytes[i] >> 4) & 0x0F];
+            result[2 * i + 1] = HEX[_bytes[i] & 0x0F];
+        }
+        return new String(result);
+    }
+}
@@ -0,0 +1,244 @@
+package org.gisandchips.ctmdroid.ingest;
+
+import org.gisandchips.ctmdroid.exif.ExifDateTime;
+import org.gisandchips.ctmdroid.exif.ExifDriver;
+import org.gisandchips.ctmdroid.exif.JpegSegments;
+
+import java.io.File;
+
+/**
+ * Metadata of one camera trap image needed to sort and place it: capture
+ * time, location, camera and the position of the embedded thumbnail. Entries
+ * are read with the selective ExifDriver, which only visits the directories
+ * holding these tags.
+ */
+public class ImageMetadata {
+
+    // Tags read from each image
+    private static final int[] IFD0_TAGS = new int[] { ExifDriver.TAG_MAKE,
+            ExifDriver.TAG_MODEL, ExifDriver.TAG_DATETIME };
+    private static final int[] EXIF_TAGS = new int[] {
+            ExifDriver.TAG_DATETIME_ORIGINAL, ExifDriver.TAG_SUB_SEC_TIME_ORIGINAL,
+            ExifDriver.TAG_SUB_SEC_TIME };
+    private static final int[] GPS_TAGS = new int[] {
+            ExifDriver.TAG_GPS_LATITUDE_REF, ExifDriver.TAG_GPS_LATITUDE,
+            ExifDriver.TAG_GPS_LONGITUDE_REF, ExifDriver.TAG_GPS_LONGITUDE,
+            ExifDriver.TAG_GPS_ALTITUDE_REF, ExifDriver.TAG_GPS_ALTITUDE };
+
+    // Value of captureTime when the image has no date
+    public static final long NO_TIME = ExifDateTime.NO_TIME;
+
+    private String fileName = "";
+    private long fileSize = 0;
+    private long lastModified = 0;
+    // Local time of the camera as milliseconds since epoch, as if it was UTC
+    private long captureTime = NO_TIME;
+    // NaN if the image is not geotagged
+    private double latitude = Double.NaN;
+    private double longitude = Double.NaN;
+    private double altitude = Double.NaN;
+    private String make = "";
+    private String model = "";
+    private int width = 0;
+    private int height = 0;
+    // Offset from start of file, -1 if there is no thumbnail
+    private long thumbnailOffset = -1;
+    private int thumbnailLength = 0;
+    // See ContentHash
+    private String contentHash = "";
+
+    /**
+     * Read metadata of given image
+     *
+     * @param _file
+     *          Image file
+     * @return Metadata. Only file name, size and modification time are set if
+     *         the file is not an Exif JPEG image.
+     */
+    public static ImageMetadata read(File _file) {
+        ImageMetadata result = new ImageMetadata();
+        result.fileName = _file.getName();
+        result.fileSize = _file.length();
+        result.lastModified = _file.lastModified();
+        result.contentHash = ContentHash.compute(_file);
+        ExifDriver driver = ExifDriver.getInstance(_file.getPath(), IFD0_TAGS,
+                EXIF_TAGS, GPS_TAGS, true);
+        if (driver != null) {
+            result.readTags(driver);
+        }
+        return result;
+    }
+
+    private void readTags(ExifDriver _driver) {
+        make = readString(_driver.getIfd0().get(ExifDriver.TAG_MAKE));
+        model = readString(_driver.getIfd0().get(ExifDriver.TAG_MODEL));
+        captureTime = ExifDateTime.getCaptureTime(_driver);
+        latitude = readCoordinate(_driver.getIfdGps().get(ExifDriver.TAG_GPS_LATITUDE),
+                _driver.getIfdGps().get(ExifDriver.TAG_GPS_LATITUDE_REF), 'S');
+        longitude = readCoordinate(_driver.getIfdGps().get(ExifDriver.TAG_GPS_LONGITUDE),
+                _driver.getIfdGps().get(ExifDriver.TAG_GPS_LONGITUDE_REF), 'W');
+        ExifDriver.ExifValue alt = _driver.getIfdGps().get(ExifDriver.TAG_GPS_ALTITUDE);
+        if (alt instanceof ExifDriver.ValueRationals && alt.getCount() > 0) {
+            altitude = ((ExifDriver.ValueRationals) alt).getDouble(0);
+            ExifDriver.ExifValue altRef = _driver.getIfdGps().get(
+                    ExifDriver.TAG_GPS_ALTITUDE_REF);
+            if (altRef instanceof ExifDriver.ValueNumbers && altRef.getCount() > 0
+                    && ((ExifDriver.ValueNumbers) altRef).getInt(0) == 1) {
+                altitude = -altitude;
+            }
+        }
+        JpegSegments segments = _driver.getSegments();
+        width = segments.getImageWidth();
+        height = segments.getImageHeight();
+        thumbnailOffset = _driver.getThumbnailFileOffset();
+        thumbnailLength = _driver.getThumbnailLength();
+    }
+
+    private static String readString(ExifDriver.ExifValue _value) {
+        if (!(_value instanceof ExifDriver.ValueByteArray)) {
+            return "";
+        }
+        byte[] bytes = ((ExifDriver.ValueByteArray) _value).getValues();
+        int length = 0;
+        while (length < bytes.length && bytes[length] != 0) {
+            length++;
+        }
+        return new String(bytes, 0, length).trim();
+    }
+
+    /**
+     * Decimal degrees from the DD/MM/SS rationals
+     */
+    private static double readCoordinate(ExifDriver.ExifValue _value,
+                                         ExifDriver.ExifValue _ref, char _negative) {
+        if (!(_value instanceof ExifDriver.ValueRationals) || _value.getCount() < 3) {
+            return Double.NaN;
+        }
+        ExifDriver.ValueRationals dms = (ExifDriver.ValueRationals) _value;
+        double result = dms.getDouble(0) + dms.getDouble(1) / 60 + dms.getDouble(2) / 3600;
+        if (readString(_ref).indexOf(_negative) >= 0) {
+            result = -result;
+        }
+        return result;
+    }
+
+    /**
+     * @return true if the image has a location
+     */
+    public boolean hasLocation() {
+        return !Double.isNaN(latitude) && !Double.isNaN(longitude);
+    }
+
+    // Standard getters & setters
+    public String getFileName() {
+        return fileName;
+    }
+
+    public void setFileName(String fileName) {
+        this.fileName = fileName;
+    }
+
+    public long getFileSize() {
+        return fileSize;
+    }
+
+    public void setFileSize(long fileSize) {
+        this.fileSize = fileSize;
+    }
+
+    public long getLastModified() {
+        return lastModified;
+    }
+
+    public void setLastModified(long lastModified) {
+        this.lastModified = lastModified;
+    }
+
+    public long getCaptureTime() {
+        return captureTime;
+    }
+
+    public void setCaptureTime(long captureTime) {
+        this.captureTime = captureTime;
+    }
+
+    public double getLatitude() {
+        return latitude;
+    }
+
+    public void setLatitude(double latitude) {
+        this.latitude = latitude;
+    }
+
+    public double getLongitude() {
+        return longitude;
+    }
+
+    public void setLongitude(double longitude) {
+        this.longitude = longitude;
+    }
+
+    public double getAltitude() {
+        return altitude;
+    }
+
+    public void setAltitude(double altitude) {
+        this.altitude = altitude;
+    }
+
+    public String getMake() {
+        return make;
+    }
+
+    public void setMake(String make) {
+        this.make = make;
+    }
+
+    public String getModel() {
+        return model;
+    }
+
+    public void setModel(String model) {
+        this.model = model;
+    }
+
+    public int getWidth() {
+        return width;
+    }
+
+    public void setWidth(int width) {
+        this.width = width;
+    }
+
+    public int getHeight() {
+        return height;
+    }
+
+    public void setHeight(int height) {
+        this.height = height;
+    }
+
+    public long getThumbnailOffset() {
+        return thumbnailOffset;
+    }
+
+    public void setThumbnailOffset(long thumbnailOffset) {
+        this.thumbnailOffset = thumbnailOffset;
+    }
+
+    public int getThumbnailLength() {
+        return thumbnailLength;
+    }
+
+    public void setThumbnailLength(int thumbnailLength) {
+        this.thumbnailLength = thumbnailLength;
+    }
+
+    public String getContentHash() {
+        return contentHash;
+    }
+
+    public void setContentHash(String contentHash) {
+        this.contentHash = contentHash;
+    }
+}
@@ -0,0 +1,281 @@
+package org.gisandchips.ctmdroid.ingest;
+
+import java.io.File;
+import java.io.FileFilter;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Scans a folder tree (e.g. a camera trap card) and reads metadata of every
+ * JPEG image on a pool of worker threads. One walker thread lists the folders
+ * and hands the images to the workers; the results are delivered to the
+ * consumer in batches, one folder per batch.
+ *
+ * The number of images handed to the workers and not yet delivered is
+ * bounded, so a slow consumer stalls the walker instead of filling the memory
+ * with pending results.
+ */
+public class ImageScanner {
+
+    /**
+     * Receives the results. Methods are called from the scanner threads, but
+     * never concurrently.
+     */
+    public interface Consumer {
+        /**
+         * Metadata of some images of one folder. A folder can be delivered in
+         * several batches.
+         *
+         * @param _folder
+         *          Folder containing the images
+         * @param _batch
+         *          Metadata of the images
+         */
+        void onBatch(File _folder, List<ImageMetadata> _batch);
+
+        /**
+         * Scanning has finished
+         *
+         * @param _scanned
+         *          Number of images read
+         * @param _cancelled
+         *          true if the scan was cancelled
+         */
+        void onFinished(int _scanned, boolean _cancelled);
+    }
+
+    private static final FileFilter FOLDER_OR_JPEG_FILTER = new FileFilter() {
+        @Override
+        public boolean accept(File _file) {
+            return !_file.isHidden()
+                    && (MetadataIndex.isJpegName(_file.getName()) || _file.isDirectory());
+        }
+    };
+
+    private final int parallelism;
+    private final int batchSize;
+    private final Semaphore inFlight;
+    private final AtomicBoolean cancelled = new AtomicBoolean(false);
+    private final AtomicInteger scanned = new AtomicInteger(0);
+    // Images of each folder read but not delivered yet
+    private final Map<File, FolderBatch> pending = new HashMap<File, FolderBatch>();
+    private final Object deliveryLock = new Object();
+    private Consumer consumer;
+    private ExecutorService executor;
+    private Thread walker;
+
+    /**
+     * Images of one folder waiting for delivery
+     */
+    private static class FolderBatch {
+        // Images submitted and not read yet
+        int remaining = 0;
+        // Walker has submitted all the images of the folder
+        boolean listed = false;
+        List<ImageMetadata> images = new ArrayList<ImageMetadata>();
+    }
+
+    /**
+     * @param _parallelism
+     *          Number of worker threads, at least 1
+     * @param _batchSize
+     *          Maximal number of images delivered in one batch
+     */
+    public ImageScanner(int _parallelism, int _batchSize) {
+        parallelism = Math.max(1, _parallelism);
+        batchSize = Math.max(1, _batchSize);
+        // Images submitted to the workers, each of them holds one permit until
+        // its result is added to a batch
+        inFlight = new Semaphore(parallelism * 4);
+    }
+
+    /**
+     * Scanner with one worker per core and batches of 100 images
+     */
+    public ImageScanner() {
+        this(Runtime.getRuntime().availableProcessors(), 100);
+    }
+
+    /**
+     * Start scanning. The method returns immediately.
+     *
+     * @param _root
+     *          Folder to scan, including its subfolders
+     * @param _consumer
+     *          Consumer of the results
+     */
+    public synchronized void start(final File _root, Consumer _consumer) {
+        if (walker != null) {
+            throw new IllegalStateException("Scan already started");
+        }
+        consumer = _consumer;
+        executor = Executors.newFixedThreadPool(parallelism);
+        walker = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                walk(_root);
+            }
+        }, "ImageScanner");
+        walker.start();
+    }
+
+    /**
+     * Stop scanning. Images already read are still delivered, then
+     * Consumer.onFinished is called.
+     */
+    public void cancel() {
+        cancelled.set(true);
+    }
+
+    public boolean isCancelled() {
+        return cancelled.get();
+    }
+
+    /**
+     * Block until the scan finishes
+     *
+     * @param _millis
+     *          Maximal time to wait, 0 means forever
+     * @throws InterruptedException
+     */
+    public void join(long _millis) throws InterruptedException {
+        Thread current;
+        synchronized (this) {
+            current = walker;
+        }
+        if (current != null) {
+            current.join(_millis);
+        }
+    }
+
+    private void walk(File _root) {
+        ArrayDeque<File> folders = new ArrayDeque<File>();
+        folders.push(_root);
+        File folder = null;
+        FolderBatch batch = null;
+        try {
+            while (!folders.isEmpty() && !cancelled.get()) {
+                folder = folders.pop();
+                File[] files = folder.listFiles(FOLDER_OR_JPEG_FILTER);
+                if (files == null) {
+                    continue;
+                }
+                batch = new FolderBatch();
+                synchronized (pending) {
+                    pending.put(folder, batch);
+                }
+                for (int i = 0; i < files.length && !cancelled.get(); i++) {
+                    if (files[i].isDirectory()) {
+                        folders.push(files[i]);
+                    } else {
+                        // Back-pressure: wait until there is room for the image
+                        inFlight.acquire();
+                        synchronized (pending) {
+                            batch.remaining++;
+                        }
+                        submit(folder, files[i]);
+                    }
+                }
+                listed(folder, batch);
+                batch = null;
+            }
+        } catch (InterruptedException ex) {
+            cancelled.set(true);
+            if (batch != null) {
+                // Deliver the images of the folder read so far
+                listed(folder, batch);
+            }
+        }
+        executor.shutdown();
+        try {
+            while (!executor.awaitTermination(1, TimeUnit.SECONDS)) {
+                // Log.v(LOGTAG, "Waiting for the workers");
+            }
+        } catch (InterruptedException ex) {
+            Logger.getLogger(ImageScanner.class.getName())
+                    .log(Level.SEVERE, null, ex);
+        }
+        synchronized (deliveryLock) {
+            consumer.onFinished(scanned.get(), cancelled.get());
+        }
+    }
+
+    /**
+     * All the images of the folder have been submitted. The rest of its
+     * images is delivered now or by the last worker.
+     */
+    private void listed(File _folder, FolderBatch _batch) {
+        List<ImageMetadata> rest = null;
+        synchronized (pending) {
+            _batch.listed = true;
+            if (_batch.remaining == 0) {
+                pending.remove(_folder);
+                rest = _batch.images;
+            }
+        }
+        deliver(_folder, rest);
+    }
+
+    private void submit(final File _folder, final File _file) {
+        executor.execute(new Runnable() {
+            @Override
+            public void run() {
+                ImageMetadata metadata = null;
+                try {
+                    if (!cancelled.get()) {
+                        metadata = ImageMetadata.read(_file);
+                        scanned.incrementAndGet();
+                    }
+                } catch (RuntimeException ex) {
+                    Logger.getLogger(ImageScanner.class.getName())
+                            .log(Level.SEVERE, _file.getPath(), ex);
+                } finally {
+                    // The image is accounted for even if it could not be read,
+                    // otherwise the folder is never delivered and the permit lost
+                    List<ImageMetadata> full = null;
+                    synchronized (pending) {
+                        FolderBatch batch = pending.get(_folder);
+                        batch.remaining--;
+                        if (metadata != null) {
+                            batch.images.add(metadata);
+                        }
+                        if (batch.listed && batch.remaining == 0) {
+                            pending.remove(_folder);
+                            full = batch.images;
+                        } else if (batch.images.size() >= batchSize) {
+                            full = batch.images;
+                            batch.images = new ArrayList<ImageMetadata>();
+                        }
+                    }
+                    inFlight.release();
+                    deliver(_folder, full);
+                }
+            }
+        });
+    }
+
+    private void deliver(File _folder, List<ImageMetadata> _batch) {
+        if (_batch == null || _batch.isEmpty()) {
+            return;
+        }
+        synchronized (deliveryLock) {
+            try {
+                consumer.onBatch(_folder, _batch);
+            } catch (RuntimeException ex) {
+                // A failing consumer must not stop the scan
+                Logger.getLogger(ImageScanner.class.getName()).log(Level.SEVERE, null, ex);
+            }
+        }
+    }
+}
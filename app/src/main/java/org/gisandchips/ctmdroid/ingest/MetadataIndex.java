@@ -0,0 +1,287 @@
+package org.gisandchips.ctmdroid.ingest;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileFilter;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Metadata of all the images of one deployment folder, persisted in a binary
+ * index file inside the folder. Opening a folder only reads the index file;
+ * refresh() then parses just the images, which are new or whose size or
+ * modification time has changed.
+ *
+ * Index file structure (big endian):
+ * 4B magic "CTMI"
+ * 4B version
+ * 4B number of entries
+ * entries, each of them:
+ * UTF file name, 8B size, 8B modification time, 8B capture time,
+ * 8B latitude, 8B longitude, 8B altitude, UTF make, UTF model,
+ * 4B width, 4B height, 8B thumbnail offset, 4B thumbnail length,
+ * UTF content hash
+ *
+ * An index file of another version is ignored and the folder parsed again.
+ * Version 4 changed the content hash to the image data from SOS, see
+ * ContentHash.
+ */
+public class MetadataIndex {
+
+    public static final String INDEX_FILE_NAME = ".ctmdroid-index";
+    private static final int MAGIC = 0x43544D49; // CTMI
+    private static final int VERSION = 4;
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private static final FileFilter JPEG_FILTER = new FileFilter() {
+        @Override
+        public boolean accept(File _file) {
+            return isJpegName(_file.getName()) && _file.isFile();
+        }
+    };
+
+    static boolean isJpegName(String _name) {
+        String name = _name.toLowerCase();
+        return name.endsWith(".jpg") || name.endsWith(".jpeg");
+    }
+
+    private final File folder;
+    // Sorted by file name
+    private final TreeMap<String, ImageMetadata> entries = new TreeMap<String, ImageMetadata>();
+    private boolean modified = false;
+
+    private MetadataIndex(File _folder) {
+        folder = _folder;
+    }
+
+    /**
+     * Open the index of given folder. Only the index file is read, the images
+     * are not touched, so the entries may be outdated until refresh() is
+     * called.
+     *
+     * @param _folder
+     *          Deployment folder
+     * @return Index, empty if the folder has not been indexed yet
+     */
+    public static MetadataIndex open(File _folder) {
+        MetadataIndex result = new MetadataIndex(_folder);
+        File indexFile = result.getIndexFile();
+        if (indexFile.exists() && !result.load(indexFile)) {
+            // Damaged or old index, it is rebuilt by refresh()
+            result.entries.clear();
+            result.modified = true;
+        }
+        return result;
+    }
+
+    public File getFolder() {
+        return folder;
+    }
+
+    public File getIndexFile() {
+        return new File(folder, INDEX_FILE_NAME);
+    }
+
+    /**
+     * Bring the index up to date with the folder content. New images and
+     * images whose size or modification time differ from the index are
+     * parsed, entries of removed images are dropped.
+     *
+     * @return Number of images parsed
+     */
+    public synchronized int refresh() {
+        File[] files = folder.listFiles(JPEG_FILTER);
+        if (files == null) {
+            files = new File[0];
+        }
+        Set<String> present = new HashSet<String>(files.length * 2);
+        int parsed = 0;
+        for (File file : files) {
+            present.add(file.getName());
+            if (isStale(file)) {
+                put(ImageMetadata.read(file));
+                parsed++;
+            }
+        }
+        if (entries.keySet().retainAll(present)) {
+            modified = true;
+        }
+        return parsed;
+    }
+
+    /**
+     * Compare the file with its entry
+     *
+     * @param _file
+     *          Image of the folder
+     * @return true if the image is not indexed or has changed since it was
+     *         indexed
+     */
+    public synchronized boolean isStale(File _file) {
+        ImageMetadata entry = entries.get(_file.getName());
+        return entry == null || entry.getFileSize() != _file.length()
+                || entry.getLastModified() != _file.lastModified();
+    }
+
+    /**
+     * Add or replace entry of one image
+     *
+     * @param _entry
+     *          Metadata of the image
+     */
+    public synchronized void put(ImageMetadata _entry) {
+        entries.put(_entry.getFileName(), _entry);
+        modified = true;
+    }
+
+    public synchronized ImageMetadata get(String _fileName) {
+        return entries.get(_fileName);
+    }
+
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    /**
+     * @return Entries sorted by file name
+     */
+    public synchronized List<ImageMetadata> getEntries() {
+        return new ArrayList<ImageMetadata>(entries.values());
+    }
+
+    /**
+     * @return true if there are changes which have not been saved yet
+     */
+    public synchronized boolean isModified() {
+        return modified;
+    }
+
+    /**
+     * Write the index file if anything has changed. The file is written next
+     * to the old one and renamed over it, so a crash never leaves a truncated
+     * index behind.
+     *
+     * @return true if the index file is up to date
+     */
+    public synchronized boolean save() {
+        if (!modified) {
+            return true;
+        }
+        File indexFile = getIndexFile();
+        File temp = new File(folder, INDEX_FILE_NAME + ".tmp");
+        DataOutputStream out = null;
+        boolean written = false;
+        try {
+            out = new DataOutputStream(new BufferedOutputStream(
+                    new FileOutputStream(temp), BUFFER_SIZE));
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeInt(entries.size());
+            for (Map.Entry<String, ImageMetadata> entry : entries.entrySet()) {
+                write(out, entry.getValue());
+            }
+            out.close();
+            out = null;
+            written = true;
+        } catch (IOException ex) {
+            Logger.getLogger(MetadataIndex.class.getName())
+                    .log(Level.SEVERE, null, ex);
+        } finally {
+            try {
+                if (out != null) {
+                    out.close();
+                }
+            } catch (IOException ex) {
+                Logger.getLogger(MetadataIndex.class.getName())
+                        .log(Level.SEVERE, null, ex);
+            }
+        }
+        // File.renameTo does not replace an existing file on every platform
+        if (written && (temp.renameTo(indexFile)
+                || (indexFile.delete() && temp.renameTo(indexFile)))) {
+            modified = false;
+            return true;
+        }
+        temp.delete();
+        return false;
+    }
+
+    private boolean load(File _indexFile) {
+        DataInputStream in = null;
+        try {
+            in = new DataInputStream(new BufferedInputStream(
+                    new FileInputStream(_indexFile), BUFFER_SIZE));
+            if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+                return false;
+            }
+            int count = in.readInt();
+            for (int i = 0; i < count; i++) {
+                ImageMetadata entry = read(in);
+                entries.put(entry.getFileName(), entry);
+            }
+            return true;
+        } catch (IOException ex) {
+            Logger.getLogger(MetadataIndex.class.getName())
+                    .log(Level.SEVERE, null, ex);
+            return false;
+        } finally {
+            try {
+                if (in != null) {
+                    in.close();
+                }
+            } catch (IOException ex) {
+                Logger.getLogger(MetadataIndex.class.getName())
+                        .log(Level.SEVERE, null, ex);
+            }
+        }
+    }
+
+    private static void write(DataOutputStream _out, ImageMetadata _entry)
+            throws IOException {
+        _out.writeUTF(_entry.getFileName());
+        _out.writeLong(_entry.getFileSize());
+        _out.writeLong(_entry.getLastModified());
+        _out.writeLong(_entry.getCaptureTime());
+        _out.writeDouble(_entry.getLatitude());
+        _out.writeDouble(_entry.getLongitude());
+        _out.writeDouble(_entry.getAltitude());
+        _out.writeUTF(_entry.getMake());
+        _out.writeUTF(_entry.getModel());
+        _out.writeInt(_entry.getWidth());
+        _out.writeInt(_entry.getHeight());
+        _out.writeLong(_entry.getThumbnailOffset());
+        _out.writeInt(_entry.getThumbnailLength());
+        _out.writeUTF(_entry.getContentHash());
+    }
+
+    private static ImageMetadata read(DataInputStream _in) throws IOException {
+        ImageMetadata entry = new ImageMetadata();
+        entry.setFileName(_in.readUTF());
+        entry.setFileSize(_in.readLong());
+        entry.setLastModified(_in.readLong());
+        entry.setCaptureTime(_in.readLong());
+        entry.setLatitude(_in.readDouble());
+        entry.setLongitude(_in.readDouble());
+        entry.setAltitude(_in.readDouble());
+        entry.setMake(_in.readUTF());
+        entry.setModel(_in.readUTF());
+        entry.setWidth(_in.readInt());
+        entry.setHeight(_in.readInt());
+        entry.setThumbnailOffset(_in.readLong());
+        entry.setThumbnailLength(_in.readInt());
+        entry.setContentHash(_in.readUTF());
+        return entry;
+    }
+}
@@ -0,0 +1,290 @@
+package org.gisandchips.ctmdroid.ingest;
+
+import android.util.SparseArray;
+
+import org.gisandchips.ctmdroid.geo.StationIndex;
+import org.gisandchips.ctmdroid.model.Station;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Assigns the images of a card to stations by their Exif GPS position and
+ * capture time, so they do not have to be sorted into station folders by
+ * hand. It is the consumer of an ImageScanner: the scanner reads the images
+ * in parallel (ImageMetadata converts the GPS DD/MM/SS rationals and refs to
+ * decimal degrees), each batch is matched against a StationIndex and handed
+ * to the sink grouped by station.
+ *
+ * An image is assigned to a station within the maximal distance whose
+ * deployment window contains the capture time. If more stations qualify,
+ * the nearest one wins when it is clearly nearer than the second; otherwise
+ * the image is handed to the sink for review, as are images without a
+ * position or without a matching station. Reviews are not kept, so the
+ * memory does not grow with the number of images of the card.
+ */
+public class StationAssigner implements ImageScanner.Consumer {
+
+    // Default maximal distance between camera and station, meters
+    public static final double DEFAULT_MAX_DISTANCE = 100;
+    // Default factor the second station has to be farther than the nearest
+    public static final double DEFAULT_AMBIGUITY_RATIO = 2;
+
+    // Reasons of review
+    public static final int REASON_NO_LOCATION = 1;
+    public static final int REASON_NO_STATION = 2;
+    public static final int REASON_OUT_OF_WINDOW = 3;
+    public static final int REASON_AMBIGUOUS = 4;
+
+    /**
+     * Receives the assigned images. Methods are called from the scanner
+     * threads, but never concurrently.
+     */
+    public interface Sink {
+        /**
+         * Images of one folder assigned to one station
+         *
+         * @param _stationId
+         *          Station
+         * @param _folder
+         *          Folder of the images
+         * @param _images
+         *          Metadata of the images
+         */
+        void onAssigned(int _stationId, File _folder, List<ImageMetadata> _images);
+
+        /**
+         * Image that could not be assigned automatically
+         *
+         * @param _review
+         *          The image and the reason
+         */
+        void onReview(Review _review);
+
+        /**
+         * All the images are assigned or handed over for review
+         *
+         * @param _assigned
+         *          Number of assigned images
+         * @param _review
+         *          Number of images handed over for review
+         * @param _cancelled
+         *          true if the scan was cancelled
+         */
+        void onFinished(int _assigned, int _review, boolean _cancelled);
+    }
+
+    /**
+     * Image that could not be assigned automatically
+     */
+    public static class Review {
+        private final File folder;
+        private final ImageMetadata image;
+        private final int reason;
+        private final int[] candidates;
+
+        Review(File _folder, ImageMetadata _image, int _reason, int[] _candidates) {
+            folder = _folder;
+            image = _image;
+            reason = _reason;
+            candidates = _candidates;
+        }
+
+        /**
+         * @return Folder of the image, null for images given to
+         *         assign(ImageMetadata)
+         */
+        public File getFolder() {
+            return folder;
+        }
+
+        public ImageMetadata getImage() {
+            return image;
+        }
+
+        /**
+         * @return One of the REASON_ constants
+         */
+        public int getReason() {
+            return reason;
+        }
+
+        /**
+         * @return Stations near the image, nearest first; for
+         *         REASON_OUT_OF_WINDOW the stations whose window does not
+         *         contain the capture time
+         */
+        public int[] getCandidates() {
+            return candidates;
+        }
+    }
+
+    private static final int[] NO_CANDIDATES = new int[0];
+
+    private final StationIndex index = new StationIndex();
+    // Deployment window of each station, {start, end}
+    private final SparseArray<long[]> windows = new SparseArray<long[]>();
+    private final Sink sink;
+    private final double maxDistance;
+    private final double ambiguityRatio;
+    private final AtomicInteger reviewCount = new AtomicInteger(0);
+    private int assigned = 0;
+
+    /**
+     * @param _sink
+     *          Receiver of the assigned images
+     * @param _maxDistance
+     *          Maximal distance between image and station in meters
+     * @param _ambiguityRatio
+     *          The nearest station is taken only if the second one is more
+     *          than this many times farther
+     */
+    public StationAssigner(Sink _sink, double _maxDistance, double _ambiguityRatio) {
+        sink = _sink;
+        maxDistance = _maxDistance;
+        ambiguityRatio = _ambiguityRatio;
+    }
+
+    public StationAssigner(Sink _sink) {
+        this(_sink, DEFAULT_MAX_DISTANCE, DEFAULT_AMBIGUITY_RATIO);
+    }
+
+    /**
+     * Add a station. Stations are added before the scan starts.
+     *
+     * @param _station
+     *          Station with position and deployment window
+     */
+    public void addStation(Station _station) {
+        addStation(_station.getStationId(), _station.getLatitude(), _station.getLongitude(),
+                _station.getDeploymentStart(), _station.getDeploymentEnd());
+    }
+
+    /**
+     * Add a station. Stations are added before the scan starts.
+     *
+     * @param _stationId
+     *          Station
+     * @param _latitude
+     *          Latitude, decimal degrees
+     * @param _longitude
+     *          Longitude, decimal degrees
+     * @param _start
+     *          Start of the deployment in milliseconds, 0 if open
+     * @param _end
+     *          End of the deployment in milliseconds, 0 if open
+     */
+    public void addStation(int _stationId, double _latitude, double _longitude,
+                           long _start, long _end) {
+        index.put(_stationId, _latitude, _longitude);
+        windows.put(_stationId, new long[] { _start, _end });
+    }
+
+    /**
+     * Station of one image. An image which can't be assigned is handed to
+     * the sink for review on the calling thread, so this is not called while
+     * a scan feeds the assigner.
+     *
+     * @param _image
+     *          Metadata of the image
+     * @return Station ID or -1 if the image has to be reviewed
+     */
+    public int assign(ImageMetadata _image) {
+        return assign(null, _image);
+    }
+
+    @Override
+    public void onBatch(File _folder, List<ImageMetadata> _batch) {
+        // Images of the batch per station, in the order of the batch
+        SparseArray<List<ImageMetadata>> byStation = new SparseArray<List<ImageMetadata>>();
+        for (ImageMetadata image : _batch) {
+            int stationId = assign(_folder, image);
+            if (stationId < 0) {
+                continue;
+            }
+            List<ImageMetadata> images = byStation.get(stationId);
+            if (images == null) {
+                images = new ArrayList<ImageMetadata>();
+                byStation.put(stationId, images);
+            }
+            images.add(image);
+        }
+        for (int i = 0; i < byStation.size(); i++) {
+            List<ImageMetadata> images = byStation.valueAt(i);
+            assigned += images.size();
+            sink.onAssigned(byStation.keyAt(i), _folder, images);
+        }
+    }
+
+    @Override
+    public void onFinished(int _scanned, boolean _cancelled) {
+        sink.onFinished(assigned, getReviewCount(), _cancelled);
+    }
+
+    /**
+     * @return Number of images handed over for review so far
+     */
+    public int getReviewCount() {
+        return reviewCount.get();
+    }
+
+    private int assign(File _folder, ImageMetadata _image) {
+        if (!_image.hasLocation()) {
+            review(_folder, _image, REASON_NO_LOCATION, NO_CANDIDATES);
+            return -1;
+        }
+        List<StationIndex.Hit> near = index.withinRadius(_image.getLatitude(),
+                _image.getLongitude(), maxDistance);
+        if (near.isEmpty()) {
+            review(_folder, _image, REASON_NO_STATION, NO_CANDIDATES);
+            return -1;
+        }
+        List<StationIndex.Hit> active = new ArrayList<StationIndex.Hit>(near.size());
+        for (StationIndex.Hit hit : near) {
+            if (isActive(hit.getStationId(), _image.getCaptureTime())) {
+                active.add(hit);
+            }
+        }
+        if (active.isEmpty()) {
+            review(_folder, _image, REASON_OUT_OF_WINDOW, stationIds(near));
+            return -1;
+        }
+        // Stations at the same distance, e.g. two at 0 m, are ambiguous too
+        if (active.size() > 1
+                && active.get(1).getDistance() <= ambiguityRatio * active.get(0).getDistance()) {
+            review(_folder, _image, REASON_AMBIGUOUS, stationIds(active));
+            return -1;
+        }
+        return active.get(0).getStationId();
+    }
+
+    /**
+     * An image without capture time only matches stations with open windows
+     */
+    private boolean isActive(int _stationId, long _captureTime) {
+        long[] window = windows.get(_stationId);
+        if (window == null) {
+            return true;
+        }
+        if (_captureTime == ImageMetadata.NO_TIME) {
+            return window[0] == 0 && window[1] == 0;
+        }
+        return (window[0] == 0 || _captureTime >= window[0])
+                && (window[1] == 0 || _captureTime <= window[1]);
+    }
+
+    private void review(File _folder, ImageMetadata _image, int _reason, int[] _candidates) {
+        reviewCount.incrementAndGet();
+        sink.onReview(new Review(_folder, _image, _reason, _candidates));
+    }
+
+    private static int[] stationIds(List<StationIndex.Hit> _hits) {
+        int[] result = new int[_hits.size()];
+        for (int i = 0; i < result.length; i++) {
+            result[i] = _hits.get(i).getStationId();
+        }
+        return result;
+    }
+}
@@ -0,0 +1,418 @@
+package org.gisandchips.ctmdroid.io;
+
+import org.gisandchips.ctmdroid.data.CtmDatabase;
+import org.gisandchips.ctmdroid.data.ProjectRepository;
+import org.gisandchips.ctmdroid.data.SampleRepository;
+import org.gisandchips.ctmdroid.model.Project;
+import org.gisandchips.ctmdroid.model.Sample;
+import org.gisandchips.ctmdroid.model.Species;
+import org.gisandchips.ctmdroid.model.Station;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.zip.GZIPOutputStream;
+
+import io.realm.Realm;
+import io.realm.RealmConfiguration;
+import io.realm.RealmList;
+
+/**
+ * Export of a project as a Camtrap DP data package: deployments.csv from the
+ * stations, media.csv from the samples and observations.csv from the species
+ * of the samples, plus the datapackage.json descriptor.
+ *
+ * Rows are written to the stream while the Realm results are iterated;
+ * Realm results are lazy, so no table is ever held in memory. The three
+ * tables are written concurrently, each by its own thread with its own
+ * Realm instance.
+ *
+ * Capture times are the local time of the camera. Camtrap DP requires
+ * timestamps with a UTC offset, so the offset of the cameras of the project
+ * is given to the export and appended to every timestamp.
+ *
+ * The samples of a station are found by their stationId; samples of older
+ * databases which are only linked from Station.sampleList are exported too.
+ */
+public class CamtrapDpExporter {
+
+    public static final String DEPLOYMENTS = "deployments.csv";
+    public static final String MEDIA = "media.csv";
+    public static final String OBSERVATIONS = "observations.csv";
+    public static final String DESCRIPTOR = "datapackage.json";
+    public static final String GZIP_SUFFIX = ".gz";
+
+    private static final String PROFILE =
+            "https://raw.githubusercontent.com/tdwg/camtrap-dp/1.0/camtrap-dp-profile.json";
+    private static final String SCHEMA_BASE =
+            "https://raw.githubusercontent.com/tdwg/camtrap-dp/1.0/";
+
+    private static final String[] DEPLOYMENT_COLUMNS = new String[] { "deploymentID",
+            "locationID", "locationName", "latitude", "longitude", "deploymentStart",
+            "deploymentEnd" };
+    private static final String[] MEDIA_COLUMNS = new String[] { "mediaID", "deploymentID",
+            "captureMethod", "timestamp", "filePath", "filePublic", "fileName",
+            "fileMediatype" };
+    private static final String[] OBSERVATION_COLUMNS = new String[] { "observationID",
+            "deploymentID", "mediaID", "eventID", "eventStart", "eventEnd",
+            "observationLevel", "observationType", "cameraSetupType", "scientificName",
+            "count" };
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private final RealmConfiguration configuration;
+
+    public CamtrapDpExporter(RealmConfiguration _configuration) {
+        configuration = _configuration;
+    }
+
+    public CamtrapDpExporter() {
+        this(CtmDatabase.getConfiguration());
+    }
+
+    /**
+     * Export a project into a folder. Blocks until the three tables are
+     * written, so it is not to be called from the UI thread.
+     *
+     * @param _projectId
+     *          Project to export
+     * @param _folder
+     *          Existing folder receiving the data package
+     * @param _gzip
+     *          true to compress the tables (deployments.csv.gz ...)
+     * @param _utcOffset
+     *          Offset of the camera clocks from UTC in minutes, e.g. 60 for
+     *          UTC+01:00
+     * @return Number of rows written to each table: deployments, media,
+     *         observations
+     * @throws IOException
+     *           if any table could not be written
+     */
+    public long[] export(final int _projectId, File _folder, final boolean _gzip,
+                         final int _utcOffset) throws IOException {
+        final File deployments = new File(_folder, DEPLOYMENTS + (_gzip ? GZIP_SUFFIX : ""));
+        final File media = new File(_folder, MEDIA + (_gzip ? GZIP_SUFFIX : ""));
+        final File observations = new File(_folder, OBSERVATIONS + (_gzip ? GZIP_SUFFIX : ""));
+        List<Callable<Long>> tables = new ArrayList<Callable<Long>>();
+        tables.add(new TableTask(_projectId, deployments, _gzip) {
+            @Override
+            long write(Realm _realm, Project _project, OutputStream _out) throws IOException {
+                return writeDeployments(_project, _out, _utcOffset);
+            }
+        });
+        tables.add(new TableTask(_projectId, media, _gzip) {
+            @Override
+            long write(Realm _realm, Project _project, OutputStream _out) throws IOException {
+                return writeMedia(_realm, _project, _out, _utcOffset);
+            }
+        });
+        tables.add(new TableTask(_projectId, observations, _gzip) {
+            @Override
+            long write(Realm _realm, Project _project, OutputStream _out) throws IOException {
+                return writeObservations(_realm, _project, _out, _utcOffset);
+            }
+        });
+
+        ExecutorService executor = Executors.newFixedThreadPool(tables.size());
+        long[] rows = new long[tables.size()];
+        try {
+            List<Future<Long>> results = new ArrayList<Future<Long>>();
+            for (Callable<Long> table : tables) {
+                results.add(executor.submit(table));
+            }
+            for (int i = 0; i < results.size(); i++) {
+                rows[i] = results.get(i).get();
+            }
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Export interrupted", ex);
+        } catch (ExecutionException ex) {
+            if (ex.getCause() instanceof IOException) {
+                throw (IOException) ex.getCause();
+            }
+            throw new IOException("Export failed", ex.getCause());
+        } finally {
+            executor.shutdownNow();
+        }
+
+        Realm realm = Realm.getInstance(configuration);
+        try {
+            Project project = ProjectRepository.findProject(realm, _projectId);
+            writeDescriptor(project == null ? "" : project.getProjectName(),
+                    new File(_folder, DESCRIPTOR), _gzip);
+        } finally {
+            realm.close();
+        }
+        return rows;
+    }
+
+    /**
+     * Write deployments.csv, one row per station
+     *
+     * @param _project
+     *          Project of the Realm of the calling thread
+     * @param _out
+     *          Destination, left open
+     * @param _utcOffset
+     *          Offset of the camera clocks from UTC in minutes
+     * @return Number of rows without the header
+     * @throws IOException
+     */
+    public long writeDeployments(Project _project, OutputStream _out, int _utcOffset)
+            throws IOException {
+        CsvWriter csv = new CsvWriter(_out);
+        csv.writeHeader(DEPLOYMENT_COLUMNS);
+        RealmList<Station> stations = _project.getStationList();
+        if (stations != null) {
+            for (Station station : stations) {
+                csv.field(station.getStationId())
+                        .field(station.getStationId())
+                        .field(station.getStationName())
+                        .field(station.getLatitude())
+                        .field(station.getLongitude())
+                        .timestamp(station.getDeploymentStart(), _utcOffset)
+                        .timestamp(station.getDeploymentEnd(), _utcOffset)
+                        .endRow();
+            }
+        }
+        csv.flush();
+        return csv.getRows() - 1;
+    }
+
+    /**
+     * Write media.csv, one row per sample
+     *
+     * @param _realm
+     *          Realm of the calling thread
+     * @param _project
+     *          Project of the Realm of the calling thread
+     * @param _out
+     *          Destination, left open
+     * @param _utcOffset
+     *          Offset of the camera clocks from UTC in minutes
+     * @return Number of rows without the header
+     * @throws IOException
+     */
+    public long writeMedia(Realm _realm, Project _project, OutputStream _out,
+                           int _utcOffset) throws IOException {
+        CsvWriter csv = new CsvWriter(_out);
+        csv.writeHeader(MEDIA_COLUMNS);
+        RealmList<Station> stations = _project.getStationList();
+        if (stations != null) {
+            SampleRepository samples = new SampleRepository(_realm, null);
+            for (Station station : stations) {
+                for (Sample sample : samples.findByStation(station.getStationId())) {
+                    writeMedia(csv, station, sample, _utcOffset);
+                }
+                for (Sample sample : legacySamples(station)) {
+                    writeMedia(csv, station, sample, _utcOffset);
+                }
+            }
+        }
+        csv.flush();
+        return csv.getRows() - 1;
+    }
+
+    private static void writeMedia(CsvWriter _csv, Station _station, Sample _sample,
+                                   int _utcOffset) throws IOException {
+        _csv.field(_sample.getSampleId())
+                .field(_station.getStationId())
+                .field("")
+                .timestamp(_sample.getCaptureTime(), _utcOffset)
+                .field(_sample.getImagePath())
+                .field(false)
+                .field(_sample.getSampleName())
+                .field("image/jpeg")
+                .endRow();
+    }
+
+    /**
+     * Write observations.csv, one row per species of each sample
+     *
+     * @param _realm
+     *          Realm of the calling thread
+     * @param _project
+     *          Project of the Realm of the calling thread
+     * @param _out
+     *          Destination, left open
+     * @param _utcOffset
+     *          Offset of the camera clocks from UTC in minutes
+     * @return Number of rows without the header
+     * @throws IOException
+     */
+    public long writeObservations(Realm _realm, Project _project, OutputStream _out,
+                                  int _utcOffset) throws IOException {
+        CsvWriter csv = new CsvWriter(_out);
+        csv.writeHeader(OBSERVATION_COLUMNS);
+        RealmList<Station> stations = _project.getStationList();
+        if (stations != null) {
+            SampleRepository samples = new SampleRepository(_realm, null);
+            StringBuilder id = new StringBuilder();
+            for (Station station : stations) {
+                for (Sample sample : samples.findByStation(station.getStationId())) {
+                    writeObservations(csv, station, sample, id, _utcOffset);
+                }
+                for (Sample sample : legacySamples(station)) {
+                    writeObservations(csv, station, sample, id, _utcOffset);
+                }
+            }
+        }
+        csv.flush();
+        return csv.getRows() - 1;
+    }
+
+    private static void writeObservations(CsvWriter _csv, Station _station, Sample _sample,
+                                          StringBuilder _id, int _utcOffset)
+            throws IOException {
+        RealmList<Species> species = _sample.getSpeciesRealmList();
+        if (species == null) {
+            return;
+        }
+        for (int i = 0; i < species.size(); i++) {
+            Species observed = species.get(i);
+            _id.setLength(0);
+            _id.append(_sample.getSampleId()).append('-').append(i + 1);
+            _csv.field(_id.toString())
+                    .field(_station.getStationId())
+                    .field(_sample.getSampleId())
+                    .field(_sample.getEventId() > 0
+                            ? String.valueOf(_sample.getEventId()) : "")
+                    .timestamp(_sample.getCaptureTime(), _utcOffset)
+                    .timestamp(_sample.getCaptureTime(), _utcOffset)
+                    .field("media")
+                    .field("animal")
+                    .field(_sample.isManagement() ? "setup" : "")
+                    .field(observed.getSpeciesName())
+                    .field(observed.getSpeciesCount())
+                    .endRow();
+        }
+    }
+
+    /**
+     * Samples linked from the station without stationId (0), i.e. samples
+     * created before stationId existed. They are not found by
+     * SampleRepository.findByStation.
+     */
+    private static List<Sample> legacySamples(Station _station) {
+        List<Sample> result = new ArrayList<Sample>();
+        RealmList<Sample> linked = _station.getSampleList();
+        if (linked != null) {
+            for (Sample sample : linked) {
+                if (sample.getStationId() == 0) {
+                    result.add(sample);
+                }
+            }
+        }
+        return result;
+    }
+
+    /**
+     * One table written on an executor thread with its own Realm
+     */
+    private abstract class TableTask implements Callable<Long> {
+        private final int projectId;
+        private final File file;
+        private final boolean gzip;
+
+        TableTask(int _projectId, File _file, boolean _gzip) {
+            projectId = _projectId;
+            file = _file;
+            gzip = _gzip;
+        }
+
+        abstract long write(Realm _realm, Project _project, OutputStream _out)
+                throws IOException;
+
+        @Override
+        public Long call() throws IOException {
+            Realm realm = Realm.getInstance(configuration);
+            OutputStream out = null;
+            try {
+                Project project = ProjectRepository.findProject(realm, projectId);
+                if (project == null) {
+                    throw new IOException("No project " + projectId);
+                }
+                out = open(file, gzip);
+                long rows = write(realm, project, out);
+                out.close();
+                out = null;
+                return rows;
+            } finally {
+                if (out != null) {
+                    try {
+                        out.close();
+                    } catch (IOException ex) {
+                        // The original exception is reported
+                    }
+                }
+                realm.close();
+            }
+        }
+    }
+
+    private static OutputStream open(File _file, boolean _gzip) throws IOException {
+        OutputStream out = new FileOutputStream(_file);
+        if (_gzip) {
+            return new GZIPOutputStream(out, BUFFER_SIZE);
+        }
+        return new BufferedOutputStream(out, BUFFER_SIZE);
+    }
+
+    private static void writeDescriptor(String _name, File _file, boolean _gzip)
+            throws IOException {
+        String suffix = _gzip ? GZIP_SUFFIX : "";
+        Writer out = new OutputStreamWriter(new FileOutputStream(_file), CsvWriter.UTF8);
+        try {
+            out.write("{\n");
+            out.write("  \"profile\": \"" + PROFILE + "\",\n");
+            out.write("  \"name\": \"" + jsonEscape(_name) + "\",\n");
+            out.write("  \"resources\": [\n");
+            writeResource(out, "deployments", DEPLOYMENTS + suffix, "deployments-table-schema.json", false);
+            writeResource(out, "media", MEDIA + suffix, "media-table-schema.json", false);
+            writeResource(out, "observations", OBSERVATIONS + suffix, "observations-table-schema.json", true);
+            out.write("  ]\n");
+            out.write("}\n");
+        } finally {
+            out.close();
+        }
+    }
+
+    private static void writeResource(Writer _out, String _name, String _path, String _schema,
+                                      boolean _last) throws IOException {
+        _out.write("    {\n");
+        _out.write("      \"name\": \"" + _name + "\",\n");
+        _out.write("      \"path\": \"" + _path + "\",\n");
+        _out.write("      \"profile\": \"tabular-data-resource\",\n");
+        _out.write("      \"format\": \"csv\",\n");
+        _out.write("      \"mediatype\": \"text/csv\",\n");
+        _out.write("      \"encoding\": \"utf-8\",\n");
+        _out.write("      \"schema\": \"" + SCHEMA_BASE + _schema + "\"\n");
+        _out.write(_last ? "    }\n" : "    },\n");
+    }
+
+    private static String jsonEscape(String _value) {
+        StringBuilder result = new StringBuilder(_value.length());
+        for (int i = 0; i < _value.length(); i++) {
+            char c = _value.charAt(i);
+            if (c == '"' || c == '\\') {
+                result.append('\\').append(c);
+            } else if (c < 0x20) {
+                result.append(String.format("\\u%04x", (int) c));
+            } else {
+                result.append(c);
+            }
+        }
+        return result.toString();
+    }
+}
@@ -0,0 +1,430 @@
+package org.gisandchips.ctmdroid.io;
+
+import org.gisandchips.ctmdroid.data.CtmDatabase;
+import org.gisandchips.ctmdroid.data.IdAllocator;
+import org.gisandchips.ctmdroid.data.ProjectRepository;
+import org.gisandchips.ctmdroid.data.RealmWriter;
+import org.gisandchips.ctmdroid.model.Project;
+import org.gisandchips.ctmdroid.model.Species;
+import org.gisandchips.ctmdroid.model.Station;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import io.realm.Realm;
+import io.realm.RealmConfiguration;
+import io.realm.RealmList;
+
+/**
+ * Import of station lists and species catalogues from CSV files. The file
+ * is tokenized by CsvReader row by row, rows are validated and the valid
+ * ones are sent to the RealmWriter in batches of BATCH_SIZE, each committed
+ * in one transaction. Invalid rows are reported and skipped.
+ *
+ * The importer waits for the writer after a few batches, so only a few
+ * batches are held in memory whatever the size of the file. Rows are counted
+ * as imported once their batch is committed; the rows of a batch the writer
+ * could not store are reported as rejected. The importer blocks and is not
+ * to be called from the UI thread.
+ *
+ * Columns are found by their header names, in any order:
+ * stations - name, latitude (lat), longitude (lon, lng), altitude (alt,
+ * elevation, optional);
+ * species - name (speciesName, scientificName), id (speciesId, taxonId,
+ * optional).
+ *
+ * Species rows are also the observations linked from the samples; the
+ * catalogue is made of the rows with no count (speciesCount 0), and only
+ * those are checked for duplicates.
+ */
+public class CatalogueImporter {
+
+    public static final int BATCH_SIZE = 1000;
+    // Problems kept in the result, the others are only counted
+    public static final int MAX_PROBLEMS = 1000;
+
+    // Batches submitted before waiting for the writer
+    private static final int MAX_PENDING_BATCHES = 4;
+    private static final long WRITER_TIMEOUT = 60;
+    private static final String FIELD_SPECIES_COUNT = "speciesCount";
+
+    private static final String[] STATION_NAME = new String[] { "name", "stationname",
+            "station", "locationname" };
+    private static final String[] LATITUDE = new String[] { "latitude", "lat" };
+    private static final String[] LONGITUDE = new String[] { "longitude", "lon", "lng",
+            "long" };
+    private static final String[] ALTITUDE = new String[] { "altitude", "alt",
+            "elevation" };
+    private static final String[] SPECIES_NAME = new String[] { "name", "speciesname",
+            "scientificname" };
+    private static final String[] SPECIES_ID = new String[] { "id", "speciesid",
+            "taxonid" };
+
+    /**
+     * Rejected row
+     */
+    public static class Problem {
+        private final long line;
+        private final String message;
+
+        Problem(long _line, String _message) {
+            line = _line;
+            message = _message;
+        }
+
+        /**
+         * @return Line of the row in the file, 1 based
+         */
+        public long getLine() {
+            return line;
+        }
+
+        public String getMessage() {
+            return message;
+        }
+    }
+
+    /**
+     * Rows submitted to the writer in one mutation
+     */
+    private abstract static class Batch implements RealmWriter.CommittedMutation {
+        final long[] lines;
+        final int count;
+        volatile boolean committed = false;
+
+        Batch(long[] _lines, int _count) {
+            lines = _lines;
+            count = _count;
+        }
+
+        @Override
+        public void onCommitted() {
+            committed = true;
+        }
+    }
+
+    /**
+     * Outcome of an import
+     */
+    public static class Result {
+        private int imported = 0;
+        private int rejected = 0;
+        private final List<Problem> problems = new ArrayList<Problem>();
+
+        void reject(long _line, String _message) {
+            rejected++;
+            if (problems.size() < MAX_PROBLEMS) {
+                problems.add(new Problem(_line, _message));
+            }
+        }
+
+        public int getImported() {
+            return imported;
+        }
+
+        public int getRejected() {
+            return rejected;
+        }
+
+        /**
+         * @return The first MAX_PROBLEMS rejected rows
+         */
+        public List<Problem> getProblems() {
+            return problems;
+        }
+    }
+
+    private final RealmConfiguration configuration;
+    private final RealmWriter writer;
+    private final IdAllocator ids;
+    // Batches submitted and not checked yet
+    private final List<Batch> pending = new ArrayList<Batch>();
+
+    public CatalogueImporter(RealmConfiguration _configuration, RealmWriter _writer,
+                             IdAllocator _ids) {
+        configuration = _configuration;
+        writer = _writer;
+        ids = _ids;
+    }
+
+    public CatalogueImporter() {
+        this(CtmDatabase.getConfiguration(), CtmDatabase.getWriter(),
+                CtmDatabase.getIdAllocator());
+    }
+
+    /**
+     * Import stations into a project. Names already used in the project are
+     * rejected.
+     *
+     * @param _in
+     *          CSV text with header row
+     * @param _delimiter
+     *          Field delimiter, usually ',' or ';'
+     * @param _projectId
+     *          Project receiving the stations
+     * @return Imported and rejected rows
+     * @throws IOException
+     *           if the file cannot be read, required columns are missing or
+     *           the project does not exist
+     */
+    public Result importStations(Reader _in, char _delimiter, final int _projectId)
+            throws IOException {
+        Set<String> names = new HashSet<String>();
+        Realm realm = Realm.getInstance(configuration);
+        try {
+            Project project = ProjectRepository.findProject(realm, _projectId);
+            if (project == null) {
+                throw new IOException("No project " + _projectId);
+            }
+            if (project.getStationList() != null) {
+                for (Station station : project.getStationList()) {
+                    names.add(station.getStationName());
+                }
+            }
+        } finally {
+            realm.close();
+        }
+
+        CsvReader csv = new CsvReader(_in, _delimiter);
+        Result result = new Result();
+        // Left by an import which failed halfway
+        pending.clear();
+        if (!csv.next()) {
+            return result;
+        }
+        int nameColumn = requireColumn(csv, STATION_NAME);
+        int latColumn = requireColumn(csv, LATITUDE);
+        int lonColumn = requireColumn(csv, LONGITUDE);
+        int altColumn = findColumn(csv, ALTITUDE);
+
+        String[] batchNames = new String[BATCH_SIZE];
+        double[] batchCoordinates = new double[3 * BATCH_SIZE];
+        long[] batchLines = new long[BATCH_SIZE];
+        int count = 0;
+        while (csv.next()) {
+            if (csv.isBlankRow()) {
+                continue;
+            }
+            long line = csv.getLineNumber();
+            String name = csv.getString(nameColumn);
+            if (name.length() == 0) {
+                result.reject(line, "Missing station name");
+                continue;
+            }
+            double lat;
+            double lon;
+            double alt = 0;
+            try {
+                lat = csv.getDouble(latColumn);
+                lon = csv.getDouble(lonColumn);
+                if (altColumn >= 0 && !csv.isEmpty(altColumn)) {
+                    alt = csv.getDouble(altColumn);
+                }
+            } catch (NumberFormatException ex) {
+                result.reject(line, "Invalid number: " + ex.getMessage());
+                continue;
+            }
+            if (!(lat >= -90 && lat <= 90) || !(lon >= -180 && lon <= 180)) {
+                result.reject(line, "Coordinates out of range");
+                continue;
+            }
+            if (!names.add(name)) {
+                result.reject(line, "Duplicate station name " + name);
+                continue;
+            }
+            batchLines[count] = line;
+            batchNames[count] = name;
+            batchCoordinates[3 * count] = lat;
+            batchCoordinates[3 * count + 1] = lon;
+            batchCoordinates[3 * count + 2] = alt;
+            count++;
+            if (count == BATCH_SIZE) {
+                submitStations(_projectId, batchNames, batchCoordinates, batchLines, count,
+                        result);
+                batchNames = new String[BATCH_SIZE];
+                batchCoordinates = new double[3 * BATCH_SIZE];
+                batchLines = new long[BATCH_SIZE];
+                count = 0;
+            }
+        }
+        if (count > 0) {
+            submitStations(_projectId, batchNames, batchCoordinates, batchLines, count,
+                    result);
+        }
+        awaitWriter(result);
+        return result;
+    }
+
+    /**
+     * Import a species catalogue. Species whose ID (or name when there is no
+     * ID) is already in the catalogue are rejected.
+     *
+     * @param _in
+     *          CSV text with header row
+     * @param _delimiter
+     *          Field delimiter, usually ',' or ';'
+     * @return Imported and rejected rows
+     * @throws IOException
+     *           if the file cannot be read or required columns are missing
+     */
+    public Result importSpecies(Reader _in, char _delimiter) throws IOException {
+        Set<String> known = new HashSet<String>();
+        Realm realm = Realm.getInstance(configuration);
+        try {
+            // Catalogue entries only, not the observations of the samples
+            for (Species species : realm.where(Species.class)
+                    .equalTo(FIELD_SPECIES_COUNT, 0).findAll()) {
+                known.add(speciesKey(species.getSpeciesId(), species.getSpeciesName()));
+            }
+        } finally {
+            realm.close();
+        }
+
+        CsvReader csv = new CsvReader(_in, _delimiter);
+        Result result = new Result();
+        // Left by an import which failed halfway
+        pending.clear();
+        if (!csv.next()) {
+            return result;
+        }
+        int nameColumn = requireColumn(csv, SPECIES_NAME);
+        int idColumn = findColumn(csv, SPECIES_ID);
+
+        String[] batch = new String[2 * BATCH_SIZE];
+        long[] batchLines = new long[BATCH_SIZE];
+        int count = 0;
+        while (csv.next()) {
+            if (csv.isBlankRow()) {
+                continue;
+            }
+            long line = csv.getLineNumber();
+            String name = csv.getString(nameColumn);
+            String id = idColumn >= 0 ? csv.getString(idColumn) : "";
+            if (name.length() == 0) {
+                result.reject(line, "Missing species name");
+                continue;
+            }
+            if (!known.add(speciesKey(id, name))) {
+                result.reject(line, "Duplicate species " + (id.length() > 0 ? id : name));
+                continue;
+            }
+            batchLines[count] = line;
+            batch[2 * count] = id;
+            batch[2 * count + 1] = name;
+            count++;
+            if (count == BATCH_SIZE) {
+                submitSpecies(batch, batchLines, count, result);
+                batch = new String[2 * BATCH_SIZE];
+                batchLines = new long[BATCH_SIZE];
+                count = 0;
+            }
+        }
+        if (count > 0) {
+            submitSpecies(batch, batchLines, count, result);
+        }
+        awaitWriter(result);
+        return result;
+    }
+
+    private void submitStations(final int _projectId, final String[] _names,
+                                final double[] _coordinates, long[] _lines, final int _count,
+                                Result _result) throws IOException {
+        submit(new Batch(_lines, _count) {
+            @Override
+            public void apply(Realm _realm) {
+                Project project = ProjectRepository.findProject(_realm, _projectId);
+                RealmList<Station> stations = project.getStationList();
+                int nextId = ids.reserve(_realm, Station.class, _count);
+                for (int i = 0; i < _count; i++) {
+                    Station station = _realm.createObject(Station.class);
+                    station.setStationId(nextId++);
+                    station.setStationName(_names[i]);
+                    station.setLatitude(_coordinates[3 * i]);
+                    station.setLongitude(_coordinates[3 * i + 1]);
+                    station.setAltitude(_coordinates[3 * i + 2]);
+                    stations.add(station);
+                }
+            }
+        }, _result);
+    }
+
+    private void submitSpecies(final String[] _batch, long[] _lines, final int _count,
+                               Result _result) throws IOException {
+        submit(new Batch(_lines, _count) {
+            @Override
+            public void apply(Realm _realm) {
+                for (int i = 0; i < _count; i++) {
+                    Species species = _realm.createObject(Species.class);
+                    species.setSpeciesId(_batch[2 * i]);
+                    species.setSpeciesName(_batch[2 * i + 1]);
+                }
+            }
+        }, _result);
+    }
+
+    private void submit(Batch _batch, Result _result) throws IOException {
+        writer.submit(_batch);
+        pending.add(_batch);
+        if (pending.size() >= MAX_PENDING_BATCHES) {
+            awaitWriter(_result);
+        }
+    }
+
+    /**
+     * Wait until the submitted batches are committed and count their rows
+     */
+    private void awaitWriter(Result _result) throws IOException {
+        try {
+            if (!writer.flush(WRITER_TIMEOUT, TimeUnit.SECONDS)) {
+                throw new IOException("Database writer is not responding");
+            }
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Import interrupted", ex);
+        }
+        for (Batch batch : pending) {
+            if (batch.committed) {
+                _result.imported += batch.count;
+            } else {
+                // The writer dropped the failing mutation, see RealmWriter
+                for (int i = 0; i < batch.count; i++) {
+                    _result.reject(batch.lines[i], "Could not be stored");
+                }
+            }
+        }
+        pending.clear();
+    }
+
+    private static String speciesKey(String _id, String _name) {
+        if (_id != null && _id.length() > 0) {
+            return "id:" + _id;
+        }
+        return "name:" + _name.toLowerCase(Locale.ROOT);
+    }
+
+    private static int findColumn(CsvReader _header, String[] _names) {
+        for (int i = 0; i < _header.getFieldCount(); i++) {
+            String column = _header.getString(i).toLowerCase(Locale.ROOT).replace("_", "");
+            for (String name : _names) {
+                if (column.equals(name)) {
+                    return i;
+                }
+            }
+        }
+        return -1;
+    }
+
+    private static int requireColumn(CsvReader _header, String[] _names) throws IOException {
+        int column = findColumn(_header, _names);
+        if (column < 0) {
+            throw new IOException("Missing column " + _names[0]);
+        }
+        return column;
+    }
+}
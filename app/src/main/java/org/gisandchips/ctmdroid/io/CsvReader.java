@@ -0,0 +1,347 @@
+package org.gisandchips.ctmdroid.io;
+
+import java.io.IOException;
+import java.io.Reader;
+
+/**
+ * Incremental RFC 4180 CSV tokenizer. The input is read into one char
+ * buffer and each field of the current row is kept as a range of it, so
+ * tokenizing allocates nothing. Numbers are parsed straight from the buffer;
+ * only getString creates a String. The buffer grows only if a single row
+ * does not fit in it, so memory does not depend on the number of rows.
+ *
+ * Quoted fields may contain the delimiter, line breaks and doubled quotes.
+ * Lines may end with CRLF or LF; a UTF-8 byte order mark is skipped.
+ */
+public class CsvReader {
+
+    private static final int INITIAL_BUFFER = 16 * 1024;
+    private static final int INITIAL_FIELDS = 16;
+    // Powers of ten representable exactly as doubles
+    private static final double[] POWERS_OF_TEN = new double[19];
+
+    static {
+        POWERS_OF_TEN[0] = 1;
+        for (int i = 1; i < POWERS_OF_TEN.length; i++) {
+            POWERS_OF_TEN[i] = POWERS_OF_TEN[i - 1] * 10;
+        }
+    }
+
+    private final Reader in;
+    private final char delimiter;
+    private char[] buffer = new char[INITIAL_BUFFER];
+    // Characters available in buffer
+    private int limit = 0;
+    // Start of the next row
+    private int position = 0;
+    private boolean eof = false;
+    private boolean started = false;
+
+    // Fields of the current row: content range and whether it holds ""
+    private int[] starts = new int[INITIAL_FIELDS];
+    private int[] ends = new int[INITIAL_FIELDS];
+    private boolean[] escaped = new boolean[INITIAL_FIELDS];
+    private int fields = 0;
+    // Line of the start of the current row, 1 based
+    private long lineNumber = 0;
+    private long nextLine = 1;
+
+    public CsvReader(Reader _in, char _delimiter) {
+        in = _in;
+        delimiter = _delimiter;
+    }
+
+    public CsvReader(Reader _in) {
+        this(_in, ',');
+    }
+
+    /**
+     * Move to the next row
+     *
+     * @return false at the end of input
+     * @throws IOException
+     */
+    public boolean next() throws IOException {
+        if (!started) {
+            started = true;
+            fill();
+            if (limit > 0 && buffer[0] == '\uFEFF') {
+                position = 1;
+            }
+        }
+        while (true) {
+            if (position >= limit && eof) {
+                fields = 0;
+                return false;
+            }
+            int end = parseRow();
+            if (end >= 0) {
+                lineNumber = nextLine;
+                for (int i = position; i < end; i++) {
+                    if (buffer[i] == '\n' || (buffer[i] == '\r'
+                            && (i + 1 >= end || buffer[i + 1] != '\n'))) {
+                        nextLine++;
+                    }
+                }
+                position = end;
+                return true;
+            }
+            // Row continues beyond the buffer
+            compact();
+            fill();
+        }
+    }
+
+    /**
+     * @return Number of fields of the current row
+     */
+    public int getFieldCount() {
+        return fields;
+    }
+
+    /**
+     * @return Line where the current row starts, 1 based
+     */
+    public long getLineNumber() {
+        return lineNumber;
+    }
+
+    /**
+     * @return true if the row has only one empty field (a blank line)
+     */
+    public boolean isBlankRow() {
+        return fields == 1 && starts[0] == ends[0];
+    }
+
+    /**
+     * @param _field
+     *          Field index
+     * @return true if the field is missing or holds only spaces
+     */
+    public boolean isEmpty(int _field) {
+        if (_field >= fields) {
+            return true;
+        }
+        for (int i = starts[_field]; i < ends[_field]; i++) {
+            if (buffer[i] != ' ' && buffer[i] != '\t') {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * @param _field
+     *          Field index
+     * @return Field text without the surrounding spaces, "" if the field is
+     *         missing
+     */
+    public String getString(int _field) {
+        if (_field >= fields) {
+            return "";
+        }
+        int start = starts[_field];
+        int end = ends[_field];
+        while (start < end && (buffer[start] == ' ' || buffer[start] == '\t')) {
+            start++;
+        }
+        while (end > start && (buffer[end - 1] == ' ' || buffer[end - 1] == '\t')) {
+            end--;
+        }
+        if (!escaped[_field]) {
+            return new String(buffer, start, end - start);
+        }
+        StringBuilder result = new StringBuilder(end - start);
+        for (int i = start; i < end; i++) {
+            result.append(buffer[i]);
+            if (buffer[i] == '"') {
+                i++;
+            }
+        }
+        return result.toString();
+    }
+
+    /**
+     * Parse a decimal number. Plain decimals ("-38.1234") are parsed from the
+     * buffer; other notations fall back to Double.parseDouble.
+     *
+     * @param _field
+     *          Field index
+     * @return Value of the field
+     * @throws NumberFormatException
+     *           if the field is missing or not a number
+     */
+    public double getDouble(int _field) {
+        if (_field >= fields) {
+            throw new NumberFormatException("Missing field " + (_field + 1));
+        }
+        int i = starts[_field];
+        int end = ends[_field];
+        while (i < end && (buffer[i] == ' ' || buffer[i] == '\t')) {
+            i++;
+        }
+        while (end > i && (buffer[end - 1] == ' ' || buffer[end - 1] == '\t')) {
+            end--;
+        }
+        boolean negative = false;
+        if (i < end && (buffer[i] == '-' || buffer[i] == '+')) {
+            negative = buffer[i] == '-';
+            i++;
+        }
+        long mantissa = 0;
+        int digits = 0;
+        int decimals = -1;
+        for (; i < end; i++) {
+            char c = buffer[i];
+            if (c >= '0' && c <= '9') {
+                mantissa = mantissa * 10 + (c - '0');
+                digits++;
+                if (decimals >= 0) {
+                    decimals++;
+                }
+            } else if (c == '.' && decimals < 0) {
+                decimals = 0;
+            } else {
+                break;
+            }
+        }
+        // Exact when the mantissa fits the 53 bits of a double
+        if (i == end && digits > 0 && digits <= 15 && decimals < POWERS_OF_TEN.length) {
+            double value = decimals > 0 ? mantissa / POWERS_OF_TEN[decimals] : mantissa;
+            return negative ? -value : value;
+        }
+        return Double.parseDouble(getString(_field));
+    }
+
+    /**
+     * Find the end of the row starting at position
+     *
+     * @return Index after the row terminator or -1 if the row is not
+     *         complete in the buffer
+     */
+    private int parseRow() {
+        fields = 0;
+        int p = position;
+        while (true) {
+            boolean quoted = p < limit && buffer[p] == '"';
+            boolean hasEscape = false;
+            int start;
+            int end;
+            if (quoted) {
+                p++;
+                start = p;
+                while (true) {
+                    if (p >= limit) {
+                        if (!eof) {
+                            return -1;
+                        }
+                        // Unterminated quote, take the rest
+                        end = p;
+                        break;
+                    }
+                    if (buffer[p] == '"') {
+                        if (p + 1 >= limit && !eof) {
+                            return -1;
+                        }
+                        if (p + 1 < limit && buffer[p + 1] == '"') {
+                            hasEscape = true;
+                            p += 2;
+                            continue;
+                        }
+                        end = p;
+                        p++;
+                        break;
+                    }
+                    p++;
+                }
+                // Ignore anything between the closing quote and the delimiter
+                while (p < limit && buffer[p] != delimiter && buffer[p] != '\n'
+                        && buffer[p] != '\r') {
+                    p++;
+                }
+            } else {
+                start = p;
+                while (p < limit && buffer[p] != delimiter && buffer[p] != '\n'
+                        && buffer[p] != '\r') {
+                    p++;
+                }
+                end = p;
+            }
+            if (p >= limit && !eof) {
+                return -1;
+            }
+            addField(start, end, hasEscape);
+            if (p >= limit) {
+                return p;
+            }
+            char c = buffer[p];
+            if (c == delimiter) {
+                p++;
+                continue;
+            }
+            if (c == '\r') {
+                if (p + 1 >= limit && !eof) {
+                    return -1;
+                }
+                p++;
+                if (p < limit && buffer[p] == '\n') {
+                    p++;
+                }
+                return p;
+            }
+            // '\n'
+            return p + 1;
+        }
+    }
+
+    private void addField(int _start, int _end, boolean _escaped) {
+        if (fields == starts.length) {
+            int size = fields * 2;
+            int[] newStarts = new int[size];
+            int[] newEnds = new int[size];
+            boolean[] newEscaped = new boolean[size];
+            System.arraycopy(starts, 0, newStarts, 0, fields);
+            System.arraycopy(ends, 0, newEnds, 0, fields);
+            System.arraycopy(escaped, 0, newEscaped, 0, fields);
+            starts = newStarts;
+            ends = newEnds;
+            escaped = newEscaped;
+        }
+        starts[fields] = _start;
+        ends[fields] = _end;
+        escaped[fields] = _escaped;
+        fields++;
+    }
+
+    /**
+     * Move the incomplete row to the start of the buffer, grow the buffer if
+     * the row fills it
+     */
+    private void compact() {
+        int remaining = limit - position;
+        if (position == 0 && remaining == buffer.length) {
+            char[] bigger = new char[buffer.length * 2];
+            System.arraycopy(buffer, 0, bigger, 0, remaining);
+            buffer = bigger;
+        } else if (position > 0) {
+            System.arraycopy(buffer, position, buffer, 0, remaining);
+        }
+        limit = remaining;
+        position = 0;
+    }
+
+    private void fill() throws IOException {
+        while (limit < buffer.length && !eof) {
+            int read = in.read(buffer, limit, buffer.length - limit);
+            if (read < 0) {
+                eof = true;
+            } else {
+                limit += read;
+            }
+        }
+    }
+
+    public void close() throws IOException {
+        in.close();
+    }
+}
@@ -0,0 +1,179 @@
+package org.gisandchips.ctmdroid.io;
+
+import org.gisandchips.ctmdroid.exif.ExifDateTime;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.math.BigDecimal;
+import java.nio.charset.Charset;
+
+/**
+ * Streaming writer of RFC 4180 CSV. Fields are written one by one straight
+ * to the buffered output, a row is never built in memory. Fields holding a
+ * comma, a quote or a line break are quoted.
+ */
+public class CsvWriter {
+
+    public static final Charset UTF8 = Charset.forName("UTF-8");
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private final Writer out;
+    // Scratch buffer for numbers and dates
+    private final StringBuilder scratch = new StringBuilder(32);
+    private boolean firstField = true;
+    private long rows = 0;
+
+    public CsvWriter(Writer _out) {
+        out = _out;
+    }
+
+    /**
+     * @param _out
+     *          Stream receiving UTF-8 text
+     */
+    public CsvWriter(OutputStream _out) {
+        this(new BufferedWriter(new OutputStreamWriter(_out, UTF8), BUFFER_SIZE));
+    }
+
+    /**
+     * Write the header row
+     *
+     * @param _names
+     *          Column names
+     * @throws IOException
+     */
+    public void writeHeader(String[] _names) throws IOException {
+        for (String name : _names) {
+            field(name);
+        }
+        endRow();
+    }
+
+    /**
+     * Write a text field, null is written as an empty field
+     */
+    public CsvWriter field(String _value) throws IOException {
+        separate();
+        if (_value == null || _value.length() == 0) {
+            return this;
+        }
+        if (!needsQuotes(_value)) {
+            out.write(_value);
+            return this;
+        }
+        out.write('"');
+        for (int i = 0; i < _value.length(); i++) {
+            char c = _value.charAt(i);
+            if (c == '"') {
+                out.write('"');
+            }
+            out.write(c);
+        }
+        out.write('"');
+        return this;
+    }
+
+    public CsvWriter field(long _value) throws IOException {
+        separate();
+        scratch.setLength(0);
+        scratch.append(_value);
+        writeScratch();
+        return this;
+    }
+
+    /**
+     * Write a decimal number without exponent, NaN is written as an empty
+     * field
+     */
+    public CsvWriter field(double _value) throws IOException {
+        separate();
+        if (Double.isNaN(_value) || Double.isInfinite(_value)) {
+            return this;
+        }
+        double abs = Math.abs(_value);
+        if (abs != 0 && (abs < 1e-3 || abs >= 1e7)) {
+            out.write(BigDecimal.valueOf(_value).stripTrailingZeros().toPlainString());
+        } else {
+            scratch.setLength(0);
+            scratch.append(_value);
+            writeScratch();
+        }
+        return this;
+    }
+
+    public CsvWriter field(boolean _value) throws IOException {
+        separate();
+        out.write(_value ? "true" : "false");
+        return this;
+    }
+
+    /**
+     * Write an ISO 8601 timestamp with UTC offset, see ExifDateTime.appendIso
+     *
+     * @param _time
+     *          Milliseconds since epoch of the local time, ExifDateTime.NO_TIME
+     *          or 0 for an empty field
+     * @param _utcOffset
+     *          Offset of the local time from UTC in minutes
+     */
+    public CsvWriter timestamp(long _time, int _utcOffset) throws IOException {
+        separate();
+        if (_time == ExifDateTime.NO_TIME || _time == 0) {
+            return this;
+        }
+        scratch.setLength(0);
+        ExifDateTime.appendIso(_time, scratch);
+        ExifDateTime.appendUtcOffset(_utcOffset, scratch);
+        writeScratch();
+        return this;
+    }
+
+    public void endRow() throws IOException {
+        out.write("\r\n");
+        firstField = true;
+        rows++;
+    }
+
+    /**
+     * @return Rows written, header included
+     */
+    public long getRows() {
+        return rows;
+    }
+
+    public void flush() throws IOException {
+        out.flush();
+    }
+
+    public void close() throws IOException {
+        out.close();
+    }
+
+    private void separate() throws IOException {
+        if (firstField) {
+            firstField = false;
+        } else {
+            out.write(',');
+        }
+    }
+
+    private void writeScratch() throws IOException {
+        for (int i = 0; i < scratch.length(); i++) {
+            out.write(scratch.charAt(i));
+        }
+    }
+
+    private static boolean needsQuotes(String _value) {
+        for (int i = 0; i < _value.length(); i++) {
+            char c = _value.charAt(i);
+            if (c == ',' || c == '"' || c == '\n' || c == '\r') {
+                return true;
+            }
+        }
+        return false;
+    }
+}
@@ -0,0 +1,32 @@
+package org.gisandchips.ctmdroid.model;
+
+import io.realm.RealmObject;
+import io.realm.annotations.PrimaryKey;
+
+/**
+ * Highest primary key reserved for one model class, see IdAllocator
+ */
+public class IdSequence extends RealmObject {
+    // Simple name of the model class
+    @PrimaryKey
+    private String sequenceName="";
+    // Keys up to this value may be in use
+    private int highWaterMark=0;
+
+    // Standard getters & setters
+    public String getSequenceName() {
+        return sequenceName;
+    }
+
+    public void setSequenceName(String sequenceName) {
+        this.sequenceName = sequenceName;
+    }
+
+    public int getHighWaterMark() {
+        return highWaterMark;
+    }
+
+    public void setHighWaterMark(int highWaterMark) {
+        this.highWaterMark = highWaterMark;
+    }
+}
@@ -9,15 +9,35 @@ import io.realm.annotations.PrimaryKey;
  * Created by benizar on 23/02/2015.
  */
 public class ProjectManager extends RealmObject {
+    // There is a single manager row
     @PrimaryKey
+    private int projectManagerId=0;
     private RealmList<Project> projectsList;
+    // Project the user works on, 0 if none
+    private int currentProjectId=0;
 
     // Standard getters & setters
-    public void setProjects(RealmList<Project> projects) {
-        this.projectsList = projects;
+    public int getProjectManagerId() {
+        return projectManagerId;
     }
 
-    public RealmList<Project> getProjects() {
+    public void setProjectManagerId(int projectManagerId) {
+        this.projectManagerId = projectManagerId;
+    }
+
+    public RealmList<Project> getProjectsList() {
         return projectsList;
     }
+
+    public void setProjectsList(RealmList<Project> projectsList) {
+        this.projectsList = projectsList;
+    }
+
+    public int getCurrentProjectId() {
+        return currentProjectId;
+    }
+
+    public void setCurrentProjectId(int currentProjectId) {
+        this.currentProjectId = currentProjectId;
+    }
 }
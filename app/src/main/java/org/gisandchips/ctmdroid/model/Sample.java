@@ -2,6 +2,7 @@ package org.gisandchips.ctmdroid.model;
 
 import io.realm.RealmList;
 import io.realm.RealmObject;
+import io.realm.annotations.Index;
 import io.realm.annotations.PrimaryKey;
 
 /**
@@ -13,6 +14,22 @@ public class Sample extends RealmObject {
     private String sampleName="";
     private boolean isManagement=false;
     private RealmList<Species> speciesRealmList;
+    // Independent event the sample belongs to, 0 if not grouped yet
+    private long eventId=0;
+    // See ClassificationIndex.STATE_ constants
+    @Index
+    private int classification=0;
+
+    // Image file of the sample
+    private String imagePath="";
+    @Index
+    private int stationId=0;
+    // Local time of the camera in milliseconds, see ExifDateTime
+    @Index
+    private long captureTime=0;
+    private long fileSize=0;
+    @Index
+    private String contentHash="";
 
     // Standard getters & setters
     public int getSampleId() {
@@ -46,4 +63,60 @@ public class Sample extends RealmObject {
     public void setSpeciesRealmList(RealmList<Species> speciesRealmList) {
         this.speciesRealmList = speciesRealmList;
     }
+
+    public long getEventId() {
+        return eventId;
+    }
+
+    public void setEventId(long eventId) {
+        this.eventId = eventId;
+    }
+
+    public int getClassification() {
+        return classification;
+    }
+
+    public void setClassification(int classification) {
+        this.classification = classification;
+    }
+
+    public String getImagePath() {
+        return imagePath;
+    }
+
+    public void setImagePath(String imagePath) {
+        this.imagePath = imagePath;
+    }
+
+    public int getStationId() {
+        return stationId;
+    }
+
+    public void setStationId(int stationId) {
+        this.stationId = stationId;
+    }
+
+    public long getCaptureTime() {
+        return captureTime;
+    }
+
+    public void setCaptureTime(long captureTime) {
+        this.captureTime = captureTime;
+    }
+
+    public long getFileSize() {
+        return fileSize;
+    }
+
+    public void setFileSize(long fileSize) {
+        this.fileSize = fileSize;
+    }
+
+    public String getContentHash() {
+        return contentHash;
+    }
+
+    public void setContentHash(String contentHash) {
+        this.contentHash = contentHash;
+    }
 }
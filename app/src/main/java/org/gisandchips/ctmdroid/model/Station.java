@@ -16,6 +16,10 @@ public class Station extends RealmObject {
     private double latitude=0.0;
     private double longitude=0.0;
     private double altitude=0.0;
+    // Active period of the camera, camera local time in milliseconds as
+    // Sample.captureTime, 0 if open
+    private long deploymentStart=0;
+    private long deploymentEnd=0;
 
     // Standard getters & setters
     public int getStationId() {
@@ -65,4 +69,20 @@ public class Station extends RealmObject {
     public void setAltitude(double altitude) {
         this.altitude = altitude;
     }
+
+    public long getDeploymentStart() {
+        return deploymentStart;
+    }
+
+    public void setDeploymentStart(long deploymentStart) {
+        this.deploymentStart = deploymentStart;
+    }
+
+    public long getDeploymentEnd() {
+        return deploymentEnd;
+    }
+
+    public void setDeploymentEnd(long deploymentEnd) {
+        this.deploymentEnd = deploymentEnd;
+    }
 }
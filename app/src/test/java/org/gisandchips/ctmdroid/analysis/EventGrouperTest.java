@@ -0,0 +1,61 @@
+package org.gisandchips.ctmdroid.analysis;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+
+public class EventGrouperTest {
+
+    private static final long MINUTE = 60 * 1000L;
+
+    @Test
+    public void gapLongerThanThresholdStartsEvent() {
+        EventGrouper grouper = new EventGrouper(30 * MINUTE);
+        long first = grouper.assign(1, 0);
+        assertEquals(first, grouper.assign(1, 10 * MINUTE));
+        // Exactly the threshold is still the same event
+        assertEquals(first, grouper.assign(1, 40 * MINUTE));
+        long second = grouper.assign(1, 71 * MINUTE);
+        assertEquals(first + 1, second);
+        assertEquals(second, grouper.getEventId(1));
+        assertEquals(71 * MINUTE, grouper.getLastCaptureTime(1));
+    }
+
+    @Test
+    public void stationsAreGroupedApart() {
+        EventGrouper grouper = new EventGrouper();
+        long a = grouper.assign(1, 0);
+        long b = grouper.assign(2, MINUTE);
+        assertEquals(a + 1, b);
+        assertEquals(a, grouper.assign(1, 2 * MINUTE));
+        assertEquals(b, grouper.assign(2, 3 * MINUTE));
+        assertEquals(0, grouper.getEventId(3));
+        assertEquals(Long.MIN_VALUE, grouper.getLastCaptureTime(3));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void captureOutOfOrder() {
+        EventGrouper grouper = new EventGrouper();
+        grouper.assign(1, 10 * MINUTE);
+        grouper.assign(1, 5 * MINUTE);
+    }
+
+    @Test
+    public void restoredStationContinues() {
+        EventGrouper grouper = new EventGrouper(30 * MINUTE);
+        grouper.restoreStation(1, 100 * MINUTE, 7);
+        assertEquals(8, grouper.getNextEventId());
+        assertEquals(7, grouper.assign(1, 120 * MINUTE));
+        assertEquals(8, grouper.assign(1, 200 * MINUTE));
+        assertEquals(9, grouper.assign(2, 0));
+    }
+
+    @Test
+    public void resetStation() {
+        EventGrouper grouper = new EventGrouper();
+        grouper.assign(1, 10 * MINUTE);
+        grouper.resetStation(1);
+        // Older captures are accepted again, in a new event
+        assertEquals(2, grouper.assign(1, 0));
+    }
+}
@@ -0,0 +1,129 @@
+package org.gisandchips.ctmdroid.data;
+
+import org.junit.Test;
+
+import java.util.BitSet;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * CompactBitSet is compared with java.util.BitSet after random updates.
+ * The values are drawn from a few chunks, so chunks fill up past the array
+ * limit, become bitmaps and turn back into arrays as they empty.
+ */
+public class CompactBitSetTest {
+
+    private static final int CHUNK = 1 << 16;
+
+    @Test
+    public void emptySet() {
+        CompactBitSet set = new CompactBitSet();
+        assertEquals(0, set.cardinality());
+        assertFalse(set.get(0));
+        assertEquals(-1, set.nextSetBit(0));
+        assertEquals(-1, set.select(0));
+        assertEquals(0, set.page(0, new int[4]));
+        assertFalse(set.clear(5));
+    }
+
+    @Test
+    public void setAndClearReportChanges() {
+        CompactBitSet set = new CompactBitSet();
+        assertTrue(set.set(7));
+        assertFalse(set.set(7));
+        assertTrue(set.clear(7));
+        assertFalse(set.clear(7));
+        assertEquals(0, set.cardinality());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void negativeValue() {
+        new CompactBitSet().set(-1);
+    }
+
+    @Test
+    public void denseChunkBecomesBitmapAndBack() {
+        CompactBitSet set = new CompactBitSet();
+        BitSet expected = new BitSet();
+        // Far above the array limit, then back below the bitmap limit
+        for (int i = 0; i < 10000; i++) {
+            set.set(CHUNK + i * 3);
+            expected.set(CHUNK + i * 3);
+        }
+        check(expected, set);
+        for (int i = 0; i < 9000; i++) {
+            set.clear(CHUNK + i * 3);
+            expected.clear(CHUNK + i * 3);
+        }
+        check(expected, set);
+    }
+
+    @Test
+    public void randomUpdates() {
+        Random random = new Random(20150301);
+        for (int round = 0; round < 20; round++) {
+            CompactBitSet set = new CompactBitSet();
+            BitSet expected = new BitSet();
+            int chunks = 1 + random.nextInt(4);
+            // Small ranges stay arrays, large ones become bitmaps
+            int range = round % 2 == 0 ? 3000 : CHUNK;
+            for (int i = 0; i < 20000; i++) {
+                int value = random.nextInt(chunks) * 5 * CHUNK + random.nextInt(range);
+                // Inserts dominate first, removals later
+                if (random.nextInt(100) < (i < 12000 ? 80 : 30)) {
+                    assertEquals(!expected.get(value), set.set(value));
+                    expected.set(value);
+                } else {
+                    assertEquals(expected.get(value), set.clear(value));
+                    expected.clear(value);
+                }
+            }
+            check(expected, set);
+        }
+    }
+
+    @Test
+    public void pages() {
+        Random random = new Random(7);
+        CompactBitSet set = new CompactBitSet();
+        BitSet expected = new BitSet();
+        for (int i = 0; i < 5000; i++) {
+            int value = random.nextInt(8 * CHUNK);
+            set.set(value);
+            expected.set(value);
+        }
+        int[] page = new int[60];
+        int rank = 0;
+        int value = expected.nextSetBit(0);
+        while (rank < set.cardinality()) {
+            int count = set.page(rank, page);
+            assertEquals(Math.min(page.length, set.cardinality() - rank), count);
+            for (int i = 0; i < count; i++) {
+                assertEquals(value, page[i]);
+                value = expected.nextSetBit(value + 1);
+            }
+            rank += count;
+        }
+        assertEquals(-1, value);
+        assertEquals(0, set.page(rank, page));
+    }
+
+    private static void check(BitSet expected, CompactBitSet set) {
+        assertEquals(expected.cardinality(), set.cardinality());
+        int rank = 0;
+        for (int value = expected.nextSetBit(0); value >= 0;
+             value = expected.nextSetBit(value + 1)) {
+            assertTrue(set.get(value));
+            assertEquals(value, set.select(rank++));
+        }
+        assertEquals(-1, set.select(rank));
+        int length = expected.length() + 2;
+        for (int value = 0; value < length; value += 97) {
+            assertEquals(expected.get(value), set.get(value));
+            assertEquals(expected.nextSetBit(value), set.nextSetBit(value));
+        }
+    }
+}
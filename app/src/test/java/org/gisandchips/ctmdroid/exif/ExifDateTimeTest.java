@@ -0,0 +1,84 @@
+package org.gisandchips.ctmdroid.exif;
+
+import org.junit.Test;
+
+import java.text.SimpleDateFormat;
+import java.util.Locale;
+import java.util.TimeZone;
+
+import static org.junit.Assert.assertEquals;
+
+public class ExifDateTimeTest {
+
+    @Test
+    public void parseMatchesUtcCalendar() throws Exception {
+        SimpleDateFormat format = new SimpleDateFormat("yyyy:MM:dd HH:mm:ss", Locale.US);
+        format.setTimeZone(TimeZone.getTimeZone("UTC"));
+        String[] dates = { "1970:01:01 00:00:00", "2000:02:29 23:59:59",
+                "2015:03:01 10:20:30", "1969:12:31 12:00:00", "2100:03:01 00:00:01" };
+        for (String date : dates) {
+            assertEquals(date, format.parse(date).getTime(), parse(date));
+        }
+    }
+
+    @Test
+    public void invalidDates() {
+        assertEquals(ExifDateTime.NO_TIME, parse("    :  :     :  :  "));
+        assertEquals(ExifDateTime.NO_TIME, parse("0000:00:00 00:00:00"));
+        assertEquals(ExifDateTime.NO_TIME, parse("2015:13:01 10:20:30"));
+        assertEquals(ExifDateTime.NO_TIME, parse("2015:03:01 24:20:30"));
+        assertEquals(ExifDateTime.NO_TIME, parse("2015:03:01"));
+    }
+
+    @Test
+    public void parseWithOffset() {
+        byte[] bytes = "xx2015:03:01 10:20:30\0".getBytes();
+        assertEquals(parse("2015:03:01 10:20:30"), ExifDateTime.parse(bytes, 2, 20));
+        assertEquals(ExifDateTime.NO_TIME, ExifDateTime.parse(bytes, 5, 20));
+    }
+
+    @Test
+    public void subSeconds() {
+        assertEquals(500, subSec("5"));
+        assertEquals(123, subSec("123456"));
+        assertEquals(70, subSec("07 "));
+        assertEquals(0, subSec(""));
+        assertEquals(0, subSec("x"));
+    }
+
+    @Test
+    public void isoRoundTrip() {
+        String[] dates = { "1970:01:01 00:00:00", "2000:02:29 23:59:59",
+                "1969:12:31 12:00:00", "2015:03:01 10:20:30" };
+        for (String date : dates) {
+            StringBuilder iso = new StringBuilder();
+            ExifDateTime.appendIso(parse(date), iso);
+            assertEquals(date.replace(':', '-').replace(' ', 'T').substring(0, 13)
+                    + date.substring(13), iso.toString());
+        }
+    }
+
+    @Test
+    public void utcOffsets() {
+        assertEquals("+00:00", offset(0));
+        assertEquals("+01:00", offset(60));
+        assertEquals("+05:45", offset(345));
+        assertEquals("-03:30", offset(-210));
+    }
+
+    private static long parse(String date) {
+        byte[] bytes = date.getBytes();
+        return ExifDateTime.parse(bytes, 0, bytes.length);
+    }
+
+    private static int subSec(String value) {
+        byte[] bytes = value.getBytes();
+        return ExifDateTime.parseSubSec(bytes, 0, bytes.length);
+    }
+
+    private static String offset(int minutes) {
+        StringBuilder result = new StringBuilder();
+        ExifDateTime.appendUtcOffset(minutes, result);
+        return result.toString();
+    }
+}
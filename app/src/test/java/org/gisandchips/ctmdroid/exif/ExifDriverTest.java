@@ -0,0 +1,429 @@
+package org.gisandchips.ctmdroid.exif;
+
+import org.junit.Test;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Random;
+import java.util.TreeMap;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * The images are built by JpegFixture, so every tag and value is known
+ */
+public class ExifDriverTest {
+
+    @Test
+    public void lazyMatchesEager() throws Exception {
+        File file = JpegFixture.image(ByteOrder.LITTLE_ENDIAN);
+        ExifDriver eager = ExifDriver.getInstance(file.getPath());
+        ExifDriver lazy = ExifDriver.getInstance(file.getPath(), true);
+        assertNotNull(eager);
+        assertNotNull(lazy);
+        assertEquals(describe(eager.getIfd0()), describe(lazy.getIfd0()));
+        assertEquals(describe(eager.getIfdExif()), describe(lazy.getIfdExif()));
+        assertEquals(describe(eager.getIfdGps()), describe(lazy.getIfdGps()));
+        assertEquals(describe(eager.getIfd1()), describe(lazy.getIfd1()));
+        assertEquals(JpegFixture.MAKE + "\0", ascii(lazy.getIfd0(), ExifDriver.TAG_MAKE));
+    }
+
+    @Test
+    public void lazyValueIsDecodedOnce() throws Exception {
+        File file = JpegFixture.image(ByteOrder.LITTLE_ENDIAN);
+        ExifDriver lazy = ExifDriver.getInstance(file.getPath(), true);
+        ExifDriver.Ifd exif = lazy.getIfdExifTable();
+        ExifDriver.ExifValue date = exif.get(ExifDriver.TAG_DATETIME_ORIGINAL);
+        assertSame(date, exif.get(ExifDriver.TAG_DATETIME_ORIGINAL));
+        assertEquals(JpegFixture.DATE + "\0", ascii(lazy.getIfdExif(),
+                ExifDriver.TAG_DATETIME_ORIGINAL));
+    }
+
+    @Test
+    public void lazySaveMatchesEager() throws Exception {
+        File file = JpegFixture.image(ByteOrder.BIG_ENDIAN);
+        File fromEager = File.createTempFile("eager", ".jpg");
+        File fromLazy = File.createTempFile("lazy", ".jpg");
+        fromEager.deleteOnExit();
+        fromLazy.deleteOnExit();
+        ExifDriver eager = ExifDriver.getInstance(file.getPath());
+        ExifDriver lazy = ExifDriver.getInstance(file.getPath(), true);
+        // An edited value is written together with the pending ones
+        ExifDriver.ValueAsciiStrings artist = new ExifDriver.ValueAsciiStrings();
+        artist.setValue("Station 7\0".getBytes());
+        eager.getIfd0().put(ExifDriver.TAG_ARTIST, artist);
+        lazy.getIfd0().put(ExifDriver.TAG_ARTIST, artist);
+        assertTrue(eager.save(fromEager.getPath()));
+        assertTrue(lazy.save(fromLazy.getPath()));
+        assertArrayEquals(JpegFixture.read(fromEager), JpegFixture.read(fromLazy));
+        ExifDriver saved = ExifDriver.getInstance(fromLazy.getPath(), true);
+        assertEquals("Station 7\0", ascii(saved.getIfd0(), ExifDriver.TAG_ARTIST));
+        assertEquals(describe(eager.getIfdGps()), describe(saved.getIfdGps()));
+    }
+
+    @Test
+    public void byteOrdersDecodeAlike() throws Exception {
+        ExifDriver intel = ExifDriver.getInstance(
+                JpegFixture.image(ByteOrder.LITTLE_ENDIAN).getPath());
+        ExifDriver motorola = ExifDriver.getInstance(
+                JpegFixture.image(ByteOrder.BIG_ENDIAN).getPath());
+        assertEquals(describe(intel.getIfd0()), describe(motorola.getIfd0()));
+        assertEquals(describe(intel.getIfdExif()), describe(motorola.getIfdExif()));
+        assertEquals(describe(intel.getIfdGps()), describe(motorola.getIfdGps()));
+        assertEquals(describe(intel.getIfd1()), describe(motorola.getIfd1()));
+    }
+
+    @Test
+    public void signedAndUnsignedValues() throws Exception {
+        ExifDriver driver = ExifDriver.getInstance(
+                JpegFixture.image(ByteOrder.BIG_ENDIAN).getPath());
+        Map<Integer, ExifDriver.ExifValue> exif = driver.getIfdExif();
+        assertArrayEquals(new int[] { -2, 300 }, numbers(exif, JpegFixture.TAG_SSHORTS));
+        assertArrayEquals(new int[] { -100000 }, numbers(exif, JpegFixture.TAG_SLONG));
+        assertArrayEquals(new int[] { -1, 5 }, numbers(exif, JpegFixture.TAG_SBYTES));
+        assertArrayEquals(new int[] { 0xFFFF }, numbers(exif, JpegFixture.TAG_USHORT));
+        ExifDriver.ValueRationals bias = (ExifDriver.ValueRationals) exif.get(
+                ExifDriver.TAG_EXPOSURE_BIAS_VALUE);
+        assertEquals(-1, bias.getNumerator(0));
+        assertEquals(3, bias.getDenominator(0));
+        Map<Integer, ExifDriver.ExifValue> gps = driver.getIfdGps();
+        assertArrayEquals(new int[] { 2, 2, 0, 0 }, numbers(gps, ExifDriver.TAG_GPS_VERSION_ID));
+        assertArrayEquals(new int[] { 1 }, numbers(gps, ExifDriver.TAG_GPS_ALTITUDE_REF));
+        assertEquals(30.0, ((ExifDriver.ValueRationals) gps.get(ExifDriver.TAG_GPS_LATITUDE))
+                .getDouble(2), 0);
+    }
+
+    @Test
+    public void thumbnailIsReadInPlace() throws Exception {
+        File file = JpegFixture.image(ByteOrder.LITTLE_ENDIAN);
+        ExifDriver driver = ExifDriver.getInstance(file.getPath());
+        ByteBuffer thumbnail = driver.getThumbnail();
+        byte[] bytes = new byte[thumbnail.remaining()];
+        thumbnail.get(bytes);
+        assertArrayEquals(JpegFixture.THUMBNAIL, bytes);
+        // The offset is counted from the start of the file
+        byte[] data = JpegFixture.read(file);
+        assertEquals(JpegFixture.THUMBNAIL.length, driver.getThumbnailLength());
+        assertArrayEquals(JpegFixture.THUMBNAIL, Arrays.copyOfRange(data,
+                (int) driver.getThumbnailFileOffset(),
+                (int) driver.getThumbnailFileOffset() + JpegFixture.THUMBNAIL.length));
+    }
+
+    @Test
+    public void tableMatchesSortedMap() throws Exception {
+        ExifDriver driver = ExifDriver.getInstance(
+                JpegFixture.image(ByteOrder.LITTLE_ENDIAN).getPath());
+        ExifDriver.Ifd ifd = driver.getIfdExifTable();
+        TreeMap<Integer, Integer> expected = new TreeMap<Integer, Integer>();
+        for (int i = 0; i < ifd.size(); i++) {
+            ifd.put(ifd.tagAt(i), new ExifDriver.ValueLongs(-1));
+            expected.put(ifd.tagAt(i), -1);
+        }
+        Random random = new Random(4);
+        for (int i = 0; i < 2000; i++) {
+            int tag = random.nextInt(300) * 211;
+            if (random.nextInt(3) > 0) {
+                ExifDriver.ExifValue old = ifd.put(tag, new ExifDriver.ValueLongs(i));
+                assertEquals(expected.put(tag, i), old == null ? null : number(old));
+            } else {
+                ExifDriver.ExifValue old = ifd.remove(tag);
+                assertEquals(expected.remove(tag), old == null ? null : number(old));
+            }
+        }
+        assertEquals(expected.size(), ifd.size());
+        int index = 0;
+        for (Map.Entry<Integer, Integer> entry : expected.entrySet()) {
+            assertEquals((long) entry.getKey(), ifd.tagAt(index));
+            assertEquals(entry.getValue(), number(ifd.valueAt(index)));
+            assertEquals(entry.getValue(), number(ifd.get(entry.getKey())));
+            index++;
+        }
+        assertNull(ifd.get(1));
+    }
+
+    @Test
+    public void mapView() throws Exception {
+        ExifDriver driver = ExifDriver.getInstance(
+                JpegFixture.image(ByteOrder.LITTLE_ENDIAN).getPath());
+        Map<Integer, ExifDriver.ExifValue> gps = driver.getIfdGps();
+        assertEquals(5, gps.size());
+        assertTrue(gps.containsKey(ExifDriver.TAG_GPS_ALTITUDE));
+        assertFalse(gps.containsKey("6"));
+        gps.put(ExifDriver.TAG_GPS_DIFFERENTIAL, new ExifDriver.ValueLongs(1));
+        assertTrue(driver.getIfdGpsTable().contains(ExifDriver.TAG_GPS_DIFFERENTIAL));
+        // Removing through the iterator
+        Iterator<Map.Entry<Integer, ExifDriver.ExifValue>> entries = gps.entrySet().iterator();
+        int last = -1;
+        while (entries.hasNext()) {
+            int tag = entries.next().getKey();
+            assertTrue(tag > last);
+            last = tag;
+            if (tag != ExifDriver.TAG_GPS_VERSION_ID) {
+                entries.remove();
+            }
+        }
+        assertEquals(1, gps.size());
+        assertEquals(ExifDriver.TAG_GPS_VERSION_ID, (int) gps.keySet().iterator().next());
+    }
+
+    @Test
+    public void savedDirectoryIsSorted() throws Exception {
+        File file = JpegFixture.image(ByteOrder.BIG_ENDIAN);
+        ExifDriver driver = ExifDriver.getInstance(file.getPath());
+        int[] added = new int[] { ExifDriver.TAG_SOFTWARE, ExifDriver.TAG_ARTIST,
+                ExifDriver.TAG_IMAGE_DESCRIPTION, ExifDriver.TAG_MODEL };
+        for (int tag : added) {
+            ExifDriver.ValueAsciiStrings value = new ExifDriver.ValueAsciiStrings();
+            value.setValue(("tag " + tag + "\0").getBytes());
+            driver.getIfd0().put(tag, value);
+        }
+        File saved = File.createTempFile("sorted", ".jpg");
+        saved.deleteOnExit();
+        assertTrue(driver.save(saved.getPath()));
+        // Saved data are Intel aligned, IFD0 follows the TIFF header
+        ByteBuffer data = ByteBuffer.wrap(JpegFixture.read(saved)).order(ByteOrder.LITTLE_ENDIAN);
+        int ifd0 = 2 + 10 + 8;
+        int entries = data.getShort(ifd0);
+        assertEquals(driver.getIfd0().size(), entries);
+        for (int i = 1; i < entries; i++) {
+            assertTrue((data.getShort(ifd0 + 2 + 12 * (i - 1)) & 0xFFFF)
+                    < (data.getShort(ifd0 + 2 + 12 * i) & 0xFFFF));
+        }
+        ExifDriver reread = ExifDriver.getInstance(saved.getPath());
+        assertEquals(describe(driver.getIfd0()), describe(reread.getIfd0()));
+    }
+
+    static String ascii(Map<Integer, ExifDriver.ExifValue> ifd, int tag) {
+        return new String(((ExifDriver.ValueByteArray) ifd.get(tag)).getValues());
+    }
+
+    @Test
+    public void saveInPlaceWhenDataFit() throws Exception {
+        File file = JpegFixture.write(JpegFixture.jfifSegment(),
+                JpegFixture.exifSegment(JpegFixture.tiff(ByteOrder.BIG_ENDIAN, 200)),
+                JpegFixture.sofSegment(0xC0, JpegFixture.WIDTH, JpegFixture.HEIGHT),
+                JpegFixture.imageData(20000));
+        long length = file.length();
+        byte[] imageData = JpegFixture.imageDataOf(file);
+        ExifDriver driver = ExifDriver.getInstance(file.getPath(), true);
+        driver.getIfdExif().remove(ExifDriver.TAG_MARKER_NOTE);
+        driver.getIfd0().put(ExifDriver.TAG_ARTIST, asciiValue("Station 7"));
+        assertTrue(driver.saveInPlace());
+        assertEquals(length, file.length());
+        assertArrayEquals(imageData, JpegFixture.imageDataOf(file));
+        ExifDriver saved = ExifDriver.getInstance(file.getPath());
+        assertEquals("Station 7\0", ascii(saved.getIfd0(), ExifDriver.TAG_ARTIST));
+        assertNull(saved.getIfdExif().get(ExifDriver.TAG_MARKER_NOTE));
+        assertEquals(describe(driver.getIfdGps()), describe(saved.getIfdGps()));
+        assertArrayEquals(JpegFixture.THUMBNAIL, thumbnail(saved));
+        // The driver keeps working with the data it has written
+        driver.getIfd0().put(ExifDriver.TAG_ARTIST, asciiValue("Station 8"));
+        assertTrue(driver.save(file.getPath()));
+        assertEquals(length, file.length());
+        saved = ExifDriver.getInstance(file.getPath());
+        assertEquals("Station 8\0", ascii(saved.getIfd0(), ExifDriver.TAG_ARTIST));
+        assertArrayEquals(JpegFixture.THUMBNAIL, thumbnail(saved));
+    }
+
+    @Test
+    public void saveInPlaceRefusesLargerData() throws Exception {
+        File file = JpegFixture.image(ByteOrder.LITTLE_ENDIAN);
+        byte[] original = JpegFixture.read(file);
+        ExifDriver driver = ExifDriver.getInstance(file.getPath());
+        driver.getIfdExif().put(ExifDriver.TAG_USER_COMMENT,
+                asciiValue(new String(new char[1000])));
+        assertFalse(driver.saveInPlace());
+        assertArrayEquals(original, JpegFixture.read(file));
+        // save() replaces the file instead
+        assertTrue(driver.save(file.getPath()));
+        assertTrue(file.length() > original.length);
+        assertArrayEquals(JpegFixture.imageDataOf(JpegFixture.image(ByteOrder.LITTLE_ENDIAN)),
+                JpegFixture.imageDataOf(file));
+        ExifDriver saved = ExifDriver.getInstance(file.getPath());
+        assertEquals(1001, saved.getIfdExif().get(ExifDriver.TAG_USER_COMMENT).getCount());
+        assertArrayEquals(JpegFixture.THUMBNAIL, thumbnail(saved));
+    }
+
+    @Test
+    public void reservedPaddingAllowsLaterSaveInPlace() throws Exception {
+        File file = JpegFixture.image(ByteOrder.LITTLE_ENDIAN);
+        File plain = File.createTempFile("plain", ".jpg");
+        File padded = File.createTempFile("padded", ".jpg");
+        plain.deleteOnExit();
+        padded.deleteOnExit();
+        ExifDriver driver = ExifDriver.getInstance(file.getPath());
+        assertTrue(driver.save(plain.getPath()));
+        driver.setReservedPadding(2048);
+        assertTrue(driver.save(padded.getPath()));
+        long length = padded.length();
+        assertEquals(plain.length() + 2048, length);
+        ExifDriver edited = ExifDriver.getInstance(padded.getPath());
+        edited.getIfdExif().put(ExifDriver.TAG_USER_COMMENT,
+                asciiValue(new String(new char[1000])));
+        assertTrue(edited.saveInPlace());
+        assertEquals(length, padded.length());
+        assertEquals(1001, ExifDriver.getInstance(padded.getPath()).getIfdExif()
+                .get(ExifDriver.TAG_USER_COMMENT).getCount());
+    }
+
+    @Test
+    public void fullRewriteCopiesTheRestOfTheFile() throws Exception {
+        byte[] exif = JpegFixture.exifSegment(JpegFixture.tiff(ByteOrder.BIG_ENDIAN, 0));
+        byte[] com = JpegFixture.segment(0xFE, "after exif".getBytes());
+        // Much larger than any copy buffer
+        byte[] rest = JpegFixture.concat(com,
+                JpegFixture.sofSegment(0xC0, JpegFixture.WIDTH, JpegFixture.HEIGHT),
+                JpegFixture.imageData(3 * 1024 * 1024 + 17));
+        File file = JpegFixture.write(JpegFixture.jfifSegment(), exif, rest);
+        byte[] original = JpegFixture.read(file);
+        File copy = File.createTempFile("copy", ".jpg");
+        copy.deleteOnExit();
+        ExifDriver driver = ExifDriver.getInstance(file.getPath());
+        driver.getIfd0().put(ExifDriver.TAG_ARTIST, asciiValue("Station 7"));
+        assertTrue(driver.save(copy.getPath()));
+        assertArrayEquals(original, JpegFixture.read(file));
+        // SOI, the new APP1 segment, then the source file following its APP1
+        byte[] saved = JpegFixture.read(copy);
+        FileInputStream in = new FileInputStream(copy);
+        JpegSegments segments;
+        try {
+            segments = JpegSegments.walk(in.getChannel());
+        } finally {
+            in.close();
+        }
+        assertEquals(2, segments.getOffset(JpegSegments.SEGMENT_APP1_EXIF));
+        int restStart = 2 + 2 + segments.getLength(JpegSegments.SEGMENT_APP1_EXIF);
+        assertEquals(restStart + rest.length, saved.length);
+        assertArrayEquals(rest, Arrays.copyOfRange(saved, restStart, saved.length));
+        assertEquals(JpegFixture.WIDTH, segments.getImageWidth());
+        ExifDriver reread = ExifDriver.getInstance(copy.getPath());
+        assertEquals("Station 7\0", ascii(reread.getIfd0(), ExifDriver.TAG_ARTIST));
+        assertEquals(describe(driver.getIfdExif()), describe(reread.getIfdExif()));
+        assertArrayEquals(JpegFixture.THUMBNAIL, thumbnail(reread));
+    }
+
+    @Test
+    public void selectiveHoldsWantedTags() throws Exception {
+        File file = JpegFixture.image(ByteOrder.BIG_ENDIAN);
+        ExifDriver driver = ExifDriver.getInstance(file.getPath(),
+                new int[] { ExifDriver.TAG_MAKE },
+                new int[] { ExifDriver.TAG_SUB_SEC_TIME_ORIGINAL,
+                        ExifDriver.TAG_DATETIME_ORIGINAL },
+                new int[] { ExifDriver.TAG_GPS_LATITUDE, ExifDriver.TAG_GPS_DEST_BEARING });
+        assertTrue(driver.isReadOnly());
+        assertEquals(JpegFixture.MAKE + "\0", ascii(driver.getIfd0(), ExifDriver.TAG_MAKE));
+        assertFalse(driver.getIfd0().containsKey(ExifDriver.TAG_ORIENTATION));
+        assertEquals(2, driver.getIfdExif().size());
+        assertEquals(JpegFixture.DATE + "\0", ascii(driver.getIfdExif(),
+                ExifDriver.TAG_DATETIME_ORIGINAL));
+        assertEquals("25\0", ascii(driver.getIfdExif(), ExifDriver.TAG_SUB_SEC_TIME_ORIGINAL));
+        // A missing tag is simply not found
+        assertEquals(1, driver.getIfdGps().size());
+        assertEquals(30.0, ((ExifDriver.ValueRationals) driver.getIfdGps()
+                .get(ExifDriver.TAG_GPS_LATITUDE)).getDouble(2), 0);
+        assertTrue(driver.getIfd1().isEmpty());
+        assertNull(driver.getThumbnail());
+    }
+
+    @Test
+    public void selectiveSkipsUnwantedDirectories() throws Exception {
+        // Exif pointer and IFD1 link of the fixture point out of the data
+        byte[] tiff = JpegFixture.tiff(ByteOrder.LITTLE_ENDIAN, 0);
+        ByteBuffer data = ByteBuffer.wrap(tiff).order(ByteOrder.LITTLE_ENDIAN);
+        int entries = data.getShort(8);
+        for (int i = 0; i < entries; i++) {
+            int entry = 8 + 2 + 12 * i;
+            if ((data.getShort(entry) & 0xFFFF) == 0x8769) {
+                data.putInt(entry + 8, 0x7FFF0000);
+            }
+        }
+        data.putInt(8 + 2 + 12 * entries, 0x7FFF0000);
+        File file = JpegFixture.write(JpegFixture.exifSegment(tiff),
+                JpegFixture.sofSegment(0xC0, 8, 8), JpegFixture.imageData(100));
+        assertNull(ExifDriver.getInstance(file.getPath()));
+        ExifDriver driver = ExifDriver.getInstance(file.getPath(),
+                new int[] { ExifDriver.TAG_MAKE }, null,
+                new int[] { ExifDriver.TAG_GPS_ALTITUDE_REF });
+        assertNotNull(driver);
+        assertEquals(JpegFixture.MAKE + "\0", ascii(driver.getIfd0(), ExifDriver.TAG_MAKE));
+        assertArrayEquals(new int[] { 1 }, numbers(driver.getIfdGps(),
+                ExifDriver.TAG_GPS_ALTITUDE_REF));
+        assertTrue(driver.getIfdExif().isEmpty());
+    }
+
+    @Test
+    public void thumbnailOnly() throws Exception {
+        File file = JpegFixture.image(ByteOrder.BIG_ENDIAN);
+        ByteBuffer thumbnail = ExifDriver.getThumbnail(file.getPath());
+        byte[] bytes = new byte[thumbnail.remaining()];
+        thumbnail.get(bytes);
+        assertArrayEquals(JpegFixture.THUMBNAIL, bytes);
+        ExifDriver driver = ExifDriver.getInstance(file.getPath(), null, null, null, true);
+        assertTrue(driver.getIfd0().isEmpty());
+        assertEquals(2, driver.getIfd1().size());
+    }
+
+    @Test
+    public void saveOfReadOnlyDriverFails() throws Exception {
+        File file = JpegFixture.image(ByteOrder.LITTLE_ENDIAN);
+        File copy = new File(file.getPath() + ".copy");
+        copy.deleteOnExit();
+        ExifDriver driver = ExifDriver.getInstance(file.getPath(),
+                new int[] { ExifDriver.TAG_MAKE }, null, null);
+        assertFalse(driver.save(copy.getPath()));
+        assertFalse(copy.exists());
+    }
+
+    static ExifDriver.ValueAsciiStrings asciiValue(String value) {
+        ExifDriver.ValueAsciiStrings result = new ExifDriver.ValueAsciiStrings();
+        result.setValue((value + "\0").getBytes());
+        return result;
+    }
+
+    static byte[] thumbnail(ExifDriver driver) {
+        ByteBuffer thumbnail = driver.getThumbnail();
+        byte[] result = new byte[thumbnail.remaining()];
+        thumbnail.get(result);
+        return result;
+    }
+
+    static Integer number(ExifDriver.ExifValue value) {
+        return ((ExifDriver.ValueNumbers) value).getInt(0);
+    }
+
+    static int[] numbers(Map<Integer, ExifDriver.ExifValue> ifd, int tag) {
+        return ((ExifDriver.ValueNumbers) ifd.get(tag)).getInts();
+    }
+
+    /**
+     * Tags, value classes and components of a directory, in tag order
+     */
+    static String describe(Map<Integer, ExifDriver.ExifValue> ifd) {
+        StringBuilder result = new StringBuilder();
+        for (Map.Entry<Integer, ExifDriver.ExifValue> entry : ifd.entrySet()) {
+            Object values = entry.getValue().getValues();
+            result.append(Integer.toHexString(entry.getKey())).append('=')
+                    .append(entry.getValue().getClass().getSimpleName());
+            if (values instanceof byte[]) {
+                result.append(Arrays.toString((byte[]) values));
+            } else if (values instanceof int[]) {
+                result.append(Arrays.toString((int[]) values));
+            } else {
+                result.append(Arrays.toString((long[]) values));
+            }
+            result.append(' ');
+        }
+        return result.toString();
+    }
+}
@@ -0,0 +1,293 @@
+package org.gisandchips.ctmdroid.exif;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Builds small JPEG files with a known Exif structure for the tests:
+ * IFD0 (Make, Orientation, XResolution), IFDExif (exposure, dates, signed
+ * values and an optional MakerNote), IFDGps (version, latitude, altitude) and
+ * IFD1 with a thumbnail.
+ */
+final class JpegFixture {
+
+    static final String MAKE = "Fixture";
+    static final String DATE = "2015:03:01 10:20:30";
+    static final int WIDTH = 640;
+    static final int HEIGHT = 480;
+    // Private tags of IFDExif holding signed values
+    static final int TAG_SSHORTS = 0xC001;
+    static final int TAG_SLONG = 0xC002;
+    static final int TAG_SBYTES = 0xC003;
+    static final int TAG_USHORT = 0xC004;
+    static final byte[] THUMBNAIL = new byte[] { (byte) 0xFF, (byte) 0xD8,
+            (byte) 0xFF, (byte) 0xFE, 0, 6, 't', 'h', 'u', 'm', (byte) 0xFF, (byte) 0xD9 };
+
+    // Pointers to the subdirectories, private in ExifDriver
+    private static final int TAG_EXIF_POINTER = 0x8769;
+    private static final int TAG_GPS_POINTER = 0x8825;
+    private static final int BYTE = 1;
+    private static final int ASCII = 2;
+    private static final int SHORT = 3;
+    private static final int LONG = 4;
+    private static final int RATIONAL = 5;
+    private static final int SBYTE = 6;
+    private static final int UNDEFINED = 7;
+    private static final int SSHORT = 8;
+    private static final int SLONG = 9;
+    private static final int SRATIONAL = 10;
+
+    private JpegFixture() {
+    }
+
+    /**
+     * Entries of one IFD directory, in the order they are written
+     */
+    private static class Directory {
+        final List<int[]> entries = new ArrayList<int[]>();
+        final List<byte[]> values = new ArrayList<byte[]>();
+
+        void add(int tag, int type, int count, byte[] value) {
+            entries.add(new int[] { tag, type, count });
+            values.add(value);
+        }
+
+        void set(int tag, byte[] value) {
+            for (int i = 0; i < entries.size(); i++) {
+                if (entries.get(i)[0] == tag) {
+                    values.set(i, value);
+                }
+            }
+        }
+
+        int size() {
+            int size = 2 + 12 * entries.size() + 4;
+            for (byte[] value : values) {
+                if (value.length > 4) {
+                    size += value.length;
+                }
+            }
+            return size;
+        }
+
+        void write(ByteBuffer out, int offset, int next) {
+            out.position(offset);
+            out.putShort((short) entries.size());
+            int data = offset + size() - dataSize();
+            for (int i = 0; i < entries.size(); i++) {
+                int[] entry = entries.get(i);
+                byte[] value = values.get(i);
+                out.putShort((short) entry[0]);
+                out.putShort((short) entry[1]);
+                out.putInt(entry[2]);
+                if (value.length > 4) {
+                    out.putInt(data);
+                    int position = out.position();
+                    out.position(data);
+                    out.put(value);
+                    out.position(position);
+                    data += value.length;
+                } else {
+                    out.put(value);
+                    out.put(new byte[4 - value.length]);
+                }
+            }
+            out.putInt(next);
+        }
+
+        private int dataSize() {
+            return size() - (2 + 12 * entries.size() + 4);
+        }
+    }
+
+    /**
+     * TIFF structure following the Exif header of APP1
+     *
+     * @param order
+     *          Byte order of the structure
+     * @param makerNote
+     *          Length of the MakerNote, 0 for none
+     */
+    static byte[] tiff(ByteOrder order, int makerNote) {
+        Directory ifd0 = new Directory();
+        ifd0.add(ExifDriver.TAG_MAKE, ASCII, MAKE.length() + 1, ascii(MAKE));
+        ifd0.add(ExifDriver.TAG_ORIENTATION, SHORT, 1, shorts(order, 6));
+        ifd0.add(ExifDriver.TAG_XRESOLUTION, RATIONAL, 1, longs(order, 72, 1));
+        ifd0.add(TAG_EXIF_POINTER, LONG, 1, longs(order, 0));
+        ifd0.add(TAG_GPS_POINTER, LONG, 1, longs(order, 0));
+        Directory exif = new Directory();
+        exif.add(ExifDriver.TAG_EXPOSURE_TIME, RATIONAL, 1, longs(order, 1, 250));
+        exif.add(ExifDriver.TAG_ISO_SPEED_RATINGS, SHORT, 1, shorts(order, 400));
+        exif.add(ExifDriver.TAG_DATETIME_ORIGINAL, ASCII, DATE.length() + 1, ascii(DATE));
+        exif.add(ExifDriver.TAG_EXPOSURE_BIAS_VALUE, SRATIONAL, 1, longs(order, -1, 3));
+        if (makerNote > 0) {
+            byte[] note = new byte[makerNote];
+            new Random(makerNote).nextBytes(note);
+            exif.add(ExifDriver.TAG_MARKER_NOTE, UNDEFINED, makerNote, note);
+        }
+        exif.add(ExifDriver.TAG_SUB_SEC_TIME_ORIGINAL, ASCII, 3, ascii("25"));
+        exif.add(TAG_SSHORTS, SSHORT, 2, shorts(order, -2, 300));
+        exif.add(TAG_SLONG, SLONG, 1, longs(order, -100000));
+        exif.add(TAG_SBYTES, SBYTE, 2, new byte[] { -1, 5 });
+        exif.add(TAG_USHORT, SHORT, 1, shorts(order, 0xFFFF));
+        Directory gps = new Directory();
+        gps.add(ExifDriver.TAG_GPS_VERSION_ID, BYTE, 4, new byte[] { 2, 2, 0, 0 });
+        gps.add(ExifDriver.TAG_GPS_LATITUDE_REF, ASCII, 2, ascii("N"));
+        gps.add(ExifDriver.TAG_GPS_LATITUDE, RATIONAL, 3,
+                longs(order, 38, 1, 20, 1, 3000, 100));
+        gps.add(ExifDriver.TAG_GPS_ALTITUDE_REF, BYTE, 1, new byte[] { 1 });
+        gps.add(ExifDriver.TAG_GPS_ALTITUDE, RATIONAL, 1, longs(order, 125, 1));
+        Directory ifd1 = new Directory();
+        ifd1.add(ExifDriver.TAG_COMPRESSION, SHORT, 1, shorts(order, 6));
+        ifd1.add(ExifDriver.TAG_JPEG_INTERCHANGE_FORMAT, LONG, 1, longs(order, 0));
+        ifd1.add(ExifDriver.TAG_JPEG_INTERCHANGE_FORMAT_LENGTH, LONG, 1,
+                longs(order, THUMBNAIL.length));
+        // Offsets do not depend on the pointer values
+        int exifStart = 8 + ifd0.size();
+        int gpsStart = exifStart + exif.size();
+        int ifd1Start = gpsStart + gps.size();
+        int thumbnailStart = ifd1Start + ifd1.size();
+        ifd0.set(TAG_EXIF_POINTER, longs(order, exifStart));
+        ifd0.set(TAG_GPS_POINTER, longs(order, gpsStart));
+        ifd1.set(ExifDriver.TAG_JPEG_INTERCHANGE_FORMAT, longs(order, thumbnailStart));
+        ByteBuffer out = ByteBuffer.allocate(thumbnailStart + THUMBNAIL.length).order(order);
+        out.put(order == ByteOrder.BIG_ENDIAN ? (byte) 'M' : (byte) 'I');
+        out.put(order == ByteOrder.BIG_ENDIAN ? (byte) 'M' : (byte) 'I');
+        out.putShort((short) 42);
+        out.putInt(8);
+        ifd0.write(out, 8, ifd1Start);
+        exif.write(out, exifStart, 0);
+        gps.write(out, gpsStart, 0);
+        ifd1.write(out, ifd1Start, 0);
+        out.position(thumbnailStart);
+        out.put(THUMBNAIL);
+        return out.array();
+    }
+
+    /**
+     * Segment with given marker and payload
+     */
+    static byte[] segment(int marker, byte[] payload) {
+        byte[] result = new byte[4 + payload.length];
+        result[0] = (byte) 0xFF;
+        result[1] = (byte) marker;
+        result[2] = (byte) ((payload.length + 2) >> 8);
+        result[3] = (byte) (payload.length + 2);
+        System.arraycopy(payload, 0, result, 4, payload.length);
+        return result;
+    }
+
+    static byte[] exifSegment(byte[] tiff) {
+        return segment(0xE1, concat(new byte[] { 'E', 'x', 'i', 'f', 0, 0 }, tiff));
+    }
+
+    static byte[] jfifSegment() {
+        return segment(0xE0, new byte[] { 'J', 'F', 'I', 'F', 0, 1, 1, 0, 0, 1, 0, 1, 0, 0 });
+    }
+
+    static byte[] sofSegment(int marker, int width, int height) {
+        return segment(marker, new byte[] { 8, (byte) (height >> 8), (byte) height,
+                (byte) (width >> 8), (byte) width, 1, 1, 0x11, 0 });
+    }
+
+    /**
+     * SOS segment followed by random scan data and EOI
+     *
+     * @param length
+     *          Amount of scan data
+     */
+    static byte[] imageData(int length) {
+        byte[] scan = new byte[length];
+        new Random(length).nextBytes(scan);
+        return concat(segment(0xDA, new byte[] { 1, 1, 0, 0, 0x3F, 0 }), scan,
+                new byte[] { (byte) 0xFF, (byte) 0xD9 });
+    }
+
+    /**
+     * Image with JFIF, Exif, frame header and 20 KB of image data
+     */
+    static File image(ByteOrder order) throws IOException {
+        return write(jfifSegment(), exifSegment(tiff(order, 0)),
+                sofSegment(0xC0, WIDTH, HEIGHT), imageData(20000));
+    }
+
+    /**
+     * Write temporary file consisting of SOI and given parts
+     */
+    static File write(byte[]... parts) throws IOException {
+        File file = File.createTempFile("fixture", ".jpg");
+        file.deleteOnExit();
+        FileOutputStream out = new FileOutputStream(file);
+        try {
+            out.write(new byte[] { (byte) 0xFF, (byte) 0xD8 });
+            for (byte[] part : parts) {
+                out.write(part);
+            }
+        } finally {
+            out.close();
+        }
+        return file;
+    }
+
+    static byte[] read(File file) throws IOException {
+        RandomAccessFile in = new RandomAccessFile(file, "r");
+        try {
+            byte[] result = new byte[(int) in.length()];
+            in.readFully(result);
+            return result;
+        } finally {
+            in.close();
+        }
+    }
+
+    /**
+     * Bytes of the file from the SOS marker to the end
+     */
+    static byte[] imageDataOf(File file) throws IOException {
+        byte[] data = read(file);
+        for (int i = 2; i + 1 < data.length; i++) {
+            if ((data[i] & 0xFF) == 0xFF && (data[i + 1] & 0xFF) == 0xDA) {
+                byte[] result = new byte[data.length - i];
+                System.arraycopy(data, i, result, 0, result.length);
+                return result;
+            }
+        }
+        return null;
+    }
+
+    static byte[] concat(byte[]... parts) {
+        ByteArrayOutputStream result = new ByteArrayOutputStream();
+        for (byte[] part : parts) {
+            result.write(part, 0, part.length);
+        }
+        return result.toByteArray();
+    }
+
+    private static byte[] ascii(String value) {
+        return concat(value.getBytes(), new byte[1]);
+    }
+
+    private static byte[] shorts(ByteOrder order, int... values) {
+        ByteBuffer result = ByteBuffer.allocate(2 * values.length).order(order);
+        for (int value : values) {
+            result.putShort((short) value);
+        }
+        return result.array();
+    }
+
+    private static byte[] longs(ByteOrder order, long... values) {
+        ByteBuffer result = ByteBuffer.allocate(4 * values.length).order(order);
+        for (long value : values) {
+            result.putInt((int) value);
+        }
+        return result.array();
+    }
+}
@@ -0,0 +1,113 @@
+package org.gisandchips.ctmdroid.exif;
+
+import org.junit.Test;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteOrder;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class JpegSegmentsTest {
+
+    private static final byte[] XMP_ID = "http://ns.adobe.com/xap/1.0/\0".getBytes();
+
+    @Test
+    public void segmentsOfEachKind() throws IOException {
+        byte[] app0 = JpegFixture.jfifSegment();
+        // A large segment first must not matter
+        byte[] app2 = JpegFixture.segment(0xE2, new byte[60000]);
+        byte[] exif = JpegFixture.exifSegment(JpegFixture.tiff(ByteOrder.LITTLE_ENDIAN, 0));
+        byte[] xmp = JpegFixture.segment(0xE1, JpegFixture.concat(XMP_ID, "<x/>".getBytes()));
+        byte[] app13 = JpegFixture.segment(0xED, "Photoshop 3.0\0".getBytes());
+        byte[] com = JpegFixture.segment(0xFE, "comment".getBytes());
+        byte[] dht = JpegFixture.segment(0xC4, new byte[20]);
+        byte[] sof = JpegFixture.sofSegment(0xC2, 1920, 1080);
+        File file = JpegFixture.write(app0, app2, exif, xmp, app13, com, dht, sof,
+                JpegFixture.imageData(1000));
+        JpegSegments segments = walk(file);
+        long offset = 2;
+        assertSegment(segments, JpegSegments.SEGMENT_APP0, offset, app0);
+        offset += app0.length + app2.length;
+        assertSegment(segments, JpegSegments.SEGMENT_APP1_EXIF, offset, exif);
+        offset += exif.length;
+        assertSegment(segments, JpegSegments.SEGMENT_APP1_XMP, offset, xmp);
+        offset += xmp.length;
+        assertSegment(segments, JpegSegments.SEGMENT_APP13, offset, app13);
+        offset += app13.length;
+        assertSegment(segments, JpegSegments.SEGMENT_COM, offset, com);
+        offset += com.length + dht.length;
+        assertSegment(segments, JpegSegments.SEGMENT_SOF, offset, sof);
+        assertEquals(0xC2, segments.getSofMarker());
+        assertEquals(1920, segments.getImageWidth());
+        assertEquals(1080, segments.getImageHeight());
+        assertEquals(offset + sof.length, segments.getSosOffset());
+    }
+
+    @Test
+    public void fillBytesAndFirstExifOnly() throws IOException {
+        byte[] first = JpegFixture.exifSegment(JpegFixture.tiff(ByteOrder.BIG_ENDIAN, 0));
+        byte[] second = JpegFixture.exifSegment(JpegFixture.tiff(ByteOrder.BIG_ENDIAN, 100));
+        byte[] fill = new byte[] { (byte) 0xFF, (byte) 0xFF };
+        File file = JpegFixture.write(fill, first, second,
+                JpegFixture.sofSegment(0xC0, 8, 8), JpegFixture.imageData(10));
+        JpegSegments segments = walk(file);
+        assertSegment(segments, JpegSegments.SEGMENT_APP1_EXIF, 2 + fill.length, first);
+        assertFalse(segments.contains(JpegSegments.SEGMENT_APP0));
+        assertEquals(-1, segments.getOffset(JpegSegments.SEGMENT_COM));
+        assertEquals(0, segments.getLength(JpegSegments.SEGMENT_COM));
+    }
+
+    @Test
+    public void stopsAtStartOfScan() throws IOException {
+        // Scan data looking like a COM segment is not taken for one
+        byte[] scan = JpegFixture.concat(JpegFixture.imageData(0),
+                JpegFixture.segment(0xFE, "not a comment".getBytes()));
+        byte[] sof = JpegFixture.sofSegment(0xC0, 8, 8);
+        JpegSegments segments = walk(JpegFixture.write(sof, scan));
+        assertEquals(2 + sof.length, segments.getSosOffset());
+        assertFalse(segments.contains(JpegSegments.SEGMENT_COM));
+    }
+
+    @Test
+    public void truncatedFile() throws IOException {
+        byte[] exif = JpegFixture.exifSegment(JpegFixture.tiff(ByteOrder.BIG_ENDIAN, 0));
+        byte[] cut = new byte[exif.length - 10];
+        System.arraycopy(exif, 0, cut, 0, cut.length);
+        JpegSegments segments = walk(JpegFixture.write(JpegFixture.jfifSegment(), cut));
+        assertTrue(segments.contains(JpegSegments.SEGMENT_APP0));
+        assertEquals(-1, segments.getSosOffset());
+        assertEquals(-1, segments.getSofMarker());
+    }
+
+    @Test
+    public void notJpeg() throws IOException {
+        File file = File.createTempFile("fixture", ".png");
+        file.deleteOnExit();
+        FileOutputStream out = new FileOutputStream(file);
+        out.write(new byte[] { (byte) 0x89, 'P', 'N', 'G', 0, 0 });
+        out.close();
+        assertNull(walk(file));
+    }
+
+    private static void assertSegment(JpegSegments segments, int kind, long offset,
+                                      byte[] segment) {
+        assertTrue(segments.contains(kind));
+        assertEquals(offset, segments.getOffset(kind));
+        assertEquals(segment.length - 2, segments.getLength(kind));
+    }
+
+    private static JpegSegments walk(File file) throws IOException {
+        FileInputStream in = new FileInputStream(file);
+        try {
+            return JpegSegments.walk(in.getChannel());
+        } finally {
+            in.close();
+        }
+    }
+}
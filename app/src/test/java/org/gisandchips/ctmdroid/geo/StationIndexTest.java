@@ -0,0 +1,153 @@
+package org.gisandchips.ctmdroid.geo;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Queries are compared with a scan of all the stations
+ */
+public class StationIndexTest {
+
+    private static final int STATIONS = 300;
+
+    @Test
+    public void nearestMatchesScan() {
+        Random random = new Random(42);
+        double[][] stations = randomStations(random, 38.0, -0.6, 0.5);
+        StationIndex index = index(stations);
+        for (int i = 0; i < 200; i++) {
+            double latitude = 38.0 + random.nextDouble() * 0.7 - 0.1;
+            double longitude = -0.6 + random.nextDouble() * 0.7 - 0.1;
+            StationIndex.Hit hit = index.nearest(latitude, longitude,
+                    Double.POSITIVE_INFINITY);
+            int expected = nearest(stations, latitude, longitude);
+            assertEquals(distance(stations[expected], latitude, longitude),
+                    hit.getDistance(), 1e-6);
+        }
+    }
+
+    @Test
+    public void nearestBeyondMaxDistance() {
+        StationIndex index = new StationIndex();
+        index.put(1, 38.0, -0.5);
+        assertNull(index.nearest(38.1, -0.5, 1000));
+        assertEquals(1, index.nearest(38.1, -0.5, 20000).getStationId());
+        assertNull(new StationIndex().nearest(0, 0, Double.POSITIVE_INFINITY));
+    }
+
+    @Test
+    public void withinRadiusMatchesScan() {
+        Random random = new Random(43);
+        double[][] stations = randomStations(random, -10.0, 30.0, 0.3);
+        StationIndex index = index(stations);
+        for (int i = 0; i < 50; i++) {
+            double latitude = -10.0 + random.nextDouble() * 0.3;
+            double longitude = 30.0 + random.nextDouble() * 0.3;
+            double radius = random.nextDouble() * 10000;
+            List<StationIndex.Hit> hits = index.withinRadius(latitude, longitude, radius);
+            List<Integer> expected = new ArrayList<Integer>();
+            for (int id = 0; id < stations.length; id++) {
+                if (distance(stations[id], latitude, longitude) <= radius) {
+                    expected.add(id);
+                }
+            }
+            assertEquals(expected.size(), hits.size());
+            List<Integer> found = new ArrayList<Integer>();
+            for (int j = 0; j < hits.size(); j++) {
+                found.add(hits.get(j).getStationId());
+                if (j > 0) {
+                    assertTrue(hits.get(j - 1).getDistance() <= hits.get(j).getDistance());
+                }
+            }
+            Collections.sort(found);
+            assertEquals(expected, found);
+        }
+    }
+
+    @Test
+    public void boundingBoxAcrossAntimeridian() {
+        StationIndex index = new StationIndex();
+        index.put(1, 0.5, 179.9);
+        index.put(2, 0.5, -179.9);
+        index.put(3, 0.5, 0);
+        index.put(4, 2.0, 179.9);
+        List<Integer> found = ids(index.inBoundingBox(0, 179.5, 1, -179.5));
+        assertEquals(2, found.size());
+        assertTrue(found.contains(1));
+        assertTrue(found.contains(2));
+        assertEquals(1, ids(index.inBoundingBox(0, -1, 1, 1)).size());
+        // Nearest across the antimeridian
+        assertEquals(2, index.nearest(0.5, -179.95, Double.POSITIVE_INFINITY).getStationId());
+    }
+
+    @Test
+    public void moveAndRemove() {
+        StationIndex index = new StationIndex();
+        index.put(1, 38.0, -0.5);
+        index.put(2, 39.0, -0.5);
+        index.put(1, 40.0, -0.5);
+        assertEquals(2, index.size());
+        assertEquals(2, index.nearest(38.0, -0.5, Double.POSITIVE_INFINITY).getStationId());
+        assertTrue(index.remove(2));
+        assertFalse(index.remove(2));
+        assertEquals(1, index.nearest(38.0, -0.5, Double.POSITIVE_INFINITY).getStationId());
+        assertEquals(1, index.size());
+    }
+
+    @Test
+    public void distance() {
+        // One degree of latitude
+        assertEquals(111195, StationIndex.distance(0, 0, 1, 0), 1);
+        assertEquals(0, StationIndex.distance(38, -0.5, 38, -0.5), 0);
+    }
+
+    private static double[][] randomStations(Random random, double south, double west,
+                                             double size) {
+        double[][] stations = new double[STATIONS][];
+        for (int i = 0; i < STATIONS; i++) {
+            stations[i] = new double[] { south + random.nextDouble() * size,
+                    west + random.nextDouble() * size };
+        }
+        return stations;
+    }
+
+    private static StationIndex index(double[][] stations) {
+        StationIndex index = new StationIndex();
+        for (int i = 0; i < stations.length; i++) {
+            index.put(i, stations[i][0], stations[i][1]);
+        }
+        return index;
+    }
+
+    private static int nearest(double[][] stations, double latitude, double longitude) {
+        int best = -1;
+        for (int i = 0; i < stations.length; i++) {
+            if (best < 0 || distance(stations[i], latitude, longitude)
+                    < distance(stations[best], latitude, longitude)) {
+                best = i;
+            }
+        }
+        return best;
+    }
+
+    private static double distance(double[] station, double latitude, double longitude) {
+        return StationIndex.distance(latitude, longitude, station[0], station[1]);
+    }
+
+    private static List<Integer> ids(List<StationIndex.Hit> hits) {
+        List<Integer> result = new ArrayList<Integer>();
+        for (StationIndex.Hit hit : hits) {
+            result.add(hit.getStationId());
+        }
+        return result;
+    }
+}
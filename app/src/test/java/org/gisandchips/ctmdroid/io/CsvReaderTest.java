@@ -0,0 +1,152 @@
+package org.gisandchips.ctmdroid.io;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Every input is also read through a Reader returning 1 to 7 chars per
+ * call, so rows and quoted fields are split across refills at every
+ * position.
+ */
+public class CsvReaderTest {
+
+    /**
+     * Reader returning at most a few chars per read
+     */
+    private static class ChunkedReader extends Reader {
+        private final Reader in;
+        private final int chunk;
+
+        ChunkedReader(String text, int chunk) {
+            in = new StringReader(text);
+            this.chunk = chunk;
+        }
+
+        @Override
+        public int read(char[] buffer, int offset, int length) throws IOException {
+            return in.read(buffer, offset, Math.min(length, chunk));
+        }
+
+        @Override
+        public void close() throws IOException {
+            in.close();
+        }
+    }
+
+    @Test
+    public void plainRows() throws IOException {
+        assertRows("a,b,c\n1,2,3\n", row("a", "b", "c"), row("1", "2", "3"));
+        // Last row without line break, CRLF line ends
+        assertRows("a,b\r\n1,2", row("a", "b"), row("1", "2"));
+    }
+
+    @Test
+    public void emptyFields() throws IOException {
+        assertRows(",x,\n\n", row("", "x", ""), row(""));
+    }
+
+    @Test
+    public void quotedFields() throws IOException {
+        assertRows("\"a,b\",\"say \"\"hi\"\"\",\"\"\n",
+                row("a,b", "say \"hi\"", ""));
+    }
+
+    @Test
+    public void quotedLineBreaks() throws IOException {
+        assertRows("id,note\n1,\"first\nsecond\r\nthird\"\n2,x\n",
+                row("id", "note"), row("1", "first\nsecond\r\nthird"), row("2", "x"));
+    }
+
+    @Test
+    public void byteOrderMarkIsSkipped() throws IOException {
+        assertRows("\uFEFFname\nvalue\n", row("name"), row("value"));
+    }
+
+    @Test
+    public void rowLongerThanBuffer() throws IOException {
+        char[] chars = new char[40000];
+        Arrays.fill(chars, 'x');
+        String longField = new String(chars);
+        assertRows("a," + longField + "\nb,c\n", row("a", longField), row("b", "c"));
+    }
+
+    @Test
+    public void lineNumbers() throws IOException {
+        for (int chunk = 1; chunk <= 7; chunk++) {
+            CsvReader csv = new CsvReader(
+                    new ChunkedReader("a\n\"b\nc\"\r\nd\n", chunk));
+            assertTrue(csv.next());
+            assertEquals(1, csv.getLineNumber());
+            assertTrue(csv.next());
+            assertEquals(2, csv.getLineNumber());
+            assertTrue(csv.next());
+            assertEquals(4, csv.getLineNumber());
+            assertFalse(csv.next());
+        }
+    }
+
+    @Test
+    public void numbers() throws IOException {
+        for (int chunk = 1; chunk <= 7; chunk++) {
+            CsvReader csv = new CsvReader(new ChunkedReader(
+                    " -38.1234 ,0.5,+2,1e3,12345678901234567\n", chunk));
+            assertTrue(csv.next());
+            assertEquals(-38.1234, csv.getDouble(0), 0);
+            assertEquals(0.5, csv.getDouble(1), 0);
+            assertEquals(2, csv.getDouble(2), 0);
+            assertEquals(1000, csv.getDouble(3), 0);
+            assertEquals(12345678901234567d, csv.getDouble(4), 0);
+        }
+    }
+
+    @Test(expected = NumberFormatException.class)
+    public void missingNumber() throws IOException {
+        CsvReader csv = new CsvReader(new StringReader("1\n"));
+        assertTrue(csv.next());
+        csv.getDouble(1);
+    }
+
+    @Test
+    public void otherDelimiter() throws IOException {
+        CsvReader csv = new CsvReader(new StringReader("a;\"b;c\"\n"), ';');
+        assertTrue(csv.next());
+        assertEquals(2, csv.getFieldCount());
+        assertEquals("b;c", csv.getString(1));
+    }
+
+    private static String[] row(String... fields) {
+        return fields;
+    }
+
+    private static void assertRows(String text, String[]... expected) throws IOException {
+        assertEquals(Arrays.deepToString(expected), Arrays.deepToString(read(new StringReader(text))));
+        for (int chunk = 1; chunk <= 7; chunk++) {
+            assertEquals("chunk " + chunk, Arrays.deepToString(expected),
+                    Arrays.deepToString(read(new ChunkedReader(text, chunk))));
+        }
+    }
+
+    private static String[][] read(Reader in) throws IOException {
+        CsvReader csv = new CsvReader(in);
+        List<String[]> rows = new ArrayList<String[]>();
+        while (csv.next()) {
+            String[] row = new String[csv.getFieldCount()];
+            for (int i = 0; i < row.length; i++) {
+                row[i] = csv.getString(i);
+            }
+            rows.add(row);
+        }
+        csv.close();
+        return rows.toArray(new String[rows.size()][]);
+    }
+}